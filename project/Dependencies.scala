@@ -18,6 +18,7 @@ import sbt._
 
 object Dependencies {
 
+  val Aircompressor: ModuleID = "io.airlift" % "aircompressor" % "0.25"
   val Bali: ModuleID = "global.namespace.bali" % "bali-java" % "0.8.0"
   val BcprovJdk15on: ModuleID = "org.bouncycastle" % "bcprov-jdk15on" % "1.68"
   val CommonsCompress: ModuleID = "org.apache.commons" % "commons-compress" % "1.20"
@@ -8,6 +8,8 @@ import edu.umd.cs.findbugs.annotations.CleanupObligation;
 import edu.umd.cs.findbugs.annotations.CreatesObligation;
 import edu.umd.cs.findbugs.annotations.DischargesObligation;
 import java.util.Objects;
+import java.util.concurrent.Executor;
+import javax.annotation.CheckForNull;
 import net.java.truecommons.shed.BitField;
 import net.java.truecommons.shed.InheritableThreadLocalStack;
 import net.java.truecommons.shed.Resource;
@@ -240,6 +242,7 @@ public final class TConfig extends Resource<IllegalStateException> {
     private FsManager manager;
     private TArchiveDetector detector;
     private BitField<FsAccessOption> preferences;
+    private @CheckForNull Executor syncExecutor;
 
     /** Default constructor for the global configuration. */
     private TConfig() {
@@ -253,6 +256,7 @@ public final class TConfig extends Resource<IllegalStateException> {
         this.manager = template.getManager();
         this.detector = template.getArchiveDetector();
         this.preferences = template.getAccessPreferences();
+        this.syncExecutor = template.getSyncExecutor();
     }
 
     private void checkOpen() {
@@ -370,6 +374,40 @@ public final class TConfig extends Resource<IllegalStateException> {
         setAccessPreferences(getAccessPreferences().set(option, set));
     }
 
+    /**
+     * Returns the executor for syncing independent archive file systems
+     * concurrently in {@link TVFS#sync} and {@link TVFS#umount}.
+     * The default value of the global configuration is {@code null}, so that
+     * parallel syncing is opt-in.
+     *
+     * @return The executor for syncing independent archive file systems
+     *         concurrently or {@code null} if they get synced one by one in
+     *         the current thread.
+     * @since  TrueVFS 0.15.0
+     */
+    public @CheckForNull Executor getSyncExecutor() {
+        checkOpen();
+        return syncExecutor;
+    }
+
+    /**
+     * Sets the executor for syncing independent archive file systems
+     * concurrently in {@link TVFS#sync} and {@link TVFS#umount}.
+     * Nested archive file systems always get synced before their parent
+     * archive file system.
+     * Changing this property will show effect upon the next call to
+     * {@link TVFS#sync} or {@link TVFS#umount}.
+     *
+     * @param syncExecutor the executor for syncing independent archive file
+     *        systems concurrently or {@code null} in order to sync them one
+     *        by one in the current thread.
+     * @since TrueVFS 0.15.0
+     */
+    public void setSyncExecutor(final @CheckForNull Executor syncExecutor) {
+        checkOpen();
+        this.syncExecutor = syncExecutor;
+    }
+
     /**
      * Returns the value of the property {@code lenient}, which is {@code true}
      * if and only if the access preference {@link FsAccessOption#CREATE_PARENTS}
@@ -453,7 +491,8 @@ public final class TConfig extends Resource<IllegalStateException> {
         final TConfig that = (TConfig) other;
         return this.manager.equals(that.getManager())
                 && this.detector.equals(that.getArchiveDetector())
-                && this.preferences.equals(that.getAccessPreferences());
+                && this.preferences.equals(that.getAccessPreferences())
+                && Objects.equals(this.syncExecutor, that.getSyncExecutor());
     }
 
     @Override
@@ -462,12 +501,13 @@ public final class TConfig extends Resource<IllegalStateException> {
         hash = 89 * hash + manager.hashCode();
         hash = 89 * hash + detector.hashCode();
         hash = 89 * hash + preferences.hashCode();
+        hash = 89 * hash + Objects.hashCode(syncExecutor);
         return hash;
     }
 
     @Override
     public String toString() {
-        return String.format("%s[manager=%s, detector=%s, preferences=%s]",
-                getClass().getName(), manager, detector, preferences);
+        return String.format("%s[manager=%s, detector=%s, preferences=%s, syncExecutor=%s]",
+                getClass().getName(), manager, detector, preferences, syncExecutor);
     }
 }
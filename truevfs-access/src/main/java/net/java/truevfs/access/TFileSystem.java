@@ -226,11 +226,18 @@ public final class TFileSystem extends FileSystem {
         final FsNodeName name = path.getNodeName();
         final FsController controller = getController();
         if (options.isEmpty() || options.contains(StandardOpenOption.READ)) {
-            final BitField<FsAccessOption>
-                    o = path.inputOptions(options).set(CACHE);
-            return controller
-                    .input(o, name)
-                    .channel(null);
+            final BitField<FsAccessOption> o = path.inputOptions(options);
+            try {
+                // Use the channel of the driver if it supports random access
+                // in order to avoid copying the entire entry to the cache.
+                return controller
+                        .input(o, name)
+                        .channel(null);
+            } catch (final UnsupportedOperationException ex) {
+                return controller
+                        .input(o.set(CACHE), name)
+                        .channel(null);
+            }
         } else {
             final BitField<FsAccessOption>
                     o = path.outputOptions(options).set(CACHE);
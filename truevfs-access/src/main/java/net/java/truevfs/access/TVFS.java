@@ -171,9 +171,11 @@ public final class TVFS {
     @ExpertFeature(THE_PRESENCE_OR_ABSENCE_OF_SOME_OPTIONS_MAY_YIELD_UNWANTED_SIDE_EFFECTS)
     public static void sync(BitField<FsSyncOption> options)
     throws FsSyncWarningException, FsSyncException {
+        final TConfig config = TConfig.current();
         new FsSync()
-                .manager(TConfig.current().getManager())
+                .manager(config.getManager())
                 .options(options)
+                .executor(config.getSyncExecutor())
                 .run();
     }
 
@@ -270,10 +272,12 @@ public final class TVFS {
     @ExpertFeature(THE_PRESENCE_OR_ABSENCE_OF_SOME_OPTIONS_MAY_YIELD_UNWANTED_SIDE_EFFECTS)
     public static void sync(FsMountPoint tree, BitField<FsSyncOption> options)
     throws FsSyncWarningException, FsSyncException {
+        final TConfig config = TConfig.current();
         new FsSync()
-                .manager(TConfig.current().getManager())
+                .manager(config.getManager())
                 .filter(FsControllerFilter.forPrefix(tree))
                 .options(options)
+                .executor(config.getSyncExecutor())
                 .run();
     }
 
@@ -0,0 +1,176 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.comp.inflater;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.CheckForNull;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import static net.java.truevfs.comp.inflater.SeekableInflater.WINDOW_SIZE;
+
+/**
+ * An index of checkpoints into a raw DEFLATE stream or a GZIP file, just like
+ * the one built by {@code zran.c} from the zlib distribution.
+ * Each checkpoint is located at the start of a DEFLATE block and holds
+ * the inflater window, i.e. the last 32 KB of uncompressed data before this
+ * block, so that inflating can resume from there.
+ * So each checkpoint needs up to 32 KB of memory.
+ * <p>
+ * The index gets populated on demand by any {@link InflaterReadOnlyChannel}
+ * which passes the end of the index while inflating.
+ * The uncompressed positions of two consecutive checkpoints are at least
+ * {@link #span()} bytes apart.
+ * <p>
+ * An index can get {@linkplain #write written} to and
+ * {@linkplain #read read} from a stream so that it can get reused for the
+ * same compressed data later.
+ *
+ * @since  TrueVFS 0.15.0
+ * @author Christian Schlichtherle
+ */
+@ThreadSafe
+public final class InflaterIndex {
+
+    private final long span;
+    private final List<Checkpoint> checkpoints = new ArrayList<>();
+    private long length = -1;
+
+    /**
+     * Constructs a new inflater index.
+     *
+     * @param span the minimum distance of the uncompressed positions of two
+     *        consecutive checkpoints.
+     */
+    public InflaterIndex(final long span) {
+        if (0 >= span) throw new IllegalArgumentException();
+        this.span = span;
+    }
+
+    /**
+     * Returns the minimum distance of the uncompressed positions of two
+     * consecutive checkpoints.
+     */
+    public long span() { return span; }
+
+    /** Returns the number of checkpoints in this index. */
+    public synchronized int size() { return checkpoints.size(); }
+
+    /**
+     * Returns the length of the uncompressed data or -1 if no inflater has
+     * reached the end of the compressed data yet.
+     * Once the length is known, this index is complete.
+     */
+    public synchronized long length() { return length; }
+
+    /** Records the length of the uncompressed data. */
+    synchronized void length(final long length) { this.length = length; }
+
+    /**
+     * Returns the minimum uncompressed position of the next checkpoint to
+     * add to this index.
+     */
+    synchronized long next() {
+        final int size = checkpoints.size();
+        return 0 == size ? span : checkpoints.get(size - 1).out + span;
+    }
+
+    /**
+     * Adds the given checkpoint to this index if its uncompressed position is
+     * not less than {@link #next()}.
+     * Otherwise, another inflater has been faster.
+     */
+    synchronized void add(final Checkpoint checkpoint) {
+        if (next() <= checkpoint.out) checkpoints.add(checkpoint);
+    }
+
+    /**
+     * Returns the checkpoint with the greatest uncompressed position which is
+     * less than or equal to the given position or {@code null} if no such
+     * checkpoint exists.
+     */
+    synchronized @CheckForNull Checkpoint floor(final long out) {
+        int low = 0, high = checkpoints.size() - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            if (checkpoints.get(mid).out <= out) low = mid + 1;
+            else high = mid - 1;
+        }
+        return 0 <= high ? checkpoints.get(high) : null;
+    }
+
+    /**
+     * Writes this index to the given output.
+     *
+     * @param  out the output to write to.
+     * @throws IOException on any I/O error.
+     */
+    public synchronized void write(final DataOutput out) throws IOException {
+        out.writeLong(span);
+        out.writeLong(length);
+        out.writeInt(checkpoints.size());
+        for (final Checkpoint checkpoint : checkpoints) {
+            out.writeLong(checkpoint.in);
+            out.writeLong(checkpoint.out);
+            out.writeInt(checkpoint.window.length);
+            out.write(checkpoint.window);
+        }
+    }
+
+    /**
+     * Reads an index from the given input.
+     *
+     * @param  in the input to read from.
+     * @return The index or {@code null} if the input does not contain a
+     *         valid index.
+     * @throws IOException on any I/O error.
+     */
+    public static @CheckForNull InflaterIndex read(final DataInput in)
+    throws IOException {
+        final long span = in.readLong();
+        final long length = in.readLong();
+        final int size = in.readInt();
+        if (0 >= span || -1 > length || 0 > size) return null;
+        final InflaterIndex index = new InflaterIndex(span);
+        for (int i = 0; i < size; i++) {
+            final long bits = in.readLong();
+            final long out = in.readLong();
+            final int window = in.readInt();
+            if (0 > bits || out < index.next() || 0 <= length && length < out
+                    || 0 > window || WINDOW_SIZE < window || out < window)
+                return null;
+            final byte[] b = new byte[window];
+            in.readFully(b);
+            index.add(new Checkpoint(bits, out, b));
+        }
+        index.length = length;
+        return index;
+    }
+
+    /** A checkpoint at the start of a DEFLATE block. */
+    @Immutable
+    static final class Checkpoint {
+
+        /** The bit position of the block in the compressed data. */
+        final long in;
+
+        /** The position of the block in the uncompressed data. */
+        final long out;
+
+        /** The uncompressed data before the block, up to 32 KB. */
+        final byte[] window;
+
+        Checkpoint(final long in, final long out, final byte[] window) {
+            assert window.length <= out;
+            this.in = in;
+            this.out = out;
+            this.window = window;
+        }
+    } // Checkpoint
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.comp.inflater;
+
+import edu.umd.cs.findbugs.annotations.CreatesObligation;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import javax.annotation.WillCloseWhenClosed;
+import javax.annotation.concurrent.NotThreadSafe;
+import net.java.truecommons.io.ReadOnlyChannel;
+
+import static java.lang.Math.min;
+
+/**
+ * A read-only channel which inflates the raw DEFLATE stream or the GZIP file
+ * from the decorated channel and supports random access to the uncompressed
+ * data by means of a seekable inflater.
+ * Repositioning this channel is cheap: The inflater gets repositioned lazily
+ * upon the next read, and then it resumes from the closest checkpoint in the
+ * given index.
+ * <p>
+ * Note that this channel does not check the CRC-32 value of the
+ * uncompressed data of a raw DEFLATE stream.
+ * For a GZIP file, the CRC-32 value of a member gets checked only if the
+ * member gets inflated from its start.
+ *
+ * @since  TrueVFS 0.15.0
+ * @author Christian Schlichtherle
+ */
+@NotThreadSafe
+public final class InflaterReadOnlyChannel extends ReadOnlyChannel {
+
+    private final SeekableInflater inflater;
+    private final InflaterIndex index;
+    private final long size;
+
+    /** The virtual position of this channel. */
+    private long pos;
+
+    /**
+     * Constructs a new inflater read-only channel.
+     *
+     * @param channel the channel with the compressed data.
+     * @param size the size of the uncompressed data or -1 if it's unknown.
+     *        In this case, it gets looked up in the index.
+     *        If the index is not complete yet, then calling {@link #size()}
+     *        inflates the remainder of the compressed data in order to
+     *        complete it.
+     * @param index the inflater index to use and populate.
+     * @param bufferSize the size of the input buffer.
+     * @param gzip whether the decorated channel contains a GZIP file rather
+     *        than a raw DEFLATE stream.
+     */
+    @CreatesObligation
+    public InflaterReadOnlyChannel(
+            final @WillCloseWhenClosed SeekableByteChannel channel,
+            final long size,
+            final InflaterIndex index,
+            final int bufferSize,
+            final boolean gzip) {
+        super(channel);
+        if (-1 > size) throw new IllegalArgumentException();
+        this.inflater = new SeekableInflater(channel, index, bufferSize, gzip);
+        this.index = index;
+        this.size = size;
+    }
+
+    @Override
+    public int read(final ByteBuffer dst) throws IOException {
+        // Check no-op first for compatibility with FileChannel.
+        final int remaining = dst.remaining();
+        if (remaining <= 0)
+            return 0;
+
+        // Check is open and not at EOF.
+        long pos = position();
+        final long size = 0 <= this.size ? this.size : index.length();
+        if (0 <= size && pos >= size)
+            return -1;
+
+        // Copy uncompressed data.
+        final SeekableInflater inflater = this.inflater;
+        int total = 0;
+        while (total < remaining && (0 > size || pos < size)) {
+            if (!inflater.position(pos)) {
+                if (0 <= size) throw new EOFException();
+                break;
+            }
+            final int off = (int) (pos - inflater.start());
+            int n = min(remaining - total, inflater.limit() - off);
+            if (0 <= size) n = (int) min(n, size - pos);
+            dst.put(inflater.buffer(), off, n);
+            total += n;
+            pos += n;
+        }
+        this.pos = pos;
+        return 0 < total ? total : -1;
+    }
+
+    @Override
+    public long position() throws IOException {
+        checkOpen();
+        return pos;
+    }
+
+    @Override
+    public SeekableByteChannel position(final long pos) throws IOException {
+        if (0 > pos)
+            throw new IllegalArgumentException();
+        checkOpen();
+        this.pos = pos;
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * If the size of the uncompressed data is unknown and the index is not
+     * complete yet, then this inflates the remainder of the compressed data
+     * in order to complete it.
+     */
+    @Override
+    public long size() throws IOException {
+        checkOpen();
+        if (0 <= size)
+            return size;
+        long length = index.length();
+        if (0 > length) {
+            inflater.position(Long.MAX_VALUE);
+            length = index.length();
+            assert 0 <= length;
+        }
+        return length;
+    }
+}
@@ -0,0 +1,607 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.comp.inflater;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.ZipException;
+import javax.annotation.CheckForNull;
+import javax.annotation.WillNotClose;
+import javax.annotation.concurrent.NotThreadSafe;
+import net.java.truevfs.comp.inflater.InflaterIndex.Checkpoint;
+
+/**
+ * Inflates a raw DEFLATE stream or a GZIP file from a seekable byte channel
+ * and supports random access to the uncompressed data by resuming from the
+ * checkpoints in an {@link InflaterIndex}.
+ * <p>
+ * This is a pure Java implementation because {@link java.util.zip.Inflater}
+ * neither reports the boundaries of deflate blocks nor allows to resume
+ * inflating at an arbitrary bit position.
+ * The decoder is modelled after {@code puff.c} from the zlib distribution,
+ * with a lookup table for the short Huffman codes.
+ * <p>
+ * The inflated data gets written to an output buffer which always retains
+ * the last 32 KB of uncompressed data as the inflater window.
+ * <p>
+ * A GZIP file may consist of several members.
+ * Like {@link java.util.zip.GZIPInputStream}, this inflater ignores any
+ * trailing data which does not start with the GZIP magic number.
+ * The CRC-32 and the size of a member get checked only if it has been
+ * inflated from its start rather than from a checkpoint.
+ *
+ * @author Christian Schlichtherle
+ */
+@NotThreadSafe
+final class SeekableInflater {
+
+    /** The size of the inflater window. */
+    static final int WINDOW_SIZE = 32 * 1024;
+
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final int FHCRC = 2, FEXTRA = 4, FNAME = 8, FCOMMENT = 16;
+
+    private static final int MAX_BITS = 15;
+    private static final int FAST_BITS = 10;
+    private static final int FAST_MASK = (1 << FAST_BITS) - 1;
+
+    private static final int MAX_LITLEN_CODES = 288;
+    private static final int MAX_DIST_CODES = 30;
+
+    private static final int[] LBASE = {
+        3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31,
+        35, 43, 51, 59, 67, 83, 99, 115, 131, 163, 195, 227, 258 };
+    private static final int[] LEXT = {
+        0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2,
+        3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0 };
+    private static final int[] DBASE = {
+        1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193,
+        257, 385, 513, 769, 1025, 1537, 2049, 3073, 4097, 6145,
+        8193, 12289, 16385, 24577 };
+    private static final int[] DEXT = {
+        0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6,
+        7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13 };
+
+    /** The permutation of the code length code lengths. */
+    private static final int[] ORDER = {
+        16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15 };
+
+    private static final Huffman FIXED_LITLEN, FIXED_DIST;
+    static {
+        final int[] lengths = new int[MAX_LITLEN_CODES + MAX_DIST_CODES];
+        int s = 0;
+        for (; s < 144; s++) lengths[s] = 8;
+        for (; s < 256; s++) lengths[s] = 9;
+        for (; s < 280; s++) lengths[s] = 7;
+        for (; s < MAX_LITLEN_CODES; s++) lengths[s] = 8;
+        for (; s < lengths.length; s++) lengths[s] = 5;
+        FIXED_LITLEN = fixed(lengths, 0, MAX_LITLEN_CODES);
+        FIXED_DIST = fixed(lengths, MAX_LITLEN_CODES, MAX_DIST_CODES);
+    }
+
+    private static Huffman fixed(final int[] lengths, final int off, final int n) {
+        final Huffman huffman = new Huffman(n);
+        try {
+            huffman.build(lengths, off, n);
+        } catch (final ZipException ex) {
+            throw new AssertionError(ex);
+        }
+        return huffman;
+    }
+
+    private enum State { MEMBER, HEADER, STORED, CODES }
+
+    private final SeekableByteChannel channel;
+    private final InflaterIndex index;
+    private final boolean gzip;
+
+    private final byte[] in;
+    private final ByteBuffer input;
+    private long inStart;
+    private int inOff, inLen;
+    private boolean eof;
+
+    private long hold;
+    private int bitCount;
+
+    private final byte[] out = new byte[4 * WINDOW_SIZE];
+    private long outStart;
+    private int outPos;
+
+    private State state;
+    private boolean last;
+    private int stored;
+    private @CheckForNull Huffman litlen, dist;
+    private int copyLength, copyDistance;
+    private long next;
+
+    /**
+     * The uncompressed position of the start of the current GZIP member or
+     * the inflater window, whatever comes last.
+     * Back references must not reach before this position.
+     */
+    private long member;
+
+    /** Whether or not the next GZIP member is the first one. */
+    private boolean first;
+
+    /** Whether or not the current GZIP member gets checked. */
+    private boolean checked;
+
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * Whether or not the state needs a reset before inflating, e.g. because
+     * inflating has failed.
+     */
+    private boolean stale = true;
+
+    private final int[] lengths = new int[MAX_LITLEN_CODES + MAX_DIST_CODES];
+    private final Huffman lencode = new Huffman(19);
+    private final Huffman dynamicLitlen = new Huffman(MAX_LITLEN_CODES);
+    private final Huffman dynamicDist = new Huffman(MAX_DIST_CODES);
+
+    /**
+     * Constructs a new seekable inflater.
+     *
+     * @param channel the channel with the compressed data, starting at
+     *        position zero.
+     * @param index the index to use and populate.
+     * @param bufferSize the size of the input buffer.
+     * @param gzip whether the channel contains a GZIP file rather than a raw
+     *        DEFLATE stream.
+     */
+    SeekableInflater(
+            final @WillNotClose SeekableByteChannel channel,
+            final InflaterIndex index,
+            final int bufferSize,
+            final boolean gzip) {
+        this.channel = channel;
+        this.index = index;
+        this.gzip = gzip;
+        this.input = ByteBuffer.wrap(this.in = new byte[bufferSize]);
+        init(null);
+    }
+
+    /** Returns the output buffer. */
+    byte[] buffer() { return out; }
+
+    /** Returns the uncompressed position of the start of the output buffer. */
+    long start() { return outStart; }
+
+    /**
+     * Returns the number of bytes of uncompressed data in the output buffer.
+     */
+    int limit() { return outPos; }
+
+    /**
+     * Inflates the uncompressed data up to the given position so that it's
+     * contained in the output buffer.
+     * This resumes from the closest checkpoint in the index if the position
+     * is before the start of the output buffer or if the checkpoint is after
+     * the end of the output buffer.
+     * If this method fails, then the next call resumes from a checkpoint.
+     *
+     * @param  pos the uncompressed position.
+     * @return {@code false} if and only if the uncompressed data ends
+     *         before this position.
+     * @throws ZipException if the compressed data is corrupted.
+     * @throws IOException on any other I/O error.
+     */
+    boolean position(final long pos) throws IOException {
+        if (!stale && outStart <= pos && pos < outStart + outPos) return true;
+        try {
+            if (stale || pos < outStart) {
+                reset(index.floor(pos));
+            } else {
+                final Checkpoint checkpoint = index.floor(pos);
+                if (null != checkpoint && outStart + outPos < checkpoint.out)
+                    reset(checkpoint);
+            }
+            while (outStart + outPos <= pos)
+                if (!inflate()) return false;
+            return true;
+        } catch (final Throwable ex) {
+            stale = true;
+            throw ex;
+        }
+    }
+
+    private void reset(final @CheckForNull Checkpoint checkpoint)
+    throws IOException {
+        init(checkpoint);
+        channel.position(inStart);
+        stale = false;
+        if (null != checkpoint) bits((int) (checkpoint.in & 7));
+    }
+
+    private void init(final @CheckForNull Checkpoint checkpoint) {
+        inOff = inLen = 0;
+        eof = false;
+        hold = 0;
+        bitCount = 0;
+        last = false;
+        stored = 0;
+        copyLength = 0;
+        if (null == checkpoint) {
+            state = gzip ? State.MEMBER : State.HEADER;
+            first = true;
+            inStart = 0;
+            outStart = 0;
+            outPos = 0;
+        } else {
+            state = State.HEADER;
+            first = false;
+            final byte[] window = checkpoint.window;
+            inStart = checkpoint.in >>> 3;
+            System.arraycopy(window, 0, out, 0, window.length);
+            outStart = checkpoint.out - window.length;
+            outPos = window.length;
+        }
+        member = outStart;
+        checked = false;
+    }
+
+    /**
+     * Inflates at least one byte into the output buffer, unless the end of
+     * the compressed data has been reached.
+     * If the output buffer is full, then it gets shifted first so that it
+     * retains only the inflater window.
+     *
+     * @return {@code false} if and only if the end of the compressed data
+     *         has been reached.
+     */
+    private boolean inflate() throws IOException {
+        if (out.length == outPos) {
+            System.arraycopy(out, outPos - WINDOW_SIZE, out, 0, WINDOW_SIZE);
+            outStart += outPos - WINDOW_SIZE;
+            outPos = WINDOW_SIZE;
+        }
+        final int start = outPos;
+        do {
+            switch (state) {
+                case MEMBER:
+                    if (!member()) return end();
+                    break;
+                case HEADER:
+                    if (!header()) return end();
+                    break;
+                case STORED:
+                    stored();
+                    break;
+                default:
+                    codes();
+            }
+        } while (start == outPos);
+        if (checked) crc.update(out, start, outPos - start);
+        return true;
+    }
+
+    /** Records the length of the uncompressed data in the index. */
+    private boolean end() {
+        index.length(outStart + outPos);
+        return false;
+    }
+
+    /**
+     * Reads the header of the next GZIP member.
+     *
+     * @return {@code false} if and only if there is no next member.
+     */
+    private boolean member() throws IOException {
+        bits(bitCount & 7); // go to byte boundary
+        if (bitCount < 16) fill();
+        if (bitCount < 16 || GZIP_MAGIC != (int) (hold & 0xffff)) {
+            if (first) throw new ZipException("not in GZIP format");
+            return false;
+        }
+        bits(16);
+        if (8 != bits(8))
+            throw new ZipException("unsupported compression method");
+        final int flags = bits(8);
+        for (int i = 0; i < 6; i++) bits(8); // MTIME, XFL, OS
+        if (0 != (flags & FEXTRA))
+            for (int i = bits(16); 0 < i; i--) bits(8);
+        if (0 != (flags & FNAME)) while (0 != bits(8)) { }
+        if (0 != (flags & FCOMMENT)) while (0 != bits(8)) { }
+        if (0 != (flags & FHCRC)) bits(16);
+        state = State.HEADER;
+        last = false;
+        first = false;
+        member = outStart + outPos;
+        checked = true;
+        crc.reset();
+        return true;
+    }
+
+    /** Reads the trailer of the current GZIP member and checks it. */
+    private void trailer() throws IOException {
+        bits(bitCount & 7); // go to byte boundary
+        final long crc = bits(16) | (long) bits(16) << 16;
+        final long size = bits(16) | (long) bits(16) << 16;
+        if (checked && (crc != this.crc.getValue()
+                || size != ((outStart + outPos - member) & 0xffffffffL)))
+            throw new ZipException("corrupt GZIP trailer");
+    }
+
+    private boolean header() throws IOException {
+        if (last) {
+            if (!gzip) return false;
+            trailer();
+            state = State.MEMBER;
+            return true;
+        }
+        checkpoint();
+        last = 1 == bits(1);
+        switch (bits(2)) {
+            case 0:
+                bits(bitCount & 7); // go to byte boundary
+                final int length = bits(16);
+                if ((~length & 0xffff) != bits(16))
+                    throw new ZipException("invalid stored block length");
+                stored = length;
+                state = State.STORED;
+                break;
+            case 1:
+                litlen = FIXED_LITLEN;
+                dist = FIXED_DIST;
+                state = State.CODES;
+                break;
+            case 2:
+                dynamic();
+                litlen = dynamicLitlen;
+                dist = dynamicDist;
+                state = State.CODES;
+                break;
+            default:
+                throw new ZipException("invalid block type");
+        }
+        return true;
+    }
+
+    /**
+     * Adds a checkpoint at the start of the current block to the index if
+     * it's time to do so.
+     */
+    private void checkpoint() {
+        final long pos = outStart + outPos;
+        if (pos < next) return;
+        next = index.next();
+        if (pos < next) return;
+        final int length = (int) Math.min(WINDOW_SIZE, outPos);
+        index.add(new Checkpoint(
+                (inStart + inOff) * 8 - bitCount,
+                pos,
+                Arrays.copyOfRange(out, outPos - length, outPos)));
+        next = index.next();
+    }
+
+    private void stored() throws IOException {
+        final byte[] out = this.out;
+        int n = Math.min(stored, out.length - outPos);
+        stored -= n;
+        // Drain the bit buffer, which is at a byte boundary.
+        for (; 0 < n && 0 < bitCount; n--) {
+            out[outPos++] = (byte) hold;
+            hold >>>= 8;
+            bitCount -= 8;
+        }
+        while (0 < n) {
+            if (inOff == inLen && !refill()) throw new EOFException();
+            final int k = Math.min(n, inLen - inOff);
+            System.arraycopy(in, inOff, out, outPos, k);
+            inOff += k;
+            outPos += k;
+            n -= k;
+        }
+        if (0 == stored) state = State.HEADER;
+    }
+
+    private void dynamic() throws IOException {
+        final int nlen = bits(5) + 257;
+        final int ndist = bits(5) + 1;
+        final int ncode = bits(4) + 4;
+        if (286 < nlen || MAX_DIST_CODES < ndist)
+            throw new ZipException("invalid dynamic block header");
+        final int[] lengths = this.lengths;
+        for (int i = 0; i < ORDER.length; i++)
+            lengths[ORDER[i]] = i < ncode ? bits(3) : 0;
+        lencode.build(lengths, 0, ORDER.length);
+        final int n = nlen + ndist;
+        for (int i = 0; i < n; ) {
+            final int symbol = decode(lencode);
+            if (symbol < 16) {
+                lengths[i++] = symbol;
+            } else {
+                int length = 0, repeat;
+                if (16 == symbol) {
+                    if (0 == i) throw new ZipException("invalid repeat code");
+                    length = lengths[i - 1];
+                    repeat = 3 + bits(2);
+                } else if (17 == symbol) {
+                    repeat = 3 + bits(3);
+                } else {
+                    repeat = 11 + bits(7);
+                }
+                if (n < i + repeat)
+                    throw new ZipException("invalid repeat length");
+                while (0 < repeat--) lengths[i++] = length;
+            }
+        }
+        if (0 == lengths[256])
+            throw new ZipException("missing end-of-block code");
+        dynamicLitlen.build(lengths, 0, nlen);
+        dynamicDist.build(lengths, nlen, ndist);
+    }
+
+    private void codes() throws IOException {
+        final byte[] out = this.out;
+        final int end = out.length;
+        final Huffman litlen = this.litlen, dist = this.dist;
+        assert null != litlen && null != dist;
+        final int floor = (int) Math.max(0, member - outStart);
+        if (0 < copyLength) copy();
+        while (outPos < end) {
+            final int symbol = decode(litlen);
+            if (symbol < 256) {
+                out[outPos++] = (byte) symbol;
+            } else if (256 == symbol) {
+                state = State.HEADER;
+                return;
+            } else {
+                final int l = symbol - 257;
+                if (LBASE.length <= l)
+                    throw new ZipException("invalid literal/length code");
+                copyLength = LBASE[l] + bits(LEXT[l]);
+                final int d = decode(dist);
+                if (DBASE.length <= d)
+                    throw new ZipException("invalid distance code");
+                copyDistance = DBASE[d] + bits(DEXT[d]);
+                if (outPos - copyDistance < floor)
+                    throw new ZipException("invalid distance");
+                copy();
+            }
+        }
+    }
+
+    private void copy() {
+        final byte[] out = this.out;
+        final int n = Math.min(copyLength, out.length - outPos);
+        copyLength -= n;
+        int to = outPos, from = to - copyDistance;
+        for (final int end = to + n; to < end; ) out[to++] = out[from++];
+        outPos = to;
+    }
+
+    private int decode(final Huffman huffman) throws IOException {
+        if (bitCount < MAX_BITS) fill();
+        final int entry = huffman.table[(int) hold & FAST_MASK];
+        if (0 != entry) {
+            final int length = entry & 0xf;
+            if (bitCount < length) throw new EOFException();
+            hold >>>= length;
+            bitCount -= length;
+            return entry >>> 4;
+        }
+        // Slow path for long codes, see puff.c.
+        final int[] count = huffman.count;
+        int code = 0, first = 0, index = 0;
+        for (int length = 1; length <= MAX_BITS; length++) {
+            if (bitCount < length) throw new EOFException();
+            code |= (int) (hold >>> (length - 1)) & 1;
+            final int c = count[length];
+            if (code - c < first) {
+                hold >>>= length;
+                bitCount -= length;
+                return huffman.symbol[index + code - first];
+            }
+            index += c;
+            first = (first + c) << 1;
+            code <<= 1;
+        }
+        throw new ZipException("invalid Huffman code");
+    }
+
+    private int bits(final int need) throws IOException {
+        if (bitCount < need) {
+            fill();
+            if (bitCount < need) throw new EOFException();
+        }
+        final int value = (int) (hold & ((1L << need) - 1));
+        hold >>>= need;
+        bitCount -= need;
+        return value;
+    }
+
+    /** Fills the bit buffer with as many whole bytes as possible. */
+    private void fill() throws IOException {
+        while (bitCount <= 56) {
+            if (inOff == inLen && !refill()) return;
+            hold |= (in[inOff++] & 0xffL) << bitCount;
+            bitCount += 8;
+        }
+    }
+
+    private boolean refill() throws IOException {
+        if (eof) return false;
+        inStart += inLen;
+        inOff = inLen = 0;
+        final ByteBuffer input = this.input;
+        input.clear();
+        int read;
+        do {
+            read = channel.read(input);
+        } while (0 == read);
+        if (0 > read) {
+            eof = true;
+            return false;
+        }
+        inLen = read;
+        return true;
+    }
+
+    /**
+     * A canonical Huffman code with a lookup table for the codes with up to
+     * {@value #FAST_BITS} bits.
+     */
+    private static final class Huffman {
+
+        /** The number of codes per code length. */
+        final int[] count = new int[MAX_BITS + 1];
+
+        /** The symbols ordered by their codes. */
+        final int[] symbol;
+
+        /**
+         * The lookup table, indexed by the next bits of the stream.
+         * Each entry holds the symbol in the upper and the code length in the
+         * lower four bits or is zero for a longer or invalid code.
+         */
+        final int[] table = new int[1 << FAST_BITS];
+
+        private final int[] offsets = new int[MAX_BITS + 1];
+
+        Huffman(int n) { symbol = new int[n]; }
+
+        void build(final int[] lengths, final int off, final int n)
+        throws ZipException {
+            final int[] count = this.count;
+            Arrays.fill(count, 0);
+            for (int s = 0; s < n; s++) count[lengths[off + s]]++;
+            int left = 1;
+            for (int length = 1; length <= MAX_BITS; length++) {
+                left = (left << 1) - count[length];
+                if (left < 0)
+                    throw new ZipException("over-subscribed Huffman code");
+            }
+            final int[] offsets = this.offsets;
+            offsets[1] = 0;
+            for (int length = 1; length < MAX_BITS; length++)
+                offsets[length + 1] = offsets[length] + count[length];
+            for (int s = 0; s < n; s++) {
+                final int length = lengths[off + s];
+                if (0 != length) symbol[offsets[length]++] = s;
+            }
+            final int[] table = this.table;
+            Arrays.fill(table, 0);
+            for (int length = 1, code = 0, index = 0;
+                    length <= FAST_BITS;
+                    length++, code <<= 1) {
+                for (int i = count[length]; 0 < i; i--, code++) {
+                    final int entry = symbol[index++] << 4 | length;
+                    final int step = 1 << length;
+                    for (int j = Integer.reverse(code) >>> (32 - length);
+                            j < table.length;
+                            j += step)
+                        table[j] = entry;
+                }
+            }
+        }
+    } // Huffman
+}
@@ -0,0 +1,18 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+/**
+ * Provides random access to DEFLATE compressed data, e.g. in ZIP entries or
+ * GZIP files.
+ * <p>
+ * An {@link net.java.truevfs.comp.inflater.InflaterReadOnlyChannel} inflates
+ * the compressed data on demand and records checkpoints into an
+ * {@link net.java.truevfs.comp.inflater.InflaterIndex} so that subsequent
+ * reads can resume inflating at the closest checkpoint instead of at the
+ * start of the compressed data.
+ *
+ * @author Christian Schlichtherle
+ */
+@javax.annotation.Nonnull @javax.annotation.ParametersAreNonnullByDefault
+package net.java.truevfs.comp.inflater;
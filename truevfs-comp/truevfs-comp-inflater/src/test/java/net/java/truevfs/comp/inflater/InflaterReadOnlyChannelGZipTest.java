@@ -0,0 +1,246 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.comp.inflater;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+import net.java.truecommons.io.ByteBufferChannel;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Tests inflating GZIP files with an {@link InflaterReadOnlyChannel}.
+ *
+ * @author Christian Schlichtherle
+ */
+public final class InflaterReadOnlyChannelGZipTest {
+
+    private static final int SPAN = 64 * 1024;
+
+    /** The offset of the first DEFLATE block in a GZIP file without name. */
+    private static final int BLOCK = 10;
+
+    private static final int STORED = 0, FIXED = 1, DYNAMIC = 2;
+
+    private static byte[] text(final int length) {
+        final Random rnd = new Random(length);
+        final byte[] data = new byte[length];
+        for (int i = 0; i < length; i++)
+            data[i] = (byte) ('a' + rnd.nextInt(4));
+        return data;
+    }
+
+    private static byte[] gzip(final byte[] data, final int level)
+    throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes) {
+            { def.setLevel(level); }
+        }) {
+            out.write(data);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] concat(final byte[]... arrays) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (final byte[] array : arrays)
+            bytes.write(array, 0, array.length);
+        return bytes.toByteArray();
+    }
+
+    private static SeekableByteChannel channel(
+            final byte[] gzip,
+            final InflaterIndex index) {
+        return new InflaterReadOnlyChannel(
+                new ByteBufferChannel(ByteBuffer.wrap(gzip)),
+                -1, index, 4096, true);
+    }
+
+    private static byte[] read(final SeekableByteChannel channel)
+    throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ByteBuffer buf = ByteBuffer.allocate(10000);
+        while (0 <= channel.read(buf)) {
+            bytes.write(buf.array(), 0, buf.position());
+            buf.clear();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] inflate(final byte[] gzip) throws IOException {
+        try (SeekableByteChannel channel = channel(gzip, new InflaterIndex(SPAN))) {
+            return read(channel);
+        }
+    }
+
+    private static void assertBlockType(final int type, final byte[] gzip) {
+        assertEquals(type, gzip[BLOCK] >> 1 & 3);
+    }
+
+    private static void assertRandomAccess(
+            final byte[] expected,
+            final SeekableByteChannel channel)
+    throws IOException {
+        final Random rnd = new Random(1);
+        final ByteBuffer buf = ByteBuffer.allocate(1000);
+        for (int i = 0; i < 200; i++) {
+            final int pos = rnd.nextInt(expected.length);
+            channel.position(pos);
+            buf.clear();
+            while (buf.hasRemaining() && 0 <= channel.read(buf)) { }
+            final int read = buf.position();
+            assertEquals(Math.min(buf.capacity(), expected.length - pos), read);
+            for (int j = 0; j < read; j++)
+                assertEquals(expected[pos + j], buf.get(j));
+        }
+    }
+
+    @Test
+    public void testStoredBlocks() throws IOException {
+        final byte[] data = text(100000);
+        final byte[] gzip = gzip(data, Deflater.NO_COMPRESSION);
+        assertBlockType(STORED, gzip);
+        assertArrayEquals(data, inflate(gzip));
+    }
+
+    @Test
+    public void testFixedBlock() throws IOException {
+        final byte[] data = "Hello world!".getBytes();
+        final byte[] gzip = gzip(data, Deflater.DEFAULT_COMPRESSION);
+        assertBlockType(FIXED, gzip);
+        assertArrayEquals(data, inflate(gzip));
+    }
+
+    @Test
+    public void testDynamicBlocks() throws IOException {
+        final byte[] data = text(1000000);
+        final byte[] gzip = gzip(data, Deflater.DEFAULT_COMPRESSION);
+        assertBlockType(DYNAMIC, gzip);
+        assertArrayEquals(data, inflate(gzip));
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        assertArrayEquals(new byte[0], inflate(gzip(new byte[0],
+                Deflater.DEFAULT_COMPRESSION)));
+    }
+
+    @Test
+    public void testMultipleMembers() throws IOException {
+        final byte[] a = text(300000), b = text(1), c = text(500000);
+        final byte[] data = concat(a, b, c);
+        final byte[] gzip = concat(
+                gzip(a, Deflater.DEFAULT_COMPRESSION),
+                gzip(b, Deflater.DEFAULT_COMPRESSION),
+                gzip(c, Deflater.NO_COMPRESSION),
+                new byte[] { 0, 0, 0 }); // trailing garbage gets ignored
+        final InflaterIndex index = new InflaterIndex(SPAN);
+        try (SeekableByteChannel channel = channel(gzip, index)) {
+            assertEquals(-1, index.length());
+            assertEquals(data.length, channel.size());
+            assertEquals(data.length, index.length());
+            assertTrue(data.length / SPAN / 2 <= index.size());
+            channel.position(0);
+            assertArrayEquals(data, read(channel));
+            assertRandomAccess(data, channel);
+        }
+        // Share the complete index.
+        try (SeekableByteChannel channel = channel(gzip, index)) {
+            assertRandomAccess(data, channel);
+        }
+    }
+
+    @Test
+    public void testNotInGZipFormat() throws IOException {
+        final byte[] gzip = gzip(text(1000), Deflater.DEFAULT_COMPRESSION);
+        gzip[0] = 0;
+        try {
+            inflate(gzip);
+            fail();
+        } catch (final ZipException expected) {
+        }
+    }
+
+    @Test
+    public void testInvalidBlockType() throws IOException {
+        final byte[] gzip = gzip(text(1000), Deflater.DEFAULT_COMPRESSION);
+        gzip[BLOCK] |= 6;
+        try {
+            inflate(gzip);
+            fail();
+        } catch (final ZipException expected) {
+        }
+    }
+
+    @Test
+    public void testCorruptedData() throws IOException {
+        final byte[] gzip = gzip(text(1000000), Deflater.DEFAULT_COMPRESSION);
+        gzip[gzip.length / 2] ^= 0x55;
+        try {
+            inflate(gzip);
+            fail();
+        } catch (final IOException expected) {
+        }
+    }
+
+    @Test
+    public void testTruncated() throws IOException {
+        final byte[] gzip = gzip(text(100000), Deflater.DEFAULT_COMPRESSION);
+        try {
+            inflate(Arrays.copyOf(gzip, gzip.length / 2));
+            fail();
+        } catch (final EOFException expected) {
+        }
+    }
+
+    @Test
+    public void testCrcMismatch() throws IOException {
+        final byte[] data = text(100000);
+        final byte[] gzip = gzip(data, Deflater.DEFAULT_COMPRESSION);
+        gzip[gzip.length - 8] ^= 1;
+        final InflaterIndex index = new InflaterIndex(SPAN);
+        try (SeekableByteChannel channel = channel(gzip, index)) {
+            read(channel);
+            fail();
+        } catch (final ZipException expected) {
+        }
+    }
+
+    @Test
+    public void testSizeMismatch() throws IOException {
+        final byte[] gzip = gzip(text(100000), Deflater.DEFAULT_COMPRESSION);
+        gzip[gzip.length - 4] ^= 1;
+        try {
+            inflate(gzip);
+            fail();
+        } catch (final ZipException expected) {
+        }
+    }
+
+    @Test
+    public void testRecoveryAfterFailure() throws IOException {
+        final byte[] data = text(1000000);
+        final byte[] gzip = gzip(data, Deflater.DEFAULT_COMPRESSION);
+        gzip[gzip.length - 8] ^= 1;
+        final InflaterIndex index = new InflaterIndex(SPAN);
+        try (SeekableByteChannel channel = channel(gzip, index)) {
+            try {
+                read(channel);
+                fail();
+            } catch (final ZipException expected) {
+            }
+            // Resuming from a checkpoint doesn't check the CRC-32 anymore.
+            assertRandomAccess(data, channel);
+        }
+    }
+}
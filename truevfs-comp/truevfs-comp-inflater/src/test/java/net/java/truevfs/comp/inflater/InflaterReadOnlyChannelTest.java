@@ -0,0 +1,146 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.comp.inflater;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+import net.java.truecommons.io.ByteBufferChannel;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * @author Christian Schlichtherle
+ */
+public final class InflaterReadOnlyChannelTest {
+
+    private static final int DATA_LENGTH = 2 * 1024 * 1024 + 12345;
+    private static final int SPAN = 64 * 1024;
+
+    private static byte[] data() {
+        // Alternate compressible and incompressible runs in order to get
+        // Huffman coded as well as stored blocks.
+        final Random rnd = new Random(0);
+        final byte[] data = new byte[DATA_LENGTH];
+        for (int off = 0; off < data.length; ) {
+            final int len = Math.min(data.length - off, 1 + rnd.nextInt(100000));
+            final boolean random = rnd.nextBoolean();
+            for (int i = off; i < off + len; i++)
+                data[i] = random ? (byte) rnd.nextInt() : (byte) ('a' + rnd.nextInt(4));
+            off += len;
+        }
+        return data;
+    }
+
+    private static byte[] deflate(final byte[] data, final int level, final boolean sync) {
+        final Deflater deflater = new Deflater(level, true);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buf = new byte[8192];
+        final int chunk = sync ? 77777 : data.length;
+        for (int off = 0; off < data.length; off += chunk) {
+            deflater.setInput(data, off, Math.min(chunk, data.length - off));
+            int n;
+            do {
+                n = deflater.deflate(buf, 0, buf.length, Deflater.SYNC_FLUSH);
+                out.write(buf, 0, n);
+            } while (n == buf.length);
+        }
+        deflater.finish();
+        while (!deflater.finished())
+            out.write(buf, 0, deflater.deflate(buf));
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    private static void assertRandomAccess(
+            final byte[] expected,
+            final SeekableByteChannel channel)
+    throws IOException {
+        assertEquals(expected.length, channel.size());
+        final Random rnd = new Random(1);
+        final ByteBuffer buf = ByteBuffer.allocate(1000);
+        for (int i = 0; i < 200; i++) {
+            final int pos = rnd.nextInt(expected.length);
+            channel.position(pos);
+            buf.clear();
+            final int read = channel.read(buf);
+            assertEquals(Math.min(buf.capacity(), expected.length - pos), read);
+            for (int j = 0; j < read; j++)
+                assertEquals(expected[pos + j], buf.get(j));
+            assertEquals(pos + read, channel.position());
+        }
+        channel.position(expected.length);
+        buf.clear();
+        assertEquals(-1, channel.read(buf));
+    }
+
+    @Test
+    public void testRandomAccess() throws IOException {
+        final byte[] data = data();
+        for (final int level : new int[] { Deflater.NO_COMPRESSION, Deflater.BEST_SPEED, Deflater.DEFAULT_COMPRESSION }) {
+            for (final boolean sync : new boolean[] { false, true }) {
+                final byte[] deflated = deflate(data, level, sync);
+                final InflaterIndex index = new InflaterIndex(SPAN);
+                try (SeekableByteChannel channel = new InflaterReadOnlyChannel(
+                        new ByteBufferChannel(ByteBuffer.wrap(deflated)),
+                        data.length, index, 4096, false)) {
+                    // Populate the index by reading sequentially.
+                    final byte[] actual = new byte[data.length];
+                    final ByteBuffer buf = ByteBuffer.wrap(actual);
+                    while (buf.hasRemaining() && 0 <= channel.read(buf)) { }
+                    assertArrayEquals(data, actual);
+                    assertTrue(data.length / SPAN / 2 <= index.size());
+                    assertRandomAccess(data, channel);
+                }
+                // Share the populated index.
+                try (SeekableByteChannel channel = new InflaterReadOnlyChannel(
+                        new ByteBufferChannel(ByteBuffer.wrap(deflated)),
+                        data.length, index, 4096, false)) {
+                    assertRandomAccess(data, channel);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testPersistentIndex() throws IOException {
+        final byte[] data = data();
+        final byte[] deflated = deflate(data, Deflater.DEFAULT_COMPRESSION, true);
+        final InflaterIndex index = new InflaterIndex(SPAN);
+        try (SeekableByteChannel channel = new InflaterReadOnlyChannel(
+                new ByteBufferChannel(ByteBuffer.wrap(deflated)),
+                -1, index, 4096, false)) {
+            assertEquals(data.length, channel.size());
+        }
+        assertEquals(data.length, index.length());
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        index.write(new DataOutputStream(bytes));
+        final InflaterIndex copy = InflaterIndex.read(new DataInputStream(
+                new ByteArrayInputStream(bytes.toByteArray())));
+        assertNotNull(copy);
+        assertEquals(index.span(), copy.span());
+        assertEquals(index.size(), copy.size());
+        assertEquals(index.length(), copy.length());
+        try (SeekableByteChannel channel = new InflaterReadOnlyChannel(
+                new ByteBufferChannel(ByteBuffer.wrap(deflated)),
+                -1, copy, 4096, false)) {
+            assertRandomAccess(data, channel);
+        }
+        assertEquals(index.size(), copy.size());
+
+        // A corrupted index gets rejected.
+        final byte[] corrupted = bytes.toByteArray();
+        Arrays.fill(corrupted, 0, 8, (byte) 0); // span
+        assertNull(InflaterIndex.read(new DataInputStream(
+                new ByteArrayInputStream(corrupted))));
+    }
+}
@@ -110,6 +110,25 @@ public class TarDriver extends FsArchiveDriver<TarDriverEntry> {
         return TarArchiveOutputStream.BIGNUMBER_POSIX;
     }
 
+    /**
+     * Returns {@code true} if a TAR file should get indexed when reading it
+     * from a source which provides a seekable byte channel.
+     * In this case, the {@link TarInputService} reads only the headers of the
+     * entries and reads their data directly from the source channel on
+     * demand instead of extracting it to I/O buffers first.
+     * Sources which provide only a stream, e.g. for TAR files compressed
+     * with BZIP2 or XZ, get extracted regardless of this property.
+     * As of TrueVFS 0.15.0, the implementation in {@link TarDriver} returns
+     * {@code true}.
+     * In older versions, the behaviour was as if this method returned
+     * {@code false}.
+     *
+     * @since TrueVFS 0.15.0
+     */
+    public boolean getIndexedReading() {
+        return true;
+    }
+
     /**
      * {@inheritDoc}
      * <p>
@@ -160,9 +179,9 @@ public class TarDriver extends FsArchiveDriver<TarDriverEntry> {
             BitField<FsAccessOption> options,
             final FsController controller,
             final FsNodeName name) {
-        // The target archive file will be only used to extract the TAR entries
-        // to a temporary file, so we don't need to put it into the selective
-        // entry cache.
+        // The target archive file will be only used to index the TAR entries
+        // or to extract them to a temporary file, so we don't need to put it
+        // into the selective entry cache.
         options = options.clear(CACHE);
         return new FsInputSocketSource(options, controller.input(options, name));
     }
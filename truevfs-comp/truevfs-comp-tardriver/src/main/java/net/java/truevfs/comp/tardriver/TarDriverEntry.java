@@ -49,6 +49,7 @@ implements FsArchiveEntry, Releasable<IOException> {
 
     private byte init; // bit flags for init state
     private @CheckForNull IoBuffer buffer;
+    private long offset = UNKNOWN;
 
     public TarDriverEntry(final String name) {
         super(name, true);
@@ -84,6 +85,14 @@ implements FsArchiveEntry, Releasable<IOException> {
 
     void setBuffer(final @CheckForNull IoBuffer buffer) { this.buffer = buffer; }
 
+    /**
+     * Returns the offset of the data of this entry in the indexed TAR file or
+     * {@link #UNKNOWN} if the data is not indexed.
+     */
+    long getOffset() { return offset; }
+
+    void setOffset(final long offset) { this.offset = offset; }
+
     @Override
     public void release() throws IOException {
         if (null == buffer) return;
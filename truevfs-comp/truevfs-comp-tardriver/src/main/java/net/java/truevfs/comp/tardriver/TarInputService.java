@@ -11,6 +11,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.NoSuchFileException;
 import java.util.Arrays;
@@ -20,6 +21,7 @@ import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Objects;
 import javax.annotation.CheckForNull;
+import javax.annotation.WillCloseWhenClosed;
 import javax.annotation.WillNotClose;
 import javax.annotation.concurrent.NotThreadSafe;
 import net.java.truecommons.cio.AbstractInputSocket;
@@ -27,11 +29,14 @@ import net.java.truecommons.cio.Entry;
 import net.java.truecommons.cio.Entry.Type;
 import static net.java.truecommons.cio.Entry.Type.DIRECTORY;
 import static net.java.truecommons.cio.Entry.Type.FILE;
+import static net.java.truecommons.cio.Entry.UNKNOWN;
 import net.java.truecommons.cio.InputService;
 import net.java.truecommons.cio.InputSocket;
 import net.java.truecommons.cio.IoBuffer;
-import net.java.truecommons.cio.IoBufferPool;
 import net.java.truecommons.cio.OutputSocket;
+import net.java.truecommons.io.ChannelInputStream;
+import net.java.truecommons.io.IntervalReadOnlyChannel;
+import net.java.truecommons.io.ReadOnlyChannel;
 import net.java.truecommons.io.Source;
 import net.java.truecommons.io.Streams;
 import net.java.truecommons.shed.ExceptionBuilder;
@@ -55,8 +60,16 @@ import org.apache.commons.compress.archivers.tar.TarUtils;
 /**
  * An input service for reading TAR files.
  * <p>
- * Note that the constructor of this class extracts each entry in the archive
- * to a temporary file!
+ * If the driver {@link TarDriver#getIndexedReading() supports} it and the
+ * source provides a seekable byte channel, e.g. for a plain or GZIP
+ * compressed TAR file, then the constructor of this class reads only the
+ * headers of the entries in the archive and skips their data.
+ * The data of each entry then gets read directly from the source channel on
+ * demand.
+ * <p>
+ * Otherwise, e.g. for a TAR file compressed with BZIP2 or XZ, the
+ * constructor of this class extracts each entry in the archive to a
+ * temporary file!
  * This may be very time and space consuming for large archives, but is
  * the fastest implementation for subsequent random access, since there
  * is no way the archive driver could predict the client application's
@@ -80,6 +93,12 @@ implements InputService<TarDriverEntry> {
 
     private final TarDriver driver;
 
+    /**
+     * The channel for reading the data of indexed entries or {@code null}
+     * if the data of all entries has been extracted.
+     */
+    private @CheckForNull SeekableByteChannel channel;
+
     @CreatesObligation
     public TarInputService(
             final FsModel model,
@@ -88,9 +107,13 @@ implements InputService<TarDriverEntry> {
     throws IOException {
         Objects.requireNonNull(model);
         this.driver = Objects.requireNonNull(driver);
-        try (final InputStream in = source.stream()) {
+        final SeekableByteChannel channel = driver.getIndexedReading()
+                ? channel(source)
+                : null;
+        if (null != channel) {
+            this.channel = channel;
             try {
-                unpack(newValidatedTarArchiveInputStream(in));
+                index(channel);
             } catch (final Throwable ex) {
                 try {
                     close0();
@@ -99,13 +122,39 @@ implements InputService<TarDriverEntry> {
                 }
                 throw ex;
             }
+        } else {
+            try (final InputStream in = source.stream()) {
+                try {
+                    unpack(newValidatedTarArchiveInputStream(in));
+                } catch (final Throwable ex) {
+                    try {
+                        close0();
+                    } catch (final Throwable ex2) {
+                        ex.addSuppressed(ex2);
+                    }
+                    throw ex;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a seekable byte channel for the given source or {@code null}
+     * if the source only supports streams.
+     */
+    private static @CheckForNull SeekableByteChannel channel(
+            final Source source)
+    throws IOException {
+        try {
+            return source.channel();
+        } catch (final UnsupportedOperationException ex) {
+            return null;
         }
     }
 
     private void unpack(final @WillNotClose TarArchiveInputStream tain)
     throws IOException {
         final TarDriver driver = this.driver;
-        final IoBufferPool pool = driver.getPool();
         for (   TarArchiveEntry tinEntry;
                 null != (tinEntry = tain.getNextTarEntry()); ) {
             final String name = name(tinEntry);
@@ -113,24 +162,78 @@ implements InputService<TarDriverEntry> {
             if (null != entry)
                 entry.release();
             entry = driver.newEntry(name, tinEntry);
-            if (!tinEntry.isDirectory()) {
-                final IoBuffer buffer = pool.allocate();
-                entry.setBuffer(buffer);
-                try {
-                    try (OutputStream out = buffer.output().stream(null)) {
-                        Streams.cat(tain, out);
-                    }
-                } catch (final Throwable ex) {
-                    try {
-                        buffer.release();
-                    } catch (final Throwable ex2) {
-                        ex.addSuppressed(ex2);
+            if (!tinEntry.isDirectory())
+                extract(tain, entry);
+            entries.put(name, entry);
+        }
+    }
+
+    /**
+     * Reads the headers of the entries in the TAR file from the given channel
+     * and records the offset of their data.
+     * Uses the size in each header in order to skip the data.
+     * Only the data of sparse entries gets extracted because it's not
+     * stored contiguously.
+     */
+    private void index(final @WillNotClose SeekableByteChannel channel)
+    throws IOException {
+        final TarDriver driver = this.driver;
+        final TarArchiveInputStream tain = newValidatedTarArchiveInputStream(
+                new ChannelInputStream(channel) {
+
+                    // Skip without computing the size of the channel first
+                    // because this may be expensive for a compressed TAR
+                    // file.
+                    @Override
+                    public long skip(final long n) throws IOException {
+                        if (n <= 0)
+                            return 0;
+                        this.channel.position(this.channel.position() + n);
+                        return n;
                     }
-                    throw ex;
+                });
+        long end = 0;
+        for (   TarArchiveEntry tinEntry;
+                null != (tinEntry = tain.getNextTarEntry()); ) {
+            final String name = name(tinEntry);
+            TarDriverEntry entry = entries.get(name);
+            if (null != entry)
+                entry.release();
+            entry = driver.newEntry(name, tinEntry);
+            if (!tinEntry.isDirectory()) {
+                if (tinEntry.isSparse()) {
+                    extract(tain, entry);
+                } else {
+                    final long offset = channel.position();
+                    end = Math.max(end, offset + tinEntry.getSize());
+                    entry.setOffset(offset);
                 }
             }
             entries.put(name, entry);
         }
+        if (channel.size() < end)
+            throw new TarException("Truncated TAR file: Missing entry data!");
+    }
+
+    /** Extracts the data of the current entry to an I/O buffer. */
+    private void extract(
+            final @WillNotClose TarArchiveInputStream tain,
+            final TarDriverEntry entry)
+    throws IOException {
+        final IoBuffer buffer = driver.getPool().allocate();
+        entry.setBuffer(buffer);
+        try {
+            try (OutputStream out = buffer.output().stream(null)) {
+                Streams.cat(tain, out);
+            }
+        } catch (final Throwable ex) {
+            try {
+                buffer.release();
+            } catch (final Throwable ex2) {
+                ex.addSuppressed(ex2);
+            }
+            throw ex;
+        }
     }
 
     private static String name(final TarArchiveEntry entry) {
@@ -240,23 +343,69 @@ implements InputService<TarDriverEntry> {
             @Override
             public InputStream stream(OutputSocket<? extends Entry> peer)
             throws IOException {
-                return socket().stream(peer);
+                final TarDriverEntry entry = target();
+                final IoBuffer buffer = entry.getBuffer();
+                return null != buffer
+                        ? buffer.input().stream(peer)
+                        : new ChannelInputStream(interval(entry));
             }
 
             @Override
             public SeekableByteChannel channel(OutputSocket<? extends Entry> peer)
             throws IOException {
-                return socket().channel(peer);
-            }
-
-            InputSocket<? extends IoBuffer> socket() throws IOException {
-                return target().getBuffer().input();
+                final TarDriverEntry entry = target();
+                final IoBuffer buffer = entry.getBuffer();
+                return null != buffer
+                        ? buffer.input().channel(peer)
+                        : interval(entry);
             }
         } // Input
 
         return new Input();
     }
 
+    /**
+     * Returns a new channel for reading the data of the given indexed entry
+     * from the channel of this input service.
+     * Closing the returned channel does not close the channel of this input
+     * service.
+     */
+    private SeekableByteChannel interval(final TarDriverEntry entry)
+    throws IOException {
+        final SeekableByteChannel channel = this.channel;
+        assert null != channel;
+        assert UNKNOWN != entry.getOffset();
+        synchronized (channel) {
+            return new EntryReadOnlyChannel(new IntervalReadOnlyChannel(
+                    channel, entry.getOffset(), entry.getSize()), channel);
+        }
+    }
+
+    /**
+     * Reads the data of an indexed entry.
+     * The decorated interval channel repositions the shared channel of this
+     * input service before each read, so the reads of different entries get
+     * serialized by locking the shared channel.
+     */
+    private static final class EntryReadOnlyChannel extends ReadOnlyChannel {
+
+        private final SeekableByteChannel lock;
+
+        EntryReadOnlyChannel(
+                final @WillCloseWhenClosed IntervalReadOnlyChannel channel,
+                final SeekableByteChannel lock) {
+            super(channel);
+            this.lock = lock;
+        }
+
+        @Override
+        public int read(final ByteBuffer dst) throws IOException {
+            synchronized (lock) {
+                return channel.read(dst);
+            }
+        }
+    } // EntryReadOnlyChannel
+
     @Override
     public void close() throws IOException {
         close0();
@@ -274,6 +423,15 @@ implements InputService<TarDriverEntry> {
                 builder.warn(ex);
             }
         }
+        final SeekableByteChannel channel = this.channel;
+        if (null != channel) {
+            this.channel = null;
+            try {
+                channel.close();
+            } catch (final IOException ex) {
+                builder.warn(ex);
+            }
+        }
         builder.check();
     }
 }
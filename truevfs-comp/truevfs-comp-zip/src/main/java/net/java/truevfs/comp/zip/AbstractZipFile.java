@@ -9,6 +9,9 @@ import edu.umd.cs.findbugs.annotations.CreatesObligation;
 import edu.umd.cs.findbugs.annotations.DischargesObligation;
 import net.java.truecommons.io.*;
 import net.java.truecommons.shed.HashMaps;
+import net.java.truevfs.comp.inflater.InflaterIndex;
+import net.java.truevfs.comp.inflater.InflaterReadOnlyChannel;
+import io.airlift.compress.zstd.ZstdInputStream;
 import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
 
 import javax.annotation.CheckForNull;
@@ -20,14 +23,22 @@ import java.io.Closeable;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.charset.Charset;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.CRC32;
 import java.util.zip.CheckedInputStream;
 import java.util.zip.Inflater;
 import java.util.zip.ZipException;
 
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
 import static net.java.truevfs.comp.zip.Constants.*;
 import static net.java.truevfs.comp.zip.ExtraField.WINZIP_AES_ID;
 import static net.java.truevfs.comp.zip.WinZipAesExtraField.VV_AE_2;
@@ -52,6 +63,15 @@ import static net.java.truevfs.comp.zip.ZipParametersUtils.parameters;
  * <p>
  * This class is able to skip a preamble like the one found in self extracting
  * archives.
+ * <p>
+ * Once constructed, this class reads the entry data using positional reads,
+ * i.e. without changing the position of the underlying seekable byte channel.
+ * So any number of threads may concurrently read different entries,
+ * provided that each input stream is used by only one thread at a time.
+ * If the underlying channel is a {@link java.nio.channels.FileChannel},
+ * then this works without any locking.
+ * Otherwise, each read synchronizes on the underlying channel.
+ * Note that {@link #recoverLostEntries()} is still not thread-safe!
  *
  * @param  <E> the type of the ZIP entries.
  * @see    AbstractZipOutputStream
@@ -81,8 +101,17 @@ implements Closeable, Iterable<E> {
      */
     public static final Charset DEFAULT_CHARSET = Constants.DEFAULT_CHARSET;
 
+    /** The minimum size of a central directory to get memory-mapped. */
+    private static final long MIN_MAPPED_CD_LENGTH = 1024 * 1024;
+
+    /**
+     * The maximum number of names and comments of Central File Headers to
+     * decode in a single task of the common fork-join pool.
+     */
+    private static final int PARALLEL_CFH_THRESHOLD = 8 * 1024;
+
     /** The nullable seekable byte channel. */
-    private @CheckForNull SeekableByteChannel channel;
+    private volatile @CheckForNull SeekableByteChannel channel;
 
     /** The total number of bytes in the ZIP channel. */
     private long length;
@@ -93,8 +122,21 @@ implements Closeable, Iterable<E> {
     /** The number of bytes in the postamble of this ZIP file. */
     private long postamble;
 
+    /**
+     * The number of bytes in the central directory and the (ZIP64) End Of
+     * Central Directory records of this ZIP file.
+     */
+    private long centralDirectory;
+
     private final ZipEntryFactory<E> param;
 
+    /**
+     * Whether or not the central directory gets retained.
+     *
+     * @see ZipFileParameters#getRetainCentralDirectory()
+     */
+    private final boolean retain;
+
     /** The charset to use for entry names and comments. */
     private Charset charset;
 
@@ -107,8 +149,20 @@ implements Closeable, Iterable<E> {
     /** Maps offsets specified in the ZIP file to real offsets in the file. */
     private PositionMapper mapper = new PositionMapper();
 
-    /** The number of open resources for reading the entries in this ZIP file. */
-    private int open;
+    /**
+     * Maps entry names to the inflater indices which are shared by the open
+     * seekable channels for their entries.
+     */
+    private final Map<String, SharedIndex> indices = new ConcurrentHashMap<>();
+
+    /**
+     * The number of open resources for reading the entries in this ZIP file.
+     * The {@link #CLOSED} bit gets set when this ZIP file gets closed.
+     */
+    private final AtomicInteger open = new AtomicInteger();
+
+    /** The bit in {@link #open} which fences out new resources on close. */
+    private static final int CLOSED = Integer.MIN_VALUE;
 
     /**
      * Reads the given {@code zip} file in order to provide random access
@@ -127,7 +181,37 @@ implements Closeable, Iterable<E> {
             final Source source,
             final ZipFileParameters<E> param)
     throws ZipException, EOFException, IOException {
+        this(source, param, null, null);
+    }
+
+    /**
+     * Reads the given {@code zip} file in order to provide random access
+     * to its entries.
+     * If {@code index} is not {@code null}, then the central directory gets
+     * loaded from it if possible or stored to it otherwise.
+     *
+     * @param  source the source for reading the ZIP file from.
+     * @param  param the parameters for reading the ZIP file.
+     * @param  index the nullable central directory index.
+     * @param  key the key of the ZIP file in the central directory index.
+     *         This may be {@code null} if and only if {@code index} is
+     *         {@code null}.
+     * @throws ZipException if the source data is not compatible to the ZIP
+     *         File Format Specification.
+     * @throws EOFException on unexpected end-of-file.
+     * @throws IOException on any I/O error.
+     * @see    #recoverLostEntries()
+     */
+    @CreatesObligation
+    protected AbstractZipFile(
+            final Source source,
+            final ZipFileParameters<E> param,
+            final @CheckForNull CentralDirectoryIndex index,
+            final @CheckForNull String key)
+    throws ZipException, EOFException, IOException {
+        assert (null == index) == (null == key);
         this.param = param;
+        this.retain = param.getRetainCentralDirectory();
         final SeekableByteChannel channel = this.channel = source.channel();
         try {
             length = channel.size();
@@ -136,7 +220,12 @@ implements Closeable, Iterable<E> {
                     bchannel = new SafeBufferedReadOnlyChannel(channel, length);
             if (!param.getPreambled()) checkZipFileSignature(bchannel);
             final int numEntries = findCentralDirectory(bchannel, param.getPostambled());
-            mountCentralDirectory(bchannel, numEntries);
+            final long start = bchannel.position();
+            centralDirectory = Math.max(0, length - postamble - start);
+            if (null != index && null != key)
+                mountCentralDirectory(start, numEntries, index, key);
+            else
+                mountCentralDirectory(start, numEntries);
             if (preamble + postamble >= length) {
                 assert 0 == numEntries;
                 if (param.getPreambled()) // otherwise already checked
@@ -329,8 +418,61 @@ implements Closeable, Iterable<E> {
     }
 
     /**
-     * Reads the central directory from the given seekable byte channel and
-     * populates the internal tables with ZipEntry instances.
+     * Reads the central directory starting at the given position in this ZIP
+     * file and populates the internal tables with ZipEntry instances.
+     *
+     * @see #mountCentralDirectory(ByteBuffer, int)
+     */
+    private void mountCentralDirectory(final long start, final int numEntries)
+    throws IOException {
+        mountCentralDirectory(centralDirectory(start), numEntries);
+    }
+
+    /**
+     * Returns a little endian buffer with the data from the given position up
+     * to the end of the (ZIP64) End Of Central Directory Record.
+     * If this ZIP file is read from a {@link FileChannel} and the central
+     * directory is large, then the data gets memory-mapped.
+     * The buffer must not get referenced once the central directory has been
+     * mounted, so that a mapping gets released upon the next garbage
+     * collection rather than when this ZIP file gets garbage collected.
+     */
+    private ByteBuffer centralDirectory(final long start) throws IOException {
+        final long size = Math.max(0, length - postamble - start);
+        if (Integer.MAX_VALUE < size)
+            throw new ZipException("Central directory is too large!");
+        final SeekableByteChannel channel = channel();
+        final ByteBuffer cd;
+        if (MIN_MAPPED_CD_LENGTH <= size
+                && PositionalReadOnlyChannel.positional(channel)) {
+            cd = ((FileChannel) channel).map(READ_ONLY, start, size);
+        } else {
+            cd = ByteBuffer.allocate((int) size);
+            try (SeekableByteChannel pchannel = channel(start)) {
+                while (cd.hasRemaining())
+                    if (0 > pchannel.read(cd)) throw new EOFException();
+            }
+            cd.flip();
+        }
+        return cd.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Decodes the Central File Headers in the given buffer and populates the
+     * internal tables with ZipEntry instances.
+     * <p>
+     * First, the offsets of all Central File Headers get collected in a fast
+     * pass over the buffer.
+     * Then, the names and comments of the Central File Headers get decoded,
+     * using the common fork-join pool if there are many of them.
+     * Finally, the entries get created and mapped in the order of their
+     * Central File Headers.
+     * The entries get created by the current thread only, so the
+     * {@link ZipEntryFactory} doesn't need to be thread-safe.
+     * <p>
+     * If the central directory gets retained, then no entries get created.
+     * Instead, the Central File Headers get validated and copied to a
+     * {@link CentralDirectoryMap}, which creates the entries on demand.
      * <p>
      * The ZipEntrys will know all data that can be obtained from
      * the central directory alone, but not the data that requires the
@@ -347,97 +489,78 @@ implements Closeable, Iterable<E> {
      * <li>{@link #charset}
      * </ul>
      *
+     * @param  cd the little endian buffer with the Central File Headers,
+     *         starting at its position.
+     * @param  numEntries the number of entries declared in the (ZIP64) End Of
+     *         Central Directory Record.
      * @throws ZipException If the file is not compatible to the ZIP File
      *         Format Specification.
      * @throws IOException on any I/O error.
      */
-    private void mountCentralDirectory(
-            final SeekableByteChannel channel,
-            int numEntries)
+    private void mountCentralDirectory(final ByteBuffer cd, int numEntries)
     throws IOException {
-        final MutableBuffer cfh = MutableBuffer
-                .allocate(CFH_MIN_LEN)
-                .littleEndian();
-        final Map<String, E> entries = new LinkedHashMap<>(
-                Math.max(HashMaps.initialCapacity(numEntries), 16));
-        for (; ; numEntries--) {
-            cfh.rewind().limit(4).load(channel);
-            // central file header signature   4 bytes  (0x02014b50)
-            if (CFH_SIG != cfh.getUInt()) break;
-            cfh.limit(CFH_MIN_LEN).load(channel);
-            final int gpbf = cfh.position(8).getUShort();
-            final int nameLen = cfh.position(28).getUShort();
-            final MutableBuffer name = MutableBuffer
-                    .allocate(nameLen)
-                    .load(channel);
+        final int base = cd.position();
+        final int limit = cd.limit();
+        // Find the offsets of all Central File Headers.
+        int[] offsets = new int[Math.max(16, Math.min(numEntries, limit / CFH_MIN_LEN))];
+        int count = 0, utf8 = -1;
+        int off = base;
+        // central file header signature   4 bytes  (0x02014b50)
+        while (off <= limit - 4 && CFH_SIG == cd.getInt(off)) {
+            if (off > limit - CFH_MIN_LEN)
+                throw new ZipException("Invalid Central File Header!");
+            if (count == offsets.length)
+                offsets = Arrays.copyOf(offsets, count + (count >> 1));
             // See appendix D of PKWARE's ZIP File Format Specification.
-            final boolean utf8 = 0 != (gpbf & GPBF_UTF8);
-            if (utf8) charset = UTF8;
-            final E entry = param.newEntry(decode(name.array()));
-            try {
-                // central file header signature   4 bytes  (0x02014b50)
-                cfh.position(4);
-                // version made by                 2 bytes
-                entry.setRawPlatform(cfh.getUShort() >> 8);
-                // version needed to extract       2 bytes
-                // general purpose bit flag        2 bytes
-                cfh.skip(2 + 2);
-                entry.setGeneralPurposeBitFlags(gpbf);
-                // compression method              2 bytes
-                entry.setRawMethod(cfh.getUShort());
-                // last mod file time              2 bytes
-                // last mod file date              2 bytes
-                entry.setRawTime(cfh.getUInt());
-                // crc-32                          4 bytes
-                entry.setRawCrc(cfh.getUInt());
-                // compressed size                 4 bytes
-                entry.setRawCompressedSize(cfh.getUInt());
-                // uncompressed size               4 bytes
-                entry.setRawSize(cfh.getUInt());
-                // file name length                2 bytes
-                cfh.skip(2);
-                // extra field length              2 bytes
-                final int extraLen = cfh.getUShort();
-                // file comment length             2 bytes
-                final int commentLen = cfh.getUShort();
-                // disk number start               2 bytes
-                // internal file attributes        2 bytes
-                cfh.skip(2 + 2);
-                //entry.setEncodedInternalAttributes(readUShort(cfh, off));
-                // external file attributes        4 bytes
-                entry.setRawExternalAttributes(cfh.getUInt());
-                // relative offset of local header 4 bytes
-                long lfhOff = cfh.getUInt();
-                entry.setRawOffset(lfhOff); // must be unmapped!
-                // extra field (variable size)
-                if (0 < extraLen)
-                    entry.setRawExtraFields(MutableBuffer
-                            .allocate(extraLen)
-                            .load(channel)
-                            .array());
-                // file comment (variable size)
-                if (0 < commentLen)
-                    entry.setRawComment(decode(MutableBuffer
-                            .allocate(commentLen)
-                            .load(channel)
-                            .array()));
-                // Re-load virtual offset after ZIP64 Extended Information
-                // Extra Field may have been parsed, map it to the real
-                // offset and conditionally update the preamble size from it.
-                lfhOff = mapper.map(entry.getOffset());
+            if (0 > utf8 && 0 != (getUShort(cd, off + 8) & GPBF_UTF8))
+                utf8 = count;
+            offsets[count++] = off;
+            off += CFH_MIN_LEN
+                    + getUShort(cd, off + 28) // file name length
+                    + getUShort(cd, off + 30) // extra field length
+                    + getUShort(cd, off + 32); // file comment length
+            if (off > limit)
+                throw new ZipException("Invalid Central File Header!");
+        }
+
+        // Decode the names and comments of the Central File Headers.
+        final boolean retain = this.retain;
+        final CentralDirectoryDecoder decoder = new CentralDirectoryDecoder(
+                cd, offsets, new String[count], retain ? null : new String[count],
+                0, count, charset, ascii(charset), utf8);
+        if (PARALLEL_CFH_THRESHOLD < count)
+            ForkJoinPool.commonPool().invoke(decoder);
+        else
+            decoder.compute();
+
+        final Map<String, E> entries;
+        if (retain) {
+            // Validate the Central File Headers by decoding them into the same
+            // scratch entry.
+            final ZipEntry scratch = new ZipEntry("");
+            for (int i = 0; i < count; i++) {
+                decoder.decode(scratch, i);
+                final long lfhOff = mapper.map(scratch.getOffset());
                 if (lfhOff < preamble) preamble = lfhOff;
-            } catch (RuntimeException e) {
-                throw (ZipException) new ZipException(
-                        entry.getName() + " (invalid Central File Header)")
-                        .initCause(e);
             }
-
-            // Map the entry using the name that has been determined
-            // by the ZipEntryFactory.
-            // Note that this name may differ from what has been found
+            entries = new CentralDirectoryMap<>(param, cd, base, off,
+                    offsets, decoder.names, count, charset, utf8);
+        } else {
+            // Create and map the entries using the names that have been
+            // determined by the ZipEntryFactory.
+            // Note that these names may differ from what has been found
             // in the ZIP file!
-            entries.put(entry.getName(), entry);
+            entries = new LinkedHashMap<>(
+                    Math.max(HashMaps.initialCapacity(count), 16));
+            for (int i = 0; i < count; i++) {
+                final E entry = decoder.entry(i);
+                entries.put(entry.getName(), entry);
+                final long lfhOff = mapper.map(entry.getOffset());
+                if (lfhOff < preamble) preamble = lfhOff;
+            }
         }
+        if (0 <= utf8) charset = UTF8;
+        numEntries -= count;
 
         // Check if the number of entries found matches the number of entries
         // declared in the (ZIP64) End Of Central Directory header.
@@ -460,6 +583,298 @@ implements Closeable, Iterable<E> {
         this.entries = entries;
     }
 
+    /**
+     * Returns {@code true} if and only if the given charset decodes each byte
+     * from {@code 0x00} to {@code 0x7f} to the identical character.
+     * This is true for UTF-8 and IBM437, for example.
+     */
+    private static boolean ascii(final Charset charset) {
+        if (UTF8.equals(charset)) return true;
+        final byte[] bytes = new byte[0x80];
+        for (int i = 0; i < bytes.length; i++) bytes[i] = (byte) i;
+        final String string;
+        try {
+            string = new String(bytes, charset);
+        } catch (final RuntimeException ex) {
+            return false;
+        }
+        if (bytes.length != string.length()) return false;
+        for (int i = 0; i < bytes.length; i++)
+            if (i != string.charAt(i)) return false;
+        return true;
+    }
+
+    private static int getUShort(ByteBuffer buffer, int index) {
+        return buffer.getShort(index) & UShort.MAX_VALUE;
+    }
+
+    private static long getUInt(ByteBuffer buffer, int index) {
+        return buffer.getInt(index) & UInt.MAX_VALUE;
+    }
+
+    /**
+     * Initializes the given entry from the Central File Header at the given
+     * offset in the given little endian buffer.
+     *
+     * @param entry the entry to initialize.
+     * @param cd the buffer with the Central File Header.
+     * @param off the offset of the Central File Header in the buffer.
+     * @param extra the array with the serialized extra fields.
+     * @param extraOff the offset of the serialized extra fields in the array.
+     * @param comment the nullable decoded comment.
+     * @throws RuntimeException if the Central File Header is invalid.
+     */
+    static void decode(
+            final ZipEntry entry,
+            final ByteBuffer cd,
+            final int off,
+            final byte[] extra,
+            final int extraOff,
+            final @CheckForNull String comment) {
+        // version made by                 2 bytes
+        entry.setRawPlatform(getUShort(cd, off + 4) >> 8);
+        // general purpose bit flag        2 bytes
+        entry.setGeneralPurposeBitFlags(getUShort(cd, off + 8));
+        // compression method              2 bytes
+        entry.setRawMethod(getUShort(cd, off + 10));
+        // last mod file time              2 bytes
+        // last mod file date              2 bytes
+        entry.setRawTime(getUInt(cd, off + 12));
+        // crc-32                          4 bytes
+        entry.setRawCrc(getUInt(cd, off + 16));
+        // compressed size                 4 bytes
+        entry.setRawCompressedSize(getUInt(cd, off + 20));
+        // uncompressed size               4 bytes
+        entry.setRawSize(getUInt(cd, off + 24));
+        // external file attributes        4 bytes
+        entry.setRawExternalAttributes(getUInt(cd, off + 38));
+        // relative offset of local header 4 bytes
+        entry.setRawOffset(getUInt(cd, off + 42)); // must be unmapped!
+        // extra field (variable size)
+        entry.setRawExtraFields(extra, extraOff, getUShort(cd, off + 30));
+        // file comment (variable size)
+        if (null != comment) entry.setRawComment(comment);
+    }
+
+    /**
+     * Decodes the names and comments of a range of Central File Headers,
+     * splitting it into subtasks if it's large.
+     * Each task reads the shared buffer using absolute positions only.
+     * <p>
+     * Once all tasks have completed, the thread which mounts the central
+     * directory creates the entries by calling {@link #entry}.
+     * This method reuses the scratch buffers of the root task, so the only
+     * allocations per entry are the entry itself and any extra fields other
+     * than the ZIP64 Extended Information extra field.
+     * The entries never reference the buffer, so it may get garbage
+     * collected (and unmapped) as soon as the central directory is mounted.
+     * Names and comments which are pure ASCII get decoded without using the
+     * charset if the charset is compatible to ASCII.
+     * <p>
+     * If the central directory gets retained, then only the names get
+     * decoded and no entries get created.
+     */
+    private final class CentralDirectoryDecoder extends RecursiveAction {
+        private static final long serialVersionUID = 0L;
+
+        final ByteBuffer cd;
+        final int[] offsets;
+        final String[] names;
+        final @CheckForNull String[] comments;
+        final int from, to;
+        final Charset charset;
+        final boolean ascii;
+        final int utf8;
+
+        private @CheckForNull ByteBuffer view;
+        private @CheckForNull byte[] bytes;
+        private @CheckForNull char[] chars;
+
+        CentralDirectoryDecoder(
+                final ByteBuffer cd,
+                final int[] offsets,
+                final String[] names,
+                final @CheckForNull String[] comments,
+                final int from,
+                final int to,
+                final Charset charset,
+                final boolean ascii,
+                final int utf8) {
+            this.cd = cd;
+            this.offsets = offsets;
+            this.names = names;
+            this.comments = comments;
+            this.from = from;
+            this.to = to;
+            this.charset = charset;
+            this.ascii = ascii;
+            this.utf8 = utf8;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_CFH_THRESHOLD) {
+                final ByteBuffer cd = this.cd;
+                final @CheckForNull String[] comments = this.comments;
+                for (int i = from; i < to; i++) {
+                    final int off = offsets[i];
+                    final int nameLen = getUShort(cd, off + 28);
+                    final int nameOff = off + CFH_MIN_LEN;
+                    final Charset charset = charset(i);
+                    names[i] = string(nameOff, nameLen, charset);
+                    final int commentLen = getUShort(cd, off + 32);
+                    if (0 < commentLen && null != comments)
+                        comments[i] = string(
+                                nameOff + nameLen + getUShort(cd, off + 30),
+                                commentLen, charset);
+                }
+            } else {
+                final int mid = (from + to) >>> 1;
+                invokeAll(
+                        new CentralDirectoryDecoder(cd, offsets, names,
+                            comments, from, mid, charset, ascii, utf8),
+                        new CentralDirectoryDecoder(cd, offsets, names,
+                            comments, mid, to, charset, ascii, utf8));
+            }
+        }
+
+        Charset charset(int i) {
+            return 0 <= utf8 && utf8 <= i ? UTF8 : charset;
+        }
+
+        /**
+         * Creates the entry for the Central File Header with the given index.
+         *
+         * @param i the index of the Central File Header.
+         */
+        E entry(final int i) throws ZipException {
+            return decode(param.newEntry(names[i]), i);
+        }
+
+        /**
+         * Initializes the given entry from the Central File Header with the
+         * given index.
+         * If the comments haven't been decoded, then the comment of the
+         * entry doesn't get set.
+         *
+         * @param entry the entry to initialize.
+         * @param i the index of the Central File Header.
+         */
+        <T extends ZipEntry> T decode(final T entry, final int i)
+        throws ZipException {
+            final ByteBuffer cd = this.cd;
+            final int off = offsets[i];
+            final int extraOff = off + CFH_MIN_LEN + getUShort(cd, off + 28);
+            try {
+                AbstractZipFile.decode(entry, cd, off,
+                        bytes(extraOff, getUShort(cd, off + 30)), 0,
+                        null == comments ? null : comments[i]);
+            } catch (RuntimeException e) {
+                throw (ZipException) new ZipException(
+                        names[i] + " (invalid Central File Header)")
+                        .initCause(e);
+            }
+            return entry;
+        }
+
+        /**
+         * Decodes a string from the given range of the buffer.
+         * Pure ASCII strings get decoded without using an ASCII compatible
+         * charset.
+         */
+        String string(final int off, final int len, final Charset charset) {
+            if (ascii || UTF8 == charset) {
+                char[] chars = this.chars;
+                if (null == chars || chars.length < len)
+                    this.chars = chars = new char[Math.max(len, 256)];
+                final ByteBuffer cd = this.cd;
+                int i = 0;
+                for (byte b; i < len && 0 <= (b = cd.get(off + i)); i++)
+                    chars[i] = (char) b;
+                if (i == len) return new String(chars, 0, len);
+            }
+            return new String(bytes(off, len), 0, len, charset);
+        }
+
+        /**
+         * Copies the given range of the buffer to the scratch array, which
+         * gets returned.
+         * The data is valid up to the next call only.
+         */
+        byte[] bytes(final int off, final int len) {
+            byte[] bytes = this.bytes;
+            if (null == bytes || bytes.length < len)
+                this.bytes = bytes = new byte[Math.max(len, 256)];
+            ByteBuffer view = this.view;
+            if (null == view) this.view = view = cd.duplicate();
+            view.position(off);
+            view.get(bytes, 0, len);
+            return bytes;
+        }
+    } // CentralDirectoryDecoder
+
+    /**
+     * Loads the entries from the given index if it has an up-to-date copy of
+     * them.
+     * Otherwise, reads the central directory starting at the given position
+     * in this ZIP file and stores a copy of its entries to the given index.
+     */
+    private void mountCentralDirectory(
+            final long start,
+            final int numEntries,
+            final CentralDirectoryIndex index,
+            final String key)
+    throws IOException {
+        // At this point, the preamble is the position of the (ZIP64) End Of
+        // Central Directory Record.
+        final long checksum = checksum(preamble);
+        final Charset charset = this.charset;
+        final List<E> loaded = index.load(key, checksum, charset, param);
+        if (null != loaded && mountEntries(loaded, numEntries)) return;
+        mountCentralDirectory(start, numEntries);
+        index.store(key, checksum, charset, entries.values());
+    }
+
+    /**
+     * Populates the internal tables with the given entries which have been
+     * loaded from a central directory index.
+     * Returns {@code false} if the number of entries doesn't match the number
+     * of entries declared in the (ZIP64) End Of Central Directory Record.
+     */
+    private boolean mountEntries(final List<E> loaded, final int numEntries) {
+        if (0 != (numEntries - loaded.size()) % 0x10000) return false;
+        final Map<String, E> entries = new LinkedHashMap<>(
+                Math.max(HashMaps.initialCapacity(loaded.size()), 16));
+        boolean utf8 = false;
+        for (final E entry : loaded) {
+            entries.put(entry.getName(), entry);
+            final long lfhOff = mapper.map(entry.getOffset());
+            if (lfhOff < preamble) preamble = lfhOff;
+            utf8 |= entry.getGeneralPurposeBitFlag(GPBF_UTF8);
+        }
+        if (utf8) charset = UTF8;
+        this.entries = entries;
+        return true;
+    }
+
+    /**
+     * Returns the CRC-32 of the data from the given position to the end of
+     * this ZIP file.
+     */
+    private long checksum(final long pos) throws IOException {
+        final CRC32 crc = new CRC32();
+        try (SeekableByteChannel channel = channel(pos)) {
+            final ByteBuffer buf = ByteBuffer.allocate((int) Math.max(1,
+                    Math.min(length - pos, MAX_FLATER_BUF_LENGTH)));
+            while (0 <= channel.read(buf)) {
+                buf.flip();
+                crc.update(buf.array(), 0, buf.limit());
+                buf.clear();
+            }
+        }
+        return crc.getValue();
+    }
+
     /**
      * Recovers any lost entries which have been added to the ZIP file after
      * the (last) End Of Central Directory Record (EOCDR).
@@ -679,6 +1094,10 @@ implements Closeable, Iterable<E> {
             // by the ZipEntryFactory.
             // Note that this name may differ from what has been found
             // in the ZIP file!
+            // A retained central directory is immutable, so it gets copied
+            // first.
+            if (entries instanceof CentralDirectoryMap)
+                entries = new LinkedHashMap<>(entries);
             entries.put(entry.getName(), entry);
         }
         return this;
@@ -708,7 +1127,7 @@ implements Closeable, Iterable<E> {
      * Returns {@code true} if and only if this ZIP file is busy reading
      * one or more entries.
      */
-    public boolean busy() { return 0 < open; }
+    public boolean busy() { return 0 < (open.get() & ~CLOSED); }
 
     /**
      * Returns the character set which is effectively used for
@@ -735,6 +1154,10 @@ implements Closeable, Iterable<E> {
      * Returns an iteration of all entries in this ZIP file.
      * Note that the iterated entries are shared with this instance.
      * It is illegal to change their state!
+     * If the central directory is retained, then new entries get created
+     * for each iteration instead.
+     *
+     * @see ZipFileParameters#getRetainCentralDirectory()
      */
     @Override
     public Iterator<E> iterator() {
@@ -746,6 +1169,8 @@ implements Closeable, Iterable<E> {
      * with this name exists in this ZIP file.
      * Note that the returned entry is shared with this instance - it is an
      * error to change its state!
+     * If the central directory is retained, then a new entry gets created
+     * for each call instead.
      *
      * @param  name the name of the ZIP entry.
      * @return The entry for the given {@code name} or {@code null} if no entry
@@ -815,6 +1240,34 @@ implements Closeable, Iterable<E> {
                 new EntryReadOnlyChannel(length - postamble, postamble));
     }
 
+    /**
+     * Returns an estimate of the number of bytes in this ZIP file which are
+     * not used by any entry, its central directory, its preamble or its
+     * postamble.
+     * This is typically the data of entries which have been updated or
+     * deleted by appending to this ZIP file.
+     * The estimate assumes that the extra fields in the local file headers
+     * have the same length as in the central directory.
+     *
+     * @return A positive value or zero.
+     */
+    public long getGarbageLength() {
+        long used = preamble + centralDirectory + postamble;
+        for (final E entry : entries.values()) {
+            if (UNKNOWN == entry.getCompressedSize()) {
+                continue; // deleted when appending to this ZIP file
+            }
+            used += LFH_MIN_LEN
+                    + entry.getName().getBytes(charset).length
+                    + entry.getRawExtraFields().length
+                    + entry.getCompressedSize();
+            if (entry.getGeneralPurposeBitFlag(GPBF_DATA_DESCRIPTOR)) {
+                used += entry.isZip64ExtensionsRequired() ? 24 : 16;
+            }
+        }
+        return Math.max(0, length - used);
+    }
+
     final PositionMapper getOffsetMapper() { return mapper; }
 
     /**
@@ -905,21 +1358,11 @@ implements Closeable, Iterable<E> {
             @CheckForNull Boolean check,
             final boolean process)
     throws ZipException, IOException {
-        final SeekableByteChannel channel = channel();
         Objects.requireNonNull(name);
         final ZipEntry entry = entries.get(name);
         if (null == entry) return null;
-        long pos = entry.getOffset();
-        assert UNKNOWN != pos;
-        pos = mapper.map(pos);
-        final MutableBuffer lfh = MutableBuffer
-                .allocate(LFH_MIN_LEN)
-                .littleEndian()
-                .load(channel.position(pos));
-        if (LFH_SIG != lfh.getUInt())
-            throw new ZipException(name + " (expected local file header)");
-        lfh.position(LFH_FILE_NAME_LENGTH_POS);
-        pos += LFH_MIN_LEN
+        final MutableBuffer lfh = localFileHeader(entry);
+        long pos = mapper.map(entry.getOffset()) + LFH_MIN_LEN
                 + lfh.getUShort() // file name length
                 + lfh.getUShort(); // extra field length
         SeekableByteChannel echannel;
@@ -939,27 +1382,16 @@ implements Closeable, Iterable<E> {
             if (null == check) check = entry.isEncrypted();
             int method = entry.getMethod();
             if (entry.isEncrypted()) {
-                if (WINZIP_AES != method)
-                    throw new ZipException(name
-                            + " (encrypted compression method "
-                            + method
-                            + " is not supported)");
                 final WinZipAesReadOnlyChannel
-                        eechannel = new WinZipAesReadOnlyChannel(echannel,
-                                new WinZipAesEntryParameters(
-                                    parameters(
-                                        WinZipAesParameters.class,
-                                        getCryptoParameters()),
-                                    entry));
+                        eechannel = decrypt(entry, echannel);
                 echannel = eechannel;
                 if (check) {
                     eechannel.authenticate();
                     // Disable redundant CRC-32 check.
                     check = false;
                 }
-                final WinZipAesExtraField field
-                        = (WinZipAesExtraField) entry.getExtraField(WINZIP_AES_ID);
-                method = field.getMethod();
+                method = ((WinZipAesExtraField) entry
+                        .getExtraField(WINZIP_AES_ID)).getMethod();
             }
             if (check) {
                 // Check CRC32 in the Local File Header or Data Descriptor.
@@ -973,7 +1405,7 @@ implements Closeable, Iterable<E> {
                     final MutableBuffer dd = MutableBuffer
                             .allocate(8)
                             .littleEndian()
-                            .load(channel.position(pos + entry.getCompressedSize()));
+                            .load(channel(pos + entry.getCompressedSize()));
                     localCrc = dd.getUInt();
                     if (DD_SIG == localCrc) localCrc = dd.getUInt();
                 } else {
@@ -998,6 +1430,10 @@ implements Closeable, Iterable<E> {
                     in = new BZip2CompressorInputStream(
                             new ChannelInputStream(echannel));
                     break;
+                case ZSTD:
+                    in = new ZstdInputStream(
+                            new ChannelInputStream(echannel));
+                    break;
                 default:
                     throw new ZipException(name
                             + " (compression method "
@@ -1016,8 +1452,155 @@ implements Closeable, Iterable<E> {
         }
     }
 
+    /**
+     * Returns a seekable byte channel for reading the contents of the entry
+     * with the given name.
+     * <p>
+     * For a {@link ZipEntry#DEFLATED} entry, the returned channel inflates
+     * the entry data and supports random access by means of an index of
+     * inflater checkpoints, which gets populated while reading the entry and
+     * shared by all open channels for the same entry.
+     * The index gets discarded when the last of these channels gets closed.
+     * Each checkpoint holds a copy of the 32 KB inflater window and the
+     * checkpoints are 4 MB of uncompressed data apart, so positioning the
+     * channel requires to inflate at most this many bytes once the index has
+     * been populated.
+     * <p>
+     * If the entry is encrypted, then its Message Authentication Code (MAC)
+     * value gets computed and checked.
+     * Note that the CRC-32 value of the uncompressed data does not get
+     * checked.
+     * <p>
+     * If the {@link #close} method is called on this instance, all channels
+     * returned by this method are closed, too.
+     *
+     * @param  name The name of the entry to get the channel for.
+     * @return A channel to read the entry data from or {@code null} if the
+     *         entry does not exist.
+     * @throws ZipAuthenticationException If the entry is encrypted and
+     *         checking the MAC fails.
+     * @throws ZipException If this file is not compatible to the ZIP File
+     *         Format Specification or the compression method of the entry
+     *         does not support random access.
+     * @throws IOException If the entry cannot get read from this ZipFile.
+     */
+    @CreatesObligation
+    public @Nullable SeekableByteChannel getSeekableChannel(final String name)
+    throws ZipException, IOException {
+        Objects.requireNonNull(name);
+        final ZipEntry entry = entries.get(name);
+        if (null == entry) return null;
+        final MutableBuffer lfh = localFileHeader(entry);
+        final long pos = mapper.map(entry.getOffset()) + LFH_MIN_LEN
+                + lfh.getUShort() // file name length
+                + lfh.getUShort(); // extra field length
+        SeekableByteChannel echannel;
+        try {
+            echannel = new EntryReadOnlyChannel(
+                    pos, entry.getCompressedSize());
+        } catch (RuntimeException e) {
+            throw (ZipException) new ZipException(
+                    name + " (invalid Local File Header, Data Descriptor or Central File Header)")
+                    .initCause(e);
+        }
+        try {
+            int method = entry.getMethod();
+            if (entry.isEncrypted()) {
+                final WinZipAesReadOnlyChannel
+                        eechannel = decrypt(entry, echannel);
+                echannel = eechannel;
+                eechannel.authenticate();
+                method = ((WinZipAesExtraField) entry
+                        .getExtraField(WINZIP_AES_ID)).getMethod();
+            }
+            switch (method) {
+                case STORED:
+                    return echannel;
+                case DEFLATED:
+                    final InflaterIndex index = acquireIndex(name);
+                    try {
+                        return new IndexReleasingReadOnlyChannel(
+                                new InflaterReadOnlyChannel(
+                                    echannel,
+                                    entry.getSize(),
+                                    index,
+                                    getBufferSize(entry.getCompressedSize()),
+                                    false),
+                                name);
+                    } catch (final Throwable ex) {
+                        releaseIndex(name);
+                        throw ex;
+                    }
+                default:
+                    throw new ZipException(name
+                            + " (compression method "
+                            + method
+                            + " does not support random access)");
+            }
+        } catch (final Throwable e1) {
+            try {
+                echannel.close();
+            } catch (final Throwable e2) {
+                e1.addSuppressed(e2);
+            }
+            throw e1;
+        }
+    }
+
+    private InflaterIndex acquireIndex(final String name) {
+        return indices.compute(name, (n, shared) -> {
+            if (null == shared) shared = new SharedIndex();
+            shared.channels++;
+            return shared;
+        }).index;
+    }
+
+    private void releaseIndex(final String name) {
+        indices.computeIfPresent(name,
+                (n, shared) -> 0 == --shared.channels ? null : shared);
+    }
+
+    private WinZipAesReadOnlyChannel decrypt(
+            final ZipEntry entry,
+            final @WillCloseWhenClosed SeekableByteChannel echannel)
+    throws ZipException, IOException {
+        final int method = entry.getMethod();
+        if (WINZIP_AES != method)
+            throw new ZipException(entry.getName()
+                    + " (encrypted compression method "
+                    + method
+                    + " is not supported)");
+        return new WinZipAesReadOnlyChannel(echannel,
+                new WinZipAesEntryParameters(
+                    parameters(
+                        WinZipAesParameters.class,
+                        getCryptoParameters()),
+                    entry));
+    }
+
+    /**
+     * Loads the Local File Header of the given entry and positions the
+     * returned buffer at its file name length.
+     */
+    private MutableBuffer localFileHeader(final ZipEntry entry)
+    throws IOException {
+        final long offset = entry.getOffset();
+        assert UNKNOWN != offset;
+        final MutableBuffer lfh = MutableBuffer
+                .allocate(LFH_MIN_LEN)
+                .littleEndian()
+                .load(channel(mapper.map(offset)));
+        if (LFH_SIG != lfh.getUInt())
+            throw new ZipException(entry.getName()
+                    + " (expected local file header)");
+        return lfh.position(LFH_FILE_NAME_LENGTH_POS);
+    }
+
     private static int getBufferSize(final ZipEntry entry) {
-        long size = entry.getSize();
+        return getBufferSize(entry.getSize());
+    }
+
+    private static int getBufferSize(long size) {
         if (MAX_FLATER_BUF_LENGTH < size)
             size = MAX_FLATER_BUF_LENGTH;
         else if (size < MIN_FLATER_BUF_LENGTH)
@@ -1032,24 +1615,47 @@ implements Closeable, Iterable<E> {
         return channel;
     }
 
+    /**
+     * Returns a new positional read-only channel for reading this ZIP file
+     * from the given position up to its end.
+     */
+    private SeekableByteChannel channel(long pos) throws IOException {
+        if (pos > length) pos = length; // provoke EOFException on load
+        return new PositionalReadOnlyChannel(channel(), pos, length - pos);
+    }
+
     /**
      * Closes the file.
      * This closes any allocated input streams reading from this ZIP file.
+     * <p>
+     * Other threads may still be reading entries when this method gets
+     * called: Once this method has been called, opening any new stream
+     * or channel for reading an entry fails with a {@link ZipException}.
+     * If the underlying channel is a {@link FileChannel}, then any read in
+     * progress fails with an
+     * {@link java.nio.channels.AsynchronousCloseException}.
+     * Otherwise, this method waits until any read in progress has finished.
+     * In either case, any subsequent read fails with a
+     * {@link java.nio.channels.ClosedChannelException}.
      *
      * @throws IOException if an error occurs closing the file.
      */
     @Override
     @DischargesObligation
     public void close() throws IOException {
+        open.getAndUpdate(n -> n | CLOSED);
         final SeekableByteChannel c = channel;
         if (null != c) {
-            c.close();
             channel = null;
+            // Wait for any read in progress, see PositionalReadOnlyChannel.
+            synchronized (c) {
+                c.close();
+            }
         }
     }
 
     /**
-     * An interval read-only channel which accounts for itself until it gets
+     * A positional read-only channel which accounts for itself until it gets
      * closed.
      * Note that when an object of this class gets closed, the decorated
      * read-only channel, i.e. the raw file does NOT get closed!
@@ -1060,8 +1666,13 @@ implements Closeable, Iterable<E> {
         @CreatesObligation
         EntryReadOnlyChannel(final long start, final long size)
         throws IOException {
-            super(new IntervalReadOnlyChannel(channel(), start, size));
-            AbstractZipFile.this.open++;
+            super(new PositionalReadOnlyChannel(channel(), start, size));
+            final AtomicInteger open = AbstractZipFile.this.open;
+            int n;
+            do {
+                if (CLOSED == ((n = open.get()) & CLOSED))
+                    throw new ZipException("File closed!");
+            } while (!open.compareAndSet(n, n + 1));
         }
 
         @Override
@@ -1069,11 +1680,49 @@ implements Closeable, Iterable<E> {
             if (closed) return;
             // Never close the channel!
             //super.close();
-            AbstractZipFile.this.open--;
+            AbstractZipFile.this.open.decrementAndGet();
             closed = true;
         }
     } // EntryReadOnlyChannel
 
+    /**
+     * An inflater index and the number of open channels which share it.
+     * The count gets updated by the remapping functions of {@link #indices}
+     * only.
+     */
+    private static final class SharedIndex {
+        final InflaterIndex index = new InflaterIndex(INFLATER_INDEX_SPAN);
+        int channels;
+    } // SharedIndex
+
+    /**
+     * A read-only channel which releases the shared inflater index for its
+     * entry when it gets closed.
+     */
+    private final class IndexReleasingReadOnlyChannel extends ReadOnlyChannel {
+        final String name;
+        boolean closed;
+
+        @CreatesObligation
+        IndexReleasingReadOnlyChannel(
+                final @WillCloseWhenClosed SeekableByteChannel channel,
+                final String name) {
+            super(channel);
+            this.name = name;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            try {
+                super.close();
+            } finally {
+                releaseIndex(name);
+            }
+        }
+    } // IndexReleasingReadOnlyChannel
+
     /**
      * A buffered load only file which is safe for use with a concurrently
      * growing file, e.g. when another thread is appending to it.
@@ -13,6 +13,8 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
 import java.util.zip.Deflater;
 import java.util.zip.ZipException;
 import javax.annotation.CheckForNull;
@@ -36,6 +38,7 @@ import static net.java.truevfs.comp.zip.ZipParametersUtils.parameters;
 
 import net.java.truecommons.key.spec.common.AesKeyStrength;
 import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import io.airlift.compress.zstd.ZstdOutputStream;
 
 /**
  * Provides unsafe (raw) access to a ZIP file using shared {@link ZipEntry}
@@ -70,6 +73,21 @@ public abstract class AbstractZipOutputStream<E extends ZipEntry>
      */
     private int level;
 
+    /**
+     * The executor for block-parallel deflating of entries or {@code null}
+     * if entries get deflated on the current thread.
+     */
+    private @CheckForNull Executor deflaterExecutor;
+
+    /** The block size for block-parallel deflating of entries. */
+    private int deflaterBlockSize = DEFAULT_DEFLATER_BLOCK_SIZE;
+
+    /**
+     * Whether or not {@link ZipEntry#DEFLATED} entries get stored if their
+     * data is incompressible.
+     */
+    private boolean adaptiveCompression;
+
     /**
      * The encoded file comment.
      */
@@ -248,8 +266,8 @@ public abstract class AbstractZipOutputStream<E extends ZipEntry>
      * Sets the default compression method for entries.
      * This property is only used if a {@link ZipEntry} does not specify a
      * compression method.
-     * Legal values are {@link ZipEntry#STORED}, {@link ZipEntry#DEFLATED}
-     * and {@link ZipEntry#BZIP2}.
+     * Legal values are {@link ZipEntry#STORED}, {@link ZipEntry#DEFLATED},
+     * {@link ZipEntry#BZIP2} and {@link ZipEntry#ZSTD}.
      *
      * @param method the default compression method for entries.
      * @throws IllegalArgumentException if the method is invalid.
@@ -300,6 +318,112 @@ public abstract class AbstractZipOutputStream<E extends ZipEntry>
         this.level = level;
     }
 
+    /**
+     * Returns the executor for block-parallel deflating of entries or
+     * {@code null} if entries get deflated on the current thread.
+     * The initial value is {@code null}.
+     *
+     * @see #setDeflaterExecutor
+     */
+    public @CheckForNull Executor getDeflaterExecutor() {
+        return deflaterExecutor;
+    }
+
+    /**
+     * Sets the executor for block-parallel deflating of entries.
+     * If this is not {@code null}, then the data of any
+     * {@link ZipEntry#DEFLATED} entry which is not known to fit into a single
+     * block gets split into blocks of {@link #getDeflaterBlockSize()} bytes
+     * which get deflated in parallel by tasks on the given executor.
+     * The deflated blocks get concatenated to a single raw deflate stream,
+     * so the resulting ZIP file is compatible to any ZIP reader, but the
+     * compression ratio is slightly lower.
+     * This is useful for very large entries only.
+     *
+     * @param executor the executor for block-parallel deflating of entries
+     *        or {@code null} if entries should get deflated on the current
+     *        thread.
+     * @see #getDeflaterExecutor
+     */
+    public void setDeflaterExecutor(final @CheckForNull Executor executor) {
+        this.deflaterExecutor = executor;
+    }
+
+    /**
+     * Returns the block size for block-parallel deflating of entries.
+     * The initial value is 128 KB.
+     *
+     * @see #setDeflaterBlockSize
+     */
+    public int getDeflaterBlockSize() {
+        return deflaterBlockSize;
+    }
+
+    /**
+     * Sets the block size for block-parallel deflating of entries.
+     *
+     * @param blockSize the block size for block-parallel deflating of
+     *        entries.
+     * @throws IllegalArgumentException if the block size is less than
+     *         32 KB.
+     * @see #getDeflaterBlockSize
+     */
+    public void setDeflaterBlockSize(final int blockSize) {
+        if (MIN_DEFLATER_BLOCK_SIZE > blockSize)
+            throw new IllegalArgumentException("Invalid block size!");
+        this.deflaterBlockSize = blockSize;
+    }
+
+    /**
+     * Returns whether or not the compression of entries adapts to their
+     * data.
+     * The initial value is {@code false}.
+     *
+     * @see #setAdaptiveCompression
+     */
+    public boolean getAdaptiveCompression() {
+        return adaptiveCompression;
+    }
+
+    /**
+     * Sets whether or not the compression of entries adapts to their data.
+     * If this is {@code true}, then the first 64 KB of each unencrypted
+     * {@link ZipEntry#DEFLATED} entry get buffered and trial compressed
+     * before the entry gets written.
+     * If the data is incompressible or the extension of the entry name
+     * indicates already compressed data, e.g. {@code .jpg} or {@code .zip},
+     * then the entry gets written with the method {@link ZipEntry#STORED}
+     * if it fits into the buffer.
+     * Otherwise, the entry still gets written with the method
+     * {@link ZipEntry#DEFLATED}, but with the compression level
+     * {@link Deflater#NO_COMPRESSION}.
+     * Either way, the decision gets reported to {@link #adapted} and
+     * counted in {@link ZipStatistics}.
+     *
+     * @param adaptive whether or not the compression of entries adapts to
+     *        their data.
+     * @see #getAdaptiveCompression
+     */
+    public void setAdaptiveCompression(final boolean adaptive) {
+        this.adaptiveCompression = adaptive;
+    }
+
+    /**
+     * Gets called when the adaptive compression policy has decided how to
+     * write the given entry.
+     * When this method gets called, the method of the entry has been
+     * updated, but not its CRC-32 value or sizes.
+     * The implementation in this class does nothing.
+     *
+     * @param entry the entry.
+     * @param compressed {@code true} if the data of the entry gets compressed
+     *        or {@code false} if it gets stored, either with the method
+     *        {@link ZipEntry#STORED} or in stored deflate blocks.
+     * @see #setAdaptiveCompression
+     */
+    protected void adapted(E entry, boolean compressed) {
+    }
+
     /**
      * Returns the parameters for encryption or authentication of entries.
      * <p>
@@ -381,7 +505,8 @@ public abstract class AbstractZipOutputStream<E extends ZipEntry>
             final boolean process)
             throws ZipException {
         // HC SVNT DRACONES!
-        OutputMethod processor = new RawOutputMethod(process);
+        final RawOutputMethod raw = new RawOutputMethod(process);
+        OutputMethod processor = raw;
         if (!process) {
             assert UNKNOWN != entry.getCrc();
             return processor;
@@ -402,8 +527,7 @@ public abstract class AbstractZipOutputStream<E extends ZipEntry>
                         skipCrc = true;
                 }
             }
-            processor = newEncryptedOutputMethod((RawOutputMethod) processor,
-                    param);
+            processor = newEncryptedOutputMethod(raw, param);
         }
         switch (method) {
             case STORED:
@@ -411,7 +535,18 @@ public abstract class AbstractZipOutputStream<E extends ZipEntry>
                     processor = new Crc32CheckingOutputMethod(processor);
                 break;
             case DEFLATED:
-                processor = new DeflaterOutputMethod(processor);
+                if (adaptiveCompression && raw == processor) {
+                    processor = new AdaptiveOutputMethod(raw);
+                    break;
+                }
+                final long size = entry.getSize();
+                if (null != deflaterExecutor
+                        && (UNKNOWN == size || deflaterBlockSize < size)) {
+                    processor = new ParallelDeflaterOutputMethod(processor,
+                            !skipCrc);
+                    break;
+                }
+                processor = new DeflaterOutputMethod(processor, getLevel());
                 if (!skipCrc)
                     processor = new Crc32UpdatingOutputMethod(processor);
                 break;
@@ -420,6 +555,11 @@ public abstract class AbstractZipOutputStream<E extends ZipEntry>
                 if (!skipCrc)
                     processor = new Crc32UpdatingOutputMethod(processor);
                 break;
+            case ZSTD:
+                processor = new ZstdOutputMethod(processor);
+                if (!skipCrc)
+                    processor = new Crc32UpdatingOutputMethod(processor);
+                break;
             default:
                 throw new ZipException(entry.getName()
                         + " (unsupported compression method "
@@ -618,6 +758,10 @@ public abstract class AbstractZipOutputStream<E extends ZipEntry>
         if (zip64) {
             final long zip64eocdOffset // relative offset of the zip64 end of central directory record
                     = leos.size();
+            int versionNeededToExtract = 46; // due to potential use of BZIP2 compression
+            for (final E entry : entries.values())
+                versionNeededToExtract = Math.max(versionNeededToExtract,
+                        entry.getRawVersionNeededToExtract()); // e.g. ZSTD
             // zip64 end of central dir
             // signature                       4 bytes  (0x06064b50)
             leos.writeInt(ZIP64_EOCDR_SIG);
@@ -627,7 +771,7 @@ public abstract class AbstractZipOutputStream<E extends ZipEntry>
             // version made by                 2 bytes
             leos.writeShort(63);
             // version needed to extract       2 bytes
-            leos.writeShort(46); // due to potential use of BZIP2 compression
+            leos.writeShort(versionNeededToExtract);
             // number of this disk             4 bytes
             leos.writeInt(0);
             // number of the disk with the
@@ -1021,14 +1165,65 @@ public abstract class AbstractZipOutputStream<E extends ZipEntry>
         }
     } // BZip2OutputMethod
 
+    /**
+     * Compresses the entry data with the pure Java Zstandard implementation
+     * of the aircompressor library, which always uses its default
+     * compression level.
+     */
+    private final class ZstdOutputMethod extends DecoratingOutputMethod {
+        @Nullable
+        ZstdOutputStream cout;
+        @Nullable
+        LittleEndianOutputStream dout;
+        @Nullable
+        ZipEntry entry;
+
+        ZstdOutputMethod(OutputMethod processor) {
+            super(processor);
+        }
+
+        @Override
+        public void init(final ZipEntry entry) throws ZipException {
+            entry.setCompressedSize(UNKNOWN);
+            this.method.init(entry);
+            this.entry = entry;
+        }
+
+        @Override
+        public OutputStream start() throws IOException {
+            assert null == this.cout;
+            assert null == this.dout;
+            // The Zstandard output stream can only finish the frame when
+            // closing, so we need to protect the entry output stream.
+            final OutputStream out = new DecoratingOutputStream(this.method.start()) {
+                @Override
+                public void close() throws IOException {
+                    this.out.flush();
+                }
+            };
+            return this.dout = new LittleEndianOutputStream(
+                    this.cout = new ZstdOutputStream(out));
+        }
+
+        @Override
+        public void finish() throws IOException {
+            this.dout.flush(); // superfluous - should not buffer
+            this.cout.close();
+            this.entry.setRawSize(this.dout.size());
+            this.method.finish();
+        }
+    } // ZstdOutputMethod
+
     private final class DeflaterOutputMethod extends DecoratingOutputMethod {
+        final int level;
         @Nullable
         ZipDeflaterOutputStream out;
         @Nullable
         ZipEntry entry;
 
-        DeflaterOutputMethod(OutputMethod processor) {
+        DeflaterOutputMethod(OutputMethod processor, int level) {
             super(processor);
+            this.level = level;
         }
 
         @Override
@@ -1043,7 +1238,7 @@ public abstract class AbstractZipOutputStream<E extends ZipEntry>
             assert null == this.out;
             return this.out = new ZipDeflaterOutputStream(
                     this.method.start(),
-                    AbstractZipOutputStream.this.getLevel(),
+                    this.level,
                     MAX_FLATER_BUF_LENGTH);
         }
 
@@ -1056,12 +1251,178 @@ public abstract class AbstractZipOutputStream<E extends ZipEntry>
                 //entry.setRawCompressedSize(deflater.getBytesWritten());
                 entry.setRawSize(deflater.getBytesRead());
             } finally {
-                deflater.end();
+                this.out.release();
             }
             this.method.finish();
         }
     } // DeflaterOutputMethod
 
+    private final class ParallelDeflaterOutputMethod
+            extends DecoratingOutputMethod {
+        final boolean updateCrc;
+        @Nullable
+        ParallelDeflaterOutputStream out;
+        @Nullable
+        ZipEntry entry;
+
+        ParallelDeflaterOutputMethod(
+                final OutputMethod processor,
+                final boolean updateCrc) {
+            super(processor);
+            this.updateCrc = updateCrc;
+        }
+
+        @Override
+        public void init(final ZipEntry entry) throws ZipException {
+            entry.setCompressedSize(UNKNOWN);
+            this.method.init(entry);
+            this.entry = entry;
+        }
+
+        @Override
+        public OutputStream start() throws IOException {
+            assert null == this.out;
+            final Executor executor = AbstractZipOutputStream.this.deflaterExecutor;
+            assert null != executor;
+            return this.out = new ParallelDeflaterOutputStream(
+                    this.method.start(),
+                    AbstractZipOutputStream.this.getLevel(),
+                    AbstractZipOutputStream.this.getDeflaterBlockSize(),
+                    executor,
+                    2 * Runtime.getRuntime().availableProcessors());
+        }
+
+        @Override
+        public void finish() throws IOException {
+            final ParallelDeflaterOutputStream out = this.out;
+            out.finish();
+            final ZipEntry entry = this.entry;
+            entry.setRawSize(out.getBytesRead());
+            if (this.updateCrc)
+                entry.setRawCrc(out.getCrc());
+            this.method.finish();
+        }
+    } // ParallelDeflaterOutputMethod
+
+    /**
+     * Buffers the first {@link Constants#ADAPTIVE_SAMPLE_SIZE} bytes of a
+     * {@link ZipEntry#DEFLATED} entry in order to decide how to write it.
+     * The local file header gets written only after this decision, when the
+     * chosen output method gets started.
+     */
+    private final class AdaptiveOutputMethod implements OutputMethod {
+        final RawOutputMethod raw;
+        @Nullable
+        ZipEntry entry;
+        @Nullable
+        byte[] sample;
+        int count;
+        @Nullable
+        OutputMethod method;
+
+        AdaptiveOutputMethod(final RawOutputMethod raw) {
+            this.raw = raw;
+        }
+
+        @Override
+        public void init(final ZipEntry entry) throws ZipException {
+            entry.setCompressedSize(UNKNOWN);
+            this.raw.init(entry);
+            this.entry = entry;
+        }
+
+        @Override
+        public OutputStream start() throws IOException {
+            assert null == this.sample;
+            final long size = this.entry.getSize();
+            this.sample = new byte[UNKNOWN == size || ADAPTIVE_SAMPLE_SIZE < size
+                    ? ADAPTIVE_SAMPLE_SIZE
+                    : (int) size];
+            return new DecoratingOutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    write(new byte[] { (byte) b }, 0, 1);
+                }
+
+                @Override
+                public void write(final byte[] b, int off, int len)
+                        throws IOException {
+                    if (null == this.out) {
+                        final byte[] sample = AdaptiveOutputMethod.this.sample;
+                        final int count = AdaptiveOutputMethod.this.count;
+                        final int n = Math.min(len, sample.length - count);
+                        System.arraycopy(b, off, sample, count, n);
+                        AdaptiveOutputMethod.this.count = count + n;
+                        if (n == len) return;
+                        this.out = decide(false);
+                        off += n;
+                        len -= n;
+                    }
+                    this.out.write(b, off, len);
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    if (null != this.out) this.out.flush();
+                }
+
+                @Override
+                public void close() throws IOException {
+                    flush();
+                }
+            };
+        }
+
+        /**
+         * Decides how to write the entry, starts the chosen output method and
+         * writes the sample to it.
+         *
+         * @param complete whether or not the sample holds all data of the
+         *        entry.
+         */
+        @SuppressWarnings("unchecked")
+        OutputStream decide(final boolean complete) throws IOException {
+            assert null == this.method;
+            final ZipEntry entry = this.entry;
+            final byte[] sample = this.sample;
+            final int count = this.count;
+            final boolean compress = !Compressibility.hinted(entry.getName())
+                    && Compressibility.compressible(sample, 0, count);
+            final OutputMethod method;
+            if (compress) {
+                method = !complete && null != deflaterExecutor
+                        ? new ParallelDeflaterOutputMethod(this.raw, true)
+                        : new Crc32UpdatingOutputMethod(new DeflaterOutputMethod(
+                                this.raw, AbstractZipOutputStream.this.getLevel()));
+            } else if (complete) {
+                final CRC32 crc = new CRC32();
+                crc.update(sample, 0, count);
+                entry.setMethod(STORED);
+                entry.setCrc(crc.getValue());
+                entry.setCompressedSize(count);
+                entry.setSize(count);
+                method = this.raw;
+            } else {
+                method = new Crc32UpdatingOutputMethod(new DeflaterOutputMethod(
+                        this.raw, Deflater.NO_COMPRESSION));
+            }
+            Compressibility.record(compress);
+            adapted((E) entry, compress);
+            method.init(entry);
+            final OutputStream out = method.start();
+            this.method = method;
+            this.sample = null;
+            out.write(sample, 0, count);
+            return out;
+        }
+
+        @Override
+        public void finish() throws IOException {
+            if (null == this.method) decide(true);
+            this.method.finish();
+        }
+    } // AdaptiveOutputMethod
+
     private abstract class Crc32OutputMethod extends DecoratingOutputMethod {
         @Nullable
         Crc32OutputStream out;
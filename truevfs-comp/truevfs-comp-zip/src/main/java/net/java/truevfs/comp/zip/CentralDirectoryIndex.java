@@ -0,0 +1,225 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.comp.zip;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.zip.CRC32;
+import javax.annotation.CheckForNull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.READ;
+import static net.java.truevfs.comp.zip.Constants.UTF8;
+
+/**
+ * A persistent index of the central directories of ZIP files.
+ * For each ZIP file, a sidecar file in the index directory holds the
+ * properties of its entries as decoded from its Central File Headers.
+ * When the ZIP file gets opened again, the entries get created from the
+ * sidecar file instead of reading and parsing the central directory of the
+ * ZIP file.
+ * <p>
+ * A sidecar file is only used if the path, size and last modification time
+ * of the ZIP file, the checksum of its (ZIP64) End Of Central Directory
+ * Record and the charset for decoding entry names and comments are unchanged
+ * and if the checksum of the entry data in the sidecar file is correct.
+ * Any I/O error when loading or storing a sidecar file gets ignored, so the
+ * index directory may safely get deleted at any time.
+ * <p>
+ * A sidecar file uses a big-endian binary format without compression, so
+ * that it gets memory-mapped rather than read into the heap when loading it.
+ *
+ * @see    ZipFile#ZipFile(Path, java.nio.charset.Charset, boolean, boolean, CentralDirectoryIndex)
+ * @author Christian Schlichtherle
+ */
+@ThreadSafe
+public final class CentralDirectoryIndex {
+
+    private static final int MAGIC = 0x54564344; // "TVCD"
+    private static final int VERSION = 2;
+    private static final String SUFFIX = ".cd";
+
+    private final Path directory;
+
+    /**
+     * Constructs a new central directory index.
+     *
+     * @param directory the directory for the sidecar files.
+     *        It gets created upon the first store if it doesn't exist.
+     */
+    public CentralDirectoryIndex(final Path directory) {
+        this.directory = Objects.requireNonNull(directory);
+    }
+
+    /** Returns the directory for the sidecar files. */
+    public Path getDirectory() { return directory; }
+
+    /**
+     * Returns the key for the given ZIP file, which is composed of its
+     * absolute path, size and last modification time.
+     *
+     * @param  file the path of the ZIP file.
+     * @return The key for the given ZIP file.
+     * @throws IOException if the attributes of the ZIP file cannot get read.
+     */
+    public static String key(final Path file) throws IOException {
+        final BasicFileAttributes attrs = Files.readAttributes(file,
+                BasicFileAttributes.class);
+        return file.toAbsolutePath().normalize()
+                + "|" + attrs.size()
+                + "|" + attrs.lastModifiedTime().toMillis();
+    }
+
+    private Path sidecar(String key) {
+        return directory.resolve(
+                UUID.nameUUIDFromBytes(key.getBytes(UTF8)) + SUFFIX);
+    }
+
+    /**
+     * Returns the entries for the given key, checksum and charset in the
+     * order of their Central File Headers or {@code null} if there is no
+     * sidecar file for them or it's stale or corrupted.
+     *
+     * @param key the key of the ZIP file.
+     * @param checksum the checksum of the (ZIP64) End Of Central Directory
+     *        Record of the ZIP file.
+     * @param charset the charset for decoding entry names and comments.
+     * @param factory the factory for the entries.
+     */
+    @CheckForNull <E extends ZipEntry> List<E> load(
+            final String key,
+            final long checksum,
+            final Charset charset,
+            final ZipEntryFactory<E> factory) {
+        try {
+            final ByteBuffer buffer;
+            try (FileChannel channel = FileChannel.open(sidecar(key), READ)) {
+                final long length = channel.size();
+                if (Integer.MAX_VALUE < length) return null;
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            }
+            if (MAGIC != buffer.getInt()
+                    || VERSION != buffer.getInt()
+                    || checksum != buffer.getLong()
+                    || !key.equals(string(buffer))
+                    || !charset.name().equals(string(buffer)))
+                return null;
+            final long crc = buffer.getInt() & UInt.MAX_VALUE;
+            final CRC32 actual = new CRC32();
+            actual.update(buffer.duplicate());
+            if (crc != actual.getValue()) return null;
+            final int size = buffer.getInt();
+            final List<E> entries = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                final E entry = factory.newEntry(string(buffer));
+                entry.setRawPlatform(buffer.getShort() & UShort.MAX_VALUE);
+                entry.setGeneralPurposeBitFlags(buffer.getShort() & UShort.MAX_VALUE);
+                entry.setRawMethod(buffer.getShort() & UShort.MAX_VALUE);
+                entry.setRawTime(buffer.getInt() & UInt.MAX_VALUE);
+                entry.setRawCrc(buffer.getInt() & UInt.MAX_VALUE);
+                entry.setRawCompressedSize(buffer.getLong());
+                entry.setRawSize(buffer.getLong());
+                entry.setRawExternalAttributes(buffer.getInt() & UInt.MAX_VALUE);
+                entry.setRawOffset(buffer.getLong());
+                final byte[] extra = new byte[buffer.getShort() & UShort.MAX_VALUE];
+                buffer.get(extra);
+                if (0 < extra.length) entry.setRawExtraFields(extra);
+                final String comment = string(buffer);
+                if (!comment.isEmpty()) entry.setRawComment(comment);
+                entries.add(entry);
+            }
+            return buffer.hasRemaining() ? null : entries;
+        } catch (IOException | RuntimeException ex) {
+            return null;
+        }
+    }
+
+    private static String string(final ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    /**
+     * Stores the given entries for the given key, checksum and charset.
+     *
+     * @param key the key of the ZIP file.
+     * @param checksum the checksum of the (ZIP64) End Of Central Directory
+     *        Record of the ZIP file.
+     * @param charset the charset for decoding entry names and comments.
+     * @param entries the entries in the order of their Central File Headers.
+     *        They must not have been modified since they've been decoded.
+     */
+    void store(
+            final String key,
+            final long checksum,
+            final Charset charset,
+            final Collection<? extends ZipEntry> entries) {
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream data = new DataOutputStream(bytes);
+            data.writeInt(entries.size());
+            for (final ZipEntry entry : entries) {
+                string(data, entry.getName());
+                data.writeShort(entry.getRawPlatform());
+                data.writeShort(entry.getGeneralPurposeBitFlags());
+                data.writeShort(entry.getRawMethod());
+                data.writeInt((int) entry.getRawTime());
+                data.writeInt((int) entry.getRawCrc());
+                data.writeLong(entry.getCompressedSize());
+                data.writeLong(entry.getSize());
+                data.writeInt((int) entry.getRawExternalAttributes());
+                data.writeLong(entry.getOffset());
+                final byte[] extra = entry.getExtra();
+                data.writeShort(extra.length);
+                data.write(extra);
+                string(data, entry.getRawComment());
+            }
+            final byte[] payload = bytes.toByteArray();
+            final CRC32 crc = new CRC32();
+            crc.update(payload);
+            bytes.reset();
+            data.writeInt(MAGIC);
+            data.writeInt(VERSION);
+            data.writeLong(checksum);
+            string(data, key);
+            string(data, charset.name());
+            data.writeInt((int) crc.getValue());
+            data.write(payload);
+
+            Files.createDirectories(directory);
+            final Path temp = Files.createTempFile(directory, null, SUFFIX);
+            try {
+                Files.write(temp, bytes.toByteArray());
+                Files.move(temp, sidecar(key), REPLACE_EXISTING, ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException | RuntimeException ex) {
+            // The index is only an optimization.
+        }
+    }
+
+    private static void string(final DataOutputStream data, final String string)
+    throws IOException {
+        final byte[] bytes = string.getBytes(UTF8);
+        data.writeInt(bytes.length);
+        data.write(bytes);
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.comp.zip;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import javax.annotation.CheckForNull;
+import javax.annotation.concurrent.Immutable;
+
+import static java.nio.ByteOrder.LITTLE_ENDIAN;
+import static net.java.truevfs.comp.zip.Constants.CFH_MIN_LEN;
+import static net.java.truevfs.comp.zip.Constants.UTF8;
+
+/**
+ * An immutable map of entry names to ZIP entries which is backed by a copy of
+ * the Central File Headers of a ZIP file.
+ * Per entry, only the offset of its Central File Header in the copy and the
+ * hash code of its name get stored, plus a slot in a hash table of positions
+ * with open addressing and linear probing.
+ * The entries get created by the {@link ZipEntryFactory} upon each lookup or
+ * iteration, so each call returns new entry objects.
+ * <p>
+ * Like a {@link java.util.LinkedHashMap} which has been populated in the
+ * order of the Central File Headers, an entry with a duplicate name replaces
+ * the previous entry, but retains its position.
+ *
+ * @param  <E> the type of the ZIP entries.
+ * @see    ZipFileParameters#getRetainCentralDirectory()
+ * @author Christian Schlichtherle
+ */
+@Immutable
+final class CentralDirectoryMap<E extends ZipEntry>
+extends AbstractMap<String, E> {
+
+    private final ZipEntryFactory<E> factory;
+
+    /** The copy of the Central File Headers. */
+    private final byte[] bytes;
+
+    /** A little endian buffer which wraps {@link #bytes}. */
+    private final ByteBuffer cd;
+
+    /** The charset for decoding names and comments. */
+    private final Charset charset;
+
+    /**
+     * The offset of the first Central File Header with bit 11 set in its
+     * General Purpose Bit Flags.
+     * The names and comments of this and all subsequent Central File Headers
+     * get decoded using UTF-8.
+     */
+    private final int utf8;
+
+    /** The offsets of the Central File Headers by position. */
+    private final int[] offsets;
+
+    /** The hash codes of the names by position. */
+    private final int[] hashes;
+
+    /**
+     * The hash table of positions, plus one.
+     * Zero marks an empty slot.
+     */
+    private final int[] table;
+
+    /**
+     * Constructs a new central directory map.
+     *
+     * @param factory the factory for the entries.
+     *        It must be thread-safe.
+     * @param cd the little endian buffer with the Central File Headers.
+     * @param base the offset of the first Central File Header in the buffer.
+     * @param end the offset of the end of the last Central File Header in the
+     *        buffer.
+     * @param offsets the offsets of the Central File Headers in the buffer.
+     * @param names the decoded names of the Central File Headers.
+     * @param count the number of Central File Headers.
+     * @param charset the charset for decoding names and comments.
+     * @param utf8 the index of the first Central File Header with bit 11 set
+     *        in its General Purpose Bit Flags or {@code -1} if there is none.
+     */
+    CentralDirectoryMap(
+            final ZipEntryFactory<E> factory,
+            final ByteBuffer cd,
+            final int base,
+            final int end,
+            final int[] offsets,
+            final String[] names,
+            final int count,
+            final Charset charset,
+            final int utf8) {
+        this.factory = factory;
+        final byte[] bytes = this.bytes = new byte[end - base];
+        final ByteBuffer view = cd.duplicate();
+        view.position(base);
+        view.get(bytes);
+        this.cd = ByteBuffer.wrap(bytes).order(LITTLE_ENDIAN);
+        this.charset = charset;
+        this.utf8 = 0 <= utf8 ? offsets[utf8] - base : Integer.MAX_VALUE;
+        final int[] table = this.table = new int[
+                Integer.highestOneBit(Math.max(1, 2 * count - 1)) << 1];
+        final int mask = table.length - 1;
+        final int[] indexes = new int[count], hashes = new int[count];
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            final String name = names[i];
+            final int hash = hash(name);
+            for (int j = hash & mask; ; j = (j + 1) & mask) {
+                final int p = table[j] - 1;
+                if (0 > p) {
+                    table[j] = size + 1;
+                    indexes[size] = i;
+                    hashes[size++] = hash;
+                    break;
+                }
+                if (hash == hashes[p] && name.equals(names[indexes[p]])) {
+                    indexes[p] = i;
+                    break;
+                }
+            }
+        }
+        final int[] positions = new int[size];
+        for (int p = 0; p < size; p++)
+            positions[p] = offsets[indexes[p]] - base;
+        this.offsets = positions;
+        this.hashes = size < count ? Arrays.copyOf(hashes, size) : hashes;
+    }
+
+    private static int hash(String name) {
+        final int h = name.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    @Override
+    public int size() { return offsets.length; }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof String && 0 <= position((String) key);
+    }
+
+    @Override
+    public @CheckForNull E get(final Object key) {
+        if (!(key instanceof String)) return null;
+        final String name = (String) key;
+        final int p = position(name);
+        return 0 > p ? null : entry(p, name);
+    }
+
+    /**
+     * Returns the position of the entry with the given name or {@code -1} if
+     * there is no such entry.
+     */
+    private int position(final String name) {
+        final int hash = hash(name);
+        final int[] table = this.table;
+        final int mask = table.length - 1;
+        for (int j = hash & mask; ; j = (j + 1) & mask) {
+            final int p = table[j] - 1;
+            if (0 > p) return -1;
+            if (hash == hashes[p] && name.equals(name(p))) return p;
+        }
+    }
+
+    private String name(final int p) {
+        final int off = offsets[p];
+        return string(off + CFH_MIN_LEN, getUShort(off + 28), off);
+    }
+
+    private E entry(final int p, final String name) {
+        final int off = offsets[p];
+        final int extraOff = off + CFH_MIN_LEN + getUShort(off + 28);
+        final int extraLen = getUShort(off + 30);
+        final int commentLen = getUShort(off + 32);
+        final E entry = factory.newEntry(name);
+        assert name.equals(entry.getName());
+        AbstractZipFile.decode(entry, cd, off, bytes, extraOff,
+                0 < commentLen
+                        ? string(extraOff + extraLen, commentLen, off)
+                        : null);
+        return entry;
+    }
+
+    private String string(int off, int len, int cfh) {
+        return new String(bytes, off, len, utf8 <= cfh ? UTF8 : charset);
+    }
+
+    private int getUShort(int off) { return cd.getShort(off) & UShort.MAX_VALUE; }
+
+    @Override
+    public Collection<E> values() {
+        return new AbstractCollection<E>() {
+            @Override
+            public int size() { return offsets.length; }
+
+            @Override
+            public Iterator<E> iterator() {
+                return new Position<E>() {
+                    @Override
+                    E get(int p) { return entry(p, name(p)); }
+                };
+            }
+        };
+    }
+
+    @Override
+    public Set<Entry<String, E>> entrySet() {
+        return new AbstractSet<Entry<String, E>>() {
+            @Override
+            public int size() { return offsets.length; }
+
+            @Override
+            public Iterator<Entry<String, E>> iterator() {
+                return new Position<Entry<String, E>>() {
+                    @Override
+                    Entry<String, E> get(final int p) {
+                        final String name = name(p);
+                        return new SimpleImmutableEntry<>(name, entry(p, name));
+                    }
+                };
+            }
+        };
+    }
+
+    /** An iterator over the positions of the entries. */
+    private abstract class Position<T> implements Iterator<T> {
+        int p;
+
+        abstract T get(int p);
+
+        @Override
+        public boolean hasNext() { return p < offsets.length; }
+
+        @Override
+        public T next() {
+            if (p >= offsets.length) throw new NoSuchElementException();
+            return get(p++);
+        }
+    }
+}
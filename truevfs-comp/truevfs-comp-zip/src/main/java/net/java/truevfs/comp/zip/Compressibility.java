@@ -0,0 +1,106 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.comp.zip;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+import javax.annotation.concurrent.ThreadSafe;
+
+import static java.util.Collections.unmodifiableSet;
+
+/**
+ * Estimates if the data of an entry is worth compressing.
+ * This is used by the adaptive compression policy of
+ * {@link AbstractZipOutputStream} in order to skip deflating data which is
+ * already compressed, e.g. images, videos or nested archives.
+ *
+ * @author Christian Schlichtherle
+ */
+@ThreadSafe
+final class Compressibility {
+
+    /**
+     * The extensions of entry names which indicate already compressed data.
+     */
+    private static final Set<String> compressedExtensions =
+            unmodifiableSet(new HashSet<>(Arrays.asList(
+                    "7z", "aac", "apk", "avi", "bz2", "cab", "docx", "ear",
+                    "flac", "gif", "gz", "heic", "jar", "jpeg", "jpg", "lz",
+                    "lz4", "lzma", "m4a", "m4v", "mkv", "mov", "mp3", "mp4",
+                    "odp", "ods", "odt", "ogg", "opus", "png", "pptx", "rar",
+                    "tbz2", "tgz", "txz", "war", "webm", "webp", "xlsx", "xz",
+                    "z", "zip", "zst")));
+
+    /**
+     * The minimum ratio of the size of the sample to the size of the deflated
+     * sample for the data to be considered compressible, expressed as its
+     * numerator and denominator: Deflating must save at least 1/16th.
+     */
+    private static final int NUMERATOR = 15, DENOMINATOR = 16;
+
+    private static final LongAdder stored = new LongAdder();
+    private static final LongAdder compressed = new LongAdder();
+
+    private Compressibility() { }
+
+    /**
+     * Returns the total number of entries which have been decided to be
+     * stored.
+     */
+    static long stored() { return stored.sum(); }
+
+    /**
+     * Returns the total number of entries which have been decided to be
+     * compressed.
+     */
+    static long compressed() { return compressed.sum(); }
+
+    /** Records the decision for an entry. */
+    static void record(final boolean compress) {
+        (compress ? compressed : stored).increment();
+    }
+
+    /**
+     * Returns {@code true} if and only if the extension of the given entry
+     * name indicates that its data is already compressed.
+     */
+    static boolean hinted(final String name) {
+        final int slash = name.lastIndexOf('/');
+        final int dot = name.lastIndexOf('.');
+        return slash < dot - 1 && compressedExtensions.contains(
+                name.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Returns {@code true} if and only if the given sample compresses well
+     * enough.
+     * This is determined by a trial compression with
+     * {@link Deflater#BEST_SPEED}, which stops as soon as the output exceeds
+     * the threshold, so it's cheap for incompressible data.
+     */
+    static boolean compressible(final byte[] b, final int off, final int len) {
+        if (0 >= len) return false;
+        final long limit = (long) len * NUMERATOR / DENOMINATOR;
+        final FlaterPool<Deflater> pool = FlaterPool.deflaters(Deflater.BEST_SPEED);
+        final Deflater deflater = pool.take();
+        try {
+            deflater.setInput(b, off, len);
+            deflater.finish();
+            final byte[] buf = new byte[Constants.MAX_FLATER_BUF_LENGTH];
+            long total = 0;
+            while (!deflater.finished()) {
+                total += deflater.deflate(buf);
+                if (total > limit) return false;
+            }
+            return true;
+        } finally {
+            pool.release(deflater);
+        }
+    }
+}
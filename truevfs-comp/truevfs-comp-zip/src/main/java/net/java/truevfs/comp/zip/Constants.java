@@ -152,6 +152,31 @@ final class Constants {
      */
     static final int MIN_FLATER_BUF_LENGTH = MAX_FLATER_BUF_LENGTH / 8;
 
+    /**
+     * The default block size for block-parallel deflating.
+     * This is the same as used by {@code pigz}.
+     */
+    static final int DEFAULT_DEFLATER_BLOCK_SIZE = 128 * 1024;
+
+    /**
+     * The minimum block size for block-parallel deflating, which is the size
+     * of the preset dictionary for the next block.
+     */
+    static final int MIN_DEFLATER_BLOCK_SIZE = 32 * 1024;
+
+    /**
+     * The minimum distance of the uncompressed positions of two consecutive
+     * checkpoints in an inflater index.
+     * Each checkpoint holds a copy of the 32 KB inflater window.
+     */
+    static final long INFLATER_INDEX_SPAN = 4 * 1024 * 1024;
+
+    /**
+     * The size of the sample which gets buffered from the start of each
+     * entry in order to decide if it's worth compressing it.
+     */
+    static final int ADAPTIVE_SAMPLE_SIZE = 64 * 1024;
+
     /** An empty byte array. */
     static final byte[] EMPTY = new byte[0];
 
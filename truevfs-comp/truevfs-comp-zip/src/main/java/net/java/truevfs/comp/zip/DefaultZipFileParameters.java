@@ -17,15 +17,24 @@ final class DefaultZipFileParameters
 extends DefaultZipCharsetParameters
 implements ZipFileParameters<ZipEntry> {
 
-    private final boolean preambled, postambled;
+    private final boolean preambled, postambled, retain;
 
     DefaultZipFileParameters(
             final Charset charset,
             final boolean preambled,
             final boolean postambled) {
+        this(charset, preambled, postambled, false);
+    }
+
+    DefaultZipFileParameters(
+            final Charset charset,
+            final boolean preambled,
+            final boolean postambled,
+            final boolean retain) {
         super(charset);
         this.preambled = preambled;
         this.postambled = postambled;
+        this.retain = retain;
     }
 
     @Override
@@ -38,6 +47,11 @@ implements ZipFileParameters<ZipEntry> {
         return postambled;
     }
 
+    @Override
+    public boolean getRetainCentralDirectory() {
+        return retain;
+    }
+
     @Override
     public ZipEntry newEntry(String name) {
         return new ZipEntry(name);
@@ -0,0 +1,134 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.comp.zip;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A bounded, thread-safe pool of {@link Inflater}s or {@link Deflater}s for
+ * raw ZIP data, i.e. with the {@code nowrap} parameter set to {@code true}.
+ * Creating a flater allocates native zlib state which is only released when
+ * it gets ended or finalized, so reading or writing many small entries should
+ * not create a new flater for each entry.
+ * <p>
+ * A flater gets reset when it's returned to its pool.
+ * If the pool is full, then the flater gets ended instead.
+ * <p>
+ * The hits and misses of all pools get counted and can get read by means of
+ * {@link ZipStatistics}.
+ *
+ * @param  <F> the type of the flaters.
+ * @author Christian Schlichtherle
+ */
+@ThreadSafe
+abstract class FlaterPool<F> {
+
+    /** The maximum number of idle flaters per pool. */
+    static final int CAPACITY =
+            Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+
+    private static final FlaterPool<Inflater> inflaters =
+            new FlaterPool<Inflater>() {
+                @Override
+                Inflater create() { return new Inflater(true); }
+
+                @Override
+                void reset(Inflater inflater) { inflater.reset(); }
+
+                @Override
+                void end(Inflater inflater) { inflater.end(); }
+            };
+
+    /** The pools of deflaters, indexed by compression level plus one. */
+    private static final DeflaterPool[] deflaters =
+            new DeflaterPool[Deflater.BEST_COMPRESSION + 2];
+    static {
+        for (int i = 0; i < deflaters.length; i++)
+            deflaters[i] = new DeflaterPool(i - 1);
+    }
+
+    private static final LongAdder hits = new LongAdder();
+    private static final LongAdder misses = new LongAdder();
+
+    private final BlockingQueue<F> idle = new ArrayBlockingQueue<>(CAPACITY);
+
+    /** Returns the pool of inflaters. */
+    static FlaterPool<Inflater> inflaters() { return inflaters; }
+
+    /**
+     * Returns the pool of deflaters for the given compression level.
+     *
+     * @param level the compression level, which must be
+     *        {@link Deflater#DEFAULT_COMPRESSION} or in the range from
+     *        {@link Deflater#NO_COMPRESSION} to
+     *        {@link Deflater#BEST_COMPRESSION}.
+     */
+    static FlaterPool<Deflater> deflaters(int level) {
+        return deflaters[level + 1];
+    }
+
+    /**
+     * Returns the total number of flaters which have been taken from any pool
+     * without creating a new one.
+     */
+    static long hits() { return hits.sum(); }
+
+    /**
+     * Returns the total number of flaters which had to get created because
+     * their pool was empty.
+     */
+    static long misses() { return misses.sum(); }
+
+    /**
+     * Returns an idle flater from this pool or a new one if this pool is
+     * empty.
+     */
+    final F take() {
+        final F flater = idle.poll();
+        if (null != flater) {
+            hits.increment();
+            return flater;
+        } else {
+            misses.increment();
+            return create();
+        }
+    }
+
+    /**
+     * Resets the given flater and returns it to this pool.
+     * The flater must have been taken from this pool and must not get used
+     * by the caller subsequently.
+     */
+    final void release(final F flater) {
+        reset(flater);
+        if (!idle.offer(flater)) end(flater);
+    }
+
+    abstract F create();
+
+    abstract void reset(F flater);
+
+    abstract void end(F flater);
+
+    private static final class DeflaterPool extends FlaterPool<Deflater> {
+        final int level;
+
+        DeflaterPool(final int level) { this.level = level; }
+
+        @Override
+        Deflater create() { return new Deflater(level, true); }
+
+        @Override
+        void reset(Deflater deflater) { deflater.reset(); }
+
+        @Override
+        void end(Deflater deflater) { deflater.end(); }
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.comp.zip;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import javax.annotation.CheckForNull;
+import javax.annotation.WillNotClose;
+import javax.annotation.concurrent.NotThreadSafe;
+import static net.java.truevfs.comp.zip.Constants.MAX_FLATER_BUF_LENGTH;
+
+/**
+ * An output stream which deflates its data in fixed size blocks in parallel,
+ * just like {@code pigz} does.
+ * Each block gets deflated by a task on the given executor, using the last
+ * 32 KB of the previous block as the preset dictionary.
+ * Each block except the last gets terminated with a sync flush, so that the
+ * deflated blocks can get concatenated to a single raw deflate stream which
+ * is compatible to any inflater.
+ * The CRC-32 values of the blocks get combined to the CRC-32 value of all
+ * data.
+ * <p>
+ * You must call {@link #finish()} after writing all data.
+ * Closing this stream is not supported.
+ *
+ * @author Christian Schlichtherle
+ */
+@NotThreadSafe
+final class ParallelDeflaterOutputStream extends OutputStream {
+
+    /** The maximum size of the preset dictionary for raw deflate. */
+    private static final int MAX_DICTIONARY_LENGTH = 32 * 1024;
+
+    private final OutputStream out;
+    private final int level, blockSize, maxPending;
+    private final Executor executor;
+    private final Deque<FutureTask<Block>> pending = new ArrayDeque<>();
+
+    private byte[] block;
+    private int count;
+    private @CheckForNull byte[] previous;
+    private long crc, bytesRead;
+
+    /**
+     * Constructs a new parallel deflater output stream.
+     *
+     * @param out the output stream to write the raw deflate stream to.
+     * @param level the compression level.
+     * @param blockSize the size of the blocks.
+     * @param executor the executor for deflating the blocks.
+     * @param maxPending the maximum number of pending blocks.
+     */
+    ParallelDeflaterOutputStream(
+            final @WillNotClose OutputStream out,
+            final int level,
+            final int blockSize,
+            final Executor executor,
+            final int maxPending) {
+        assert 0 < blockSize;
+        assert 0 < maxPending;
+        this.out = out;
+        this.level = level;
+        this.blockSize = blockSize;
+        this.executor = executor;
+        this.maxPending = maxPending;
+        this.block = new byte[blockSize];
+    }
+
+    /** Returns the CRC-32 value of all data written so far. */
+    long getCrc() { return crc; }
+
+    /**
+     * Returns the total number of uncompressed bytes which have been
+     * deflated and written to the underlying output stream so far.
+     */
+    long getBytesRead() { return bytesRead; }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(final byte[] b, int off, int len) throws IOException {
+        while (0 < len) {
+            final int n = Math.min(len, blockSize - count);
+            System.arraycopy(b, off, block, count, n);
+            count += n;
+            off += n;
+            len -= n;
+            if (blockSize == count) submit(false);
+        }
+    }
+
+    /**
+     * Deflates the remaining data and writes all pending blocks to the
+     * underlying output stream.
+     * The last block is terminated with a final deflate block.
+     */
+    void finish() throws IOException {
+        submit(true);
+        while (!pending.isEmpty()) writeHead();
+    }
+
+    private void submit(final boolean last) throws IOException {
+        final byte[] input = block, dictionary = previous;
+        final int length = count;
+        final int level = this.level;
+        final FutureTask<Block> task = new FutureTask<>(
+                () -> new Block(input, length, dictionary, level, last));
+        pending.add(task);
+        executor.execute(task);
+        previous = input;
+        if (!last) block = new byte[blockSize];
+        count = 0;
+        FutureTask<Block> head;
+        while (null != (head = pending.peek())
+                && (maxPending < pending.size() || head.isDone()))
+            writeHead();
+    }
+
+    private void writeHead() throws IOException {
+        final FutureTask<Block> task = pending.remove();
+        final Block block;
+        try {
+            block = task.get();
+        } catch (final InterruptedException ex) {
+            cancel();
+            Thread.currentThread().interrupt();
+            throw (IOException) new InterruptedIOException().initCause(ex);
+        } catch (final ExecutionException ex) {
+            cancel();
+            final Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new IOException(cause);
+        }
+        block.deflated.writeTo(out);
+        crc = crc32Combine(crc, block.crc, block.length);
+        bytesRead += block.length;
+    }
+
+    private void cancel() {
+        for (final FutureTask<Block> task : pending) task.cancel(true);
+        pending.clear();
+    }
+
+    /**
+     * Returns the CRC-32 value of the concatenation of two byte sequences,
+     * given their CRC-32 values and the length of the second sequence.
+     * This is a port of {@code crc32_combine()} from zlib.
+     */
+    static long crc32Combine(long crc1, final long crc2, long len2) {
+        if (0 >= len2) return crc1;
+        final long[] even = new long[32]; // even-power-of-two zeros operator
+        final long[] odd = new long[32]; // odd-power-of-two zeros operator
+        // Put operator for one zero bit in odd.
+        odd[0] = 0xedb88320L; // CRC-32 polynomial
+        long row = 1;
+        for (int n = 1; n < 32; n++) {
+            odd[n] = row;
+            row <<= 1;
+        }
+        gf2MatrixSquare(even, odd); // put operator for two zero bits in even
+        gf2MatrixSquare(odd, even); // put operator for four zero bits in odd
+        // Apply len2 zeros to crc1 (first square will put the operator for
+        // one zero byte, eight zero bits, in even).
+        do {
+            gf2MatrixSquare(even, odd);
+            if (0 != (len2 & 1)) crc1 = gf2MatrixTimes(even, crc1);
+            len2 >>>= 1;
+            if (0 == len2) break;
+            gf2MatrixSquare(odd, even);
+            if (0 != (len2 & 1)) crc1 = gf2MatrixTimes(odd, crc1);
+            len2 >>>= 1;
+        } while (0 != len2);
+        return crc1 ^ crc2;
+    }
+
+    private static long gf2MatrixTimes(final long[] mat, long vec) {
+        long sum = 0;
+        for (int i = 0; 0 != vec; i++, vec >>>= 1)
+            if (0 != (vec & 1)) sum ^= mat[i];
+        return sum;
+    }
+
+    private static void gf2MatrixSquare(final long[] square, final long[] mat) {
+        for (int n = 0; n < 32; n++) square[n] = gf2MatrixTimes(mat, mat[n]);
+    }
+
+    /** A deflated block. */
+    private static final class Block {
+        final ByteArrayOutputStream deflated;
+        final long crc;
+        final int length;
+
+        Block(  final byte[] input,
+                final int length,
+                final @CheckForNull byte[] dictionary,
+                final int level,
+                final boolean last) {
+            final CRC32 crc = new CRC32();
+            crc.update(input, 0, length);
+            this.crc = crc.getValue();
+            this.length = length;
+            this.deflated = new ByteArrayOutputStream(length / 2 + 64);
+            final FlaterPool<Deflater> pool = FlaterPool.deflaters(level);
+            final Deflater deflater = pool.take();
+            try {
+                if (null != dictionary) {
+                    final int n = Math.min(MAX_DICTIONARY_LENGTH,
+                            dictionary.length);
+                    deflater.setDictionary(dictionary, dictionary.length - n, n);
+                }
+                deflater.setInput(input, 0, length);
+                final byte[] buf = new byte[MAX_FLATER_BUF_LENGTH];
+                if (last) {
+                    deflater.finish();
+                    while (!deflater.finished())
+                        deflated.write(buf, 0, deflater.deflate(buf));
+                } else {
+                    int n;
+                    do {
+                        n = deflater.deflate(buf, 0, buf.length,
+                                Deflater.SYNC_FLUSH);
+                        deflated.write(buf, 0, n);
+                    } while (n == buf.length);
+                }
+            } finally {
+                pool.release(deflater);
+            }
+        }
+    } // Block
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.comp.zip;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.CRC32;
+import javax.annotation.CheckForNull;
+import javax.annotation.WillNotClose;
+import javax.annotation.concurrent.NotThreadSafe;
+import net.java.truecommons.io.Source;
+import static net.java.truevfs.comp.zip.Constants.MAX_FLATER_BUF_LENGTH;
+import static net.java.truevfs.comp.zip.ZipEntry.DEFLATED;
+import static net.java.truevfs.comp.zip.ZipEntry.UNKNOWN;
+
+/**
+ * Writes entries to a ZIP output stream while deflating several of them
+ * concurrently.
+ * <p>
+ * Each submitted entry which is to be {@link ZipEntry#DEFLATED} and not
+ * encrypted gets deflated into a buffer in memory by a task on the given
+ * executor.
+ * The entries get written to the ZIP output stream in the order of their
+ * submission, using
+ * {@link AbstractZipOutputStream#putNextEntry(ZipEntry, boolean) putNextEntry(entry, false)}
+ * for the deflated entries, so the throughput scales with the number of
+ * threads of the executor.
+ * Any other entries, including entries which are known to be larger than
+ * {@link #MAX_BUFFERED_SIZE} bytes, get processed by the ZIP output stream
+ * on the current thread once it's their turn.
+ * If the size of an entry is unknown, then its deflating task gives up as
+ * soon as it has read more than {@link #MAX_BUFFERED_SIZE} bytes and the
+ * entry gets processed by the ZIP output stream instead, reading its source
+ * again.
+ * <p>
+ * At most the given maximum number of entries are pending, so this is also
+ * the maximum number of entry buffers in memory.
+ * A submitted entry must not get modified until it has been written.
+ * When done, this writer needs to get {@linkplain #close() closed}, which
+ * writes the pending entries, but does not close the ZIP output stream.
+ *
+ * @param  <E> the type of the ZIP entries.
+ * @author Christian Schlichtherle
+ */
+@NotThreadSafe
+public final class ParallelZipWriter<E extends ZipEntry>
+implements Flushable, Closeable {
+
+    /**
+     * The maximum uncompressed size of an entry which gets deflated in
+     * parallel, which is {@value} bytes.
+     */
+    public static final long MAX_BUFFERED_SIZE = 64 * 1024 * 1024;
+
+    private final AbstractZipOutputStream<E> out;
+    private final Executor executor;
+    private final int maxPending;
+    private final long maxBuffered;
+    private final Deque<Task> pending = new ArrayDeque<>();
+
+    /**
+     * Constructs a new parallel ZIP writer.
+     *
+     * @param out the ZIP output stream to write the entries to.
+     * @param executor the executor for deflating the entries.
+     * @param maxPending the maximum number of pending entries, which is
+     *        typically a small multiple of the number of threads of the
+     *        executor.
+     */
+    public ParallelZipWriter(
+            final @WillNotClose AbstractZipOutputStream<E> out,
+            final Executor executor,
+            final int maxPending) {
+        this(out, executor, maxPending, MAX_BUFFERED_SIZE);
+    }
+
+    ParallelZipWriter(
+            final @WillNotClose AbstractZipOutputStream<E> out,
+            final Executor executor,
+            final int maxPending,
+            final long maxBuffered) {
+        this.out = Objects.requireNonNull(out);
+        this.executor = Objects.requireNonNull(executor);
+        if (0 >= maxPending)
+            throw new IllegalArgumentException("maxPending must be positive!");
+        this.maxPending = maxPending;
+        this.maxBuffered = maxBuffered;
+    }
+
+    /**
+     * Submits the given entry with the data from the given source for
+     * writing.
+     * If there are too many pending entries, then this method blocks until
+     * the first of them has been written.
+     *
+     * @param  entry the entry to write.
+     * @param  source the source for the entry data.
+     * @throws IOException on any I/O error when writing a pending entry.
+     * @throws RejectedExecutionException if the executor rejects the task for
+     *         deflating the entry.
+     *         In this case, the entry does not get submitted.
+     */
+    public void submit(final E entry, final Source source) throws IOException {
+        final Task task = new Task(entry, source);
+        if (null != task.future) executor.execute(task.future);
+        pending.add(task);
+        Task head;
+        while (null != (head = pending.peek())
+                && (maxPending < pending.size() || head.isDone()))
+            write();
+    }
+
+    /**
+     * Writes all pending entries to the ZIP output stream.
+     *
+     * @throws IOException on any I/O error.
+     */
+    @Override
+    public void flush() throws IOException {
+        while (!pending.isEmpty()) write();
+    }
+
+    /**
+     * Writes all pending entries to the ZIP output stream.
+     * The ZIP output stream does not get closed.
+     *
+     * @throws IOException on any I/O error.
+     */
+    @Override
+    public void close() throws IOException { flush(); }
+
+    private void write() throws IOException {
+        final Task task = pending.remove();
+        try {
+            task.write();
+        } catch (final IOException | RuntimeException ex) {
+            for (final Task t : pending)
+                if (null != t.future) t.future.cancel(true);
+            pending.clear();
+            throw ex;
+        }
+    }
+
+    private final class Task {
+        final E entry;
+        final Source source;
+        final @CheckForNull FutureTask<Deflated> future;
+
+        Task(final E entry, final Source source) {
+            this.entry = Objects.requireNonNull(entry);
+            this.source = Objects.requireNonNull(source);
+            int method = entry.getMethod();
+            if (UNKNOWN == method) method = out.getMethod();
+            final long size = entry.getSize();
+            if (DEFLATED == method
+                    && !entry.isEncrypted()
+                    && size <= maxBuffered) {
+                final int level = out.getLevel();
+                this.future = new FutureTask<>(() -> deflate(size, level));
+            } else {
+                this.future = null;
+            }
+        }
+
+        boolean isDone() { return null == future || future.isDone(); }
+
+        /**
+         * Returns the deflated data of the entry or {@code null} if the
+         * entry is larger than the maximum buffered size.
+         */
+        @CheckForNull Deflated deflate(final long size, final int level)
+        throws IOException {
+            final Deflated deflated = new Deflated(UNKNOWN == size
+                    ? MAX_FLATER_BUF_LENGTH
+                    : (int) Math.max(64, size / 2));
+            final long maxBuffered = ParallelZipWriter.this.maxBuffered;
+            final CRC32 crc = new CRC32();
+            final byte[] buf = new byte[MAX_FLATER_BUF_LENGTH];
+            try (InputStream in = source.stream()) {
+                final ZipDeflaterOutputStream dout = new ZipDeflaterOutputStream(
+                        deflated, level, MAX_FLATER_BUF_LENGTH);
+                try {
+                    long total = 0;
+                    for (int read; 0 <= (read = in.read(buf)); ) {
+                        if (maxBuffered < (total += read)) return null;
+                        crc.update(buf, 0, read);
+                        dout.write(buf, 0, read);
+                    }
+                    dout.finish();
+                    deflated.bytesRead = dout.getDeflater().getBytesRead();
+                } finally {
+                    dout.release();
+                }
+            }
+            deflated.crc = crc.getValue();
+            return deflated;
+        }
+
+        void write() throws IOException {
+            final E entry = this.entry;
+            final AbstractZipOutputStream<E> out = ParallelZipWriter.this.out;
+            final Deflated deflated = deflated();
+            if (null != deflated) {
+                entry.setMethod(DEFLATED);
+                entry.setCrc(deflated.crc);
+                entry.setSize(deflated.bytesRead);
+                entry.setCompressedSize(deflated.size());
+                out.putNextEntry(entry, false);
+                deflated.writeTo(out);
+            } else {
+                out.putNextEntry(entry);
+                final byte[] buf = new byte[MAX_FLATER_BUF_LENGTH];
+                try (InputStream in = source.stream()) {
+                    for (int read; 0 <= (read = in.read(buf)); )
+                        out.write(buf, 0, read);
+                }
+            }
+            out.closeEntry();
+        }
+
+        @CheckForNull Deflated deflated() throws IOException {
+            if (null == future) return null;
+            try {
+                return future.get();
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw (IOException) new InterruptedIOException(
+                        entry.getName()).initCause(ex);
+            } catch (final ExecutionException ex) {
+                final Throwable cause = ex.getCause();
+                if (cause instanceof IOException)
+                    throw (IOException) cause;
+                if (cause instanceof RuntimeException)
+                    throw (RuntimeException) cause;
+                if (cause instanceof Error)
+                    throw (Error) cause;
+                throw new IOException(cause);
+            }
+        }
+    } // Task
+
+    /** The deflated data of an entry. */
+    private static final class Deflated extends ByteArrayOutputStream {
+        long crc, bytesRead;
+
+        Deflated(int size) { super(size); }
+    }
+}
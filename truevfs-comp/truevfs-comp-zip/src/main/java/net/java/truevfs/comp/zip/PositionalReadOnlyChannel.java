@@ -0,0 +1,140 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.comp.zip;
+
+import net.java.truecommons.io.ReadOnlyChannel;
+
+import javax.annotation.WillNotClose;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * A read-only channel which provides access to an interval of a shared
+ * seekable byte channel without depending on or changing its position.
+ * <p>
+ * If the shared channel is a {@link FileChannel}, then its
+ * {@link FileChannel#read(ByteBuffer, long) positional read} method is used,
+ * so that any number of instances may read from it concurrently.
+ * Otherwise, each read atomically positions, reads and repositions the
+ * shared channel while holding its monitor, so that closing the shared
+ * channel while holding its monitor waits for any read in progress.
+ * In either case, an instance of this class keeps its own position, which is
+ * why it must not be used by multiple threads at the same time.
+ * <p>
+ * Note that closing an instance of this class does <em>not</em> close the
+ * shared channel!
+ *
+ * @author Christian Schlichtherle
+ */
+@NotThreadSafe
+final class PositionalReadOnlyChannel extends ReadOnlyChannel {
+    private final long start;
+    private final long size;
+    private long pos;
+    private boolean closed;
+
+    /**
+     * Constructs a new positional read-only channel.
+     *
+     * @param  channel the shared seekable byte channel.
+     * @param  start the start of the interval in the shared channel.
+     * @param  size the size of the interval.
+     * @throws IllegalArgumentException if the interval does not fit into the
+     *         shared channel.
+     * @throws IOException on any I/O error.
+     */
+    PositionalReadOnlyChannel(
+            final @WillNotClose SeekableByteChannel channel,
+            final long start,
+            final long size)
+    throws IOException {
+        super(channel);
+        if (start < 0 || size < 0 || channel.size() < start + size)
+            throw new IllegalArgumentException();
+        this.start = start;
+        this.size = size;
+    }
+
+    /**
+     * Returns {@code true} if and only if instances of this class can read
+     * from the given shared channel without any locking.
+     */
+    static boolean positional(SeekableByteChannel channel) {
+        return channel instanceof FileChannel;
+    }
+
+    @Override
+    public int read(final ByteBuffer dst) throws IOException {
+        checkOpen();
+        int remaining = dst.remaining();
+        if (0 >= remaining) return 0;
+        final long pos = this.pos;
+        final long available = size - pos;
+        if (0 >= available) return -1;
+        final int limit;
+        if (remaining > available) {
+            remaining = (int) available;
+            limit = dst.limit();
+            dst.limit(dst.position() + remaining);
+        } else {
+            limit = -1;
+        }
+        final int read;
+        try {
+            read = read(dst, start + pos);
+        } finally {
+            if (0 <= limit) dst.limit(limit);
+        }
+        if (0 < read) this.pos = pos + read;
+        return read;
+    }
+
+    private int read(final ByteBuffer dst, final long position)
+    throws IOException {
+        final SeekableByteChannel channel = this.channel;
+        if (positional(channel))
+            return ((FileChannel) channel).read(dst, position);
+        synchronized (channel) {
+            final long saved = channel.position();
+            try {
+                return channel.position(position).read(dst);
+            } finally {
+                channel.position(saved);
+            }
+        }
+    }
+
+    @Override
+    public long position() throws IOException {
+        checkOpen();
+        return pos;
+    }
+
+    @Override
+    public SeekableByteChannel position(final long pos) throws IOException {
+        if (0 > pos) throw new IllegalArgumentException();
+        checkOpen();
+        this.pos = pos;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        checkOpen();
+        return size;
+    }
+
+    @Override
+    public boolean isOpen() { return !closed && channel.isOpen(); }
+
+    @Override
+    public void close() throws IOException {
+        // Never close the shared channel!
+        closed = true;
+    }
+}
@@ -5,7 +5,7 @@
 package net.java.truevfs.comp.zip;
 
 import net.java.truevfs.comp.zip.crypto.CtrBlockCipher;
-import org.bouncycastle.crypto.engines.AESEngine;
+import net.java.truevfs.comp.zip.crypto.JceAesEngine;
 
 /**
  * Implements Counter (CTR) mode (alias Segmented Integer Counter - SIC)
@@ -21,20 +21,19 @@ final class WinZipAesCipher extends CtrBlockCipher {
 
     /**
      * Constructs a new block cipher mode for use with WinZip AES.
-     * This constructor uses an {@link AESEngine} as the underlying block
+     * This constructor uses a {@link JceAesEngine} as the underlying block
      * cipher.
      */
     WinZipAesCipher() {
-        super(new AESEngine());
+        super(new JceAesEngine());
     }
 
     @Override
-    protected void incCounter() {
-        final int blockSize = this.blockSize;
-        long blockCounter = ++this.blockCounter; // pre-increment the block counter!
+    protected void counter(long blockCounter, final byte[] block, final int off) {
+        blockCounter++; // pre-increment the block counter!
         for (int i = 0; i < blockSize; i++) { // little endian order!
             blockCounter += IV[i] & 0xff;
-            cipherIn[i] = (byte) blockCounter;
+            block[off + i] = (byte) blockCounter;
             blockCounter >>>= 8;
         }
     }
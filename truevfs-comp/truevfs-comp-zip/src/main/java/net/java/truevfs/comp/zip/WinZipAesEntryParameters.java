@@ -4,6 +4,8 @@
  */
 package net.java.truevfs.comp.zip;
 
+import java.net.URI;
+import javax.annotation.CheckForNull;
 import javax.annotation.concurrent.ThreadSafe;
 import net.java.truecommons.key.spec.common.AesKeyStrength;
 
@@ -46,4 +48,8 @@ final class WinZipAesEntryParameters {
     byte[] getReadPassword(boolean invalid) throws ZipKeyException {
         return param.getReadPassword(entry.getName(), invalid);
     }
+
+    @CheckForNull URI getKeyResource() {
+        return param.getKeyResource(entry.getName());
+    }
 }
\ No newline at end of file
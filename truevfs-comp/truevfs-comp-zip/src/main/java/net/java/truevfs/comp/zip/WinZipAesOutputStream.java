@@ -13,12 +13,12 @@ import net.java.truecommons.io.LittleEndianOutputStream;
 import net.java.truecommons.key.spec.KeyStrength;
 import net.java.truevfs.comp.zip.crypto.BufferedPartialBlockCipher;
 import net.java.truevfs.comp.zip.crypto.CipherOutputStream;
+import net.java.truevfs.comp.zip.crypto.PipelinedMacOutputStream;
 import org.bouncycastle.crypto.BufferedBlockCipher;
 import org.bouncycastle.crypto.Mac;
 import org.bouncycastle.crypto.PBEParametersGenerator;
 import org.bouncycastle.crypto.digests.SHA1Digest;
 import org.bouncycastle.crypto.generators.PKCS5S2ParametersGenerator;
-import org.bouncycastle.crypto.io.MacOutputStream;
 import org.bouncycastle.crypto.macs.HMac;
 import org.bouncycastle.crypto.params.KeyParameter;
 import org.bouncycastle.crypto.params.ParametersWithIV;
@@ -51,7 +51,7 @@ final class WinZipAesOutputStream extends DecoratingOutputStream {
     static final int PWD_VERIFIER_BITS = 16;
 
     /** The message authentication code (MAC) output stream. */
-    private final MacOutputStream mos;
+    private final PipelinedMacOutputStream mos;
 
     /**
      * The low level data output stream.
@@ -114,7 +114,7 @@ final class WinZipAesOutputStream extends DecoratingOutputStream {
 
             // Init chain of output streams as Encrypt-then-MAC.
             this.leos = leos;
-            mos = new MacOutputStream(mac);
+            mos = new PipelinedMacOutputStream(mac);
             out = new CipherOutputStream(cipher,
                     new TeeOutputStream(leos, mos));
 
@@ -4,6 +4,8 @@
  */
 package net.java.truevfs.comp.zip;
 
+import java.net.URI;
+import javax.annotation.CheckForNull;
 import net.java.truecommons.key.spec.common.AesKeyStrength;
 
 /**
@@ -107,4 +109,21 @@ public interface WinZipAesParameters extends ZipCryptoParameters {
      */
     void setKeyStrength(String name, AesKeyStrength keyStrength)
     throws ZipKeyException;
+
+    /**
+     * Returns the URI of the key manager resource for the WinZip AES entry
+     * with the given name.
+     * If not {@code null}, then the keys derived from the password bytes get
+     * cached in the
+     * {@link net.java.truevfs.comp.zip.crypto.DerivedKeyCache#SINGLETON}
+     * for this resource, so the implementation should evict them when the
+     * resource gets released.
+     * <p>
+     * The implementation in this interface returns {@code null}, so no keys
+     * get cached.
+     *
+     * @param  name the ZIP entry name.
+     * @return The URI of the key manager resource or {@code null}.
+     */
+    default @CheckForNull URI getKeyResource(String name) { return null; }
 }
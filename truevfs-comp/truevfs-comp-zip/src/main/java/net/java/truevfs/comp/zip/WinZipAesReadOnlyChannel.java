@@ -7,6 +7,7 @@ package net.java.truevfs.comp.zip;
 import edu.umd.cs.findbugs.annotations.CreatesObligation;
 import java.io.EOFException;
 import java.io.IOException;
+import java.net.URI;
 import java.nio.ByteBuffer;
 import java.nio.channels.SeekableByteChannel;
 import java.util.Arrays;
@@ -20,6 +21,7 @@ import net.java.truecommons.key.spec.util.SuspensionPenalty;
 import static net.java.truevfs.comp.zip.ExtraField.WINZIP_AES_ID;
 import static net.java.truevfs.comp.zip.WinZipAesOutputStream.*;
 import net.java.truevfs.comp.zip.crypto.CipherReadOnlyChannel;
+import net.java.truevfs.comp.zip.crypto.DerivedKeyCache;
 import net.java.truevfs.comp.zip.crypto.SeekableBlockCipher;
 import org.bouncycastle.crypto.Mac;
 import org.bouncycastle.crypto.PBEParametersGenerator;
@@ -46,6 +48,9 @@ final class WinZipAesReadOnlyChannel extends ReadOnlyChannel {
 
     private static final int MAC_SIZE = newMac().getMacSize();
 
+    /** The name of the key derivation function for the derived key cache. */
+    private static final String KDF_ALGORITHM = "PBKDF2WithHmacSHA1";
+
     private static Mac newMac() { return new HMac(new SHA1Digest()); }
 
     private final ByteBuffer authenticationCode;
@@ -115,41 +120,54 @@ final class WinZipAesReadOnlyChannel extends ReadOnlyChannel {
         authenticationCode = footer.buffer();
 
         // Derive cipher and MAC parameters.
+        // Yes, the password verifier is only a 16 bit value.
+        // So we must use the MAC for password verification, too.
+        // This is why only verified keys get cached.
         final PBEParametersGenerator gen = new PKCS5S2ParametersGenerator();
-        KeyParameter keyParam;
-        ParametersWithIV aesCtrParam;
-        KeyParameter sha1MacParam;
+        final DerivedKeyCache cache = DerivedKeyCache.SINGLETON;
+        final URI resource = param.getKeyResource();
+        final int keyBits = 2 * keyStrengthBits + PWD_VERIFIER_BITS;
+        byte[] key;
         long lastTry = 0; // don't enforce suspension on first prompt!
         do {
             final byte[] passwd = param.getReadPassword(0 != lastTry);
             assert null != passwd;
 
-            gen.init(passwd, salt.array(), ITERATION_COUNT);
-            // Here comes the strange part about WinZip AES encryption:
-            // Its unorthodox use of the Password-Based Key Derivation
-            // Function 2 (PBKDF2) of PKCS #5 V2.0 alias RFC 2898.
-            // Yes, the password verifier is only a 16 bit value.
-            // So we must use the MAC for password verification, too.
-            assert AES_BLOCK_SIZE_BITS <= keyStrengthBits;
-            keyParam = (KeyParameter) gen.generateDerivedParameters(
-                    2 * keyStrengthBits + PWD_VERIFIER_BITS);
+            final DerivedKeyCache.Key cacheKey = null == resource
+                    ? null
+                    : cache.key(resource, KDF_ALGORITHM, salt.array(),
+                        ITERATION_COUNT, keyBits, passwd);
+            key = null == cacheKey ? null : cache.get(cacheKey);
+            if (null == key) {
+                gen.init(passwd, salt.array(), ITERATION_COUNT);
+                // Here comes the strange part about WinZip AES encryption:
+                // Its unorthodox use of the Password-Based Key Derivation
+                // Function 2 (PBKDF2) of PKCS #5 V2.0 alias RFC 2898.
+                assert AES_BLOCK_SIZE_BITS <= keyStrengthBits;
+                key = ((KeyParameter) gen.generateDerivedParameters(keyBits))
+                        .getKey();
+                if (null != cacheKey && passwdVerifier.equals(ByteBuffer
+                        .wrap(key).position(2 * keyStrengthBytes)))
+                    cache.put(cacheKey, key);
+            }
             Arrays.fill(passwd, (byte) 0);
 
-            // Can you believe they "forgot" the nonce in the CTR mode IV?! :-(
-            final byte[] ctrIv = new byte[AES_BLOCK_SIZE_BITS / 8];
-            aesCtrParam = new ParametersWithIV(
-                    new KeyParameter(keyParam.getKey(), 0, keyStrengthBytes),
-                    ctrIv); // yes, the IV is an array of zero bytes!
-            sha1MacParam = new KeyParameter(
-                    keyParam.getKey(),
-                    keyStrengthBytes,
-                    keyStrengthBytes);
-
             lastTry = SuspensionPenalty.enforce(lastTry);
 
             // Verify password.
-        } while (!passwdVerifier.equals(ByteBuffer.wrap(
-                keyParam.getKey()).position(2 * keyStrengthBytes)));
+        } while (!passwdVerifier.equals(ByteBuffer.wrap(key)
+                .position(2 * keyStrengthBytes)));
+
+        // Can you believe they "forgot" the nonce in the CTR mode IV?! :-(
+        final byte[] ctrIv = new byte[AES_BLOCK_SIZE_BITS / 8];
+        final ParametersWithIV aesCtrParam = new ParametersWithIV(
+                new KeyParameter(key, 0, keyStrengthBytes),
+                ctrIv); // yes, the IV is an array of zero bytes!
+        final KeyParameter sha1MacParam = new KeyParameter(
+                key,
+                keyStrengthBytes,
+                keyStrengthBytes);
+        Arrays.fill(key, (byte) 0);
 
         // Init parameters and entry for authenticate().
         this.sha1MacParam = sha1MacParam;
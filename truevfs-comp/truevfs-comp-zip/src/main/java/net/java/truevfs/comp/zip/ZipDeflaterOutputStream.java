@@ -12,23 +12,48 @@ import java.util.zip.DeflaterOutputStream;
 /**
  * A deflater output stream which uses a custom {@link Deflater} and provides
  * access to it.
+ * The deflater gets taken from the
+ * {@link FlaterPool#deflaters(int) pool} for the given compression level and
+ * must get returned to it by calling {@link #release()}.
  * 
  * @author Christian Schlichtherle
  */
 final class ZipDeflaterOutputStream extends DeflaterOutputStream {
 
+    private final FlaterPool<Deflater> pool;
+    private boolean released;
+
     ZipDeflaterOutputStream(OutputStream out, int level, int size) {
-        super(out, new Deflater(level, true), size);
+        this(out, FlaterPool.deflaters(level), size);
+    }
+
+    private ZipDeflaterOutputStream(
+            final OutputStream out,
+            final FlaterPool<Deflater> pool,
+            final int size) {
+        super(out, pool.take(), size);
+        this.pool = pool;
     }
 
     Deflater getDeflater() {
         return def;
     }
 
+    /**
+     * Returns the deflater to its pool.
+     * This stream must not get used subsequently.
+     */
+    void release() {
+        if (!released) {
+            released = true;
+            pool.release(def);
+        }
+    }
+
     @Override
     public void close() throws IOException {
         assert false : "This method should never get called by the current implementation.";
-        def.end();
+        release();
         super.close();
     }
 }
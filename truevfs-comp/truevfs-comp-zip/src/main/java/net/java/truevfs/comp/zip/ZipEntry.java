@@ -4,6 +4,7 @@
  */
 package net.java.truevfs.comp.zip;
 
+import java.util.Arrays;
 import java.util.Formatter;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
@@ -13,6 +14,7 @@ import static net.java.truevfs.comp.zip.Constants.FORCE_ZIP64_EXT;
 import static net.java.truevfs.comp.zip.ExtraField.WINZIP_AES_ID;
 import static net.java.truevfs.comp.zip.ExtraField.ZIP64_HEADER_ID;
 import static net.java.truevfs.comp.zip.LittleEndian.readLong;
+import static net.java.truevfs.comp.zip.LittleEndian.readUShort;
 import static net.java.truevfs.comp.zip.LittleEndian.writeLong;
 
 /**
@@ -71,6 +73,13 @@ public class ZipEntry implements Cloneable {
      */
     public static final int BZIP2 = 12;
 
+    /**
+     * Method for <em>Zstandard</em> compressed entries.
+     *
+     * @see   #setMethod(int)
+     */
+    public static final int ZSTD = 93;
+
     /**
      * Pseudo compression method for WinZip AES encrypted entries.
      */
@@ -115,6 +124,17 @@ public class ZipEntry implements Cloneable {
      */
     private @CheckForNull ExtraFields fields;
 
+    /**
+     * The serialized extra fields as read from the central directory or
+     * {@code null} if they have been parsed into {@link #fields}.
+     * Reading the extra fields parses this array without retaining the
+     * result, so that reading never modifies this entry.
+     * Only modifying the extra fields replaces this array with
+     * {@link #fields}.
+     * This array may be shared with clones and must not get modified.
+     */
+    private @CheckForNull byte[] extra;
+
     /** Comment field. */
     private @CheckForNull String comment;
 
@@ -144,6 +164,7 @@ public class ZipEntry implements Cloneable {
         this.offset = template.offset;
         final ExtraFields templateFields = template.fields;
         this.fields = templateFields == null ? null : templateFields.clone();
+        this.extra = template.extra;
         this.comment = template.comment;
     }
 
@@ -204,13 +225,15 @@ public class ZipEntry implements Cloneable {
 
     final int getRawVersionNeededToExtract() {
         final int method = getRawMethod();
-        return BZIP2 == method
-                ? 46
-                : isZip64ExtensionsRequired()
-                    ? 45
-                    : DEFLATED == method || isDirectory()
-                        ? 20
-                        : 10;
+        return ZSTD == method
+                ? 63
+                : BZIP2 == method
+                    ? 46
+                    : isZip64ExtensionsRequired()
+                        ? 45
+                        : DEFLATED == method || isDirectory()
+                            ? 20
+                            : 10;
     }
 
     /** Returns the General Purpose Bit Flags. */
@@ -290,8 +313,8 @@ public class ZipEntry implements Cloneable {
      * @see    #getMethod()
      * @see    ZipOutputStream#setMethod(int)
      * @throws IllegalArgumentException If {@code method} is not
-     *         {@link #STORED}, {@link #DEFLATED}, {@link #BZIP2} or
-     *         {@link #UNKNOWN}.
+     *         {@link #STORED}, {@link #DEFLATED}, {@link #BZIP2},
+     *         {@link #ZSTD} or {@link #UNKNOWN}.
      */
     public final void setMethod(final int method) {
         switch (method) {
@@ -301,6 +324,7 @@ public class ZipEntry implements Cloneable {
             case STORED:
             case DEFLATED:
             case BZIP2:
+            case ZSTD:
                 this.method = (short) method;
                 setInit(METHOD, true);
                 break;
@@ -503,20 +527,63 @@ public class ZipEntry implements Cloneable {
         this.offset = offset;
     }
 
+    /**
+     * Returns the map of extra fields for reading.
+     * If the serialized extra fields from the central directory haven't been
+     * parsed yet, then a new map gets parsed from them without retaining it.
+     *
+     * @throws IllegalArgumentException if the serialized extra fields do not
+     *         conform to the ZIP File Format Specification.
+     */
+    private @CheckForNull ExtraFields fields()
+    throws IllegalArgumentException {
+        final byte[] extra = this.extra;
+        return null != extra ? parse(extra) : this.fields;
+    }
+
+    /**
+     * Returns the map of extra fields for modification, parsing the
+     * serialized extra fields from the central directory first if required.
+     *
+     * @throws IllegalArgumentException if the serialized extra fields do not
+     *         conform to the ZIP File Format Specification.
+     */
+    private @CheckForNull ExtraFields mutableFields()
+    throws IllegalArgumentException {
+        final byte[] extra = this.extra;
+        if (null != extra) {
+            this.fields = parse(extra);
+            this.extra = null;
+        }
+        return this.fields;
+    }
+
+    private static @CheckForNull ExtraFields parse(final byte[] extra)
+    throws IllegalArgumentException {
+        final ExtraFields fields = new ExtraFields();
+        try {
+            fields.readFrom(extra, 0, extra.length);
+        } catch (final IndexOutOfBoundsException ex) {
+            throw new IllegalArgumentException(ex);
+        }
+        fields.remove(ZIP64_HEADER_ID);
+        return 0 < fields.size() ? fields : null;
+    }
+
     final @Nullable ExtraField getExtraField(int headerId) {
-        final ExtraFields fields = this.fields;
+        final ExtraFields fields = fields();
         return fields == null ? null : fields.get(headerId);
     }
 
     final @Nullable ExtraField addExtraField(final ExtraField field) {
         assert null != field;
-        ExtraFields fields = this.fields;
+        ExtraFields fields = mutableFields();
         if (null == fields) this.fields = fields = new ExtraFields();
         return fields.add(field);
     }
 
     final @Nullable ExtraField removeExtraField(final int headerId) {
-        final ExtraFields fields = this.fields;
+        final ExtraFields fields = mutableFields();
         return null != fields ? fields.remove(headerId) : null;
     }
 
@@ -546,9 +613,10 @@ public class ZipEntry implements Cloneable {
     throws IllegalArgumentException {
         if (null != buf) {
             UShort.check(buf.length, "extra fields too large", null);
-            setExtraFields(buf, false);
+            setExtraFields(buf);
         } else {
             this.fields = null;
+            this.extra = null;
         }
     }
 
@@ -565,17 +633,79 @@ public class ZipEntry implements Cloneable {
      * Sets extra fields and parses ZIP64 extra field.
      * This method <em>must not</em> get called before the uncompressed size,
      * compressed size and offset have been initialized!
+     * <p>
+     * Only the ZIP64 Extended Information extra field gets parsed by this
+     * method.
+     * Any other extra fields are kept in their serialized form, so mounting a
+     * central directory does not need to create a map of extra fields per
+     * entry.
      *
      * @throws IllegalArgumentException if the serialized extra fields do not
      *         conform to the ZIP File Format Specification.
      */
     final void setRawExtraFields(final byte[] buf)
     throws IllegalArgumentException {
-        setExtraFields(buf, true);
+        setRawExtraFields(buf, 0, buf.length);
+    }
+
+    /**
+     * Like {@link #setRawExtraFields(byte[])}, but reads the serialized extra
+     * fields from the given range of the given array, which may be a reused
+     * scratch buffer.
+     * The serialized extra fields get copied only if they contain any extra
+     * fields other than the ZIP64 Extended Information extra field.
+     *
+     * @throws IllegalArgumentException if the serialized extra fields do not
+     *         conform to the ZIP File Format Specification.
+     */
+    final void setRawExtraFields(final byte[] buf, final int off, final int len)
+    throws IllegalArgumentException {
+        if (parseRawExtraFields(buf, off, len))
+            this.extra = Arrays.copyOfRange(buf, off, off + len);
+    }
+
+    /**
+     * Parses the ZIP64 Extended Information extra field, if present, and
+     * returns {@code true} if and only if there are any other extra fields.
+     *
+     * @throws IllegalArgumentException if the serialized extra fields do not
+     *         conform to the ZIP File Format Specification.
+     */
+    private boolean parseRawExtraFields(
+            final byte[] buf,
+            final int off,
+            final int len)
+    throws IllegalArgumentException {
+        assert UShort.check(len);
+        this.fields = null;
+        this.extra = null;
+        final int end = off + len;
+        int zip64 = -1, zip64Size = 0;
+        boolean other = false;
+        try {
+            for (int i = off; i < end; ) {
+                if (end - i < 4) throw new IndexOutOfBoundsException();
+                final int headerId = readUShort(buf, i);
+                final int dataSize = readUShort(buf, i + 2);
+                i += 4;
+                if (end - i < dataSize) throw new IndexOutOfBoundsException();
+                if (ZIP64_HEADER_ID == headerId) {
+                    zip64 = i;
+                    zip64Size = dataSize;
+                } else {
+                    other = true;
+                }
+                i += dataSize;
+            }
+            if (0 <= zip64) parseZip64ExtraField(buf, zip64, zip64Size);
+        } catch (final IndexOutOfBoundsException ex) {
+            throw new IllegalArgumentException(ex);
+        }
+        return other;
     }
 
     private byte[] getExtraFields(final boolean zip64) {
-        ExtraFields fields = this.fields;
+        ExtraFields fields = fields();
         if (zip64) {
             final ExtraField field = composeZip64ExtraField();
             if (null != field) {
@@ -592,22 +722,11 @@ public class ZipEntry implements Cloneable {
      * @throws IllegalArgumentException if the serialized extra fields do not
      *         conform to the ZIP File Format Specification.
      */
-    private void setExtraFields(final byte[] buf, final boolean zip64)
+    private void setExtraFields(final byte[] buf)
     throws IllegalArgumentException {
         assert UShort.check(buf.length);
-        if (0 < buf.length) {
-            final ExtraFields fields = new ExtraFields();
-            try {
-                fields.readFrom(buf, 0, buf.length);
-                if (zip64) parseZip64ExtraField(fields);
-            } catch (final IndexOutOfBoundsException ex) {
-                throw new IllegalArgumentException(ex);
-            }
-            fields.remove(ZIP64_HEADER_ID);
-            this.fields = 0 < fields.size() ? fields : null;
-        } else {
-            this.fields = null;
-        }
+        this.fields = 0 < buf.length ? parse(buf) : null;
+        this.extra = null;
     }
 
     /**
@@ -649,20 +768,22 @@ public class ZipEntry implements Cloneable {
     }
 
     /**
-     * Parses the properties of this entry from the ZIP64 Extended Information
-     * extra field, if present.
-     * The ZIP64 Extended Information extra field is <em>not</em> removed.
+     * Parses the properties of this entry from the data block of the ZIP64
+     * Extended Information extra field starting at the zero based offset
+     * {@code off} with {@code len} bytes length in the byte array
+     * {@code data}.
      */
-    private void parseZip64ExtraField(final ExtraFields fields)
+    private void parseZip64ExtraField(
+            final byte[] data,
+            int off,
+            final int len)
     throws IndexOutOfBoundsException {
-        final ExtraField ef = fields.get(ZIP64_HEADER_ID);
-        if (null == ef) return;
-        final byte[] data = ef.getDataBlock();
-        int off = 0;
+        final int end = off + len;
         // Read in Uncompressed Size.
         final long size = getRawSize();
         if (UInt.MAX_VALUE <= size) {
             assert UInt.MAX_VALUE == size;
+            if (end - off < 8) throw new IndexOutOfBoundsException();
             setRawSize(readLong(data, off));
             off += 8;
         }
@@ -670,6 +791,7 @@ public class ZipEntry implements Cloneable {
         final long csize = getRawCompressedSize();
         if (UInt.MAX_VALUE <= csize) {
             assert UInt.MAX_VALUE == csize;
+            if (end - off < 8) throw new IndexOutOfBoundsException();
             setRawCompressedSize(readLong(data, off));
             off += 8;
         }
@@ -677,6 +799,7 @@ public class ZipEntry implements Cloneable {
         final long offset = getRawOffset();
         if (UInt.MAX_VALUE <= offset) {
             assert UInt.MAX_VALUE == offset;
+            if (end - off < 8) throw new IndexOutOfBoundsException();
             setRawOffset(readLong(data, off));
             //off += 8;
         }
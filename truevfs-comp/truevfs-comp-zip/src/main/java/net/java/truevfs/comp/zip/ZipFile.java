@@ -6,21 +6,19 @@ package net.java.truevfs.comp.zip;
 
 import java.io.EOFException;
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.charset.Charset;
-import static java.nio.file.Files.newByteChannel;
 import java.nio.file.Path;
+import static java.nio.file.StandardOpenOption.READ;
 import java.util.Enumeration;
 import java.util.Iterator;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.Objects;
 import java.util.zip.ZipException;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
 import net.java.truecommons.io.AbstractSource;
-import net.java.truecommons.io.LockInputStream;
 import net.java.truecommons.io.OneTimeSource;
 
 /**
@@ -39,6 +37,13 @@ import net.java.truecommons.io.OneTimeSource;
  * Note that the entries returned by this class are instances of
  * {@code net.truevfs.kernel.io.zip.ZipEntry} instead of
  * {@code java.util.zip.ZipEntry}.
+ * <p>
+ * This class does not serialize access to its entries: Any number of threads
+ * may concurrently read different entries, provided that each input stream
+ * is used by only one thread at a time.
+ * When opened from a {@link Path}, the entry data is read using positional
+ * reads on a {@link java.nio.channels.FileChannel}, so this works without
+ * any locking.
  *
  * @see    ZipOutputStream
  * @author Christian Schlichtherle
@@ -46,9 +51,6 @@ import net.java.truecommons.io.OneTimeSource;
 @ThreadSafe
 public class ZipFile extends AbstractZipFile<ZipEntry> {
 
-    /** The lock on which this object synchronizes. */
-    private final Lock lock = new ReentrantLock();
-
     private final String name;
 
     private volatile @CheckForNull ZipCryptoParameters cryptoParameters;
@@ -113,6 +115,69 @@ public class ZipFile extends AbstractZipFile<ZipEntry> {
         this.name = file.toString();
     }
 
+    /**
+     * Opens the given {@code file} for reading its entries and optionally
+     * retains its central directory rather than creating all entries.
+     *
+     * @param  file the file.
+     * @param  charset the charset to use for decoding entry names and ZIP file
+     *         comment.
+     * @param  preambled see {@link #ZipFile(Path, Charset, boolean, boolean)}.
+     * @param  postambled see {@link #ZipFile(Path, Charset, boolean, boolean)}.
+     * @param  retain if this is {@code true}, then the central directory gets
+     *         retained and the entries get created on demand.
+     * @throws ZipException if the file data is not compatible with the ZIP
+     *         File Format Specification.
+     * @throws EOFException on unexpected end-of-file.
+     * @throws IOException on any I/O error.
+     * @see    ZipFileParameters#getRetainCentralDirectory()
+     * @since  TrueVFS 0.15.0
+     */
+    public ZipFile(
+            final Path file,
+            final Charset charset,
+            final boolean preambled,
+            final boolean postambled,
+            final boolean retain)
+    throws ZipException, EOFException, IOException {
+        super(  new ZipSource(file),
+                new DefaultZipFileParameters(
+                    charset, preambled, postambled, retain));
+        this.name = file.toString();
+    }
+
+    /**
+     * Opens the given {@code file} for reading its entries and uses the given
+     * index to load its central directory from or store it to.
+     * When opening an unchanged ZIP file again, this avoids reading its
+     * central directory.
+     *
+     * @param  file the file.
+     * @param  charset the charset to use for decoding entry names and ZIP file
+     *         comment.
+     * @param  preambled see {@link #ZipFile(Path, Charset, boolean, boolean)}.
+     * @param  postambled see {@link #ZipFile(Path, Charset, boolean, boolean)}.
+     * @param  index the central directory index.
+     * @throws ZipException if the file data is not compatible with the ZIP
+     *         File Format Specification.
+     * @throws EOFException on unexpected end-of-file.
+     * @throws IOException on any I/O error.
+     * @see    #recoverLostEntries()
+     */
+    public ZipFile(
+            final Path file,
+            final Charset charset,
+            final boolean preambled,
+            final boolean postambled,
+            final CentralDirectoryIndex index)
+    throws ZipException, EOFException, IOException {
+        super(  new ZipSource(file),
+                new DefaultZipFileParameters(charset, preambled, postambled),
+                Objects.requireNonNull(index),
+                CentralDirectoryIndex.key(file));
+        this.name = file.toString();
+    }
+
     /**
      * Equivalent to {@link #ZipFile(SeekableByteChannel, Charset, boolean, boolean)
      * ZipFile(rof, DEFAULT_CHARSET, true, false)}
@@ -258,42 +323,6 @@ public class ZipFile extends AbstractZipFile<ZipEntry> {
         return ze != null ? ze.clone() : null;
     }
 
-    @Override
-    @SuppressWarnings("deprecation")
-    public InputStream getPreambleInputStream() throws IOException {
-        final InputStream in;
-        lock.lock();
-        try {
-            in = super.getPreambleInputStream();
-        } finally {
-            lock.unlock();
-        }
-        return new LockInputStream(lock, in);
-    }
-
-    @Override
-    @SuppressWarnings("deprecation")
-    public InputStream getPostambleInputStream() throws IOException {
-        final InputStream in;
-        lock.lock();
-        try {
-            in = super.getPostambleInputStream();
-        } finally {
-            lock.unlock();
-        }
-        return new LockInputStream(lock, in);
-    }
-
-    @Override
-    public boolean busy() {
-        lock.lock();
-        try {
-            return super.busy();
-        } finally {
-            lock.unlock();
-        }
-    }
-
     @Override
     public @Nullable ZipCryptoParameters getCryptoParameters() {
         return cryptoParameters;
@@ -310,31 +339,6 @@ public class ZipFile extends AbstractZipFile<ZipEntry> {
         this.cryptoParameters = cryptoParameters;
     }
 
-    @Override
-    @SuppressWarnings("deprecation")
-    protected InputStream getInputStream(
-            String name, Boolean check, boolean process)
-    throws  IOException {
-        final InputStream in;
-        lock.lock();
-        try {
-            in = super.getInputStream(name, check, process);
-        } finally {
-            lock.unlock();
-        }
-        return in == null ? null : new LockInputStream(lock, in);
-    }
-
-    @Override
-    public void close() throws IOException {
-        lock.lock();
-        try {
-            super.close();
-        } finally {
-            lock.unlock();
-        }
-    }
-
     /**
      * A pool which allocates {@link SeekableByteChannel} objects for the
      * file provided to its constructor.
@@ -348,7 +352,7 @@ public class ZipFile extends AbstractZipFile<ZipEntry> {
 
         @Override
         public SeekableByteChannel channel() throws IOException {
-            return newByteChannel(file);
+            return FileChannel.open(file, READ);
         }
     } // ZipSource
 }
@@ -53,4 +53,28 @@ extends ZipCharsetParameters, ZipEntryFactory<E> {
      * @return The flag for supporting postambles of arbitrary length.
      */
     boolean getPostambled();
+
+    /**
+     * Returns the flag for retaining the central directory of a ZIP file.
+     * If this method returns {@code true}, then mounting a ZIP file doesn't
+     * create an entry for each of its Central File Headers.
+     * Instead, the Central File Headers get copied to a compact byte array
+     * and the entries get created by {@link #newEntry} upon each lookup or
+     * iteration, so the entries are not shared with the ZIP file anymore.
+     * This requires {@link #newEntry} to be thread-safe and to create entries
+     * with the given name.
+     * <p>
+     * This saves a lot of heap when reading a ZIP file with many entries
+     * unless the caller retains all entries anyway, e.g. when mounting an
+     * archive file system.
+     * If the entries get loaded from a {@link CentralDirectoryIndex}, then
+     * this flag gets ignored.
+     * <p>
+     * The implementation in the interface {@link ZipFileParameters} returns
+     * {@code false}.
+     *
+     * @return The flag for retaining the central directory of a ZIP file.
+     * @since  TrueVFS 0.15.0
+     */
+    default boolean getRetainCentralDirectory() { return false; }
 }
@@ -16,15 +16,19 @@ import javax.annotation.WillCloseWhenClosed;
 /**
  * An inflater input stream which uses a custom {@link Inflater} and provides
  * access to it.
+ * The inflater gets taken from the {@link FlaterPool#inflaters() pool} and
+ * returned to it when this stream gets closed.
  *
  * @author Christian Schlichtherle
  */
 @CleanupObligation
 final class ZipInflaterInputStream extends InflaterInputStream {
 
+    private boolean released;
+
     @CreatesObligation
     ZipInflaterInputStream(@WillCloseWhenClosed InputStream in, int size) {
-        super(in, new Inflater(true), size);
+        super(in, FlaterPool.inflaters().take(), size);
     }
 
     Inflater getInflater() {
@@ -34,7 +38,13 @@ final class ZipInflaterInputStream extends InflaterInputStream {
     @Override
     @DischargesObligation
     public void close() throws IOException {
-        super.close();
-        inf.end();
+        try {
+            super.close();
+        } finally {
+            if (!released) {
+                released = true;
+                FlaterPool.inflaters().release(inf);
+            }
+        }
     }
 }
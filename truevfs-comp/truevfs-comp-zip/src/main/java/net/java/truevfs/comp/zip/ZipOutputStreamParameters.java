@@ -32,8 +32,8 @@ extends ZipCharsetParameters {
      * Returns the default compression method for entries.
      * This property is only used if a {@link ZipEntry} does not specify a
      * compression method.
-     * Legal values are {@link ZipEntry#STORED}, {@link ZipEntry#DEFLATED}
-     * and {@link ZipEntry#BZIP2}.
+     * Legal values are {@link ZipEntry#STORED}, {@link ZipEntry#DEFLATED},
+     * {@link ZipEntry#BZIP2} and {@link ZipEntry#ZSTD}.
      *
      * @return The default compression method for entries.
      * @see    ZipEntry#getMethod
@@ -0,0 +1,64 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.comp.zip;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Provides read-only access to the statistics which get collected by this
+ * package while reading and writing ZIP files.
+ * The statistics are global to the class loader which loaded this class and
+ * they never get reset, so in order to measure a particular workload, take
+ * the difference of the values before and after it.
+ *
+ * @since  TrueVFS 0.15.0
+ * @author Christian Schlichtherle
+ */
+@ThreadSafe
+public final class ZipStatistics {
+
+    private ZipStatistics() { }
+
+    /**
+     * Returns the total number of inflaters and deflaters which have been
+     * taken from a pool without creating a new one.
+     *
+     * @return The total number of inflaters and deflaters which have been
+     *         taken from a pool without creating a new one.
+     */
+    public static long getFlaterPoolHits() { return FlaterPool.hits(); }
+
+    /**
+     * Returns the total number of inflaters and deflaters which had to get
+     * created because their pool was empty.
+     *
+     * @return The total number of inflaters and deflaters which had to get
+     *         created because their pool was empty.
+     */
+    public static long getFlaterPoolMisses() { return FlaterPool.misses(); }
+
+    /**
+     * Returns the total number of entries which the adaptive compression
+     * policy has decided to store, either with the method
+     * {@link ZipEntry#STORED} or in stored deflate blocks.
+     *
+     * @return The total number of entries which the adaptive compression
+     *         policy has decided to store.
+     * @see    AbstractZipOutputStream#setAdaptiveCompression(boolean)
+     */
+    public static long getStoredEntries() { return Compressibility.stored(); }
+
+    /**
+     * Returns the total number of entries which the adaptive compression
+     * policy has decided to compress.
+     *
+     * @return The total number of entries which the adaptive compression
+     *         policy has decided to compress.
+     * @see    AbstractZipOutputStream#setAdaptiveCompression(boolean)
+     */
+    public static long getCompressedEntries() {
+        return Compressibility.compressed();
+    }
+}
@@ -6,10 +6,16 @@ package net.java.truevfs.comp.zip.crypto;
 
 import org.bouncycastle.crypto.BlockCipher;
 import org.bouncycastle.crypto.BufferedBlockCipher;
+import org.bouncycastle.crypto.DataLengthException;
+import org.bouncycastle.crypto.OutputLengthException;
 
 /**
  * A buffered block cipher which allows a partial block when calling
  * {@link #doFinal(byte[], int)}.
+ * If the underlying cipher is a {@link SeekableBlockCipher}, then
+ * {@link #processBytes(byte[], int, int, byte[], int)} processes all
+ * complete blocks at once by calling
+ * {@link SeekableBlockCipher#processBlocks}.
  *
  * @author Christian Schlichtherle
  */
@@ -19,4 +25,49 @@ public final class BufferedPartialBlockCipher extends BufferedBlockCipher {
         super(cipher);
         partialBlockOkay = true;
     }
+
+    @Override
+    public int processBytes(
+            final byte[] in,
+            int inOff,
+            int len,
+            final byte[] out,
+            final int outOff)
+    throws DataLengthException, IllegalStateException {
+        if (!(cipher instanceof SeekableBlockCipher))
+            return super.processBytes(in, inOff, len, out, outOff);
+        if (len < 0)
+            throw new IllegalArgumentException("Can't have a negative input length!");
+        final int length = getUpdateOutputSize(len);
+        if (0 < length && out.length < outOff + length)
+            throw new OutputLengthException("output buffer too short");
+
+        final byte[] buf = this.buf;
+        final int blockSize = buf.length;
+        int resultLen = 0;
+        final int gapLen = blockSize - bufOff;
+        if (len > gapLen) {
+            System.arraycopy(in, inOff, buf, bufOff, gapLen);
+            resultLen += cipher.processBlock(buf, 0, out, outOff);
+            bufOff = 0;
+            len -= gapLen;
+            inOff += gapLen;
+            // Keep the last block buffered, just like the super class.
+            final int blocks = (len - 1) / blockSize;
+            if (0 < blocks) {
+                final int processed = ((SeekableBlockCipher) cipher)
+                        .processBlocks(in, inOff, blocks, out, outOff + resultLen);
+                resultLen += processed;
+                len -= processed;
+                inOff += processed;
+            }
+        }
+        System.arraycopy(in, inOff, buf, bufOff, len);
+        bufOff += len;
+        if (bufOff == blockSize) {
+            resultLen += cipher.processBlock(buf, 0, out, outOff + resultLen);
+            bufOff = 0;
+        }
+        return resultLen;
+    }
 }
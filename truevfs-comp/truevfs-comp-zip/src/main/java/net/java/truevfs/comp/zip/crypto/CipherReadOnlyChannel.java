@@ -11,6 +11,7 @@ import org.bouncycastle.crypto.Mac;
 
 import javax.annotation.WillCloseWhenClosed;
 import javax.annotation.concurrent.NotThreadSafe;
+import java.io.EOFException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.SeekableByteChannel;
@@ -165,27 +166,41 @@ public final class CipherReadOnlyChannel extends ReadOnlyChannel {
 
         if (total < remaining && pos < size && dst.hasArray()) {
             // Full read of block data in the middle.
+            assert pos % blockSize == 0;
             final SeekableBlockCipher cipher = this.cipher;
             final byte[] buffer = this.buffer;
             final byte[] dstArray = dst.array();
             final int dstArrayOffset = dst.arrayOffset();
-            int dstPosition = dst.position();
-            final int dstCapacity = dst.capacity();
-            long blockCounter = pos / blockSize;
-            while (total + blockSize <= remaining
-                    && dstPosition + blockSize <= dstCapacity
-                    && pos + blockSize <= size) {
-                assert pos % blockSize == 0;
-                positionBuffer();
-                cipher.setBlockCounter(blockCounter++);
-                final int bufferOff = (int) (pos - bufferStart);
-                final int blockLimit = cipher.processBlock(
-                        buffer, bufferOff,
-                        dstArray, dstArrayOffset + dstPosition);
-                assert blockLimit == blockSize;
-                dst.position(dstPosition += blockLimit);
-                total += blockLimit;
-                pos += blockLimit;
+            int blocks = (int) (min(remaining - total, size - pos) / blockSize);
+            if (buffer.length <= blocks * blockSize) {
+                // Read the encrypted data directly into the destination
+                // array and decrypt it in place.
+                // This allows the cipher to process all blocks at once.
+                final int off = dstArrayOffset + dst.position();
+                final int len = blocks * blockSize;
+                readFully(pos, ByteBuffer.wrap(dstArray, off, len));
+                cipher.setBlockCounter(pos / blockSize);
+                final int processed = cipher.processBlocks(
+                        dstArray, off, blocks, dstArray, off);
+                assert processed == len;
+                dst.position(dst.position() + len);
+                total += len;
+                pos += len;
+            } else {
+                while (0 < blocks) {
+                    positionBuffer();
+                    final int bufferOff = (int) (pos - bufferStart);
+                    final int n = min(blocks, (buffer.length - bufferOff) / blockSize);
+                    cipher.setBlockCounter(pos / blockSize);
+                    final int processed = cipher.processBlocks(
+                            buffer, bufferOff, n,
+                            dstArray, dstArrayOffset + dst.position());
+                    assert processed == n * blockSize;
+                    dst.position(dst.position() + processed);
+                    total += processed;
+                    pos += processed;
+                    blocks -= n;
+                }
             }
         }
 
@@ -220,6 +235,24 @@ public final class CipherReadOnlyChannel extends ReadOnlyChannel {
         return this;
     }
 
+    /**
+     * Reads the encrypted data at the given position into the given buffer
+     * until it's full.
+     * This bypasses and invalidates the buffer for the encrypted data.
+     *
+     * @throws IOException on any I/O error.
+     */
+    private void readFully(final long pos, final ByteBuffer dst)
+    throws IOException {
+        this.bufferStart = INVALID;
+        final SeekableByteChannel channel = this.channel;
+        channel.position(pos);
+        do {
+            if (0 > channel.read(dst))
+                throw new EOFException();
+        } while (dst.hasRemaining());
+    }
+
     /**
      * Positions the block so that it holds the decrypted data referenced by
      * the virtual file pointer.
@@ -4,6 +4,9 @@
  */
 package net.java.truevfs.comp.zip.crypto;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
 import org.bouncycastle.crypto.BlockCipher;
 import org.bouncycastle.crypto.CipherParameters;
 import org.bouncycastle.crypto.DataLengthException;
@@ -17,18 +20,35 @@ import org.bouncycastle.crypto.params.ParametersWithIV;
  * but allows random access to a block, too.
  * Like the {@link SICBlockCipher} class, the block counter is incremented
  * <em>after</em> updating the cipher input in <em>big endian</em> order.
+ * <p>
+ * When processing many blocks at once by calling {@link #processBlocks},
+ * the counter blocks get encrypted in bulk, which is much faster if the
+ * underlying block cipher is a {@link JceAesEngine}.
+ * If so, and if there are at least {@link #MIN_PARALLEL_SLICE} bytes per
+ * thread, then the counter space gets split into slices which get processed
+ * in parallel by the {@link ForkJoinPool#commonPool() common pool}.
  *
  * @author The Legion of the Bouncy Castle (majority of the code)
  * @author Christian Schlichtherle (optimizations and extension to support seeking)
  */
 public class CtrBlockCipher implements SeekableBlockCipher {
 
+    /**
+     * The minimum number of bytes per slice for processing blocks in
+     * parallel.
+     */
+    public static final int MIN_PARALLEL_SLICE = 256 * 1024;
+
+    /** The size of the buffer for encrypting counter blocks in bulk. */
+    private static final int KEYSTREAM_SIZE = 8 * 1024;
+
     protected final BlockCipher cipher;
     protected final int blockSize;
     protected long blockCounter;
     protected final byte[] IV;
     protected final byte[] cipherIn;
     protected final byte[] cipherOut;
+    private byte[] keystream;
 
     /**
      * Constructs a new CTR block cipher.
@@ -90,12 +110,108 @@ public class CtrBlockCipher implements SeekableBlockCipher {
         return blockSize;
     }
 
-    protected void incCounter() {
+    @Override
+    public int processBlocks(
+            final byte[] in,
+            final int inOff,
+            final int blockCount,
+            final byte[] out,
+            final int outOff) {
+        final int blockSize = this.blockSize;
+        final long blockCounter = this.blockCounter;
+        final int slices = cipher instanceof JceAesEngine
+                ? (int) Math.min(ForkJoinPool.getCommonPoolParallelism() + 1,
+                    (long) blockCount * blockSize / MIN_PARALLEL_SLICE)
+                : 1;
+        if (1 < slices) {
+            final int sliceBlocks = (blockCount + slices - 1) / slices;
+            final CompletableFuture<?>[] futures = new CompletableFuture<?>[slices - 1];
+            for (int i = 1; i < slices; i++) {
+                final int start = i * sliceBlocks;
+                final int count = Math.min(sliceBlocks, blockCount - start);
+                final int off = start * blockSize;
+                futures[i - 1] = CompletableFuture.runAsync(() ->
+                        process(((JceAesEngine) cipher).copy(),
+                                new byte[KEYSTREAM_SIZE],
+                                blockCounter + start,
+                                in, inOff + off, count, out, outOff + off),
+                        ForkJoinPool.commonPool());
+            }
+            process(cipher, keystream(), blockCounter,
+                    in, inOff, sliceBlocks, out, outOff);
+            try {
+                CompletableFuture.allOf(futures).join();
+            } catch (final CompletionException ex) {
+                final Throwable cause = ex.getCause();
+                if (cause instanceof RuntimeException)
+                    throw (RuntimeException) cause;
+                throw ex;
+            }
+        } else {
+            process(cipher, keystream(), blockCounter,
+                    in, inOff, blockCount, out, outOff);
+        }
+        this.blockCounter = blockCounter + blockCount;
+        return blockCount * blockSize;
+    }
+
+    private byte[] keystream() {
+        final byte[] keystream = this.keystream;
+        return null != keystream
+                ? keystream
+                : (this.keystream = new byte[KEYSTREAM_SIZE]);
+    }
+
+    /**
+     * Processes the given number of blocks using the given block cipher and
+     * buffer for the key stream.
+     */
+    private void process(
+            final BlockCipher cipher,
+            final byte[] keystream,
+            long blockCounter,
+            final byte[] in,
+            int inOff,
+            int blockCount,
+            final byte[] out,
+            int outOff) {
         final int blockSize = this.blockSize;
-        long blockCounter = this.blockCounter++; // post-increment the block counter!
+        final int maxBlocks = keystream.length / blockSize;
+        while (0 < blockCount) {
+            final int blocks = Math.min(blockCount, maxBlocks);
+            for (int i = 0; i < blocks; i++)
+                counter(blockCounter++, keystream, i * blockSize);
+            final int len = blocks * blockSize;
+            if (cipher instanceof JceAesEngine) {
+                ((JceAesEngine) cipher).processBlocks(
+                        keystream, 0, blocks, keystream, 0);
+            } else {
+                for (int off = 0; off < len; off += blockSize)
+                    cipher.processBlock(keystream, off, keystream, off);
+            }
+            for (int i = 0; i < len; i++)
+                out[outOff + i] = (byte) (in[inOff + i] ^ keystream[i]);
+            inOff += len;
+            outOff += len;
+            blockCount -= blocks;
+        }
+    }
+
+    protected void incCounter() {
+        counter(this.blockCounter++, cipherIn, 0); // post-increment the block counter!
+    }
+
+    /**
+     * Computes the cipher input for the block with the given index.
+     *
+     * @param blockCounter the index of the block.
+     * @param block the array for the cipher input.
+     * @param off the offset of the cipher input in the array.
+     */
+    protected void counter(long blockCounter, final byte[] block, final int off) {
         for (int i = blockSize; --i >= 0; ) { // big endian order!
             blockCounter += IV[i] & 0xff;
-            cipherIn[i] = (byte) blockCounter;
+            block[off + i] = (byte) blockCounter;
             blockCounter >>>= 8;
         }
     }
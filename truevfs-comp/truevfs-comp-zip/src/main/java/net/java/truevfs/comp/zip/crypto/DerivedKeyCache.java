@@ -0,0 +1,248 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.comp.zip.crypto;
+
+import java.net.URI;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import javax.annotation.CheckForNull;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import org.bouncycastle.crypto.Mac;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.macs.HMac;
+import org.bouncycastle.crypto.params.KeyParameter;
+
+/**
+ * A bounded cache for keys which have been derived from a password by a
+ * password based key derivation function (PBKDF).
+ * Deriving a key deliberately takes a lot of time, so caching the result
+ * avoids to repeat this work when opening the next WinZip AES entry with the
+ * same salt or when mounting the same RAES file again.
+ * <p>
+ * A cache entry is looked up by the URI of the key manager resource, the
+ * algorithm, the salt, the iteration count, the key size and a fingerprint of
+ * the password, so a changed password just misses the cache.
+ * The fingerprint is a HMAC-SHA-256 of the password with a random secret of
+ * this cache, so it's useless outside of this JVM.
+ * The derived keys are stored XOR-ed with a random pad and are wiped when
+ * their entry gets evicted because the cache is full or when their resource
+ * gets {@link #evict evicted}, e.g. when the file system gets unmounted.
+ *
+ * @author Christian Schlichtherle
+ */
+@ThreadSafe
+public final class DerivedKeyCache {
+
+    /** The default maximum number of cache entries. */
+    public static final int DEFAULT_MAX_ENTRIES = 128;
+
+    /** The cache which is shared by all key manager based parameters. */
+    public static final DerivedKeyCache SINGLETON =
+            new DerivedKeyCache(DEFAULT_MAX_ENTRIES);
+
+    private final SecureRandom random = new SecureRandom();
+    private final byte[] secret = new byte[32];
+    private final Map<Key, Value> map;
+
+    /**
+     * Constructs a new derived key cache.
+     *
+     * @param maxEntries the maximum number of cache entries.
+     */
+    public DerivedKeyCache(final int maxEntries) {
+        if (0 >= maxEntries)
+            throw new IllegalArgumentException(maxEntries + " <= 0");
+        random.nextBytes(secret);
+        map = new LinkedHashMap<Key, Value>(16, 0.75f, true) {
+            private static final long serialVersionUID = 0L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                    final Map.Entry<Key, Value> eldest) {
+                if (size() <= maxEntries) return false;
+                eldest.getValue().wipe();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Returns a new key for looking up a derived key in this cache.
+     *
+     * @param  resource the URI of the key manager resource.
+     * @param  algorithm the name of the key derivation function.
+     * @param  salt the salt.
+     * @param  iterationCount the iteration count.
+     * @param  keyBits the number of bits of the derived key.
+     * @param  password the password bytes.
+     *         These do not get retained by the returned key.
+     * @return A new key for this cache.
+     */
+    public Key key(
+            final URI resource,
+            final String algorithm,
+            final byte[] salt,
+            final int iterationCount,
+            final int keyBits,
+            final byte[] password) {
+        final Mac mac = new HMac(new SHA256Digest());
+        mac.init(new KeyParameter(secret));
+        mac.update(password, 0, password.length);
+        final byte[] fingerprint = new byte[mac.getMacSize()];
+        mac.doFinal(fingerprint, 0);
+        return new Key(resource, algorithm, salt.clone(), iterationCount,
+                keyBits, fingerprint);
+    }
+
+    /**
+     * Returns a copy of the derived key for the given cache key or
+     * {@code null} if it's not present.
+     * The caller should wipe the returned array when done.
+     *
+     * @param  key the cache key.
+     * @return A copy of the derived key or {@code null}.
+     */
+    public @CheckForNull byte[] get(final Key key) {
+        synchronized (map) {
+            final Value value = map.get(key);
+            return null == value ? null : value.unmask();
+        }
+    }
+
+    /**
+     * Puts a copy of the given derived key into this cache.
+     * This should only get called after the derived key has been verified.
+     *
+     * @param key the cache key.
+     * @param derived the derived key.
+     */
+    public void put(final Key key, final byte[] derived) {
+        final byte[] pad = new byte[derived.length];
+        random.nextBytes(pad);
+        final Value value = new Value(pad, derived);
+        synchronized (map) {
+            final Value old = map.put(key, value);
+            if (null != old) old.wipe();
+        }
+    }
+
+    /**
+     * Evicts and wipes all derived keys for the given resource.
+     * If the URI of the resource ends with a slash, then this includes all
+     * derived keys for resources within it, e.g. for the entries of a ZIP
+     * file.
+     *
+     * @param resource the URI of the key manager resource.
+     */
+    public void evict(final URI resource) {
+        final String prefix = resource.toString();
+        final boolean children = prefix.endsWith("/");
+        synchronized (map) {
+            for (final Iterator<Map.Entry<Key, Value>>
+                    i = map.entrySet().iterator(); i.hasNext(); ) {
+                final Map.Entry<Key, Value> entry = i.next();
+                final URI r = entry.getKey().resource;
+                if (r.equals(resource)
+                        || children && r.toString().startsWith(prefix)) {
+                    entry.getValue().wipe();
+                    i.remove();
+                }
+            }
+        }
+    }
+
+    /** Evicts and wipes all derived keys. */
+    public void clear() {
+        synchronized (map) {
+            for (final Value value : map.values()) value.wipe();
+            map.clear();
+        }
+    }
+
+    /** Returns the number of cache entries. */
+    public int size() {
+        synchronized (map) {
+            return map.size();
+        }
+    }
+
+    /** A key for looking up a derived key in a {@link DerivedKeyCache}. */
+    @Immutable
+    public static final class Key {
+        final URI resource;
+        final String algorithm;
+        final byte[] salt;
+        final int iterationCount, keyBits;
+        final byte[] fingerprint;
+
+        Key(    final URI resource,
+                final String algorithm,
+                final byte[] salt,
+                final int iterationCount,
+                final int keyBits,
+                final byte[] fingerprint) {
+            this.resource = Objects.requireNonNull(resource);
+            this.algorithm = Objects.requireNonNull(algorithm);
+            this.salt = salt;
+            this.iterationCount = iterationCount;
+            this.keyBits = keyBits;
+            this.fingerprint = fingerprint;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof Key)) return false;
+            final Key that = (Key) obj;
+            return this.iterationCount == that.iterationCount
+                    && this.keyBits == that.keyBits
+                    && this.resource.equals(that.resource)
+                    && this.algorithm.equals(that.algorithm)
+                    && Arrays.equals(this.salt, that.salt)
+                    && Arrays.equals(this.fingerprint, that.fingerprint);
+        }
+
+        @Override
+        public int hashCode() {
+            int c = 17;
+            c = 31 * c + resource.hashCode();
+            c = 31 * c + algorithm.hashCode();
+            c = 31 * c + Arrays.hashCode(salt);
+            c = 31 * c + iterationCount;
+            c = 31 * c + keyBits;
+            c = 31 * c + Arrays.hashCode(fingerprint);
+            return c;
+        }
+    } // Key
+
+    /** A derived key which is XOR-ed with a random pad. */
+    private static final class Value {
+        final byte[] pad, masked;
+
+        Value(final byte[] pad, final byte[] derived) {
+            this.pad = pad;
+            final byte[] masked = this.masked = new byte[derived.length];
+            for (int i = 0; i < masked.length; i++)
+                masked[i] = (byte) (derived[i] ^ pad[i]);
+        }
+
+        byte[] unmask() {
+            final byte[] derived = new byte[masked.length];
+            for (int i = 0; i < derived.length; i++)
+                derived[i] = (byte) (masked[i] ^ pad[i]);
+            return derived;
+        }
+
+        void wipe() {
+            Arrays.fill(pad, (byte) 0);
+            Arrays.fill(masked, (byte) 0);
+        }
+    } // Value
+}
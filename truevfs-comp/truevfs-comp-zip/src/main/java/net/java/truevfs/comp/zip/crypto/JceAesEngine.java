@@ -0,0 +1,158 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.comp.zip.crypto;
+
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import javax.annotation.CheckForNull;
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.crypto.Cipher;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import org.bouncycastle.crypto.BlockCipher;
+import org.bouncycastle.crypto.CipherParameters;
+import org.bouncycastle.crypto.DataLengthException;
+import org.bouncycastle.crypto.engines.AESEngine;
+import org.bouncycastle.crypto.params.KeyParameter;
+
+/**
+ * An AES engine which uses the {@code AES/ECB/NoPadding} cipher of the Java
+ * Cryptography Extension (JCE) rather than Bouncy Castle's {@link AESEngine}.
+ * On current JVMs, this cipher gets compiled to the AES instructions of the
+ * CPU, so it's several times faster, especially when processing many blocks
+ * at once by calling {@link #processBlocks}.
+ * <p>
+ * If the JCE rejects the key, e.g. because of a restrictive crypto policy
+ * which limits the key size, then this engine falls back to an
+ * {@link AESEngine}.
+ *
+ * @author Christian Schlichtherle
+ */
+@NotThreadSafe
+public final class JceAesEngine implements BlockCipher {
+
+    private static final int BLOCK_SIZE = 16;
+
+    private @CheckForNull Cipher cipher;
+    private @CheckForNull BlockCipher fallback;
+    private @CheckForNull SecretKeySpec key;
+    private boolean forEncryption;
+
+    @Override
+    public void init(
+            final boolean forEncryption,
+            final CipherParameters params) {
+        if (!(params instanceof KeyParameter))
+            throw new IllegalArgumentException("Invalid parameters passed to AES init - "
+                    + (null == params ? null : params.getClass().getName()));
+        final SecretKeySpec key = new SecretKeySpec(
+                ((KeyParameter) params).getKey(), "AES");
+        this.fallback = null;
+        this.cipher = null;
+        try {
+            this.cipher = newCipher(forEncryption, key);
+        } catch (final InvalidKeyException ex) {
+            final BlockCipher fallback = this.fallback = new AESEngine();
+            fallback.init(forEncryption, params);
+        }
+        this.key = key;
+        this.forEncryption = forEncryption;
+    }
+
+    private static Cipher newCipher(
+            final boolean forEncryption,
+            final SecretKeySpec key)
+    throws InvalidKeyException {
+        final Cipher cipher;
+        try {
+            cipher = Cipher.getInstance("AES/ECB/NoPadding");
+        } catch (final GeneralSecurityException ex) {
+            throw new IllegalStateException(ex);
+        }
+        cipher.init(forEncryption ? Cipher.ENCRYPT_MODE : Cipher.DECRYPT_MODE,
+                key);
+        return cipher;
+    }
+
+    /**
+     * Returns a new AES engine which is initialized with the same key and
+     * direction as this engine.
+     * This is used in order to process blocks in parallel.
+     *
+     * @throws IllegalStateException if this engine is not initialized.
+     */
+    public JceAesEngine copy() {
+        final SecretKeySpec key = this.key;
+        if (null == key)
+            throw new IllegalStateException("AES engine not initialised");
+        final JceAesEngine copy = new JceAesEngine();
+        copy.init(forEncryption, new KeyParameter(key.getEncoded()));
+        return copy;
+    }
+
+    @Override
+    public String getAlgorithmName() {
+        return "AES";
+    }
+
+    @Override
+    public int getBlockSize() {
+        return BLOCK_SIZE;
+    }
+
+    @Override
+    public int processBlock(
+            final byte[] in,
+            final int inOff,
+            final byte[] out,
+            final int outOff)
+    throws DataLengthException, IllegalStateException {
+        return processBlocks(in, inOff, 1, out, outOff);
+    }
+
+    /**
+     * Processes the given number of consecutive blocks.
+     * The input and output may be the same array region.
+     *
+     * @param  in the array with the input blocks.
+     * @param  inOff the offset of the first input block.
+     * @param  blockCount the number of blocks to process.
+     * @param  out the array for the output blocks.
+     * @param  outOff the offset of the first output block.
+     * @return The number of bytes processed.
+     */
+    public int processBlocks(
+            final byte[] in,
+            final int inOff,
+            final int blockCount,
+            final byte[] out,
+            final int outOff)
+    throws DataLengthException, IllegalStateException {
+        final int len = blockCount * BLOCK_SIZE;
+        if (in.length - len < inOff)
+            throw new DataLengthException("input buffer too short");
+        if (out.length - len < outOff)
+            throw new DataLengthException("output buffer too short");
+        final Cipher cipher = this.cipher;
+        if (null != cipher) {
+            try {
+                return cipher.update(in, inOff, len, out, outOff);
+            } catch (final ShortBufferException ex) {
+                throw new DataLengthException(ex.toString());
+            }
+        }
+        final BlockCipher fallback = this.fallback;
+        if (null == fallback)
+            throw new IllegalStateException("AES engine not initialised");
+        for (int off = 0; off < len; off += BLOCK_SIZE)
+            fallback.processBlock(in, inOff + off, out, outOff + off);
+        return len;
+    }
+
+    @Override
+    public void reset() {
+        // ECB mode without padding is stateless between blocks.
+    }
+}
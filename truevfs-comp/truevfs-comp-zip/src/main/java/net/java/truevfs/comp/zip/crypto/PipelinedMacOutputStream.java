@@ -0,0 +1,151 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.comp.zip.crypto;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import javax.annotation.concurrent.NotThreadSafe;
+import org.bouncycastle.crypto.Mac;
+import org.bouncycastle.crypto.io.MacOutputStream;
+
+/**
+ * Like Bouncy Castle's {@link MacOutputStream}, but updates the MAC on
+ * another thread so that computing the MAC overlaps with encrypting the next
+ * data.
+ * The data gets copied to chunks of {@value #CHUNK_SIZE} bytes, which get
+ * passed in order to a single task chain on the given executor.
+ * At most {@value #MAX_CHUNKS} chunks are in use, so a slow MAC eventually
+ * blocks the writer until the task for its oldest chunk has completed.
+ * Waiting for a task is done by {@link CompletableFuture#join()}, which lets
+ * a {@link ForkJoinPool} compensate for the blocked thread, so it's safe to
+ * use this stream on a thread of the common fork-join pool.
+ * If updating the MAC fails, then the exception gets rethrown by the next
+ * write or by {@link #getMac()}.
+ * Data which doesn't fill a chunk gets processed on the current thread when
+ * calling {@link #getMac()}, so there is no overhead for small data.
+ *
+ * @author Christian Schlichtherle
+ */
+@NotThreadSafe
+public final class PipelinedMacOutputStream extends OutputStream {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int MAX_CHUNKS = 4;
+
+    private final Mac mac;
+    private final Executor executor;
+
+    /**
+     * The tasks for the chunks which have been passed to the task chain,
+     * in order.
+     * Each task returns its chunk for reuse.
+     */
+    private final Deque<CompletableFuture<byte[]>> tasks =
+            new ArrayDeque<>(MAX_CHUNKS);
+
+    private int chunks = 1;
+    private byte[] chunk = new byte[CHUNK_SIZE];
+    private int count;
+    private CompletableFuture<?> tail = CompletableFuture.completedFuture(null);
+
+    /**
+     * Constructs a new pipelined MAC output stream which uses the common
+     * fork-join pool.
+     *
+     * @param mac the initialized MAC.
+     */
+    public PipelinedMacOutputStream(Mac mac) {
+        this(mac, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructs a new pipelined MAC output stream.
+     *
+     * @param mac the initialized MAC.
+     * @param executor the executor for updating the MAC.
+     */
+    public PipelinedMacOutputStream(final Mac mac, final Executor executor) {
+        this.mac = Objects.requireNonNull(mac);
+        this.executor = Objects.requireNonNull(executor);
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        if (chunk.length <= count) submit();
+        chunk[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(final byte[] b, int off, int len) throws IOException {
+        while (0 < len) {
+            if (chunk.length <= count) submit();
+            final int n = Math.min(len, chunk.length - count);
+            System.arraycopy(b, off, chunk, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /** Passes the current chunk to the task chain and gets another one. */
+    private void submit() {
+        final byte[] chunk = this.chunk;
+        final int count = this.count;
+        final Mac mac = this.mac;
+        final CompletableFuture<byte[]> task = tail.thenApplyAsync(v -> {
+            mac.update(chunk, 0, count);
+            return chunk;
+        }, executor);
+        tail = task;
+        tasks.add(task);
+        final CompletableFuture<byte[]> head = tasks.element();
+        final byte[] next;
+        if (head.isDone() || MAX_CHUNKS <= chunks) {
+            tasks.remove();
+            next = join(head);
+        } else {
+            chunks++;
+            next = new byte[CHUNK_SIZE];
+        }
+        this.chunk = next;
+        this.count = 0;
+    }
+
+    /**
+     * Waits until all data has been processed and returns the MAC.
+     *
+     * @return The MAC.
+     */
+    public byte[] getMac() {
+        join(tail);
+        tasks.clear();
+        final Mac mac = this.mac;
+        mac.update(chunk, 0, count);
+        count = 0;
+        final byte[] buf = new byte[mac.getMacSize()];
+        mac.doFinal(buf, 0);
+        return buf;
+    }
+
+    private static <T> T join(final CompletableFuture<T> task) {
+        try {
+            return task.join();
+        } catch (final CompletionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw ex;
+        }
+    }
+}
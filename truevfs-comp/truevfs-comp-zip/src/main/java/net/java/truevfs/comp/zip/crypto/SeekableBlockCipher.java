@@ -29,4 +29,35 @@ public interface SeekableBlockCipher extends BlockCipher {
      *        {@link #processBlock(byte[], int, byte[], int)} is called.
      */
     void setBlockCounter(long blockCounter);
+
+    /**
+     * Processes the given number of consecutive blocks, starting with the
+     * block at {@link #getBlockCounter()}.
+     * The input and output may be the same array region.
+     * <p>
+     * The implementation in this interface calls
+     * {@link #processBlock(byte[], int, byte[], int)} for each block.
+     * Implementations should override this in order to process many blocks
+     * at once.
+     *
+     * @param  in the array with the input blocks.
+     * @param  inOff the offset of the first input block.
+     * @param  blockCount the number of blocks to process.
+     * @param  out the array for the output blocks.
+     * @param  outOff the offset of the first output block.
+     * @return The number of bytes processed.
+     */
+    default int processBlocks(
+            final byte[] in,
+            final int inOff,
+            final int blockCount,
+            final byte[] out,
+            final int outOff) {
+        final int blockSize = getBlockSize();
+        int total = 0;
+        for (int i = 0; i < blockCount; i++)
+            total += processBlock(in, inOff + total, out, outOff + total);
+        assert total == blockCount * blockSize;
+        return total;
+    }
 }
@@ -39,7 +39,7 @@
  *     {@link net.java.truevfs.comp.zip.ZipEntry#getMethod() reading}
  *     and
  *     {@link net.java.truevfs.comp.zip.ZipEntry#setMethod(int) writing}
- *     BZIP2 compressed ZIP entries.
+ *     BZIP2 and Zstandard compressed ZIP entries.
  * <li>Support for selectable character sets, in particular IBM Code Page 437
  *     (alias IBM PC) for PKZIP compatibility and UTF-8 for Java Archive (JAR)
  *     compatibility.
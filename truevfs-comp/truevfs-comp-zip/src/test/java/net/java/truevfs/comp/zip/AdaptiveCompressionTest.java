@@ -0,0 +1,131 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.comp.zip;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import net.java.truecommons.io.ByteBufferChannel;
+import net.java.truecommons.io.ChannelOutputStream;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static net.java.truevfs.comp.zip.ZipEntry.DEFLATED;
+import static net.java.truevfs.comp.zip.ZipEntry.STORED;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * @author Christian Schlichtherle
+ */
+public final class AdaptiveCompressionTest {
+
+    private static byte[] text(final int length) {
+        final StringBuilder s = new StringBuilder(length + 20);
+        for (int i = 0; s.length() < length; i++)
+            s.append("Hello World ").append(i);
+        s.setLength(length);
+        return s.toString().getBytes(US_ASCII);
+    }
+
+    private static byte[] random(final int length) {
+        final byte[] data = new byte[length];
+        new Random(0).nextBytes(data);
+        return data;
+    }
+
+    private static final String[] NAMES = {
+        "empty", "small.txt", "small.bin", "small.jpg", "large.txt", "large.bin",
+    };
+
+    private static byte[][] data() {
+        return new byte[][] {
+            new byte[0], text(10000), random(10000), text(10000),
+            text(300000), random(300000),
+        };
+    }
+
+    private static ByteBuffer zip(final byte[][] data, final boolean parallel)
+    throws IOException {
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final ByteBufferChannel bbc = new ByteBufferChannel(
+                    ByteBuffer.allocate(1024));
+            try (ZipOutputStream zos = new ZipOutputStream(
+                    new ChannelOutputStream(bbc))) {
+                assertFalse(zos.getAdaptiveCompression());
+                zos.setAdaptiveCompression(true);
+                if (parallel) zos.setDeflaterExecutor(executor);
+                for (int i = 0; i < NAMES.length; i++) {
+                    zos.putNextEntry(new ZipEntry(NAMES[i]));
+                    // Write byte by byte first in order to cross the end of
+                    // the sample in different ways.
+                    final byte[] b = data[i];
+                    final int off = Math.min(b.length, 3);
+                    for (int j = 0; j < off; j++) zos.write(b[j]);
+                    zos.write(b, off, b.length - off);
+                }
+            }
+            final ByteBuffer bb = bbc.getBuffer();
+            bb.flip();
+            return bb;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void assertEntry(
+            final byte[] expected,
+            final ZipFile zf,
+            final String name)
+    throws IOException {
+        final byte[] actual = new byte[expected.length];
+        try (InputStream in = zf.getCheckedInputStream(name)) {
+            int off = 0;
+            for (int read; off < actual.length
+                    && 0 <= (read = in.read(actual, off, actual.length - off)); )
+                off += read;
+            assertEquals(expected.length, off);
+            assertEquals(-1, in.read());
+        }
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void testAdaptiveCompression() throws IOException {
+        final byte[][] data = data();
+        for (final boolean parallel : new boolean[] { false, true }) {
+            final long stored = ZipStatistics.getStoredEntries();
+            final long compressed = ZipStatistics.getCompressedEntries();
+            try (ZipFile zf = new ZipFile(new ByteBufferChannel(zip(data, parallel)))) {
+                for (int i = 0; i < NAMES.length; i++)
+                    assertEntry(data[i], zf, NAMES[i]);
+                assertEquals(STORED, zf.entry("empty").getMethod());
+                assertEquals(DEFLATED, zf.entry("small.txt").getMethod());
+                assertEquals(STORED, zf.entry("small.bin").getMethod());
+                assertEquals(STORED, zf.entry("small.jpg").getMethod());
+                assertEquals(DEFLATED, zf.entry("large.txt").getMethod());
+                assertTrue(zf.entry("large.txt").getCompressedSize() < 300000 / 4);
+                // Stored in deflate blocks.
+                final ZipEntry bin = zf.entry("large.bin");
+                assertEquals(DEFLATED, bin.getMethod());
+                assertTrue(bin.getCompressedSize() < 300000 + 100);
+            }
+            assertTrue(stored + 4 <= ZipStatistics.getStoredEntries());
+            assertTrue(compressed + 2 <= ZipStatistics.getCompressedEntries());
+        }
+    }
+
+    @Test
+    public void testHinted() {
+        assertTrue(Compressibility.hinted("a.jpg"));
+        assertTrue(Compressibility.hinted("dir/b.ZIP"));
+        assertFalse(Compressibility.hinted("jpg"));
+        assertFalse(Compressibility.hinted(".jpg"));
+        assertFalse(Compressibility.hinted("dir.zip/c"));
+        assertFalse(Compressibility.hinted("c.txt"));
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.comp.zip;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import net.java.truecommons.io.ByteBufferChannel;
+import net.java.truecommons.io.ChannelOutputStream;
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+import org.junit.Test;
+
+/**
+ * Measures the heap allocation for mounting a central directory.
+ * Each entry has a typical name and an Extended Timestamp extra field.
+ * Mounting used to allocate about 630 bytes per entry, mostly for the maps
+ * of extra fields.
+ *
+ * @author Christian Schlichtherle
+ */
+public final class CentralDirectoryAllocationTest {
+
+    /** Less than the threshold for decoding in the common fork-join pool. */
+    private static final int NUM_ENTRIES = 5000;
+
+    private static final int MAX_BYTES_PER_ENTRY = 400;
+
+    private static ByteBuffer zip() throws IOException {
+        final ByteBufferChannel bbc = new ByteBufferChannel(
+                ByteBuffer.allocate(1024 * 1024));
+        try (ZipOutputStream zos = new ZipOutputStream(
+                new ChannelOutputStream(bbc))) {
+            for (int i = 0; i < NUM_ENTRIES; i++) {
+                final ZipEntry entry = new ZipEntry("dir/entry" + i + ".txt");
+                entry.setExtra(new byte[] {
+                    (byte) 0x55, (byte) 0x54, // Header ID: 0x5455 (Extended Timestamp)
+                    (byte) 0x05, (byte) 0x00, // Data Size: 0x0005
+                    (byte) 0x01, // Flags: modification time
+                    (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x60,
+                });
+                zos.putNextEntry(entry);
+            }
+        }
+        final ByteBuffer bb = bbc.getBuffer();
+        bb.flip();
+        return bb;
+    }
+
+    @Test
+    public void testAllocatedBytesPerEntry() throws IOException {
+        final java.lang.management.ThreadMXBean
+                bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean
+                mx = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(mx.isThreadAllocatedMemorySupported()
+                && mx.isThreadAllocatedMemoryEnabled());
+        final ByteBuffer bb = zip();
+        final long id = Thread.currentThread().getId();
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < 10; i++) { // warm up
+            final long before = mx.getThreadAllocatedBytes(id);
+            final ZipFile zf = new ZipFile(new ByteBufferChannel(bb.duplicate()));
+            final long after = mx.getThreadAllocatedBytes(id);
+            try {
+                assertEquals(NUM_ENTRIES, zf.size());
+            } finally {
+                zf.close();
+            }
+            min = Math.min(min, after - before);
+        }
+        final long perEntry = min / NUM_ENTRIES;
+        assertTrue(perEntry + " bytes per entry", perEntry <= MAX_BYTES_PER_ENTRY);
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.comp.zip;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipException;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Christian Schlichtherle
+ */
+public final class CentralDirectoryIndexTest {
+
+    private static final int NUM_ENTRIES = 100;
+
+    private Path dir, file;
+    private CentralDirectoryIndex index;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("tzp");
+        file = dir.resolve("test.zip");
+        index = new CentralDirectoryIndex(dir.resolve("index"));
+        try (ZipOutputStream zos = new ZipOutputStream(
+                Files.newOutputStream(file))) {
+            zos.setComment("comment");
+            for (int i = 0; i < NUM_ENTRIES; i++) {
+                zos.putNextEntry(new ZipEntry("dir/" + i + ".txt"));
+                zos.write(Integer.toString(i).getBytes(UTF_8));
+            }
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        delete(dir);
+    }
+
+    private static void delete(final Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            try (DirectoryStream<Path> s = Files.newDirectoryStream(path)) {
+                for (Path member : s) delete(member);
+            }
+        }
+        Files.delete(path);
+    }
+
+    private List<Path> sidecars() throws IOException {
+        final List<Path> sidecars = new ArrayList<>();
+        try (DirectoryStream<Path> s = Files.newDirectoryStream(
+                index.getDirectory())) {
+            for (Path sidecar : s) sidecars.add(sidecar);
+        }
+        return sidecars;
+    }
+
+    private ZipFile open() throws IOException {
+        return new ZipFile(file, UTF_8, true, false, index);
+    }
+
+    private static void check(final ZipFile zf) throws IOException {
+        assertEquals(NUM_ENTRIES, zf.size());
+        assertEquals("comment", zf.getComment());
+        for (int i = 0; i < NUM_ENTRIES; i++) {
+            final String name = "dir/" + i + ".txt";
+            final byte[] expected = Integer.toString(i).getBytes(UTF_8);
+            final byte[] actual = new byte[expected.length];
+            try (InputStream in = zf.getCheckedInputStream(name)) {
+                int off = 0;
+                for (int read; off < actual.length
+                        && 0 <= (read = in.read(actual, off, actual.length - off)); )
+                    off += read;
+                assertEquals(expected.length, off);
+                assertEquals(-1, in.read());
+            }
+            assertArrayEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        try (ZipFile zf = open()) {
+            check(zf);
+        }
+        final List<Path> sidecars = sidecars();
+        assertEquals(1, sidecars.size());
+        final byte[] sidecar = Files.readAllBytes(sidecars.get(0));
+        try (ZipFile zf = open()) {
+            check(zf);
+        }
+        assertArrayEquals(sidecar, Files.readAllBytes(sidecars.get(0)));
+    }
+
+    @Test
+    public void testCorruptedSidecar() throws IOException {
+        try (ZipFile zf = open()) {
+            check(zf);
+        }
+        final Path sidecar = sidecars().get(0);
+        final byte[] expected = Files.readAllBytes(sidecar);
+        for (final int i : new int[] { 0, expected.length / 2, expected.length - 1 }) {
+            final byte[] data = expected.clone();
+            data[i] ^= 1;
+            Files.write(sidecar, data);
+            try (ZipFile zf = open()) {
+                check(zf);
+            }
+            assertArrayEquals(expected, Files.readAllBytes(sidecar));
+        }
+    }
+
+    @Test
+    public void testDoesNotReadCentralDirectory() throws IOException {
+        try (ZipFile zf = open()) {
+            check(zf);
+        }
+        // Overwrite the first Central File Header signature, but keep the
+        // size, last modification time and End Of Central Directory Record.
+        final FileTime time = Files.getLastModifiedTime(file);
+        final byte[] data = Files.readAllBytes(file);
+        for (int i = 0; i < data.length - 3; i++) {
+            if (0x50 == data[i] && 0x4b == data[i + 1]
+                    && 0x01 == data[i + 2] && 0x02 == data[i + 3]) {
+                data[i] = 0;
+                break;
+            }
+        }
+        Files.write(file, data);
+        Files.setLastModifiedTime(file, time);
+        try {
+            new ZipFile(file, UTF_8, true, false).close();
+            fail();
+        } catch (final ZipException expected) {
+        }
+        try (ZipFile zf = open()) {
+            check(zf);
+        }
+    }
+
+    @Test
+    public void testChangedCharset() throws IOException {
+        try (ZipFile zf = open()) {
+            check(zf);
+        }
+        final byte[] sidecar = Files.readAllBytes(sidecars().get(0));
+        try (ZipFile zf = new ZipFile(file, ISO_8859_1, true, false, index)) {
+            check(zf);
+        }
+        final List<Path> sidecars = sidecars();
+        assertEquals(1, sidecars.size());
+        assertFalse(Arrays.equals(sidecar, Files.readAllBytes(sidecars.get(0))));
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.comp.zip;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import net.java.truecommons.io.ByteBufferChannel;
+import net.java.truecommons.io.ChannelOutputStream;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Tests decoding entry names and comments which are not pure ASCII.
+ *
+ * @author Christian Schlichtherle
+ */
+public final class EntryNamesTest {
+
+    private static final String[] UTF8_NAMES = {
+        "ascii.txt",
+        "äöü.txt",
+        "日本語/テスト.txt",
+        "euro€",
+        "€uro",
+        "del\u007f",
+        "emoji😀.txt",
+    };
+
+    private static final String[] LATIN1_NAMES = {
+        "ascii.txt",
+        "äöü.txt",
+        "ÿ",
+        "café/crème.txt",
+        "del\u007f",
+    };
+
+    private static ByteBuffer zip(final Charset charset, final String... names)
+    throws IOException {
+        final ByteBufferChannel bbc = new ByteBufferChannel(
+                ByteBuffer.allocate(64 * 1024));
+        try (ZipOutputStream zos = new ZipOutputStream(
+                new ChannelOutputStream(bbc), charset)) {
+            for (final String name : names) {
+                final ZipEntry entry = new ZipEntry(name);
+                entry.setComment(name);
+                zos.putNextEntry(entry);
+            }
+        }
+        final ByteBuffer bb = bbc.getBuffer();
+        bb.flip();
+        return bb;
+    }
+
+    private static void check(final Charset charset, final String... names)
+    throws IOException {
+        try (ZipFile zf = new ZipFile(new ByteBufferChannel(zip(charset, names)),
+                charset, true, false)) {
+            final List<String> actual = new ArrayList<>();
+            for (final ZipEntry entry : zf) {
+                actual.add(entry.getName());
+                assertEquals(entry.getName(), entry.getComment());
+            }
+            assertArrayEquals(names, actual.toArray());
+        }
+    }
+
+    @Test
+    public void testUtf8() throws IOException {
+        check(UTF_8, UTF8_NAMES);
+    }
+
+    @Test
+    public void testLatin1() throws IOException {
+        check(ISO_8859_1, LATIN1_NAMES);
+    }
+
+    @Test
+    public void testIbm437() throws IOException {
+        check(Charset.forName("IBM437"), "ascii.txt", "äöü.txt",
+                "░▒▓");
+    }
+}
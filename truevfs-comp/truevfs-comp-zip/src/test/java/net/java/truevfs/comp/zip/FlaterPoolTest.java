@@ -0,0 +1,72 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.comp.zip;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import org.junit.Test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+
+/**
+ * @author Christian Schlichtherle
+ */
+public final class FlaterPoolTest {
+
+    @Test
+    public void testReuse() throws DataFormatException {
+        final FlaterPool<Deflater> deflaters =
+                FlaterPool.deflaters(Deflater.BEST_SPEED);
+        final FlaterPool<Inflater> inflaters = FlaterPool.inflaters();
+        final byte[] data = "Hello world!".getBytes(UTF_8);
+        for (int i = 0; i < 3; i++) {
+            final Deflater deflater = deflaters.take();
+            final Inflater inflater = inflaters.take();
+
+            final byte[] compressed = new byte[data.length + 64];
+            deflater.setInput(data);
+            deflater.finish();
+            final int csize = deflater.deflate(compressed);
+            assertTrue(deflater.finished());
+
+            final byte[] decompressed = new byte[data.length];
+            inflater.setInput(compressed, 0, csize);
+            assertEquals(data.length, inflater.inflate(decompressed));
+            assertArrayEquals(data, decompressed);
+
+            deflaters.release(deflater);
+            inflaters.release(inflater);
+        }
+    }
+
+    @Test
+    public void testBounded() {
+        final FlaterPool<Deflater> deflaters =
+                FlaterPool.deflaters(Deflater.NO_COMPRESSION);
+        final Deflater[] taken = new Deflater[FlaterPool.CAPACITY + 1];
+        for (int i = 0; i < taken.length; i++) taken[i] = deflaters.take();
+        for (Deflater deflater : taken) deflaters.release(deflater);
+        final Set<Deflater> released =
+                Collections.newSetFromMap(new IdentityHashMap<>());
+        released.addAll(Arrays.asList(taken));
+        // The statistics are global, so other tests running concurrently may
+        // increment them, too.
+        final long hits = ZipStatistics.getFlaterPoolHits();
+        final long misses = ZipStatistics.getFlaterPoolMisses();
+        int reused = 0;
+        for (int i = 0; i < taken.length; i++)
+            if (released.contains(taken[i] = deflaters.take())) reused++;
+        assertEquals(FlaterPool.CAPACITY, reused);
+        assertTrue(hits + reused <= ZipStatistics.getFlaterPoolHits());
+        assertTrue(misses + 1 <= ZipStatistics.getFlaterPoolMisses());
+        for (Deflater deflater : taken) deflaters.release(deflater);
+    }
+}
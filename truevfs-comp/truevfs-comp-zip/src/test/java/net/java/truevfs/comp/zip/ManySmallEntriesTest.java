@@ -7,9 +7,13 @@ package net.java.truevfs.comp.zip;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.charset.Charset;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashSet;
+import java.util.Set;
+import net.java.truecommons.io.AbstractSource;
 import net.java.truecommons.io.ByteBufferChannel;
 import net.java.truecommons.io.ChannelOutputStream;
 import static net.java.truecommons.shed.HashMaps.initialCapacity;
@@ -34,12 +38,9 @@ public final class ManySmallEntriesTest {
     private static final int DATA_CRC = 0x1c291ca3; // pre-computed
     private static final int ZIP_SIZE = 7000098; // pre-computed
 
-    @Test
-    public void testRoundTripPersistence() throws IOException {
+    private static ByteBuffer zip(final Set<String> set) throws IOException {
         final byte[] data = DATA_STRING.getBytes(DATA_CHARSET);
         ByteBuffer bb = ByteBuffer.allocateDirect(ZIP_SIZE);
-        final HashSet<String> set = new HashSet<>(initialCapacity(NUM_ENTRIES));
-
         final ByteBufferChannel bbc = new ByteBufferChannel(bb);
         try (final ZipOutputStream zos = new ZipOutputStream(
                 new ChannelOutputStream(bbc))) {
@@ -60,6 +61,14 @@ public final class ManySmallEntriesTest {
         }
         (bb = bbc.getBuffer()).flip();
         assertEquals(ZIP_SIZE, bb.limit());
+        return bb;
+    }
+
+    @Test
+    public void testRoundTripPersistence() throws IOException {
+        final byte[] data = DATA_STRING.getBytes(DATA_CHARSET);
+        final HashSet<String> set = new HashSet<>(initialCapacity(NUM_ENTRIES));
+        final ByteBuffer bb = zip(set);
 
         try (final ZipFile zf = new ZipFile(new ByteBufferChannel(bb))) {
             final byte[] buf = new byte[data.length];
@@ -93,4 +102,45 @@ public final class ManySmallEntriesTest {
 
         assertTrue(set.isEmpty());
     }
+
+    @Test
+    public void testEntriesGetCreatedByMountingThread() throws IOException {
+        final HashSet<String> set = new HashSet<>(initialCapacity(NUM_ENTRIES));
+        final ByteBuffer bb = zip(set);
+        final Set<Thread> threads = new HashSet<>();
+        final ZipFileParameters<ZipEntry> param = new ZipFileParameters<ZipEntry>() {
+            @Override
+            public Charset getCharset() { return Constants.DEFAULT_CHARSET; }
+
+            @Override
+            public boolean getPreambled() { return true; }
+
+            @Override
+            public boolean getPostambled() { return false; }
+
+            @Override
+            public ZipEntry newEntry(String name) {
+                // Not thread-safe on purpose.
+                threads.add(Thread.currentThread());
+                return new ZipEntry(name);
+            }
+        };
+        try (final AbstractZipFile<ZipEntry> zf = new AbstractZipFile<ZipEntry>(
+                new AbstractSource() {
+                    @Override
+                    public SeekableByteChannel channel() {
+                        return new ByteBufferChannel(bb.duplicate());
+                    }
+                }, param) {
+            @Override
+            protected ZipCryptoParameters getCryptoParameters() {
+                return null;
+            }
+        }) {
+            assertEquals(NUM_ENTRIES, zf.size());
+            for (final ZipEntry entry : zf) assertTrue(set.remove(entry.getName()));
+        }
+        assertTrue(set.isEmpty());
+        assertEquals(Collections.singleton(Thread.currentThread()), threads);
+    }
 }
@@ -0,0 +1,239 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.comp.zip;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import javax.annotation.CheckForNull;
+import net.java.truecommons.io.AbstractSource;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.READ;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests mounting a central directory which is large enough to get
+ * memory-mapped.
+ *
+ * @author Christian Schlichtherle
+ */
+public final class MappedCentralDirectoryTest {
+
+    private static final int NUM_ENTRIES = 12000;
+
+    private static final byte[] EXTRA = {
+        (byte) 0x55, (byte) 0x54, // Header ID: 0x5455 (Extended Timestamp)
+        (byte) 0x05, (byte) 0x00, // Data Size: 0x0005
+        (byte) 0x01, // Flags: modification time
+        (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x60,
+    };
+
+    private Path file;
+
+    private static String name(int i) {
+        return String.format("directory/subdirectory/entry-%05d.txt", i);
+    }
+
+    private static String comment(int i) { return "comment " + i; }
+
+    @Before
+    public void setUp() throws IOException {
+        file = Files.createTempFile("tzp", ".zip");
+        try (ZipOutputStream zos = new ZipOutputStream(
+                Files.newOutputStream(file))) {
+            for (int i = 0; i < NUM_ENTRIES; i++) {
+                final ZipEntry entry = new ZipEntry(name(i));
+                entry.setComment(comment(i));
+                entry.setExtra(EXTRA);
+                zos.putNextEntry(entry);
+                zos.write(name(i).getBytes(UTF_8));
+            }
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.delete(file);
+    }
+
+    @Test
+    public void testMountAndRead() throws Exception {
+        final MappingChannel channel = new MappingChannel(
+                FileChannel.open(file, READ));
+        try (AbstractZipFile<ZipEntry> zf = open(channel)) {
+            assertNotNull("central directory not mapped", channel.mapped);
+            assertTrue(1024 * 1024 <= channel.size);
+            assertEquals(NUM_ENTRIES, zf.size());
+            int i = 0;
+            for (final ZipEntry entry : zf) {
+                assertEquals(name(i), entry.getName());
+                assertEquals(comment(i), entry.getComment());
+                assertArrayEquals(EXTRA, entry.getExtra());
+                i++;
+            }
+            for (int j = 0; j < NUM_ENTRIES; j += NUM_ENTRIES / 10) {
+                final byte[] expected = name(j).getBytes(UTF_8);
+                final byte[] actual = new byte[expected.length];
+                try (InputStream in = zf.getCheckedInputStream(name(j))) {
+                    int off = 0;
+                    for (int read; off < actual.length
+                            && 0 <= (read = in.read(actual, off, actual.length - off)); )
+                        off += read;
+                    assertEquals(-1, in.read());
+                }
+                assertArrayEquals(expected, actual);
+            }
+
+            // The entries must not retain the mapped central directory.
+            for (int j = 0; null != channel.mapped.get(); j++) {
+                assertTrue("mapped central directory retained", j < 100);
+                System.gc();
+                Thread.sleep(10);
+            }
+            assertEquals(comment(0), zf.entry(name(0)).getComment());
+        }
+        assertFalse(channel.isOpen());
+    }
+
+    private static AbstractZipFile<ZipEntry> open(final FileChannel channel)
+    throws IOException {
+        final ZipFileParameters<ZipEntry> param = new ZipFileParameters<ZipEntry>() {
+            @Override
+            public Charset getCharset() { return UTF_8; }
+
+            @Override
+            public boolean getPreambled() { return false; }
+
+            @Override
+            public boolean getPostambled() { return false; }
+
+            @Override
+            public ZipEntry newEntry(String name) { return new ZipEntry(name); }
+        };
+        return new AbstractZipFile<ZipEntry>(new AbstractSource() {
+            @Override
+            public FileChannel channel() { return channel; }
+        }, param) {
+            @Override
+            protected @CheckForNull ZipCryptoParameters getCryptoParameters() {
+                return null;
+            }
+        };
+    }
+
+    /** A file channel which records the buffer it has mapped. */
+    private static final class MappingChannel extends FileChannel {
+        final FileChannel channel;
+        volatile @CheckForNull WeakReference<MappedByteBuffer> mapped;
+        volatile long size;
+
+        MappingChannel(FileChannel channel) { this.channel = channel; }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size)
+        throws IOException {
+            final MappedByteBuffer buffer = channel.map(mode, position, size);
+            this.mapped = new WeakReference<>(buffer);
+            this.size = size;
+            return buffer;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return channel.read(dst);
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length)
+        throws IOException {
+            return channel.read(dsts, offset, length);
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            return channel.write(src);
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length)
+        throws IOException {
+            return channel.write(srcs, offset, length);
+        }
+
+        @Override
+        public long position() throws IOException { return channel.position(); }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException {
+            channel.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException { return channel.size(); }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            channel.truncate(size);
+            return this;
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            channel.force(metaData);
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target)
+        throws IOException {
+            return channel.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count)
+        throws IOException {
+            return channel.transferFrom(src, position, count);
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            return channel.read(dst, position);
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException {
+            return channel.write(src, position);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared)
+        throws IOException {
+            return channel.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared)
+        throws IOException {
+            return channel.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            channel.close();
+        }
+    } // MappingChannel
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.comp.zip;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import net.java.truecommons.io.ByteBufferChannel;
+import net.java.truecommons.io.ChannelOutputStream;
+import static net.java.truevfs.comp.zip.Constants.MIN_DEFLATER_BLOCK_SIZE;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * @author Christian Schlichtherle
+ */
+public final class ParallelDeflaterOutputStreamTest {
+
+    private static final int DATA_LENGTH = 10 * MIN_DEFLATER_BLOCK_SIZE + 12345;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @After
+    public void tearDown() { executor.shutdown(); }
+
+    private static byte[] data() {
+        // Compressible, but not trivially.
+        final Random rnd = new Random(0);
+        final byte[] data = new byte[DATA_LENGTH];
+        for (int i = 0; i < data.length; i++)
+            data[i] = (byte) ('a' + rnd.nextInt(4));
+        return data;
+    }
+
+    private static long crc(byte[] b, int off, int len) {
+        final CRC32 crc = new CRC32();
+        crc.update(b, off, len);
+        return crc.getValue();
+    }
+
+    @Test
+    public void testCrc32Combine() {
+        final byte[] data = data();
+        for (final int split : new int[] { 0, 1, 4711, data.length }) {
+            final long crc1 = crc(data, 0, split);
+            final long crc2 = crc(data, split, data.length - split);
+            assertEquals(crc(data, 0, data.length),
+                    ParallelDeflaterOutputStream.crc32Combine(
+                            crc1, crc2, data.length - split));
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException, DataFormatException {
+        final byte[] data = data();
+        for (final int length : new int[] { 0, 1, MIN_DEFLATER_BLOCK_SIZE, data.length }) {
+            final ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+            final ParallelDeflaterOutputStream out =
+                    new ParallelDeflaterOutputStream(deflated, 6,
+                            MIN_DEFLATER_BLOCK_SIZE, executor, 3);
+            out.write(data, 0, length);
+            out.finish();
+            assertEquals(length, out.getBytesRead());
+            assertEquals(crc(data, 0, length), out.getCrc());
+
+            final Inflater inflater = new Inflater(true);
+            try {
+                final byte[] input = deflated.toByteArray();
+                inflater.setInput(input);
+                final byte[] inflated = new byte[length + 1];
+                int off = 0;
+                while (!inflater.finished()) {
+                    final int n = inflater.inflate(inflated, off, inflated.length - off);
+                    assertFalse(0 == n && inflater.needsInput()
+                            && !inflater.finished());
+                    off += n;
+                }
+                assertEquals(length, off);
+                assertEquals(0, inflater.getRemaining());
+                for (int i = 0; i < length; i++)
+                    assertEquals(data[i], inflated[i]);
+            } finally {
+                inflater.end();
+            }
+        }
+    }
+
+    @Test
+    public void testZipRoundTrip() throws IOException {
+        final byte[] data = data();
+        final ByteBufferChannel bbc = new ByteBufferChannel(
+                ByteBuffer.allocate(1024));
+        try (ZipOutputStream zos = new ZipOutputStream(
+                new ChannelOutputStream(bbc))) {
+            zos.setDeflaterExecutor(executor);
+            zos.setDeflaterBlockSize(MIN_DEFLATER_BLOCK_SIZE);
+            zos.putNextEntry(new ZipEntry("data"));
+            zos.write(data);
+        }
+        final ByteBuffer bb = bbc.getBuffer();
+        bb.flip();
+        try (ZipFile zf = new ZipFile(new ByteBufferChannel(bb))) {
+            final ZipEntry entry = zf.entry("data");
+            assertEquals(data.length, entry.getSize());
+            assertEquals(crc(data, 0, data.length), entry.getCrc());
+            final byte[] actual = new byte[data.length];
+            try (InputStream in = zf.getCheckedInputStream("data")) {
+                int off = 0;
+                for (int read; off < actual.length
+                        && 0 <= (read = in.read(actual, off, actual.length - off)); )
+                    off += read;
+                assertEquals(data.length, off);
+                assertEquals(-1, in.read());
+            }
+            assertArrayEquals(data, actual);
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.comp.zip;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.CRC32;
+import net.java.truecommons.io.AbstractSource;
+import net.java.truecommons.io.ByteBufferChannel;
+import net.java.truecommons.io.ChannelOutputStream;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static net.java.truevfs.comp.zip.ZipEntry.DEFLATED;
+import static net.java.truevfs.comp.zip.ZipEntry.STORED;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * @author Christian Schlichtherle
+ */
+public final class ParallelZipWriterTest {
+
+    private static final int NUM_ENTRIES = 1000;
+
+    private static byte[] data(final int i) {
+        final StringBuilder s = new StringBuilder();
+        for (int j = 0; j <= i % 100; j++) s.append("Hello World ").append(i);
+        return s.toString().getBytes(US_ASCII);
+    }
+
+    private static AbstractSource source(final byte[] data) {
+        return new AbstractSource() {
+            @Override
+            public SeekableByteChannel channel() throws IOException {
+                return new ByteBufferChannel(
+                        ByteBuffer.wrap(data).asReadOnlyBuffer());
+            }
+        };
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        final ByteBufferChannel bbc = new ByteBufferChannel(
+                ByteBuffer.allocate(1024));
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try (ZipOutputStream zos = new ZipOutputStream(
+                new ChannelOutputStream(bbc))) {
+            try (ParallelZipWriter<ZipEntry> writer =
+                    new ParallelZipWriter<>(zos, executor, 16)) {
+                for (int i = 0; i < NUM_ENTRIES; i++) {
+                    final ZipEntry entry = new ZipEntry(Integer.toString(i));
+                    if (0 == i % 10) {
+                        // Mix in some entries which get processed by the ZIP
+                        // output stream.
+                        final byte[] data = data(i);
+                        final CRC32 crc = new CRC32();
+                        crc.update(data);
+                        entry.setMethod(STORED);
+                        entry.setSize(data.length);
+                        entry.setCompressedSize(data.length);
+                        entry.setCrc(crc.getValue());
+                    }
+                    writer.submit(entry, source(data(i)));
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        final ByteBuffer bb = bbc.getBuffer();
+        bb.flip();
+        try (ZipFile zf = new ZipFile(new ByteBufferChannel(bb))) {
+            final List<String> names = new ArrayList<>(NUM_ENTRIES);
+            for (   final Enumeration<? extends ZipEntry> e = zf.entries();
+                    e.hasMoreElements(); ) {
+                final ZipEntry entry = e.nextElement();
+                names.add(entry.getName());
+                final int i = Integer.parseInt(entry.getName());
+                assertEquals(0 == i % 10 ? STORED : DEFLATED,
+                        entry.getMethod());
+                final byte[] expected = data(i);
+                assertEquals(expected.length, entry.getSize());
+                final byte[] actual = new byte[expected.length];
+                try (InputStream in = zf.getCheckedInputStream(entry.getName())) {
+                    int off = 0;
+                    for (int read; off < actual.length
+                            && 0 <= (read = in.read(actual, off, actual.length - off)); )
+                        off += read;
+                    assertEquals(expected.length, off);
+                    assertEquals(-1, in.read());
+                }
+                assertArrayEquals(expected, actual);
+            }
+            // The entries must have been written in the order of submission.
+            for (int i = 0; i < NUM_ENTRIES; i++)
+                assertEquals(Integer.toString(i), names.get(i));
+        }
+    }
+
+    @Test
+    public void testLargeEntryOfUnknownSize() throws IOException {
+        final byte[] small = data(1), large = data(99);
+        final int[] streams = new int[2];
+        final ByteBufferChannel bbc = new ByteBufferChannel(
+                ByteBuffer.allocate(1024));
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try (ZipOutputStream zos = new ZipOutputStream(
+                new ChannelOutputStream(bbc))) {
+            try (ParallelZipWriter<ZipEntry> writer = new ParallelZipWriter<>(
+                    zos, executor, 16, large.length - 1)) {
+                writer.submit(new ZipEntry("small"), counting(small, streams, 0));
+                writer.submit(new ZipEntry("large"), counting(large, streams, 1));
+            }
+        } finally {
+            executor.shutdown();
+        }
+        // The large entry must have been read again by the ZIP output stream.
+        assertEquals(1, streams[0]);
+        assertEquals(2, streams[1]);
+
+        final ByteBuffer bb = bbc.getBuffer();
+        bb.flip();
+        try (ZipFile zf = new ZipFile(new ByteBufferChannel(bb))) {
+            assertEquals(DEFLATED, zf.entry("small").getMethod());
+            assertEquals(DEFLATED, zf.entry("large").getMethod());
+            assertEntry(small, zf, "small");
+            assertEntry(large, zf, "large");
+        }
+    }
+
+    @Test
+    public void testRejectedExecution() throws IOException {
+        final ByteBufferChannel bbc = new ByteBufferChannel(
+                ByteBuffer.allocate(1024));
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+        try (ZipOutputStream zos = new ZipOutputStream(
+                new ChannelOutputStream(bbc))) {
+            try (ParallelZipWriter<ZipEntry> writer =
+                    new ParallelZipWriter<>(zos, executor, 16)) {
+                try {
+                    writer.submit(new ZipEntry("rejected"), source(data(0)));
+                    fail();
+                } catch (final RejectedExecutionException expected) {
+                }
+                final ZipEntry entry = new ZipEntry("stored");
+                final byte[] data = data(1);
+                final CRC32 crc = new CRC32();
+                crc.update(data);
+                entry.setMethod(STORED);
+                entry.setSize(data.length);
+                entry.setCompressedSize(data.length);
+                entry.setCrc(crc.getValue());
+                writer.submit(entry, source(data));
+            }
+        }
+
+        final ByteBuffer bb = bbc.getBuffer();
+        bb.flip();
+        try (ZipFile zf = new ZipFile(new ByteBufferChannel(bb))) {
+            assertEquals(1, zf.size());
+            assertNull(zf.entry("rejected"));
+            assertEntry(data(1), zf, "stored");
+        }
+    }
+
+    private static AbstractSource counting(
+            final byte[] data,
+            final int[] streams,
+            final int index) {
+        return new AbstractSource() {
+            @Override
+            public SeekableByteChannel channel() throws IOException {
+                synchronized (streams) {
+                    streams[index]++;
+                }
+                return new ByteBufferChannel(
+                        ByteBuffer.wrap(data).asReadOnlyBuffer());
+            }
+        };
+    }
+
+    private static void assertEntry(
+            final byte[] expected,
+            final ZipFile zf,
+            final String name)
+    throws IOException {
+        assertEquals(expected.length, zf.entry(name).getSize());
+        final byte[] actual = new byte[expected.length];
+        try (InputStream in = zf.getCheckedInputStream(name)) {
+            int off = 0;
+            for (int read; off < actual.length
+                    && 0 <= (read = in.read(actual, off, actual.length - off)); )
+                off += read;
+            assertEquals(expected.length, off);
+            assertEquals(-1, in.read());
+        }
+        assertArrayEquals(expected, actual);
+    }
+}
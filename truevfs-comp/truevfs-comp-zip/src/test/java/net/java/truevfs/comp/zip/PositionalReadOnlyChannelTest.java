@@ -0,0 +1,100 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.comp.zip;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import net.java.truecommons.io.ByteBufferChannel;
+import net.java.truecommons.shed.ConcurrencyUtils.TaskFactory;
+import static java.nio.file.StandardOpenOption.READ;
+import static net.java.truecommons.shed.ConcurrencyUtils.NUM_IO_THREADS;
+import static net.java.truecommons.shed.ConcurrencyUtils.start;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * @author Christian Schlichtherle
+ */
+public final class PositionalReadOnlyChannelTest {
+
+    private static final int DATA_LENGTH = 64 * 1024;
+    private static final int INTERVAL_LENGTH = 1000;
+
+    private final byte[] data = new byte[DATA_LENGTH];
+    { new Random().nextBytes(data); }
+
+    @Test
+    public void testConcurrentReadsFromFileChannel() throws Exception {
+        final Path file = Files.createTempFile("tzp", null);
+        try {
+            Files.write(file, data);
+            try (FileChannel channel = FileChannel.open(file, READ)) {
+                assertTrue(PositionalReadOnlyChannel.positional(channel));
+                concurrentReads(channel);
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testConcurrentReadsFromSeekableByteChannel() throws Exception {
+        try (SeekableByteChannel channel = new ByteBufferChannel(
+                ByteBuffer.wrap(data).asReadOnlyBuffer())) {
+            assertFalse(PositionalReadOnlyChannel.positional(channel));
+            concurrentReads(channel);
+        }
+    }
+
+    private void concurrentReads(final SeekableByteChannel channel)
+    throws Exception {
+        channel.position(7);
+        final class ReadIntervalsFactory implements TaskFactory {
+            @Override
+            public Callable<?> newTask(final int threadNum) {
+                return new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        for (int start = threadNum;
+                                start < DATA_LENGTH - INTERVAL_LENGTH;
+                                start += INTERVAL_LENGTH)
+                            readInterval(channel, start);
+                        return null;
+                    }
+                };
+            }
+        } // ReadIntervalsFactory
+
+        start(NUM_IO_THREADS, new ReadIntervalsFactory()).join();
+        assertEquals(7, channel.position());
+    }
+
+    private void readInterval(final SeekableByteChannel channel, final int start)
+    throws IOException {
+        try (SeekableByteChannel interval = new PositionalReadOnlyChannel(
+                channel, start, INTERVAL_LENGTH)) {
+            final ByteBuffer buf = ByteBuffer.allocate(INTERVAL_LENGTH + 1);
+            while (0 <= interval.read(buf)) {
+            }
+            buf.flip();
+            assertEquals(INTERVAL_LENGTH, buf.remaining());
+            assertEquals(ByteBuffer.wrap(data, start, INTERVAL_LENGTH), buf);
+            assertEquals(INTERVAL_LENGTH, interval.position());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIntervalExceedsChannel() throws IOException {
+        new PositionalReadOnlyChannel(
+                new ByteBufferChannel(ByteBuffer.wrap(data)),
+                DATA_LENGTH - 1, 2);
+    }
+}
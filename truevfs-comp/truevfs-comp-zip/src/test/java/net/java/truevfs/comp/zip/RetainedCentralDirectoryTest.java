@@ -0,0 +1,206 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.comp.zip;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.CheckForNull;
+import net.java.truecommons.io.AbstractSource;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.READ;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests retaining the central directory instead of creating all entries when
+ * mounting it.
+ *
+ * @author Christian Schlichtherle
+ */
+public final class RetainedCentralDirectoryTest {
+
+    /** More than the threshold for decoding in the common fork-join pool. */
+    private static final int NUM_ENTRIES = 10000;
+
+    private static final byte[] EXTRA = {
+        (byte) 0x55, (byte) 0x54, // Header ID: 0x5455 (Extended Timestamp)
+        (byte) 0x05, (byte) 0x00, // Data Size: 0x0005
+        (byte) 0x01, // Flags: modification time
+        (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x60,
+    };
+
+    private Path file;
+
+    private static String name(int i) {
+        return 0 == i % 7 ? "dir/äöü-" + i : "dir/entry-" + i;
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        file = Files.createTempFile("tzp", ".zip");
+        try (ZipOutputStream zos = new ZipOutputStream(
+                Files.newOutputStream(file))) {
+            for (int i = 0; i < NUM_ENTRIES; i++) {
+                final ZipEntry entry = new ZipEntry(name(i));
+                if (0 == i % 3) entry.setComment("comment " + i);
+                if (0 == i % 5) entry.setExtra(EXTRA);
+                zos.putNextEntry(entry);
+                zos.write(name(i).getBytes(UTF_8));
+            }
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.delete(file);
+    }
+
+    private static void assertSameEntry(ZipEntry expected, ZipEntry actual) {
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getPlatform(), actual.getPlatform());
+        assertEquals(expected.getGeneralPurposeBitFlags(),
+                actual.getGeneralPurposeBitFlags());
+        assertEquals(expected.getMethod(), actual.getMethod());
+        assertEquals(expected.getTime(), actual.getTime());
+        assertEquals(expected.getCrc(), actual.getCrc());
+        assertEquals(expected.getCompressedSize(), actual.getCompressedSize());
+        assertEquals(expected.getSize(), actual.getSize());
+        assertEquals(expected.getExternalAttributes(),
+                actual.getExternalAttributes());
+        assertEquals(expected.getOffset(), actual.getOffset());
+        assertArrayEquals(expected.getExtra(), actual.getExtra());
+        assertEquals(expected.getComment(), actual.getComment());
+    }
+
+    private static void assertSameEntries(
+            final AbstractZipFile<?> expected,
+            final AbstractZipFile<?> actual)
+    throws IOException {
+        assertEquals(expected.size(), actual.size());
+        final Iterator<? extends ZipEntry> it = actual.iterator();
+        for (final ZipEntry entry : expected) {
+            assertSameEntry(entry, it.next());
+            assertSameEntry(entry, actual.entry(entry.getName()));
+        }
+        assertFalse(it.hasNext());
+        assertNull(actual.entry("dir/"));
+        assertNull(actual.entry("missing"));
+        assertEquals(expected.getRawCharset(), actual.getRawCharset());
+    }
+
+    @Test
+    public void testSameEntries() throws IOException {
+        try (ZipFile expected = new ZipFile(file, UTF_8, false, false);
+             ZipFile actual = new ZipFile(file, UTF_8, false, false, true)) {
+            assertSameEntries(expected, actual);
+            for (int i = 0; i < NUM_ENTRIES; i += NUM_ENTRIES / 10) {
+                final byte[] data = name(i).getBytes(UTF_8);
+                final byte[] buf = new byte[data.length];
+                try (InputStream in = actual.getCheckedInputStream(name(i))) {
+                    int off = 0;
+                    for (int read; off < buf.length
+                            && 0 <= (read = in.read(buf, off, buf.length - off)); )
+                        off += read;
+                    assertEquals(-1, in.read());
+                }
+                assertArrayEquals(data, buf);
+            }
+        }
+    }
+
+    @Test
+    public void testCreatesEntriesOnDemand() throws IOException {
+        final AtomicInteger created = new AtomicInteger();
+        try (AbstractZipFile<ZipEntry> zf = open(true, created)) {
+            assertEquals(0, created.get());
+            assertEquals(NUM_ENTRIES, zf.size());
+            assertNotNull(zf.entry(name(1)));
+            assertEquals(1, created.get());
+            assertNotSame(zf.entry(name(1)), zf.entry(name(1)));
+        }
+        created.set(0);
+        open(false, created).close();
+        assertEquals(NUM_ENTRIES, created.get());
+    }
+
+    @Test
+    public void testDuplicateNames() throws IOException {
+        // Rename every entry with an even index to the name of its successor.
+        final byte[] data = Files.readAllBytes(file);
+        for (int i = 0; i < NUM_ENTRIES; i += 2) {
+            if (0 == i % 7 || 0 == (i + 1) % 7) continue;
+            final byte[] from = name(i).getBytes(UTF_8);
+            final byte[] to = name(i + 1).getBytes(UTF_8);
+            if (from.length != to.length) continue;
+            for (int off = 0; 0 <= (off = indexOf(data, from, off)); )
+                System.arraycopy(to, 0, data, off, to.length);
+        }
+        Files.write(file, data);
+        try (ZipFile expected = new ZipFile(file, UTF_8, false, false);
+             ZipFile actual = new ZipFile(file, UTF_8, false, false, true)) {
+            assertTrue(expected.size() < NUM_ENTRIES);
+            assertSameEntries(expected, actual);
+        }
+    }
+
+    private static int indexOf(final byte[] data, final byte[] key, int off) {
+        outer:
+        for (final int end = data.length - key.length; off <= end; off++) {
+            for (int i = 0; i < key.length; i++)
+                if (data[off + i] != key[i]) continue outer;
+            // Only match complete names, which are followed by an extra
+            // field, a comment or the next header in this test.
+            if (off + key.length < data.length
+                    && '0' <= data[off + key.length]
+                    && data[off + key.length] <= '9')
+                continue;
+            return off;
+        }
+        return -1;
+    }
+
+    private AbstractZipFile<ZipEntry> open(
+            final boolean retain,
+            final AtomicInteger created)
+    throws IOException {
+        final ZipFileParameters<ZipEntry> param = new ZipFileParameters<ZipEntry>() {
+            @Override
+            public Charset getCharset() { return UTF_8; }
+
+            @Override
+            public boolean getPreambled() { return false; }
+
+            @Override
+            public boolean getPostambled() { return false; }
+
+            @Override
+            public boolean getRetainCentralDirectory() { return retain; }
+
+            @Override
+            public ZipEntry newEntry(String name) {
+                created.incrementAndGet();
+                return new ZipEntry(name);
+            }
+        };
+        final FileChannel channel = FileChannel.open(file, READ);
+        return new AbstractZipFile<ZipEntry>(new AbstractSource() {
+            @Override
+            public FileChannel channel() { return channel; }
+        }, param) {
+            @Override
+            protected @CheckForNull ZipCryptoParameters getCryptoParameters() {
+                return null;
+            }
+        };
+    }
+}
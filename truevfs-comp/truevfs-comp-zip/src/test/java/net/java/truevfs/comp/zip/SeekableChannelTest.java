@@ -0,0 +1,100 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.comp.zip;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Random;
+import java.util.zip.CRC32;
+import net.java.truecommons.io.ByteBufferChannel;
+import net.java.truecommons.io.ChannelOutputStream;
+import static net.java.truevfs.comp.zip.ZipEntry.DEFLATED;
+import static net.java.truevfs.comp.zip.ZipEntry.STORED;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Tests random access to STORED and DEFLATED entries by means of
+ * {@link AbstractZipFile#getSeekableChannel(String)}.
+ *
+ * @author Christian Schlichtherle
+ */
+public final class SeekableChannelTest {
+
+    private static final int DATA_LENGTH = 2 * 1024 * 1024 + 12345;
+
+    private static byte[] data() {
+        // Alternate compressible and incompressible runs in order to get
+        // Huffman coded as well as stored blocks.
+        final Random rnd = new Random(0);
+        final byte[] data = new byte[DATA_LENGTH];
+        for (int off = 0; off < data.length; ) {
+            final int len = Math.min(data.length - off, 1 + rnd.nextInt(100000));
+            final boolean random = rnd.nextBoolean();
+            for (int i = off; i < off + len; i++)
+                data[i] = random ? (byte) rnd.nextInt() : (byte) ('a' + rnd.nextInt(4));
+            off += len;
+        }
+        return data;
+    }
+
+    private static void assertRandomAccess(
+            final byte[] expected,
+            final SeekableByteChannel channel)
+    throws IOException {
+        assertEquals(expected.length, channel.size());
+        final Random rnd = new Random(1);
+        final ByteBuffer buf = ByteBuffer.allocate(1000);
+        for (int i = 0; i < 200; i++) {
+            final int pos = rnd.nextInt(expected.length);
+            channel.position(pos);
+            buf.clear();
+            final int read = channel.read(buf);
+            assertEquals(Math.min(buf.capacity(), expected.length - pos), read);
+            for (int j = 0; j < read; j++)
+                assertEquals(expected[pos + j], buf.get(j));
+            assertEquals(pos + read, channel.position());
+        }
+        channel.position(expected.length);
+        buf.clear();
+        assertEquals(-1, channel.read(buf));
+    }
+
+    @Test
+    public void testZipFile() throws IOException {
+        final byte[] data = data();
+        final ByteBufferChannel bbc = new ByteBufferChannel(
+                ByteBuffer.allocate(1024));
+        try (ZipOutputStream zos = new ZipOutputStream(
+                new ChannelOutputStream(bbc))) {
+            for (final int method : new int[] { STORED, DEFLATED }) {
+                final ZipEntry entry = new ZipEntry(Integer.toString(method));
+                entry.setMethod(method);
+                if (STORED == method) {
+                    final CRC32 crc = new CRC32();
+                    crc.update(data);
+                    entry.setCrc(crc.getValue());
+                    entry.setSize(data.length);
+                    entry.setCompressedSize(data.length);
+                }
+                zos.putNextEntry(entry);
+                zos.write(data);
+            }
+        }
+        final ByteBuffer bb = bbc.getBuffer();
+        bb.flip();
+        try (ZipFile zf = new ZipFile(new ByteBufferChannel(bb))) {
+            assertNull(zf.getSeekableChannel("missing"));
+            for (final int method : new int[] { STORED, DEFLATED }) {
+                try (SeekableByteChannel channel =
+                        zf.getSeekableChannel(Integer.toString(method))) {
+                    assertRandomAccess(data, channel);
+                }
+            }
+            assertFalse(zf.busy());
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.comp.zip;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import net.java.truecommons.io.ByteBufferChannel;
+import net.java.truecommons.io.ChannelOutputStream;
+import net.java.truecommons.key.spec.common.AesKeyStrength;
+import net.java.truevfs.comp.zip.crypto.DerivedKeyCache;
+import org.bouncycastle.crypto.BlockCipher;
+import org.bouncycastle.crypto.engines.AESEngine;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.crypto.params.ParametersWithIV;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * @author Christian Schlichtherle
+ */
+public final class WinZipAesTest {
+
+    private static final byte[] PASSWORD = "secret".getBytes(US_ASCII);
+    private static final URI RESOURCE = URI.create("file:/WinZipAesTest.zip/");
+
+    private static byte[] random(final int length) {
+        final byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+    @Test
+    public void testCipher() {
+        final byte[] key = random(32);
+        final BlockCipher engine = new AESEngine();
+        engine.init(true, new KeyParameter(key));
+        final WinZipAesCipher cipher = new WinZipAesCipher();
+        cipher.init(true, new ParametersWithIV(new KeyParameter(key), new byte[16]));
+        final byte[] in = random(1000 * 16);
+        final byte[] expected = new byte[in.length];
+        final byte[] counter = new byte[16], pad = new byte[16];
+        for (int block = 0; block < 1000; block++) {
+            // The counter is pre-incremented in little endian order.
+            long c = block + 1;
+            for (int i = 0; i < 16; i++, c >>>= 8) counter[i] = (byte) c;
+            engine.processBlock(counter, 0, pad, 0);
+            for (int i = 0; i < 16; i++)
+                expected[block * 16 + i] = (byte) (in[block * 16 + i] ^ pad[i]);
+        }
+        final byte[] actual = new byte[in.length];
+        cipher.processBlock(in, 0, actual, 0);
+        assertEquals(1, cipher.getBlockCounter());
+        cipher.processBlocks(in, 16, 999, actual, 16);
+        assertEquals(1000, cipher.getBlockCounter());
+        assertArrayEquals(expected, actual);
+        cipher.setBlockCounter(500);
+        cipher.processBlocks(actual, 500 * 16, 500, actual, 500 * 16);
+        for (int i = 500 * 16; i < in.length; i++) assertEquals(in[i], actual[i]);
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        final WinZipAesParameters param = new WinZipAesParameters() {
+            @Override
+            public byte[] getWritePassword(String name) { return PASSWORD.clone(); }
+
+            @Override
+            public byte[] getReadPassword(String name, boolean invalid)
+            throws ZipKeyException {
+                if (invalid) throw new ZipKeyException(name);
+                return PASSWORD.clone();
+            }
+
+            @Override
+            public AesKeyStrength getKeyStrength(String name) { return AesKeyStrength.BITS_256; }
+
+            @Override
+            public void setKeyStrength(String name, AesKeyStrength keyStrength) { }
+
+            @Override
+            public URI getKeyResource(String name) { return RESOURCE; }
+        };
+        final int[] lengths = { 0, 1, 100, 3 * 1024 * 1024 + 7 };
+        final ByteBufferChannel bbc = new ByteBufferChannel(
+                ByteBuffer.allocate(1024));
+        try (ZipOutputStream zos = new ZipOutputStream(
+                new ChannelOutputStream(bbc))) {
+            zos.setCryptoParameters(param);
+            zos.setMethod(ZipEntry.STORED);
+            for (final int length : lengths) {
+                final byte[] data = random(length);
+                final ZipEntry entry = new ZipEntry(Integer.toString(length));
+                entry.setEncrypted(true);
+                entry.setMethod(ZipEntry.DEFLATED);
+                zos.putNextEntry(entry);
+                zos.write(data);
+            }
+        }
+        final ByteBuffer bb = bbc.getBuffer();
+        bb.flip();
+        try (ZipFile zf = new ZipFile(new ByteBufferChannel(bb))) {
+            zf.setCryptoParameters(param);
+            // The second pass gets the derived keys from the cache.
+            for (int pass = 0; pass < 2; pass++) {
+                for (final int length : lengths) {
+                    final byte[] expected = random(length);
+                    final byte[] actual = new byte[length];
+                    try (InputStream in = zf.getCheckedInputStream(Integer.toString(length))) {
+                        int off = 0;
+                        for (int read; off < length
+                                && 0 <= (read = in.read(actual, off, length - off)); )
+                            off += read;
+                        assertEquals(length, off);
+                        assertEquals(-1, in.read());
+                    }
+                    assertArrayEquals(expected, actual);
+                }
+                assertTrue(0 < DerivedKeyCache.SINGLETON.size());
+            }
+        } finally {
+            DerivedKeyCache.SINGLETON.evict(RESOURCE);
+        }
+    }
+}
@@ -141,6 +141,8 @@ public final class ZipEntryTest {
         assertEquals(DEFLATED, entry.getMethod());
         entry.setMethod(BZIP2);
         assertEquals(BZIP2, entry.getMethod());
+        entry.setMethod(ZSTD);
+        assertEquals(ZSTD, entry.getMethod());
         entry.setMethod(UNKNOWN);
         assertEquals(UNKNOWN, entry.getMethod());
     }
@@ -534,4 +536,74 @@ public final class ZipEntryTest {
         assertTrue(Arrays.equals(set, got1));
         assertTrue(Arrays.equals(set, got2));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testRawExtraFieldsRange() {
+        // Serialized Extra Fields in little endian order, surrounded by
+        // garbage in a scratch buffer.
+        final byte[] buf = new byte[] {
+            (byte) 0xde, (byte) 0xad, // garbage
+            (byte) 0x01, (byte) 0x00, // Header ID: 0x0001 (Zip64)
+            (byte) 0x08, (byte) 0x00, // Data Size: 0x0008
+            (byte) 0x21, (byte) 0x43, (byte) 0x65, (byte) 0x87, // Original Size
+            (byte) 0xa9, (byte) 0xcb, (byte) 0xed, (byte) 0x0f,
+            (byte) 0xfe, (byte) 0xca, // Header ID: 0xcafe (JarMarker)
+            (byte) 0x00, (byte) 0x00, // Data Size: 0x0000
+            (byte) 0xbe, (byte) 0xef, // garbage
+        };
+        final byte[] jarMarker = Arrays.copyOfRange(buf, 14, 18);
+
+        entry.setRawSize(UInt.MAX_VALUE);
+        entry.setRawExtraFields(buf, 2, 16);
+        assertEquals(0x0fedcba987654321L, entry.getSize());
+        assertArrayEquals(jarMarker, entry.getExtra());
+        assertNotNull(entry.getExtraField(0xcafe));
+
+        // The serialized extra fields must have been copied.
+        Arrays.fill(buf, (byte) 0);
+        assertArrayEquals(jarMarker, entry.getExtra());
+
+        // Only the ZIP64 Extended Information extra field.
+        final ZipEntry zip64 = new ZipEntry("zip64");
+        zip64.setRawSize(UInt.MAX_VALUE);
+        zip64.setRawExtraFields(new byte[] {
+            (byte) 0xde, (byte) 0xad, // garbage
+            (byte) 0x01, (byte) 0x00, // Header ID: 0x0001 (Zip64)
+            (byte) 0x08, (byte) 0x00, // Data Size: 0x0008
+            (byte) 0x22, (byte) 0x43, (byte) 0x65, (byte) 0x87, // Original Size
+            (byte) 0xa9, (byte) 0xcb, (byte) 0xed, (byte) 0x0f,
+        }, 2, 12);
+        assertEquals(0x0fedcba987654322L, zip64.getSize());
+        assertEquals(0, zip64.getExtra().length);
+
+        // Truncated Data Size.
+        try {
+            new ZipEntry("truncated").setRawExtraFields(
+                    new byte[] { 0, 0, (byte) 0xfe, (byte) 0xca, 1, 0 }, 2, 4);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void testReadingExtraFieldsDoesNotModifyEntry() {
+        final byte[] extra = new byte[] {
+            (byte) 0xfe, (byte) 0xca, // Header ID: 0xcafe (JarMarker)
+            (byte) 0x00, (byte) 0x00, // Data Size: 0x0000
+        };
+        entry.setRawExtraFields(extra, 0, extra.length);
+        final ZipEntry copy = new ZipEntry("copy", entry);
+
+        // Reading returns a new map every time.
+        assertNotSame(entry.getExtraField(0xcafe), entry.getExtraField(0xcafe));
+        assertArrayEquals(extra, entry.getExtra());
+        assertArrayEquals(extra, copy.getExtra());
+
+        // Modifying the copy doesn't modify the original.
+        assertNotNull(copy.removeExtraField(0xcafe));
+        assertEquals(0, copy.getExtra().length);
+        assertArrayEquals(extra, entry.getExtra());
+        entry.setExtra(null);
+        assertEquals(0, entry.getExtra().length);
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.comp.zip;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.zip.ZipException;
+import net.java.truecommons.io.ByteBufferChannel;
+import net.java.truecommons.io.ChannelOutputStream;
+import net.java.truecommons.io.DecoratingSeekableChannel;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Tests closing a ZIP file while other threads are reading its entries.
+ *
+ * @author Christian Schlichtherle
+ */
+public final class ZipFileCloseTest {
+
+    private static final byte[] DATA = new byte[1024 * 1024];
+    static { new Random().nextBytes(DATA); }
+
+    private static ByteBuffer zip() throws IOException {
+        final ByteBufferChannel bbc = new ByteBufferChannel(
+                ByteBuffer.allocate(2 * DATA.length));
+        try (final ZipOutputStream zos = new ZipOutputStream(
+                new ChannelOutputStream(bbc))) {
+            zos.putNextEntry(new ZipEntry("entry"));
+            zos.write(DATA);
+        }
+        final ByteBuffer bb = bbc.getBuffer();
+        bb.flip();
+        return bb;
+    }
+
+    @Test
+    public void testCloseWaitsForReadInProgress() throws Exception {
+        final BlockingChannel channel = new BlockingChannel(
+                new ByteBufferChannel(zip()));
+        final ZipFile zf = new ZipFile(channel);
+        final InputStream in = zf.getInputStream("entry");
+        assertTrue(zf.busy());
+
+        channel.block = true;
+        final FutureTask<Integer> read = new FutureTask<>(in::read);
+        new Thread(read).start();
+        assertTrue(channel.entered.await(10, SECONDS));
+
+        final FutureTask<Void> close = new FutureTask<>(() -> {
+            zf.close();
+            return null;
+        });
+        final Thread closer = new Thread(close);
+        closer.start();
+        closer.join(100);
+        assertTrue("close() must wait for the read in progress", closer.isAlive());
+        assertTrue(channel.isOpen());
+
+        channel.release.countDown();
+        assertEquals(DATA[0] & 0xff, (int) read.get(10, SECONDS));
+        close.get(10, SECONDS);
+        assertFalse(channel.isOpen());
+        assertFencedOut(zf, in);
+    }
+
+    @Test
+    public void testCloseFencesOutReaders() throws Exception {
+        final ZipFile zf = new ZipFile(new ByteBufferChannel(zip()));
+        final InputStream in = zf.getInputStream("entry");
+        assertEquals(DATA[0] & 0xff, in.read());
+        zf.close();
+        assertFencedOut(zf, in);
+    }
+
+    private static void assertFencedOut(final ZipFile zf, final InputStream in)
+    throws IOException {
+        final byte[] buf = new byte[DATA.length];
+        try {
+            while (0 <= in.read(buf)) {
+            }
+            fail();
+        } catch (final IOException expected) {
+        }
+        try {
+            zf.getInputStream("entry");
+            fail();
+        } catch (final ZipException expected) {
+        }
+        assertTrue(zf.busy());
+        in.close();
+        assertFalse(zf.busy());
+    }
+
+    /** A channel which blocks reads while {@link #block} is set. */
+    private static final class BlockingChannel
+    extends DecoratingSeekableChannel {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        volatile boolean block;
+
+        BlockingChannel(SeekableByteChannel channel) { super(channel); }
+
+        @Override
+        public int read(final ByteBuffer dst) throws IOException {
+            if (block) {
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (final InterruptedException ex) {
+                    throw new AssertionError(ex);
+                }
+            }
+            return channel.read(dst);
+        }
+    } // BlockingChannel
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.comp.zip;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import net.java.truecommons.io.ByteBufferChannel;
+import net.java.truecommons.io.ChannelOutputStream;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static net.java.truevfs.comp.zip.Constants.ZIP64_EOCDR_MIN_LEN;
+import static net.java.truevfs.comp.zip.Constants.ZIP64_EOCDR_SIG;
+import static net.java.truevfs.comp.zip.ZipEntry.STORED;
+import static net.java.truevfs.comp.zip.ZipEntry.ZSTD;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * @author Christian Schlichtherle
+ */
+public final class ZstdTest {
+
+    private static byte[] data() {
+        final StringBuilder s = new StringBuilder();
+        for (int i = 0; i < 100000; i++) s.append("Hello World ").append(i);
+        return s.toString().getBytes(US_ASCII);
+    }
+
+    private static ByteBuffer zip(final byte[] data) throws IOException {
+        final ByteBufferChannel bbc = new ByteBufferChannel(
+                ByteBuffer.allocate(1024));
+        try (ZipOutputStream zos = new ZipOutputStream(
+                new ChannelOutputStream(bbc))) {
+            zos.setMethod(ZSTD);
+            zos.putNextEntry(new ZipEntry("data"));
+            zos.write(data);
+            zos.putNextEntry(new ZipEntry("empty"));
+        }
+        final ByteBuffer bb = bbc.getBuffer();
+        bb.flip();
+        return bb;
+    }
+
+    private static void assertEntry(
+            final byte[] expected,
+            final ZipFile zf,
+            final String name)
+    throws IOException {
+        final ZipEntry entry = zf.entry(name);
+        assertEquals(ZSTD, entry.getMethod());
+        assertEquals(expected.length, entry.getSize());
+        final byte[] actual = new byte[expected.length];
+        try (InputStream in = zf.getCheckedInputStream(name)) {
+            int off = 0;
+            for (int read; off < actual.length
+                    && 0 <= (read = in.read(actual, off, actual.length - off)); )
+                off += read;
+            assertEquals(expected.length, off);
+            assertEquals(-1, in.read());
+        }
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        final byte[] data = data();
+        try (ZipFile zf = new ZipFile(new ByteBufferChannel(zip(data)))) {
+            final ZipEntry entry = zf.entry("data");
+            assertTrue(entry.getCompressedSize() < data.length / 4);
+            assertEntry(data, zf, "data");
+            assertEntry(new byte[0], zf, "empty");
+        }
+    }
+
+    @Test
+    public void testRawDataCopying() throws IOException {
+        final byte[] data = data();
+        final ByteBufferChannel bbc = new ByteBufferChannel(
+                ByteBuffer.allocate(1024));
+        try (ZipFile source = new ZipFile(new ByteBufferChannel(zip(data)))) {
+            try (ZipOutputStream zos = new ZipOutputStream(
+                    new ChannelOutputStream(bbc))) {
+                final byte[] buf = new byte[4096];
+                for (final ZipEntry entry : source) {
+                    zos.putNextEntry(entry.clone(), false);
+                    try (InputStream in = source.getInputStream(
+                            entry.getName(), false, false)) {
+                        for (int read; 0 <= (read = in.read(buf)); )
+                            zos.write(buf, 0, read);
+                    }
+                    zos.closeEntry();
+                }
+            }
+        }
+        final ByteBuffer bb = bbc.getBuffer();
+        bb.flip();
+        try (ZipFile zf = new ZipFile(new ByteBufferChannel(bb))) {
+            assertEntry(data, zf, "data");
+            assertEntry(new byte[0], zf, "empty");
+        }
+    }
+
+    @Test
+    public void testZip64VersionNeededToExtract() throws IOException {
+        final ByteBufferChannel bbc = new ByteBufferChannel(
+                ByteBuffer.allocate(1024));
+        try (ZipOutputStream zos = new ZipOutputStream(
+                new ChannelOutputStream(bbc))) {
+            // Too many entries for the End Of Central Directory Record.
+            for (int i = 0; i <= UShort.MAX_VALUE; i++) {
+                final ZipEntry entry = new ZipEntry(Integer.toString(i));
+                entry.setMethod(STORED);
+                entry.setCrc(0);
+                entry.setSize(0);
+                entry.setCompressedSize(0);
+                zos.putNextEntry(entry);
+            }
+            zos.setMethod(ZSTD);
+            zos.putNextEntry(new ZipEntry("data"));
+            zos.write(data());
+        }
+        final ByteBuffer bb = bbc.getBuffer();
+        bb.flip();
+        bb.order(ByteOrder.LITTLE_ENDIAN);
+        int pos = bb.limit() - ZIP64_EOCDR_MIN_LEN;
+        while (ZIP64_EOCDR_SIG != bb.getInt(pos)) pos--;
+        assertEquals(63, bb.getShort(pos + 14)); // version needed to extract
+        try (ZipFile zf = new ZipFile(new ByteBufferChannel(bb))) {
+            assertEquals(UShort.MAX_VALUE + 2, zf.size());
+            assertEntry(data(), zf, "data");
+        }
+    }
+}
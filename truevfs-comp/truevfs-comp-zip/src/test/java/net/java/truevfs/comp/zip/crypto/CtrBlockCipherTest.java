@@ -5,10 +5,12 @@
 package net.java.truevfs.comp.zip.crypto;
 
 import org.bouncycastle.crypto.BlockCipher;
+import org.bouncycastle.crypto.BufferedBlockCipher;
 import org.bouncycastle.crypto.PBEParametersGenerator;
 import org.bouncycastle.crypto.engines.AESEngine;
 import org.bouncycastle.crypto.generators.PKCS5S2ParametersGenerator;
 import org.bouncycastle.crypto.modes.SICBlockCipher;
+import org.bouncycastle.crypto.params.KeyParameter;
 import org.bouncycastle.crypto.params.ParametersWithIV;
 import org.junit.Test;
 
@@ -18,6 +20,8 @@ import java.util.Random;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 
 /**
  * @author Christian Schlichtherle
@@ -48,6 +52,60 @@ public class CtrBlockCipherTest {
         assertModes(ref, uut);
     }
 
+    @Test
+    public void compareBulk() {
+        final int blockSize = 16;
+        final byte[] salt = new byte[blockSize];
+        new SecureRandom().nextBytes(salt);
+        final PBEParametersGenerator gen = new PKCS5S2ParametersGenerator();
+        gen.init("top secret".getBytes(), salt, 1);
+        final ParametersWithIV param = (ParametersWithIV)
+                gen.generateDerivedParameters(256, blockSize * 8);
+        final SeekableBlockCipher ref = new CtrBlockCipher(new AESEngine());
+        ref.init(true, param);
+        final SeekableBlockCipher uut = new CtrBlockCipher(new JceAesEngine());
+        uut.init(true, param);
+        // The largest count exceeds the threshold for parallel processing.
+        for (final int blocks : new int[] { 1, 3, 1000, 4 * CtrBlockCipher.MIN_PARALLEL_SLICE / blockSize + 5 }) {
+            final byte[] in = new byte[blocks * blockSize];
+            new Random(blocks).nextBytes(in);
+            final long start = blocks * 7L;
+            ref.setBlockCounter(start);
+            final byte[] expected = new byte[in.length];
+            for (int off = 0; off < in.length; off += blockSize)
+                ref.processBlock(in, off, expected, off);
+            uut.setBlockCounter(start);
+            final byte[] actual = in.clone(); // in place
+            assertEquals(in.length, uut.processBlocks(actual, 0, blocks, actual, 0));
+            assertEquals(start + blocks, uut.getBlockCounter());
+            assertArrayEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void compareBuffered() {
+        final byte[] key = new byte[32], iv = new byte[16];
+        new Random(1).nextBytes(key);
+        final ParametersWithIV param = new ParametersWithIV(new KeyParameter(key), iv);
+        final BufferedBlockCipher ref = new BufferedBlockCipher(new SICBlockCipher(new AESEngine()));
+        ref.init(true, param);
+        final BufferedBlockCipher uut = new BufferedPartialBlockCipher(new CtrBlockCipher(new JceAesEngine()));
+        uut.init(true, param);
+        final byte[] in = new byte[100000];
+        new Random(2).nextBytes(in);
+        final byte[] expected = new byte[in.length], actual = new byte[in.length];
+        int expectedOff = 0, actualOff = 0;
+        final Random rnd = new Random(3);
+        for (int off = 0; off < in.length - 5000; ) {
+            final int len = rnd.nextInt(5000);
+            expectedOff += ref.processBytes(in, off, len, expected, expectedOff);
+            actualOff += uut.processBytes(in, off, len, actual, actualOff);
+            assertEquals(expectedOff, actualOff);
+            off += len;
+        }
+        assertArrayEquals(expected, actual);
+    }
+
     private void assertModes(BlockCipher ref, BlockCipher uut) {
         int blockSize = ref.getBlockSize();
         assertThat(uut.getBlockSize(), is(blockSize));
@@ -0,0 +1,75 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.comp.zip.crypto;
+
+import java.net.URI;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Christian Schlichtherle
+ */
+public class DerivedKeyCacheTest {
+
+    private static final URI ZIP = URI.create("file:/archive.zip/");
+    private static final URI ENTRY = URI.create("file:/archive.zip/entry");
+    private static final URI OTHER = URI.create("file:/other.zip/");
+
+    private static final byte[] SALT = { 1, 2, 3, 4 };
+    private static final byte[] DERIVED = { 5, 6, 7, 8, 9 };
+
+    private static DerivedKeyCache.Key key(
+            final DerivedKeyCache cache,
+            final URI resource,
+            final String password) {
+        return cache.key(resource, "PBKDF2WithHmacSHA1", SALT, 1000, 40,
+                password.getBytes());
+    }
+
+    @Test
+    public void lookup() {
+        final DerivedKeyCache cache = new DerivedKeyCache(10);
+        assertNull(cache.get(key(cache, ZIP, "secret")));
+        cache.put(key(cache, ZIP, "secret"), DERIVED);
+        final byte[] derived = cache.get(key(cache, ZIP, "secret"));
+        assertArrayEquals(DERIVED, derived);
+        assertNotSame(derived, cache.get(key(cache, ZIP, "secret")));
+        assertNull(cache.get(key(cache, ZIP, "wrong")));
+        assertNull(cache.get(key(cache, OTHER, "secret")));
+        assertNull(cache.get(cache.key(ZIP, "PBKDF2WithHmacSHA1", SALT,
+                1000, 128, "secret".getBytes())));
+        assertNull(new DerivedKeyCache(10).get(key(cache, ZIP, "secret")));
+    }
+
+    @Test
+    public void evict() {
+        final DerivedKeyCache cache = new DerivedKeyCache(10);
+        cache.put(key(cache, ZIP, "secret"), DERIVED);
+        cache.put(key(cache, ENTRY, "secret"), DERIVED);
+        cache.put(key(cache, OTHER, "secret"), DERIVED);
+        assertEquals(3, cache.size());
+        cache.evict(ZIP);
+        assertEquals(1, cache.size());
+        assertNull(cache.get(key(cache, ZIP, "secret")));
+        assertNull(cache.get(key(cache, ENTRY, "secret")));
+        assertArrayEquals(DERIVED, cache.get(key(cache, OTHER, "secret")));
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void bound() {
+        final DerivedKeyCache cache = new DerivedKeyCache(2);
+        cache.put(key(cache, ZIP, "one"), DERIVED);
+        cache.put(key(cache, ZIP, "two"), DERIVED);
+        assertNotNull(cache.get(key(cache, ZIP, "one")));
+        cache.put(key(cache, ZIP, "three"), DERIVED);
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get(key(cache, ZIP, "one")));
+        assertNull(cache.get(key(cache, ZIP, "two")));
+        assertNotNull(cache.get(key(cache, ZIP, "three")));
+    }
+}
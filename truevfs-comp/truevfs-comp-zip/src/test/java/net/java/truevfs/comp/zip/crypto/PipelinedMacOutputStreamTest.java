@@ -0,0 +1,115 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.comp.zip.crypto;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import org.bouncycastle.crypto.Mac;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.macs.HMac;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Christian Schlichtherle
+ */
+public class PipelinedMacOutputStreamTest {
+
+    private static Mac newMac() {
+        final Mac mac = new HMac(new SHA256Digest());
+        mac.init(new KeyParameter("top secret".getBytes()));
+        return mac;
+    }
+
+    @Test
+    public void compareMacs() throws IOException {
+        for (final int length : new int[] { 0, 1, 1000, 64 * 1024, 1024 * 1024 + 7 }) {
+            final byte[] data = new byte[length];
+            new Random(length).nextBytes(data);
+
+            final Mac mac = newMac();
+            mac.update(data, 0, length);
+            final byte[] expected = new byte[mac.getMacSize()];
+            mac.doFinal(expected, 0);
+
+            final PipelinedMacOutputStream out =
+                    new PipelinedMacOutputStream(newMac());
+            final Random rnd = new Random(0);
+            for (int off = 0; off < length; ) {
+                if (rnd.nextBoolean()) {
+                    out.write(data[off++]);
+                } else {
+                    final int len = Math.min(length - off, rnd.nextInt(100000));
+                    out.write(data, off, len);
+                    off += len;
+                }
+            }
+            assertArrayEquals(expected, out.getMac());
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void writeOnCommonPool() throws Exception {
+        final int length = 1024 * 1024;
+        final byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        final Mac mac = newMac();
+        mac.update(data, 0, length);
+        final byte[] expected = new byte[mac.getMacSize()];
+        mac.doFinal(expected, 0);
+
+        // More writers than threads in the common pool, each of which would
+        // block a thread needed to update the MACs.
+        final int writers = 2 * ForkJoinPool.getCommonPoolParallelism() + 1;
+        final List<CompletableFuture<byte[]>> macs = new ArrayList<>(writers);
+        for (int i = 0; i < writers; i++) {
+            macs.add(CompletableFuture.supplyAsync(() -> {
+                final PipelinedMacOutputStream out =
+                        new PipelinedMacOutputStream(newMac());
+                try {
+                    out.write(data);
+                } catch (final IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+                return out.getMac();
+            }));
+        }
+        for (final CompletableFuture<byte[]> actual : macs)
+            assertArrayEquals(expected, actual.get());
+    }
+
+    @Test(timeout = 60000)
+    public void failingMac() throws IOException {
+        final IllegalStateException expected = new IllegalStateException();
+        final Mac mac = new HMac(new SHA256Digest()) {
+            @Override
+            public void update(byte[] in, int inOff, int len) {
+                throw expected;
+            }
+        };
+        mac.init(new KeyParameter("top secret".getBytes()));
+        final PipelinedMacOutputStream out = new PipelinedMacOutputStream(mac);
+        final byte[] data = new byte[64 * 1024];
+        try {
+            for (int i = 0; i < 100; i++) out.write(data);
+            fail();
+        } catch (final IllegalStateException ex) {
+            assertSame(expected, ex);
+        }
+        try {
+            out.getMac();
+            fail();
+        } catch (final IllegalStateException ex) {
+            assertSame(expected, ex);
+        }
+    }
+}
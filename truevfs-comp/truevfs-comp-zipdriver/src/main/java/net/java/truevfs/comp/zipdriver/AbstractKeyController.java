@@ -14,8 +14,10 @@ import net.java.truecommons.cio.Entry.Access;
 import static net.java.truecommons.cio.Entry.Type.SPECIAL;
 import net.java.truecommons.shed.BitField;
 import net.java.truecommons.shed.ControlFlowException;
+import net.java.truevfs.comp.zip.crypto.DerivedKeyCache;
 import net.java.truevfs.kernel.spec.*;
 import static net.java.truevfs.kernel.spec.FsNodeName.ROOT;
+import static net.java.truevfs.kernel.spec.FsSyncOption.CLEAR_CACHE;
 import net.java.truecommons.key.spec.KeyManager;
 import net.java.truecommons.key.spec.KeyManagerMap;
 
@@ -134,8 +136,10 @@ public abstract class AbstractKeyController extends FsDecoratingController {
         final FsModel model = getModel();
         final URI mpu = driver.mountPointUri(model);
         final URI fsu = driver.fileSystemUri(model, name.toString());
-        if (!fsu.equals(mpu) || name.isRoot())
+        if (!fsu.equals(mpu) || name.isRoot()) {
             keyManager().unlink(fsu);
+            DerivedKeyCache.SINGLETON.evict(fsu);
+        }
     }
 
     @Override
@@ -146,7 +150,10 @@ public abstract class AbstractKeyController extends FsDecoratingController {
         } catch (FsSyncWarningException ex) {
             builder.warn(ex);
         }
-        keyManager().release(driver.mountPointUri(getModel()));
+        final URI mpu = driver.mountPointUri(getModel());
+        keyManager().release(mpu);
+        if (options.get(CLEAR_CACHE))
+            DerivedKeyCache.SINGLETON.evict(mpu);
         builder.check();
     }
 
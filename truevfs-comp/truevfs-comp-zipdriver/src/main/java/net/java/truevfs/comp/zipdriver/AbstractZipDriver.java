@@ -8,6 +8,7 @@ import edu.umd.cs.findbugs.annotations.CreatesObligation;
 import java.io.IOException;
 import java.net.URI;
 import java.nio.charset.Charset;
+import java.nio.file.Paths;
 import java.util.Objects;
 import java.util.zip.Deflater;
 import javax.annotation.CheckForNull;
@@ -24,6 +25,7 @@ import net.java.truecommons.key.spec.sl.KeyManagerMapLocator;
 import net.java.truecommons.logging.LocalizedLogger;
 import net.java.truecommons.shed.BitField;
 import net.java.truecommons.shed.HashMaps;
+import net.java.truevfs.comp.zip.CentralDirectoryIndex;
 import net.java.truevfs.comp.zip.ZipCryptoParameters;
 import net.java.truevfs.comp.zip.ZipEntry;
 import static net.java.truevfs.comp.zip.ZipEntry.*;
@@ -278,6 +280,74 @@ implements ZipOutputStreamParameters, ZipFileParameters<E> {
         return Deflater.BEST_COMPRESSION;
     }
 
+    /**
+     * Returns whether or not the compression of entries adapts to their
+     * data.
+     * If this is {@code true}, then {@link ZipEntry#DEFLATED} entries with
+     * incompressible data get stored instead.
+     * <p>
+     * The implementation in the class {@link ZipDriver} returns
+     * {@code false}.
+     *
+     * @return Whether or not the compression of entries adapts to their
+     *         data.
+     * @see    net.java.truevfs.comp.zip.AbstractZipOutputStream#setAdaptiveCompression
+     */
+    public boolean getAdaptiveCompression() {
+        return false;
+    }
+
+    /**
+     * Returns the maximum ratio of garbage bytes to the total length of a ZIP
+     * file for appending to it when {@link FsAccessOption#GROW} is set.
+     * Garbage bytes are the data of entries which have been updated or
+     * deleted by appending to the ZIP file before.
+     * If the ratio is exceeded, then the ZIP file gets compacted by rewriting
+     * it completely instead of appending to it again.
+     * <p>
+     * The implementation in the class {@link ZipDriver} returns {@code 0.5}.
+     *
+     * @return The maximum ratio of garbage bytes to the total length of a ZIP
+     *         file for appending to it.
+     *         A value greater than or equal to one disables compaction.
+     */
+    public double getGarbageThreshold() {
+        return 0.5;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The implementation in the class {@link AbstractZipDriver} returns {@code false} because an archive file system
+     * retains all entries of its input service anyway and its
+     * {@link net.java.truecommons.cio.Container#entry(String)} method must return the same entries as its iterator.
+     */
+    @Override
+    public final boolean getRetainCentralDirectory() {
+        return false;
+    }
+
+    /**
+     * Returns the index of the central directories of ZIP files.
+     * If this is not {@code null}, then the entries of a ZIP file get loaded
+     * from the index rather than reading and parsing its central directory
+     * again when mounting it, provided that the ZIP file is a file in the
+     * platform file system and has not changed since its entries have been
+     * stored to the index.
+     * This is not supported for nested archive files, because their entries
+     * have no stable path, size and last modification time in the platform
+     * file system.
+     * <p>
+     * The implementation in the class {@link ZipDriver} returns {@code null}.
+     *
+     * @return The index of the central directories of ZIP files or
+     *         {@code null} if no index should get used.
+     * @since  TrueVFS 0.15.0
+     */
+    public @CheckForNull CentralDirectoryIndex getCentralDirectoryIndex() {
+        return null;
+    }
+
     /**
      * {@inheritDoc}
      * <p>
@@ -309,7 +379,60 @@ implements ZipOutputStreamParameters, ZipFileParameters<E> {
 
     @CreatesObligation
     protected ZipInputService<E> newZipInput(FsModel model, FsInputSocketSource source) throws IOException {
-        return new ZipInputService<>(model, source, this);
+        final CentralDirectoryIndex index = getCentralDirectoryIndex();
+        final String key = null == index ? null : centralDirectoryIndexKey(model);
+        return null == key
+                ? new ZipInputService<>(model, source, this)
+                : new ZipInputService<>(model, source, this, index, key);
+    }
+
+    /**
+     * Returns the key of the ZIP file for the given model in the central directory index or {@code null} if the ZIP
+     * file is not a file in the platform file system.
+     */
+    private static @CheckForNull String centralDirectoryIndexKey(final FsModel model) {
+        final FsMountPoint mp = model.getMountPoint();
+        final FsMountPoint parent = mp.getParent();
+        if (null == parent || null != parent.getParent() || !"file".equals(parent.getScheme().toString())) {
+            return null;
+        }
+        try {
+            return CentralDirectoryIndex.key(Paths.get(mp.getPath().toHierarchicalUri()));
+        } catch (IOException | RuntimeException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * If {@link FsAccessOption#GROW} is set and the ratio of garbage bytes to
+     * the total length of the target archive file exceeds the
+     * {@linkplain #getGarbageThreshold() garbage threshold}, then the
+     * implementation in the class {@link ZipDriver} clears this option so that
+     * the target archive file gets compacted by rewriting it completely.
+     * Otherwise, only new or updated entries and a new central directory get
+     * appended to the target archive file.
+     */
+    @Override
+    @CreatesObligation
+    public OutputService<E> newOutput(
+            final FsModel model,
+            BitField<FsAccessOption> options,
+            final FsController controller,
+            final FsNodeName name,
+            final @CheckForNull @WillNotClose InputService<E> input)
+    throws IOException {
+        if (options.get(GROW) && input instanceof ZipInputService) {
+            final ZipInputService<E> zis = (ZipInputService<E>) input;
+            final long length = zis.length();
+            final long garbage = zis.getGarbageLength();
+            if (0 < length && getGarbageThreshold() < (double) garbage / length) {
+                logger.debug("compact.debug", mountPointUri(model), garbage, length);
+                options = options.clear(GROW);
+            }
+        }
+        return super.newOutput(model, options, controller, name, input);
     }
 
     @Override
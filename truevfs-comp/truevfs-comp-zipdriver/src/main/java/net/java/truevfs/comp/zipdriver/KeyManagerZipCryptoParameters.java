@@ -181,5 +181,10 @@ implements ZipParametersProvider, ZipCryptoParameters {
             param.setKeyStrength(keyStrength);
             provider.setKey(param);
         }
+
+        @Override
+        public URI getKeyResource(String name) {
+            return resourceUri(name);
+        }
     } // WinZipAes
 }
\ No newline at end of file
@@ -7,17 +7,27 @@ package net.java.truevfs.comp.zipdriver;
 import edu.umd.cs.findbugs.annotations.CreatesObligation;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.file.NoSuchFileException;
 import java.util.Objects;
+import javax.annotation.CheckForNull;
 import javax.annotation.concurrent.NotThreadSafe;
 import net.java.truevfs.comp.zip.AbstractZipFile;
+import net.java.truevfs.comp.zip.CentralDirectoryIndex;
 import net.java.truevfs.comp.zip.ZipCryptoParameters;
+import net.java.truevfs.comp.zip.ZipEntry;
 import net.java.truevfs.kernel.spec.FsInputSocketSource;
 import net.java.truevfs.kernel.spec.FsModel;
+import net.java.truevfs.kernel.spec.cio.ConcurrentInputService;
 import net.java.truecommons.cio.*;
+import static net.java.truevfs.comp.zip.ZipEntry.DEFLATED;
+import static net.java.truevfs.comp.zip.ZipEntry.STORED;
 
 /**
  * An input service for reading ZIP files.
+ * <p>
+ * The entry data gets read using positional reads, so the streams and
+ * channels for different entries may get used concurrently.
  *
  * @param  <E> the type of the ZIP driver entries.
  * @see    ZipOutputService
@@ -25,7 +35,7 @@ import net.java.truecommons.cio.*;
  */
 @NotThreadSafe
 public final class ZipInputService<E extends AbstractZipDriverEntry>
-extends AbstractZipFile<E> implements InputService<E> {
+extends AbstractZipFile<E> implements ConcurrentInputService<E> {
 
     private final AbstractZipDriver<E> driver;
     private final FsModel model;
@@ -37,7 +47,33 @@ extends AbstractZipFile<E> implements InputService<E> {
             final FsInputSocketSource source,
             final AbstractZipDriver<E> driver)
     throws IOException {
-        super(source, driver);
+        this(model, source, driver, null, null);
+    }
+
+    /**
+     * Constructs a new ZIP input service which loads its entries from the
+     * given central directory index if it has an up-to-date copy of them
+     * and otherwise stores a copy of its entries to the index.
+     *
+     * @param model the file system model.
+     * @param source the source for reading the ZIP file.
+     * @param driver the ZIP driver.
+     * @param index the nullable central directory index.
+     * @param key the key of the ZIP file in the central directory index.
+     *        This may be {@code null} if and only if {@code index} is
+     *        {@code null}.
+     * @see   AbstractZipDriver#getCentralDirectoryIndex()
+     * @since TrueVFS 0.15.0
+     */
+    @CreatesObligation
+    public ZipInputService(
+            final FsModel model,
+            final FsInputSocketSource source,
+            final AbstractZipDriver<E> driver,
+            final @CheckForNull CentralDirectoryIndex index,
+            final @CheckForNull String key)
+    throws IOException {
+        super(source, driver, index, key);
         this.driver = driver;
         if (null == (this.model = model)) {
             final NullPointerException ex = new NullPointerException();
@@ -97,6 +133,32 @@ extends AbstractZipFile<E> implements InputService<E> {
                         || 0 == zpeer.getSize()
                         || !driver.rdc(ZipInputService.this, local, zpeer));
             }
+
+            /**
+             * {@inheritDoc}
+             * <p>
+             * Random access is supported for {@link ZipEntry#STORED} and
+             * {@link ZipEntry#DEFLATED} entries which don't need to get
+             * {@linkplain AbstractZipDriver#check checked}, because a seekable
+             * channel cannot check the CRC-32 value of the entry data.
+             * For any other entry, an {@link UnsupportedOperationException}
+             * gets thrown, so the caller should use {@link #stream} instead.
+             */
+            @Override
+            public SeekableByteChannel channel(OutputSocket<? extends Entry> output)
+            throws IOException {
+                final E local = target();
+                final int method = local.getMethod();
+                if (STORED != method && DEFLATED != method)
+                    throw new UnsupportedOperationException(local.getName()
+                            + " (compression method "
+                            + method
+                            + " does not support random access)");
+                if (driver.check(local, ZipInputService.this))
+                    throw new UnsupportedOperationException(local.getName()
+                            + " (entry needs to get checked)");
+                return getSeekableChannel(local.getName());
+            }
         } // Input
         return new Input();
     }
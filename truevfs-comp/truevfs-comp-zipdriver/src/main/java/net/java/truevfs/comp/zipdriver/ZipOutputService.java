@@ -12,12 +12,14 @@ import net.java.truecommons.cio.*;
 import net.java.truecommons.io.DecoratingOutputStream;
 import net.java.truecommons.io.DisconnectingOutputStream;
 import net.java.truecommons.io.Streams;
+import net.java.truecommons.logging.LocalizedLogger;
 import net.java.truecommons.shed.CompoundIterator;
 import net.java.truecommons.shed.SuppressedExceptionBuilder;
 import net.java.truevfs.comp.zip.AbstractZipOutputStream;
 import net.java.truevfs.comp.zip.ZipCryptoParameters;
 import net.java.truevfs.kernel.spec.FsModel;
 import net.java.truevfs.kernel.spec.FsOutputSocketSink;
+import org.slf4j.Logger;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.WillNotClose;
@@ -48,6 +50,9 @@ import static net.java.truevfs.kernel.spec.FsAccessOption.GROW;
 public final class ZipOutputService<E extends AbstractZipDriverEntry>
 extends AbstractZipOutputStream<E> implements OutputService<E> {
 
+    private static final Logger
+            logger = new LocalizedLogger(ZipOutputService.class);
+
     private final FsModel model;
     private final AbstractZipDriver<E> driver;
     private @CheckForNull IoBuffer postamble;
@@ -67,6 +72,7 @@ extends AbstractZipOutputStream<E> implements OutputService<E> {
         this.driver = driver;
         try {
             this.model = Objects.requireNonNull(model);
+            super.setAdaptiveCompression(driver.getAdaptiveCompression());
             if (null != source) {
                 if (!sink.getOptions().get(GROW)) {
                     // Retain comment and preamble of input ZIP archive.
@@ -103,6 +109,16 @@ extends AbstractZipOutputStream<E> implements OutputService<E> {
         return model;
     }
 
+    /**
+     * Logs the decision of the adaptive compression policy for the given
+     * entry.
+     */
+    @Override
+    protected void adapted(final E entry, final boolean compressed) {
+        logger.debug(compressed ? "compressed.debug" : "stored.debug",
+                driver.mountPointUri(model), entry.getName());
+    }
+
     private IoBufferPool getPool() {
         return driver.getPool();
     }
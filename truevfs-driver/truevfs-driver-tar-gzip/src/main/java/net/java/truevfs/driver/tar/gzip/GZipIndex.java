@@ -0,0 +1,162 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.driver.tar.gzip;
+
+import net.java.truevfs.comp.inflater.InflaterIndex;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.WillNotClose;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * An inflater index for a GZIP file which can get persisted in order to
+ * reuse it for subsequent mounts of the same GZIP file.
+ * It's bound to the GZIP file by the size of the file and its first and last
+ * bytes, which include the modification time and the CRC-32 of the
+ * decompressed data.
+ *
+ * @author Christian Schlichtherle
+ */
+@ThreadSafe
+final class GZipIndex {
+
+    private static final int MAGIC = 0x54475a49; // "TGZI"
+    private static final int VERSION = 1;
+
+    /** The number of bytes at the head and at the tail of the GZIP file. */
+    private static final int HEAD = 10, TAIL = 8;
+
+    /** The size and the first and last bytes of the GZIP file. */
+    private final long fileSize;
+    private final byte[] fingerprint;
+
+    private final InflaterIndex index;
+
+    /**
+     * Constructs an empty index for the given GZIP file.
+     *
+     * @param channel the channel for reading the GZIP file.
+     * @param interval the minimum distance of the checkpoints in the
+     *        decompressed data.
+     */
+    GZipIndex(final @WillNotClose SeekableByteChannel channel, final int interval)
+    throws IOException {
+        this(channel.size(), fingerprint(channel), new InflaterIndex(interval));
+    }
+
+    private GZipIndex(
+            final long fileSize,
+            final byte[] fingerprint,
+            final InflaterIndex index) {
+        this.fileSize = fileSize;
+        this.fingerprint = fingerprint;
+        this.index = index;
+    }
+
+    private static byte[] fingerprint(final SeekableByteChannel channel)
+    throws IOException {
+        final long size = channel.size();
+        final ByteBuffer buffer = ByteBuffer.allocate(HEAD + TAIL);
+        read(channel.position(0), (ByteBuffer) buffer.limit((int) Math.min(HEAD, size)));
+        read(channel.position(Math.max(0, size - TAIL)),
+                (ByteBuffer) buffer.limit(buffer.position() + (int) Math.min(TAIL, size)));
+        return buffer.array();
+    }
+
+    private static void read(
+            final SeekableByteChannel channel,
+            final ByteBuffer buffer)
+    throws IOException {
+        while (buffer.hasRemaining())
+            if (0 > channel.read(buffer))
+                break;
+    }
+
+    /** Returns the inflater index for the GZIP file. */
+    InflaterIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns {@code true} if and only if this index has been built for the
+     * GZIP file which gets read from the given channel.
+     */
+    boolean matches(final @WillNotClose SeekableByteChannel channel)
+    throws IOException {
+        return fileSize == channel.size()
+                && Arrays.equals(fingerprint, fingerprint(channel));
+    }
+
+    /**
+     * Returns {@code true} if and only if this index covers the entire
+     * GZIP file.
+     */
+    boolean isComplete() {
+        return 0 <= index.length();
+    }
+
+    /**
+     * Writes this complete index to the given stream.
+     * The checkpoints get compressed.
+     */
+    void write(final @WillNotClose OutputStream out) throws IOException {
+        assert isComplete();
+        final DataOutputStream dos = new DataOutputStream(out);
+        dos.writeInt(MAGIC);
+        dos.writeInt(VERSION);
+        dos.writeLong(fileSize);
+        dos.write(fingerprint);
+        dos.flush();
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            final DeflaterOutputStream def = new DeflaterOutputStream(out, deflater);
+            final DataOutputStream data = new DataOutputStream(def);
+            index.write(data);
+            data.flush();
+            def.finish();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Reads a complete index from the given stream.
+     *
+     * @return The index or {@code null} if the stream does not contain a
+     *         complete index in a supported format.
+     */
+    static @CheckForNull GZipIndex read(final @WillNotClose InputStream in)
+    throws IOException {
+        final DataInputStream dis = new DataInputStream(in);
+        if (MAGIC != dis.readInt() || VERSION != dis.readInt())
+            return null;
+        final long fileSize = dis.readLong();
+        final byte[] fingerprint = new byte[HEAD + TAIL];
+        dis.readFully(fingerprint);
+        final Inflater inflater = new Inflater();
+        final InflaterIndex index;
+        try {
+            index = InflaterIndex.read(new DataInputStream(
+                    new InflaterInputStream(in, inflater)));
+        } finally {
+            inflater.end();
+        }
+        return null != index && 0 <= index.length()
+                ? new GZipIndex(fileSize, fingerprint, index)
+                : null;
+    }
+}
@@ -10,6 +10,8 @@ import net.java.truecommons.io.AbstractSink;
 import net.java.truecommons.io.AbstractSource;
 import net.java.truecommons.io.Streams;
 import net.java.truecommons.shed.BitField;
+import net.java.truecommons.shed.UriBuilder;
+import net.java.truevfs.comp.inflater.InflaterReadOnlyChannel;
 import net.java.truevfs.comp.tardriver.TarDriver;
 import net.java.truevfs.comp.tardriver.TarDriverEntry;
 import net.java.truevfs.comp.tardriver.TarInputService;
@@ -23,6 +25,7 @@ import javax.annotation.concurrent.Immutable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.SeekableByteChannel;
 import java.util.zip.Deflater;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
@@ -63,31 +66,193 @@ public class TarGZipDriver extends TarDriver {
         return Deflater.BEST_COMPRESSION;
     }
 
+    /**
+     * Returns the minimum distance of the checkpoints in the decompressed
+     * data which get recorded into the index of a GZIP file.
+     * Each checkpoint needs up to 32 KiB of memory, so a smaller interval
+     * speeds up random access to the entries at the cost of a bigger index.
+     * <p>
+     * The implementation in the class {@link TarGZipDriver} returns four MiB.
+     *
+     * @return The minimum distance of the checkpoints in the index.
+     * @since  TrueVFS 0.15.0
+     */
+    public int getIndexInterval() {
+        return 4 << 20;
+    }
+
+    /**
+     * Returns the suffix which gets appended to the name of a TAR.GZIP file
+     * in order to name the file where its index gets persisted or
+     * {@code null} if the index should not get persisted.
+     * If a persisted index matches the TAR.GZIP file when mounting it, then
+     * the data of large entries gets skipped instead of decompressed.
+     * Otherwise, the index gets built from scratch and persisted afterwards.
+     * The index gets persisted only if the TAR.GZIP file is located in a
+     * file system which is not an archive file system, e.g. the platform
+     * file system.
+     * Failing to read or write the index file is not an error.
+     * <p>
+     * The implementation in the class {@link TarGZipDriver} returns
+     * {@code null}.
+     *
+     * @return The suffix for the name of the index file or {@code null} if
+     *         the index should not get persisted.
+     * @since  TrueVFS 0.15.0
+     */
+    public @CheckForNull String getIndexSuffix() {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * If {@link #getIndexSuffix()} returns a suffix and the parent file
+     * system is not an archive file system, then the implementation in the
+     * class {@link TarGZipDriver} uses {@code controller} in order to read
+     * and write the persisted index of the GZIP file.
+     */
+    @Override
+    public InputService<TarDriverEntry> newInput(
+            final FsModel model,
+            final BitField<FsAccessOption> options,
+            final FsController controller,
+            final FsNodeName name)
+            throws IOException {
+        final String suffix = getIndexSuffix();
+        if (null == suffix || isArchive(controller.getModel()))
+            return super.newInput(model, options, controller, name);
+        final FsNodeName indexName = FsNodeName.create(
+                new UriBuilder(name.getUri(), true)
+                        .path(name.getPath() + suffix)
+                        .toUri());
+        return newInput(model, new Source(
+                source(options, controller, name),
+                new IndexStore(options, controller, indexName)));
+    }
+
+    /**
+     * Returns {@code true} if and only if the given model is the model of an
+     * archive file system.
+     * Persisting an index into an archive file system would modify the
+     * enclosing archive file just by mounting the TAR.GZIP file.
+     */
+    private static boolean isArchive(final FsModel model) {
+        return null != model.getParent();
+    }
+
     @Override
     protected InputService<TarDriverEntry> newInput(
             final FsModel model,
             final FsInputSocketSource source)
             throws IOException {
+        return newInput(model, new Source(source, null));
+    }
 
-        class Source extends AbstractSource {
+    private InputService<TarDriverEntry> newInput(
+            final FsModel model,
+            final Source source)
+            throws IOException {
+        final TarInputService input = new TarInputService(model, source, this);
+        final IndexStore store = source.store;
+        final GZipIndex index = source.built;
+        if (null != store && null != index && index.isComplete())
+            store.save(index);
+        return input;
+    }
 
-            @Override
-            public InputStream stream() throws IOException {
-                final InputStream in = source.stream();
+    /**
+     * Decompresses a GZIP file.
+     * Provides a seekable byte channel if the GZIP file does so, too.
+     */
+    private final class Source extends AbstractSource {
+
+        final FsInputSocketSource source;
+        final @CheckForNull IndexStore store;
+
+        /** The index which got built by the last channel, if any. */
+        @CheckForNull GZipIndex built;
+
+        Source(
+                final FsInputSocketSource source,
+                final @CheckForNull IndexStore store) {
+            this.source = source;
+            this.store = store;
+        }
+
+        @Override
+        public InputStream stream() throws IOException {
+            final InputStream in = source.stream();
+            try {
+                return new GZIPInputStream(in, getBufferSize());
+            } catch (final Throwable t1) {
                 try {
-                    return new GZIPInputStream(in, getBufferSize());
-                } catch (final Throwable t1) {
-                    try {
-                        in.close();
-                    } catch (final Throwable t2) {
-                        t1.addSuppressed(t2);
-                    }
-                    throw t1;
+                    in.close();
+                } catch (final Throwable t2) {
+                    t1.addSuppressed(t2);
                 }
+                throw t1;
             }
         }
 
-        return new TarInputService(model, new Source(), this);
+        @Override
+        public SeekableByteChannel channel() throws IOException {
+            final SeekableByteChannel channel = source.channel();
+            try {
+                GZipIndex index = null == store ? null : store.load(channel);
+                if (null == index)
+                    index = built = new GZipIndex(channel, getIndexInterval());
+                return new InflaterReadOnlyChannel(
+                        channel, -1, index.getIndex(), getBufferSize(), true);
+            } catch (final Throwable t1) {
+                try {
+                    channel.close();
+                } catch (final Throwable t2) {
+                    t1.addSuppressed(t2);
+                }
+                throw t1;
+            }
+        }
+    }
+
+    /**
+     * Loads and saves the persisted index of a GZIP file.
+     * The index gets loaded with the access options for mounting the GZIP
+     * file, but saved without any access options because the index is not
+     * part of the archive file.
+     */
+    private static final class IndexStore {
+
+        final BitField<FsAccessOption> options;
+        final FsController controller;
+        final FsNodeName name;
+
+        IndexStore(
+                final BitField<FsAccessOption> options,
+                final FsController controller,
+                final FsNodeName name) {
+            this.options = options;
+            this.controller = controller;
+            this.name = name;
+        }
+
+        @CheckForNull GZipIndex load(final SeekableByteChannel channel) {
+            try (InputStream in = controller.input(options, name).stream(null)) {
+                final GZipIndex index = GZipIndex.read(in);
+                return null != index && index.matches(channel) ? index : null;
+            } catch (final IOException ex) {
+                // There is no index or it's broken, so rebuild it.
+                return null;
+            }
+        }
+
+        void save(final GZipIndex index) {
+            try (OutputStream out = controller.output(FsAccessOptions.NONE, name, null).stream(null)) {
+                index.write(out);
+            } catch (final IOException ex) {
+                // The index is only a cache, so ignore this.
+            }
+        }
     }
 
     @Override
@@ -5,6 +5,11 @@
 /**
  * Provides a file system driver for accessing the GZIP compressed TAR file
  * format.
+ * <p>
+ * If the TAR.GZIP file is seekable, then mounting it decompresses it once in
+ * order to index its entries and record checkpoints into the GZIP file.
+ * The data of the entries then gets decompressed on demand, starting at the
+ * nearest checkpoint, instead of extracting it to temporary files.
  * 
  * @author Christian Schlichtherle
  */
@@ -11,6 +11,7 @@ import net.java.truevfs.driver.zip.raes.crypto.RaesKeyException;
 import net.java.truevfs.driver.zip.raes.crypto.RaesParameters;
 import net.java.truevfs.driver.zip.raes.crypto.RaesParametersProvider;
 import net.java.truevfs.driver.zip.raes.crypto.Type0RaesParameters;
+import net.java.truevfs.driver.zip.raes.crypto.Type1RaesParameters;
 import net.java.truecommons.key.spec.KeyManager;
 import net.java.truecommons.key.spec.KeyManagerMap;
 import net.java.truecommons.key.spec.KeyProvider;
@@ -22,7 +23,8 @@ import net.java.truecommons.key.spec.common.AesPbeParameters;
  * An adapter which provides {@link RaesParameters} by using a
  * {@link KeyManager} for {@link AesPbeParameters}.
  * <p>
- * The current implementation supports only {@link Type0RaesParameters}.
+ * The current implementation supports {@link Type0RaesParameters} and
+ * {@link Type1RaesParameters}.
  *
  * @author Christian Schlichtherle
  */
@@ -36,6 +38,12 @@ implements RaesParametersProvider {
     /** The resource URI of the RAES file. */
     protected final URI raes;
 
+    /**
+     * The chunk size for writing type 1 RAES files or zero for writing type 0
+     * RAES files.
+     */
+    protected final int chunkSize;
+
     /**
      * Constructs RAES parameters using the given key manager provider.
      *
@@ -46,7 +54,23 @@ implements RaesParametersProvider {
     public KeyManagerRaesParameters(
             final KeyManagerMap container,
             final URI raes) {
-        this(container.manager(AesPbeParameters.class), raes);
+        this(container, raes, 0);
+    }
+
+    /**
+     * Constructs RAES parameters using the given key manager provider.
+     *
+     * @param  container the container of the key manager for accessing RAES
+     *         encrypted data.
+     * @param  raes the absolute URI of the RAES file.
+     * @param  chunkSize the chunk size for writing type 1 RAES files or zero
+     *         for writing type 0 RAES files.
+     */
+    public KeyManagerRaesParameters(
+            final KeyManagerMap container,
+            final URI raes,
+            final int chunkSize) {
+        this(container.manager(AesPbeParameters.class), raes, chunkSize);
     }
 
     /**
@@ -58,8 +82,26 @@ implements RaesParametersProvider {
     public KeyManagerRaesParameters(
             final KeyManager<AesPbeParameters> manager,
             final URI raes) {
+        this(manager, raes, 0);
+    }
+
+    /**
+     * Constructs new RAES parameters.
+     *
+     * @param  manager the key manager for accessing RAES encrypted data.
+     * @param  raes the resource URI of the RAES file.
+     * @param  chunkSize the chunk size for writing type 1 RAES files or zero
+     *         for writing type 0 RAES files.
+     */
+    public KeyManagerRaesParameters(
+            final KeyManager<AesPbeParameters> manager,
+            final URI raes,
+            final int chunkSize) {
+        if (0 > chunkSize)
+            throw new IllegalArgumentException(chunkSize + " < 0");
         this.manager = Objects.requireNonNull(manager);
         this.raes = Objects.requireNonNull(raes);
+        this.chunkSize = chunkSize;
     }
 
     /**
@@ -68,11 +110,16 @@ implements RaesParametersProvider {
      * If {@code type} is assignable from {@link Type0RaesParameters}, then the
      * {@link KeyManager} for {@link AesPbeParameters} will getKeyManager used which
      * has been provided to the constructor.
+     * If the chunk size is positive and {@code type} is assignable from
+     * {@link Type1RaesParameters}, then the returned parameters are
+     * {@code Type1RaesParameters}, so that type 1 RAES files get written.
      * <p>
      * Otherwise, {@code null} gets returned.
      */
     @Override
     public <P extends RaesParameters> P get(Class<P> type) {
+        if (0 < chunkSize && type.isAssignableFrom(Type1RaesParameters.class))
+            return type.cast(new Type1());
         if (type.isAssignableFrom(Type0RaesParameters.class))
             return type.cast(new Type0());
         return null;
@@ -134,5 +181,22 @@ implements RaesParametersProvider {
             k.setKeyStrength(keyStrength);
             p.setKey(k);
         }
+
+        @Override
+        public URI getKeyResource() {
+            return raes;
+        }
     } // Type0
+
+    /**
+     * Adds the chunk size to {@code Type0} in order to write type 1 RAES
+     * files.
+     */
+    private final class Type1 extends Type0 implements Type1RaesParameters {
+
+        @Override
+        public int getChunkSize() {
+            return chunkSize;
+        }
+    } // Type1
 }
@@ -57,16 +57,38 @@ public abstract class ZipRaesDriver extends JarDriver {
      * Returns the RAES parameters for the given file system model.
      * <p>
      * The implementation in the class {@link ZipRaesDriver} returns
-     * {@code new KeyManagerRaesParameters(getKeyManagerMap().getKeyManager(AesPbeParameters.class), mountPointUri(model))}.
+     * {@code new KeyManagerRaesParameters(getKeyManagerMap(), mountPointUri(model), getChunkSize())}.
      *
      * @param  model the file system model.
      * @return The RAES parameters for the given file system model.
      */
     protected RaesParameters raesParameters(FsModel model) {
         return new KeyManagerRaesParameters(getKeyManagerMap(),
-                                            mountPointUri(model));
+                                            mountPointUri(model),
+                                            getChunkSize());
     }
 
+    /**
+     * Returns the chunk size for writing RAES files.
+     * <p>
+     * If this is zero, then type 0 RAES files get written, which have a single
+     * Message Authentication Code (MAC) for the entire cipher text.
+     * Otherwise, type 1 RAES files get written, which have a MAC for each
+     * chunk of the cipher text of the given size, which must be a power of
+     * two between 1 KB and 16 MB.
+     * When reading a type 1 RAES file, each chunk gets authenticated when
+     * it's read, so the {@link #getAuthenticationTrigger authentication
+     * trigger} does not apply and random access to large files stays fast.
+     * <p>
+     * Either type can get read regardless of the value of this property.
+     * However, type 1 RAES files cannot get read by older versions of this
+     * driver, so the implementation in the class {@link ZipRaesDriver}
+     * returns zero.
+     *
+     * @return The chunk size for writing RAES files.
+     */
+    protected int getChunkSize() { return 0; }
+
     /**
      * Returns the value of the property {@code authenticationTrigger}.
      * <p>
@@ -124,7 +146,8 @@ public abstract class ZipRaesDriver extends JarDriver {
                 final RaesReadOnlyChannel channel = RaesReadOnlyChannel
                         .create(raesParameters(model), source);
                 try {
-                    if (channel.size() <= getAuthenticationTrigger())
+                    if (!channel.isAuthenticatingReads()
+                            && channel.size() <= getAuthenticationTrigger())
                         channel.authenticate();
                     return channel;
                 } catch (final Throwable ex) {
@@ -0,0 +1,218 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.driver.zip.raes.crypto;
+
+import edu.umd.cs.findbugs.annotations.CreatesObligation;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import javax.annotation.WillCloseWhenClosed;
+import javax.annotation.concurrent.NotThreadSafe;
+import net.java.truecommons.io.ReadOnlyChannel;
+import static net.java.truevfs.driver.zip.raes.crypto.Constants.HALF_MAC_LEN;
+import org.bouncycastle.crypto.Mac;
+
+import static java.lang.Math.min;
+
+/**
+ * Provides random read-only access to the cipher text of a type 1 RAES file
+ * and authenticates each chunk of the cipher text before returning any of
+ * its data.
+ * The MAC table gets authenticated by its root MAC when this channel gets
+ * constructed.
+ * The last authenticated chunk is buffered, so the decorating cipher channel
+ * can read it in small pieces without authenticating it again.
+ * Note that this channel maintains its own virtual file pointer.
+ *
+ * @see    Type1RaesOutputStream
+ * @author Christian Schlichtherle
+ */
+@NotThreadSafe
+final class ChunkMacReadOnlyChannel extends ReadOnlyChannel {
+
+    private final Mac mac;
+    private final byte[] buf;
+
+    /** The offset of the cipher text in the decorated channel. */
+    private final long start;
+
+    /** The length of the cipher text. */
+    private final long length;
+
+    /** The binary logarithm of the chunk size. */
+    private final int chunkShift;
+
+    /** The expected root MAC of the MAC table. */
+    private final ByteBuffer authenticationCode;
+
+    /** The authenticated MAC table. */
+    private byte[] table;
+
+    /** The buffer for the last authenticated chunk. */
+    private final byte[] chunk;
+
+    /** The index of the chunk in the buffer or -1 if invalid. */
+    private long chunkIndex = -1;
+
+    /** The length of the chunk in the buffer. */
+    private int chunkLength;
+
+    /** The virtual position of this channel. */
+    private long pos;
+
+    /**
+     * Constructs a new chunk MAC read-only channel.
+     *
+     * @param  channel the channel for reading the RAES file.
+     * @param  mac the initialized SHA-256 HMAC.
+     * @param  start the offset of the cipher text.
+     * @param  length the length of the cipher text.
+     * @param  chunkShift the binary logarithm of the chunk size.
+     * @param  authenticationCode the first half of the root MAC.
+     * @throws RaesAuthenticationException if the MAC table has been tampered
+     *         with.
+     * @throws IOException on any I/O error.
+     */
+    @CreatesObligation
+    ChunkMacReadOnlyChannel(
+            final @WillCloseWhenClosed SeekableByteChannel channel,
+            final Mac mac,
+            final long start,
+            final long length,
+            final int chunkShift,
+            final ByteBuffer authenticationCode)
+    throws IOException {
+        super(channel);
+        this.mac = mac;
+        this.buf = new byte[mac.getMacSize()];
+        this.start = start;
+        this.length = length;
+        this.chunkShift = chunkShift;
+        this.authenticationCode = authenticationCode;
+        this.chunk = new byte[(int) min(1 << chunkShift, length)];
+        loadTable();
+    }
+
+    /** Returns the number of chunks of the given cipher text length. */
+    static long chunks(final long length, final int chunkShift) {
+        return (length + (1 << chunkShift) - 1) >>> chunkShift;
+    }
+
+    /** Loads the MAC table and authenticates it with the root MAC. */
+    private void loadTable() throws IOException {
+        final long tableLength = chunks(length, chunkShift) * HALF_MAC_LEN;
+        if (Integer.MAX_VALUE < tableLength)
+            throw new RaesException("Type 1 RAES file has too many chunks!");
+        final byte[] table = new byte[(int) tableLength];
+        readFully(start + length, ByteBuffer.wrap(table));
+        final Mac mac = this.mac;
+        mac.update((byte) 1);
+        mac.update(table, 0, table.length);
+        RaesOutputStream.klac(mac, length, buf);
+        if (!authenticationCode.equals(ByteBuffer.wrap(buf, 0, HALF_MAC_LEN)))
+            throw new RaesAuthenticationException();
+        this.table = table;
+    }
+
+    /**
+     * Authenticates the MAC table and all chunks of the cipher text.
+     *
+     * @throws RaesAuthenticationException if the file has been tampered with.
+     * @throws IOException on any I/O error.
+     */
+    void authenticate() throws IOException {
+        checkOpen();
+        chunkIndex = -1;
+        loadTable();
+        for (long i = 0, n = chunks(length, chunkShift); i < n; i++)
+            positionChunk(i);
+    }
+
+    @Override
+    public int read(final ByteBuffer dst) throws IOException {
+        // Check no-op first for compatibility with FileChannel.
+        final int remaining = dst.remaining();
+        if (remaining <= 0)
+            return 0;
+
+        // Check is open and not at EOF.
+        final long pos = position();
+        if (pos >= length)
+            return -1;
+
+        positionChunk(pos >>> chunkShift);
+        final int chunkPos = (int) (pos - (chunkIndex << chunkShift));
+        final int n = min(remaining, chunkLength - chunkPos);
+        assert 0 < n;
+        dst.put(chunk, chunkPos, n);
+        this.pos = pos + n;
+        return n;
+    }
+
+    /**
+     * Positions the chunk buffer so that it holds the authenticated chunk
+     * with the given index.
+     *
+     * @throws RaesAuthenticationException if the chunk has been tampered
+     *         with.
+     * @throws IOException on any I/O error.
+     *         The chunk buffer gets invalidated in this case.
+     */
+    private void positionChunk(final long index) throws IOException {
+        if (index == chunkIndex)
+            return;
+        chunkIndex = -1;
+        final long chunkStart = index << chunkShift;
+        final int chunkLength = (int) min(1 << chunkShift, length - chunkStart);
+        final byte[] chunk = this.chunk;
+        readFully(start + chunkStart, ByteBuffer.wrap(chunk, 0, chunkLength));
+
+        final Mac mac = this.mac;
+        mac.update((byte) 0);
+        long i = index;
+        for (int j = 0; j < 8; j++) {
+            mac.update((byte) i);
+            i >>= 8;
+        }
+        mac.update(chunk, 0, chunkLength);
+        mac.doFinal(buf, 0);
+        if (!ByteBuffer.wrap(table, (int) (index * HALF_MAC_LEN), HALF_MAC_LEN)
+                .equals(ByteBuffer.wrap(buf, 0, HALF_MAC_LEN)))
+            throw new RaesAuthenticationException();
+        this.chunkIndex = index;
+        this.chunkLength = chunkLength;
+    }
+
+    private void readFully(final long pos, final ByteBuffer dst)
+    throws IOException {
+        final SeekableByteChannel channel = this.channel;
+        channel.position(pos);
+        while (dst.hasRemaining())
+            if (0 > channel.read(dst))
+                throw new EOFException();
+    }
+
+    @Override
+    public long position() throws IOException {
+        checkOpen();
+        return pos;
+    }
+
+    @Override
+    public SeekableByteChannel position(final long pos) throws IOException {
+        if (0 > pos)
+            throw new IllegalArgumentException();
+        checkOpen();
+        this.pos = pos;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        checkOpen();
+        return length;
+    }
+}
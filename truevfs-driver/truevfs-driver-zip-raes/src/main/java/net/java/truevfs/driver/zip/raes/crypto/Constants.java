@@ -40,6 +40,35 @@ interface Constants {
                 // The KLAC (first half of 256 bit SHA output = 128 bits).
                 // The  MAC (first half of 256 bit SHA output = 128 bits).
 
+    /**
+     * The data envelope type used for password based encryption like
+     * {@link #TYPE_0}, but with a separate MAC for each chunk of the cipher
+     * text.
+     */
+    byte TYPE_1 = 1;
+
+    /** The length of the header before the salt and the encrypted data. */
+    int TYPE_1_HEADER_LEN_WO_SALT =
+            TYPE_0_HEADER_LEN_WO_SALT +
+            1;  // Binary logarithm of the chunk size.
+                // The salt which's length is the cipher key length.
+                // The ciphered data which has the same length as the plain data.
+                // The chunk MACs (first half of 256 bit SHA output = 128 bits each).
+                // The KLAC (first half of 256 bit SHA output = 128 bits).
+                // The root MAC of the chunk MACs (first half of 256 bit SHA output = 128 bits).
+
+    /** The minimum binary logarithm of the chunk size of type 1 files. */
+    int TYPE_1_MIN_CHUNK_SHIFT = 10;
+
+    /** The maximum binary logarithm of the chunk size of type 1 files. */
+    int TYPE_1_MAX_CHUNK_SHIFT = 24;
+
+    /**
+     * The length of the first half of the output of the SHA-256 HMAC in
+     * bytes, which is used for the KLAC and the MACs.
+     */
+    int HALF_MAC_LEN = 16;
+
     /**
      * The block size of the Advanced Encryption Specification (AES) Algorithm
      * in bits ({@value #AES_BLOCK_SIZE_BITS}).
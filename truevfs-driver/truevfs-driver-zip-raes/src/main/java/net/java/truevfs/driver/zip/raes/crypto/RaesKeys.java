@@ -0,0 +1,178 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.driver.zip.raes.crypto;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import javax.annotation.concurrent.Immutable;
+import net.java.truecommons.key.spec.common.AesKeyStrength;
+import net.java.truecommons.key.spec.util.SuspensionPenalty;
+import net.java.truevfs.comp.zip.crypto.DerivedKeyCache;
+import static net.java.truevfs.driver.zip.raes.crypto.Constants.AES_BLOCK_SIZE_BITS;
+import org.bouncycastle.crypto.Mac;
+import org.bouncycastle.crypto.PBEParametersGenerator;
+import static org.bouncycastle.crypto.PBEParametersGenerator.PKCS12PasswordToBytes;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.generators.PKCS12ParametersGenerator;
+import org.bouncycastle.crypto.macs.HMac;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.crypto.params.ParametersWithIV;
+
+/**
+ * The cipher and MAC parameters which are derived from a password according
+ * to PKCS #12 V1.0 for RAES type 0 and type 1 files.
+ *
+ * @author Christian Schlichtherle
+ */
+@Immutable
+final class RaesKeys {
+
+    /** The name of the key derivation function for the derived key cache. */
+    private static final String KDF_ALGORITHM = "PKCS12WithSHA256";
+
+    private static final int IV_BYTES = AES_BLOCK_SIZE_BITS / 8;
+
+    /** The parameters for the AES cipher in CTR mode. */
+    final ParametersWithIV aesCtrParam;
+
+    /** The key parameter for the SHA-256 HMAC. */
+    final KeyParameter sha256MacParam;
+
+    private RaesKeys(
+            final ParametersWithIV aesCtrParam,
+            final KeyParameter sha256MacParam) {
+        this.aesCtrParam = aesCtrParam;
+        this.sha256MacParam = sha256MacParam;
+    }
+
+    /**
+     * Derives the keys from the given password bytes.
+     *
+     * @param pwb the password bytes as obtained from
+     *        {@link PBEParametersGenerator#PKCS12PasswordToBytes(char[])}.
+     * @param salt the salt.
+     * @param iCount the iteration count.
+     * @param keyStrengthBits the key strength in bits.
+     */
+    static RaesKeys derive(
+            final byte[] pwb,
+            final byte[] salt,
+            final int iCount,
+            final int keyStrengthBits) {
+        final PBEParametersGenerator
+                gen = new PKCS12ParametersGenerator(new SHA256Digest());
+        gen.init(pwb, salt, iCount);
+        return new RaesKeys(
+                (ParametersWithIV) gen.generateDerivedParameters(
+                    keyStrengthBits, AES_BLOCK_SIZE_BITS),
+                (KeyParameter) gen.generateDerivedMacParameters(
+                    keyStrengthBits));
+    }
+
+    /**
+     * Prompts for the password until the keys derived from it pass the
+     * verification with the given cipher key and cipher text length
+     * authentication code (KLAC).
+     * The keys get looked up in and put into the
+     * {@link DerivedKeyCache#SINGLETON} if the parameters provide a
+     * {@link Type0RaesParameters#getKeyResource() key resource}.
+     * Only verified keys get cached.
+     *
+     * @param  param the RAES parameters.
+     * @param  keyStrength the key strength.
+     * @param  salt the salt.
+     * @param  iCount the iteration count.
+     * @param  length the cipher text length.
+     * @param  passwdVerifier the first half of the KLAC.
+     * @return The verified keys.
+     * @throws RaesKeyException If key retrieval has failed for some reason.
+     */
+    static RaesKeys forReading(
+            final Type0RaesParameters param,
+            final AesKeyStrength keyStrength,
+            final byte[] salt,
+            final int iCount,
+            final long length,
+            final ByteBuffer passwdVerifier)
+    throws RaesKeyException {
+        final int keyStrengthBits = keyStrength.getBits();
+        final int keyStrengthBytes = keyStrength.getBytes();
+        final DerivedKeyCache cache = DerivedKeyCache.SINGLETON;
+        final URI resource = param.getKeyResource();
+        final int keyBits = 2 * keyStrengthBits + AES_BLOCK_SIZE_BITS;
+        RaesKeys keys;
+        DerivedKeyCache.Key cacheKey;
+        boolean cached;
+        long lastTry = 0; // don't enforce suspension on first prompt!
+        do {
+            final char[] pwc = param.getPasswordForReading(0 != lastTry);
+            assert null != pwc;
+            final byte[] pwb = PKCS12PasswordToBytes(pwc);
+            Arrays.fill(pwc, (char) 0);
+
+            cacheKey = null == resource
+                    ? null
+                    : cache.key(resource, KDF_ALGORITHM, salt, iCount,
+                        keyBits, pwb);
+            final byte[] key = null == cacheKey ? null : cache.get(cacheKey);
+            if (cached = null != key) {
+                keys = new RaesKeys(
+                        new ParametersWithIV(
+                            new KeyParameter(key, 0, keyStrengthBytes),
+                            key, keyStrengthBytes, IV_BYTES),
+                        new KeyParameter(
+                            key, keyStrengthBytes + IV_BYTES, keyStrengthBytes));
+                Arrays.fill(key, (byte) 0);
+            } else {
+                keys = derive(pwb, salt, iCount, keyStrengthBits);
+            }
+            Arrays.fill(pwb, (byte) 0);
+
+            lastTry = SuspensionPenalty.enforce(lastTry);
+        } while (!passwdVerifier.equals(keys.klac(length)));
+
+        if (null != cacheKey && !cached) {
+            final byte[] key = new byte[keyBits / 8];
+            System.arraycopy(keys.cipherKey(), 0, key, 0, keyStrengthBytes);
+            System.arraycopy(keys.aesCtrParam.getIV(), 0,
+                    key, keyStrengthBytes, IV_BYTES);
+            System.arraycopy(keys.sha256MacParam.getKey(), 0,
+                    key, keyStrengthBytes + IV_BYTES, keyStrengthBytes);
+            cache.put(cacheKey, key);
+            Arrays.fill(key, (byte) 0);
+        }
+        return keys;
+    }
+
+    /** Returns a copy of the cipher key. */
+    byte[] cipherKey() {
+        return ((KeyParameter) aesCtrParam.getParameters()).getKey();
+    }
+
+    /** Returns a new SHA-256 HMAC which is initialized with the MAC key. */
+    Mac newMac() {
+        final Mac mac = new HMac(new SHA256Digest());
+        mac.init(sha256MacParam);
+        return mac;
+    }
+
+    /**
+     * Returns the first half of the cipher key and cipher text length
+     * authentication code (KLAC) for the given cipher text length.
+     */
+    ByteBuffer klac(final long length) {
+        final Mac klac = newMac();
+
+        // Update the KLAC with the cipher key.
+        // This is actually redundant, but it's part of the spec, so it
+        // cannot get changed anymore.
+        final byte[] cipherKey = cipherKey();
+        klac.update(cipherKey, 0, cipherKey.length);
+        final byte[] buf = new byte[klac.getMacSize()];
+        RaesOutputStream.klac(klac, length, buf);
+        return ByteBuffer.wrap(buf, 0, buf.length / 2);
+    }
+}
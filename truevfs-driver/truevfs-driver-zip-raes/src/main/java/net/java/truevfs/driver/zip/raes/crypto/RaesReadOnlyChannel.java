@@ -16,6 +16,8 @@ import net.java.truecommons.io.ReadOnlyChannel;
 import net.java.truecommons.io.Source;
 import static net.java.truevfs.driver.zip.raes.crypto.Constants.HEADER_MIN_LEN;
 import static net.java.truevfs.driver.zip.raes.crypto.Constants.SIGNATURE;
+import static net.java.truevfs.driver.zip.raes.crypto.Constants.TYPE_0;
+import static net.java.truevfs.driver.zip.raes.crypto.Constants.TYPE_1;
 import net.java.truecommons.key.spec.common.AesKeyStrength;
 
 /**
@@ -121,12 +123,19 @@ public abstract class RaesReadOnlyChannel extends ReadOnlyChannel {
             throw new RaesException("No RAES signature!");
         }
         final int type = header.getUByte();
-        if (type != 0) {
-            throw new RaesException("Unknown RAES type: " + type);
+        switch (type) {
+            case TYPE_0:
+                return new Type0RaesReadOnlyChannel(
+                        parameters(Type0RaesParameters.class, param),
+                        channel);
+            case TYPE_1:
+                // Type 1 files are read with type 0 parameters.
+                return new Type1RaesReadOnlyChannel(
+                        parameters(Type0RaesParameters.class, param),
+                        channel);
+            default:
+                throw new RaesException("Unknown RAES type: " + type);
         }
-        return new Type0RaesReadOnlyChannel(
-                parameters(Type0RaesParameters.class, param),
-                channel);
     }
 
     private static <P extends RaesParameters> P parameters(
@@ -171,4 +180,21 @@ public abstract class RaesReadOnlyChannel extends ReadOnlyChannel {
      */
     public abstract void authenticate()
     throws RaesAuthenticationException, IOException;
+
+    /**
+     * Returns {@code true} if and only if this channel authenticates all
+     * encrypted data which gets read, so that calling {@link #authenticate}
+     * before reading is redundant.
+     * This is the case for type 1 RAES files, which have a MAC for each
+     * chunk of the cipher text.
+     * <p>
+     * The implementation in the class {@link RaesReadOnlyChannel} returns
+     * {@code false}.
+     *
+     * @return {@code true} if and only if this channel authenticates all
+     *         encrypted data which gets read.
+     */
+    public boolean isAuthenticatingReads() {
+        return false;
+    }
 }
@@ -11,11 +11,11 @@ import net.java.truecommons.key.spec.common.AesKeyStrength;
 import net.java.truevfs.comp.zip.crypto.BufferedPartialBlockCipher;
 import net.java.truevfs.comp.zip.crypto.CipherOutputStream;
 import net.java.truevfs.comp.zip.crypto.CtrBlockCipher;
+import net.java.truevfs.comp.zip.crypto.JceAesEngine;
+import net.java.truevfs.comp.zip.crypto.PipelinedMacOutputStream;
 import org.bouncycastle.crypto.*;
 import org.bouncycastle.crypto.digests.SHA256Digest;
-import org.bouncycastle.crypto.engines.AESEngine;
 import org.bouncycastle.crypto.generators.PKCS12ParametersGenerator;
-import org.bouncycastle.crypto.io.MacOutputStream;
 import org.bouncycastle.crypto.macs.HMac;
 import org.bouncycastle.crypto.params.KeyParameter;
 import org.bouncycastle.crypto.params.ParametersWithIV;
@@ -47,8 +47,8 @@ final class Type0RaesOutputStream extends RaesOutputStream {
     /** The key strength. */
     private final AesKeyStrength keyStrength;
 
-    /** The message authentication code (MAC). */
-    private final Mac mac;
+    /** The message authentication code (MAC) output stream. */
+    private final PipelinedMacOutputStream mos;
 
     /** The cipher key and cipher text length authentication code (KLAC). */
     private final Mac klac;
@@ -102,13 +102,16 @@ final class Type0RaesOutputStream extends RaesOutputStream {
         // Init cipher.
         final BufferedBlockCipher cipher = new BufferedPartialBlockCipher(
                 new CtrBlockCipher( // or new SICBlockCipher(
-                    new AESEngine()));
+                    new JceAesEngine()));
         cipher.init(true, aesCtrParam);
 
         // Init MAC.
-        final Mac mac = this.mac = new HMac(digest);
+        final Mac mac = new HMac(digest);
         mac.init(sha256HMmacParam);
 
+        final PipelinedMacOutputStream mos =
+                this.mos = new PipelinedMacOutputStream(mac);
+
         // Init KLAC.
         final Mac klac = this.klac = new HMac(new SHA256Digest()); // cannot reuse digest!
         klac.init(sha256HMmacParam); // resets the digest
@@ -126,7 +129,7 @@ final class Type0RaesOutputStream extends RaesOutputStream {
             final LittleEndianOutputStream leos =
                     this.leos = new LittleEndianOutputStream(out);
             this.out = new CipherOutputStream(cipher,
-                    new TeeOutputStream(leos, new MacOutputStream(mac)));
+                    new TeeOutputStream(leos, mos));
 
             // Write data envelope header.
             leos.writeInt(SIGNATURE);
@@ -163,10 +166,7 @@ final class Type0RaesOutputStream extends RaesOutputStream {
 
         final long trailer = leos.size();
 
-        final Mac mac = this.mac;
-        assert mac.getMacSize() == klac.getMacSize();
-        final byte[] buf = new byte[mac.getMacSize()]; // MAC buffer
-        int bufLength;
+        final byte[] buf = new byte[klac.getMacSize()]; // MAC buffer
 
         // Compute and write the first half of the KLAC to the data envelope footer.
         // Please note that we will only use the first half of the
@@ -178,9 +178,9 @@ final class Type0RaesOutputStream extends RaesOutputStream {
         // Compute and write the first half of the MAC to the data envelope footer.
         // Again, we will only use the first half of the
         // authentication code for security reasons.
-        bufLength = mac.doFinal(buf, 0);
-        assert bufLength == buf.length;
-        leos.write(buf, 0, buf.length / 2);
+        final byte[] mac = mos.getMac();
+        assert mac.length == buf.length;
+        leos.write(mac, 0, mac.length / 2);
 
         assert leos.size() - trailer == buf.length;
     }
@@ -4,6 +4,8 @@
  */
 package net.java.truevfs.driver.zip.raes.crypto;
 
+import java.net.URI;
+import javax.annotation.CheckForNull;
 import net.java.truecommons.key.spec.common.AesKeyStrength;
 
 /**
@@ -57,4 +59,19 @@ public interface Type0RaesParameters extends RaesParameters {
      * @throws RaesKeyException If key retrieval has failed for some reason.
      */
     void setKeyStrength(AesKeyStrength keyStrength) throws RaesKeyException;
-}
\ No newline at end of file
+
+    /**
+     * Returns the URI of the key manager resource for the RAES type 0 file.
+     * If not {@code null}, then the keys derived from the password get cached
+     * in the
+     * {@link net.java.truevfs.comp.zip.crypto.DerivedKeyCache#SINGLETON}
+     * for this resource, so the implementation should evict them when the
+     * resource gets released.
+     * <p>
+     * The implementation in this interface returns {@code null}, so no keys
+     * get cached.
+     *
+     * @return The URI of the key manager resource or {@code null}.
+     */
+    default @CheckForNull URI getKeyResource() { return null; }
+}
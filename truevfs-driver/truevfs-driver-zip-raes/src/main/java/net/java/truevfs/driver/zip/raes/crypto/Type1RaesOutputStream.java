@@ -0,0 +1,241 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.driver.zip.raes.crypto;
+
+import edu.umd.cs.findbugs.annotations.DischargesObligation;
+import net.java.truecommons.io.LittleEndianOutputStream;
+import net.java.truecommons.io.Sink;
+import net.java.truecommons.key.spec.common.AesKeyStrength;
+import net.java.truevfs.comp.zip.crypto.BufferedPartialBlockCipher;
+import net.java.truevfs.comp.zip.crypto.CipherOutputStream;
+import net.java.truevfs.comp.zip.crypto.CtrBlockCipher;
+import net.java.truevfs.comp.zip.crypto.JceAesEngine;
+import org.bouncycastle.crypto.BufferedBlockCipher;
+import org.bouncycastle.crypto.Mac;
+import org.bouncycastle.crypto.PBEParametersGenerator;
+import org.bouncycastle.util.io.TeeOutputStream;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import static net.java.truevfs.driver.zip.raes.crypto.Constants.*;
+import static net.java.truevfs.driver.zip.raes.crypto.Type0RaesOutputStream.ITERATION_COUNT;
+
+/**
+ * Writes a type 1 RAES file.
+ * <p>
+ * Each chunk of the cipher text gets authenticated with the first half of
+ * the SHA-256 HMAC of a zero byte, the chunk index as a 64 bit little endian
+ * integer and the chunk data.
+ * The resulting MAC table gets authenticated with the first half of the
+ * SHA-256 HMAC of a one byte, the MAC table and the cipher text length as a
+ * 64 bit little endian integer.
+ *
+ * @see     Type1RaesReadOnlyChannel
+ * @author  Christian Schlichtherle
+ */
+@NotThreadSafe
+final class Type1RaesOutputStream extends RaesOutputStream {
+
+    private boolean finished;
+
+    /** The key strength. */
+    private final AesKeyStrength keyStrength;
+
+    /** The derived cipher and MAC parameters. */
+    private final RaesKeys keys;
+
+    /** The output stream for computing the chunk MACs. */
+    private final ChunkMacOutputStream cmos;
+
+    /**
+     * The low level data output stream.
+     * Used for writing the header and footer.
+     **/
+    private final LittleEndianOutputStream leos;
+
+    /** The offset where the encrypted application data starts. */
+    private long start;
+
+    Type1RaesOutputStream(
+            final Type1RaesParameters param,
+            final Sink sink)
+    throws IOException {
+        assert null != param;
+        assert null != sink;
+
+        // Check chunk size.
+        final int chunkSize = param.getChunkSize();
+        final int chunkShift = Integer.numberOfTrailingZeros(chunkSize);
+        if (1 != Integer.bitCount(chunkSize)
+                || TYPE_1_MIN_CHUNK_SHIFT > chunkShift
+                || TYPE_1_MAX_CHUNK_SHIFT < chunkShift)
+            throw new RaesParametersException(
+                    "Chunk size must be a power of two between 1 KB and 16 MB, but is "
+                    + chunkSize
+                    + "!");
+
+        // Init key strength.
+        final AesKeyStrength keyStrength = param.getKeyStrength();
+        final int keyStrengthOrdinal = keyStrength.ordinal();
+        final int keyStrengthBits = keyStrength.getBits();
+        final int keyStrengthBytes = keyStrength.getBytes();
+        this.keyStrength = keyStrength;
+
+        // Shake the salt.
+        final byte[] salt = new byte[keyStrengthBytes];
+        new SecureRandom().nextBytes(salt);
+
+        // Init password.
+        final char[] pwdChars = param.getPasswordForWriting();
+        final byte[] pwdBytes = PBEParametersGenerator.PKCS12PasswordToBytes(pwdChars);
+        Arrays.fill(pwdChars, (char) 0);
+
+        // Derive cipher and MAC parameters.
+        final RaesKeys keys = this.keys = RaesKeys.derive(
+                pwdBytes, salt, ITERATION_COUNT, keyStrengthBits);
+        Arrays.fill(pwdBytes, (byte) 0);
+
+        // Init cipher.
+        final BufferedBlockCipher cipher = new BufferedPartialBlockCipher(
+                new CtrBlockCipher(new JceAesEngine()));
+        cipher.init(true, keys.aesCtrParam);
+
+        // Init chunk MACs.
+        final ChunkMacOutputStream cmos = this.cmos =
+                new ChunkMacOutputStream(keys.newMac(), chunkSize);
+
+        // Init chain of output streams as Encrypt-then-MAC.
+        final OutputStream out = sink.stream();
+        try {
+            final LittleEndianOutputStream leos =
+                    this.leos = new LittleEndianOutputStream(out);
+            this.out = new CipherOutputStream(cipher,
+                    new TeeOutputStream(leos, cmos));
+
+            // Write data envelope header.
+            leos.writeInt(SIGNATURE);
+            leos.writeByte(TYPE_1);
+            leos.writeByte(keyStrengthOrdinal);
+            leos.writeShort(ITERATION_COUNT);
+            leos.writeByte(chunkShift);
+            leos.write(salt);
+
+            // Init start.
+            this.start = leos.size();
+            assert TYPE_1_HEADER_LEN_WO_SALT + salt.length == start;
+        } catch (final Throwable ex) {
+            try {
+                out.close();
+            } catch (final IOException ex2) {
+                ex.addSuppressed(ex2);
+            }
+            throw ex;
+        }
+    }
+
+    @Override
+    public AesKeyStrength getKeyStrength() {
+        return keyStrength;
+    }
+
+    private void finish() throws IOException {
+        if (finished)
+            return;
+        finished = true;
+
+        // Flush partial block to out, if any.
+        ((CipherOutputStream) out).finish();
+
+        final long trailer = leos.size();
+        final long length = trailer - start; // message length
+
+        // Write the chunk MAC table.
+        final byte[] table = cmos.finish();
+        leos.write(table);
+
+        // Write the first half of the KLAC.
+        final byte[] klac = keys.klac(length).array();
+        leos.write(klac, 0, HALF_MAC_LEN);
+
+        // Compute and write the first half of the root MAC.
+        final Mac mac = keys.newMac();
+        final byte[] buf = new byte[mac.getMacSize()];
+        mac.update((byte) 1);
+        mac.update(table, 0, table.length);
+        klac(mac, length, buf);
+        leos.write(buf, 0, HALF_MAC_LEN);
+
+        assert leos.size() - trailer == table.length + 2 * HALF_MAC_LEN;
+    }
+
+    @Override
+    @DischargesObligation
+    public void close() throws IOException {
+        finish();
+        out.close();
+    }
+
+    /** Computes the MAC of each chunk of the cipher text. */
+    private static final class ChunkMacOutputStream extends OutputStream {
+        final Mac mac;
+        final int chunkSize;
+        final byte[] buf;
+        final ByteArrayOutputStream table = new ByteArrayOutputStream();
+        long index;
+        int count;
+
+        ChunkMacOutputStream(final Mac mac, final int chunkSize) {
+            this.mac = mac;
+            this.chunkSize = chunkSize;
+            this.buf = new byte[mac.getMacSize()];
+            begin();
+        }
+
+        private void begin() {
+            mac.update((byte) 0);
+            long index = this.index;
+            for (int i = 0; i < 8; i++) {
+                mac.update((byte) index);
+                index >>= 8;
+            }
+        }
+
+        private void end() {
+            mac.doFinal(buf, 0);
+            table.write(buf, 0, HALF_MAC_LEN);
+            index++;
+            count = 0;
+            begin();
+        }
+
+        @Override
+        public void write(final int b) {
+            mac.update((byte) b);
+            if (++count == chunkSize) end();
+        }
+
+        @Override
+        public void write(final byte[] b, int off, int len) {
+            while (0 < len) {
+                final int n = Math.min(len, chunkSize - count);
+                mac.update(b, off, n);
+                off += n;
+                len -= n;
+                if ((count += n) == chunkSize) end();
+            }
+        }
+
+        /** Ends the last chunk, if any, and returns the MAC table. */
+        byte[] finish() {
+            if (0 < count) end();
+            return table.toByteArray();
+        }
+    } // ChunkMacOutputStream
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.driver.zip.raes.crypto;
+
+/**
+ * The parameters of this interface are used for writing RAES <i>type 1</i>
+ * files.
+ * Type 1 RAES files use the same password based encryption as type 0 RAES
+ * files, but authenticate the cipher text in chunks of a fixed size, so that
+ * a {@link RaesReadOnlyChannel} can authenticate just the chunks which are
+ * actually read.
+ * <p>
+ * For reading a type 1 RAES file, {@link Type0RaesParameters} are sufficient
+ * because the chunk size is stored in the file.
+ * <p>
+ * Implementations do not need to be safe for multi-threading.
+ *
+ * @author  Christian Schlichtherle
+ */
+public interface Type1RaesParameters extends Type0RaesParameters {
+
+    /**
+     * Returns the size of the chunks of the cipher text which get
+     * authenticated separately when writing a RAES type 1 file.
+     * This must be a power of two between 1 KB and 16 MB.
+     * Larger chunks decrease the size of the MAC table in the file, but
+     * increase the amount of data which needs to get read in order to
+     * authenticate a small read.
+     *
+     * @return The size of the chunks of the cipher text.
+     */
+    int getChunkSize();
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.driver.zip.raes.crypto;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import javax.annotation.WillCloseWhenClosed;
+import javax.annotation.concurrent.NotThreadSafe;
+import net.java.truecommons.io.MutableBuffer;
+import net.java.truevfs.comp.zip.crypto.CipherReadOnlyChannel;
+import net.java.truevfs.comp.zip.crypto.CtrBlockCipher;
+import net.java.truevfs.comp.zip.crypto.JceAesEngine;
+import net.java.truevfs.comp.zip.crypto.SeekableBlockCipher;
+import static net.java.truevfs.driver.zip.raes.crypto.Constants.*;
+import net.java.truecommons.key.spec.common.AesKeyStrength;
+
+/**
+ * Reads a type 1 RAES file.
+ * Unlike a type 0 RAES file, each chunk of the cipher text gets
+ * authenticated when it's read, so there is no need to call
+ * {@link #authenticate()} before reading.
+ *
+ * @see    Type1RaesOutputStream
+ * @author Christian Schlichtherle
+ */
+@NotThreadSafe
+final class Type1RaesReadOnlyChannel extends RaesReadOnlyChannel {
+
+    /** The key strength. */
+    private final AesKeyStrength keyStrength;
+
+    /** The channel which authenticates the chunks of the cipher text. */
+    private final ChunkMacReadOnlyChannel macChannel;
+
+    Type1RaesReadOnlyChannel(
+            final Type0RaesParameters param,
+            final @WillCloseWhenClosed SeekableByteChannel channel)
+    throws IOException {
+        assert null != param;
+        assert null != channel;
+
+        // Load header data.
+        final MutableBuffer header = MutableBuffer
+                .allocate(TYPE_1_HEADER_LEN_WO_SALT)
+                .littleEndian()
+                .load(channel.position(0));
+        final int type = header.position(4).getUByte();
+        assert 1 == type;
+
+        // Check key size, iteration count and chunk size.
+        final int keyStrengthOrdinal = header.getUByte();
+        final AesKeyStrength keyStrength;
+        try {
+            keyStrength = AesKeyStrength.values()[keyStrengthOrdinal];
+            assert keyStrength.ordinal() == keyStrengthOrdinal;
+        } catch (final ArrayIndexOutOfBoundsException ex) {
+            throw new RaesException(
+                    "Unknown index for cipher key strength: "
+                    + keyStrengthOrdinal);
+        }
+        final int keyStrengthBytes = keyStrength.getBytes();
+        this.keyStrength = keyStrength;
+
+        final int iCount = header.getUShort();
+        if (1024 > iCount)
+            throw new RaesException(
+                    "Iteration count must be 1024 or greater, but is "
+                    + iCount
+                    + "!");
+
+        final int chunkShift = header.getUByte();
+        if (TYPE_1_MIN_CHUNK_SHIFT > chunkShift
+                || TYPE_1_MAX_CHUNK_SHIFT < chunkShift)
+            throw new RaesException(
+                    "Unknown binary logarithm of chunk size: "
+                    + chunkShift);
+        final int chunkSize = 1 << chunkShift;
+
+        // Load salt.
+        final MutableBuffer salt = MutableBuffer
+                .allocate(keyStrengthBytes)
+                .load(channel);
+
+        // Init footer.
+        final MutableBuffer footer = MutableBuffer.allocate(2 * HALF_MAC_LEN);
+
+        // Init start, end and size of encrypted data.
+        // The cipher text is followed by a MAC for each chunk, so its length
+        // is determined by the length of the file.
+        final long start = channel.position();
+        final long end = channel.size() - footer.limit();
+        final long payload = end - start;
+        final long chunks = (payload + chunkSize + HALF_MAC_LEN - 1)
+                / (chunkSize + HALF_MAC_LEN);
+        final long length = payload - chunks * HALF_MAC_LEN;
+        if (0 > payload || 0 > length
+                || ChunkMacReadOnlyChannel.chunks(length, chunkShift) != chunks) {
+            // Wrap an EOFException so that a caller can identify this issue.
+            throw new RaesException("False positive Type 1 RAES file is too short!",
+                    new EOFException());
+        }
+
+        // Load authentication code.
+        footer.load(channel.position(end)).position(footer.limit() / 2);
+        if (channel.position() != channel.size()) {
+            // This should never happen unless someone is writing to the
+            // end of the file concurrently!
+            throw new RaesException(
+                    "Expected end of file after data envelope trailer!");
+        }
+        final ByteBuffer authenticationCode = footer.slice().buffer();
+        final ByteBuffer passwdVerifier = footer.flip().buffer();
+
+        // Derive cipher and MAC parameters.
+        final RaesKeys keys = RaesKeys.forReading(param, keyStrength,
+                salt.array(), iCount, length, passwdVerifier);
+
+        // Init cipher and channel.
+        final ChunkMacReadOnlyChannel macChannel = this.macChannel =
+                new ChunkMacReadOnlyChannel(channel, keys.newMac(), start,
+                        length, chunkShift, authenticationCode);
+        final SeekableBlockCipher cipher = new CtrBlockCipher(new JceAesEngine());
+        cipher.init(false, keys.aesCtrParam);
+        this.channel = new CipherReadOnlyChannel(cipher, macChannel);
+
+        // Commit key strength.
+        param.setKeyStrength(keyStrength);
+    }
+
+    @Override
+    public AesKeyStrength getKeyStrength() {
+        return keyStrength;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * For a type 1 RAES file, this authenticates the MAC table and each chunk
+     * of the cipher text.
+     */
+    @Override
+    public void authenticate() throws IOException {
+        macChannel.authenticate();
+    }
+
+    @Override
+    public boolean isAuthenticatingReads() {
+        return true;
+    }
+}
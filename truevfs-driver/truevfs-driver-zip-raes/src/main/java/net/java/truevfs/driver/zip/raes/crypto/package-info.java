@@ -15,7 +15,8 @@
  * encrypt and authenticate the <i>pay load</i> data when reading or writing
  * files of this type.
  * <p>
- * Currently, only Type-0 is specified, but more types may be added in future.
+ * Currently, Type-0 and Type-1 are specified, but more types may be added in
+ * future.
  * Note that it is an error for an implementation to process an unknown type.
  * <p>
  * RAES features <b>transparent random read access</b> to the encrypted data.
@@ -32,6 +33,8 @@
  *         Authentication Code (KLAC)</i>.
  *     <li>The second, optional method is the well-known
  *         <i>Message Authentication Code</i> (MAC) on the full cipher text.
+ *         For Type-1, there is a MAC for each chunk of the cipher text
+ *         instead, which is checked whenever the chunk gets read.
  *     </ol>
  * </ul>
  * <p>
@@ -65,7 +68,7 @@
  *
  * <h3>RAES types</h3>
  * <p>
- * As said, RAES currently defines only <i>Type-0</i> files.
+ * As said, RAES currently defines <i>Type-0</i> and <i>Type-1</i> files.
  * Type-0 has the following specifications:
  * <ul>
  * <li>The encryption scheme is password based according to
@@ -109,6 +112,19 @@
  * Assuming a worst-case overhead for the deflater's algorithm of 100%, the
  * minimum number of compressed bytes for the first 512 bytes of a key file
  * should be no less than 2 * 256 / 8 = 64 bytes.
+ * <p>
+ * Type-1 has the same specifications as Type-0, but the header additionally
+ * contains the binary logarithm of the chunk size, which is between 10 and 24,
+ * i.e. between 1 KB and 16 MB.
+ * The cipher text is followed by a table with a MAC for each chunk of the
+ * cipher text, the KLAC and a root MAC of the table.
+ * The MAC of a chunk is computed over a zero byte, the chunk index and the
+ * chunk data.
+ * The root MAC is computed over a one byte, the table and the cipher text
+ * length.
+ * So an implementation can authenticate the table in O(n / chunk size) and
+ * any chunk in O(chunk size), which keeps random read access to large files
+ * fast while still authenticating all data which gets read.
  */
 @javax.annotation.Nonnull @javax.annotation.ParametersAreNonnullByDefault
 package net.java.truevfs.driver.zip.raes.crypto;
\ No newline at end of file
@@ -8,6 +8,7 @@ import lombok.val;
 import net.java.truecommons.shed.Filter;
 import net.java.truecommons.shed.Visitor;
 import net.java.truevfs.comp.jmx.JmxManager;
+import net.java.truevfs.comp.zip.ZipStatistics;
 import net.java.truevfs.kernel.spec.FsController;
 import net.java.truevfs.kernel.spec.FsManager;
 
@@ -27,6 +28,7 @@ final class I5tManager extends JmxManager<I5tMediator> {
     public void activate() {
         super.activate();
         mediator.activateAllStats(this);
+        mediator.register(mediator.nameBuilder(ZipStatistics.class).get(), new I5tZipStatsView());
     }
 
     @Override
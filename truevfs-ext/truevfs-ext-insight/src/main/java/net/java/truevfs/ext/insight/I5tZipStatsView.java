@@ -0,0 +1,67 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.ext.insight;
+
+import net.java.truevfs.comp.zip.ZipStatistics;
+import net.java.truevfs.ext.insight.stats.ZipStatsView;
+
+import javax.annotation.concurrent.ThreadSafe;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.StandardMBean;
+
+/**
+ * A view for the {@linkplain ZipStatistics statistics of the ZIP codec}.
+ *
+ * @author Christian Schlichtherle
+ */
+@ThreadSafe
+final class I5tZipStatsView extends StandardMBean implements ZipStatsView {
+
+    I5tZipStatsView() {
+        super(ZipStatsView.class, true);
+    }
+
+    @Override
+    protected String getDescription(MBeanInfo info) {
+        return "The statistics of the ZIP codec.";
+    }
+
+    @Override
+    protected String getDescription(final MBeanAttributeInfo info) {
+        switch (info.getName()) {
+            case "CompressedEntries":
+                return "The total number of entries which the adaptive compression policy has decided to compress.";
+            case "FlaterPoolHits":
+                return "The total number of inflaters and deflaters which have been taken from a pool.";
+            case "FlaterPoolMisses":
+                return "The total number of inflaters and deflaters which had to get created because their pool was empty.";
+            case "StoredEntries":
+                return "The total number of entries which the adaptive compression policy has decided to store.";
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    public long getCompressedEntries() {
+        return ZipStatistics.getCompressedEntries();
+    }
+
+    @Override
+    public long getFlaterPoolHits() {
+        return ZipStatistics.getFlaterPoolHits();
+    }
+
+    @Override
+    public long getFlaterPoolMisses() {
+        return ZipStatistics.getFlaterPoolMisses();
+    }
+
+    @Override
+    public long getStoredEntries() {
+        return ZipStatistics.getStoredEntries();
+    }
+}
@@ -0,0 +1,25 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.ext.insight.stats;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * An MXBean interface for the statistics of the ZIP codec.
+ *
+ * @author Christian Schlichtherle
+ * @since TrueVFS 0.15.0
+ */
+@ThreadSafe
+public interface ZipStatsView {
+
+    long getCompressedEntries();
+
+    long getFlaterPoolHits();
+
+    long getFlaterPoolMisses();
+
+    long getStoredEntries();
+}
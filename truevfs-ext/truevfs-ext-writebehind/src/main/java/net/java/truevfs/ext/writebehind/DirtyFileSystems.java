@@ -0,0 +1,141 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.ext.writebehind;
+
+import lombok.val;
+import net.java.truevfs.kernel.spec.FsMountPoint;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Tracks the changes to all mounted archive file systems and decides which of them are due for a sync.
+ * <p>
+ * A file system is due for a sync if it has been changed and either no more changes have been made for the
+ * configured delay, or the first change has been made at least the configured maximum age ago, or the number of bytes
+ * written is at least the configured maximum number of dirty bytes.
+ * So a burst of changes gets coalesced into a single sync unless it takes too long or writes too much.
+ * <p>
+ * All times are given in nanoseconds as returned by {@link System#nanoTime()}.
+ *
+ * @author Christian Schlichtherle
+ */
+@ThreadSafe
+final class DirtyFileSystems {
+
+    private final long delayNanos, maxAgeNanos, maxDirtyBytes;
+
+    private final ConcurrentMap<FsMountPoint, Changes> changes = new ConcurrentHashMap<>();
+
+    DirtyFileSystems(final long delayNanos, final long maxAgeNanos, final long maxDirtyBytes) {
+        this.delayNanos = delayNanos;
+        this.maxAgeNanos = maxAgeNanos;
+        this.maxDirtyBytes = maxDirtyBytes;
+    }
+
+    /**
+     * Records that the file system with the given mount point has been mounted.
+     */
+    void mounted(FsMountPoint mountPoint) {
+        changes.putIfAbsent(mountPoint, Changes.NONE);
+    }
+
+    /**
+     * Records that the file system with the given mount point has been unmounted, which implies that all its changes
+     * have been synced.
+     */
+    void unmounted(FsMountPoint mountPoint) {
+        changes.remove(mountPoint);
+    }
+
+    /**
+     * Records a change to the file system with the given mount point.
+     * Changes to file systems which are not mounted get ignored.
+     *
+     * @param bytes the number of bytes written.
+     * @param now   the current time.
+     * @return Whether the file system is now due for a sync because the maximum number of dirty bytes has been
+     * reached.
+     */
+    boolean changed(final FsMountPoint mountPoint, final long bytes, final long now) {
+        val c = changes.computeIfPresent(mountPoint, (k, v) -> v.add(bytes, now));
+        return null != c && maxDirtyBytes <= c.bytes;
+    }
+
+    /**
+     * Returns whether any mounted file system has been changed.
+     */
+    boolean dirty() {
+        for (val c : changes.values()) {
+            if (c != Changes.NONE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the changes of all file systems which are due for a sync at the given time, ordered so that any file
+     * system precedes its parent file system.
+     */
+    List<Map.Entry<FsMountPoint, Changes>> due(final long now) {
+        val due = new ArrayList<Map.Entry<FsMountPoint, Changes>>();
+        for (val entry : changes.entrySet()) {
+            val c = entry.getValue();
+            if (c != Changes.NONE
+                    && (maxDirtyBytes <= c.bytes || delayNanos <= now - c.last || maxAgeNanos <= now - c.first)) {
+                due.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), c));
+            }
+        }
+        due.sort(Map.Entry.comparingByKey(
+                Comparator.comparing(FsMountPoint::toHierarchicalUri, Comparator.reverseOrder())));
+        return due;
+    }
+
+    /**
+     * Discards the given changes of the file system with the given mount point unless there have been more changes in
+     * the meantime.
+     * This needs to get called after a sync attempt because the file system may still be mounted.
+     */
+    void discard(FsMountPoint mountPoint, Changes changes) {
+        this.changes.replace(mountPoint, changes, Changes.NONE);
+    }
+
+    /**
+     * Returns the changes of the file system with the given mount point or {@code null} if it is not mounted.
+     */
+    @CheckForNull Changes changes(FsMountPoint mountPoint) {
+        return changes.get(mountPoint);
+    }
+
+    /**
+     * The accumulated changes to a mounted file system.
+     */
+    @Immutable
+    static final class Changes {
+
+        static final Changes NONE = new Changes(0, 0, 0);
+
+        final long first, last, bytes;
+
+        private Changes(final long first, final long last, final long bytes) {
+            this.first = first;
+            this.last = last;
+            this.bytes = bytes;
+        }
+
+        Changes add(long bytes, long now) {
+            return this == NONE ? new Changes(now, now, bytes) : new Changes(first, now, this.bytes + bytes);
+        }
+    }
+}
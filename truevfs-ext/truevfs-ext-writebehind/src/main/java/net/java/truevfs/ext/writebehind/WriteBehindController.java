@@ -0,0 +1,163 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.ext.writebehind;
+
+import net.java.truecommons.cio.DecoratingOutputSocket;
+import net.java.truecommons.cio.Entry;
+import net.java.truecommons.cio.InputSocket;
+import net.java.truecommons.cio.OutputSocket;
+import net.java.truecommons.io.DecoratingOutputStream;
+import net.java.truecommons.io.DecoratingSeekableChannel;
+import net.java.truecommons.shed.BitField;
+import net.java.truevfs.kernel.spec.*;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.WillCloseWhenClosed;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Map;
+
+/**
+ * Calls back the given write-behind manager after each file system operation which changes the file system in order
+ * to schedule it for a sync.
+ * Output streams and channels call back the manager when they get closed, reporting the number of bytes written.
+ *
+ * @author Christian Schlichtherle
+ */
+class WriteBehindController extends FsDecoratingController {
+
+    private final WriteBehindManager manager;
+
+    WriteBehindController(WriteBehindManager manager, FsController controller) {
+        super(controller);
+        this.manager = manager;
+    }
+
+    private void changed(long bytes) {
+        manager.recordChange(getMountPoint(), bytes);
+    }
+
+    @Override
+    public void setReadOnly(BitField<FsAccessOption> options, FsNodeName name) throws IOException {
+        controller.setReadOnly(options, name);
+        changed(0);
+    }
+
+    @Override
+    public boolean setTime(BitField<FsAccessOption> options, FsNodeName name, Map<Entry.Access, Long> times) throws IOException {
+        final boolean ok = controller.setTime(options, name, times);
+        changed(0);
+        return ok;
+    }
+
+    @Override
+    public boolean setTime(BitField<FsAccessOption> options, FsNodeName name, BitField<Entry.Access> types, long value) throws IOException {
+        final boolean ok = controller.setTime(options, name, types, value);
+        changed(0);
+        return ok;
+    }
+
+    @Override
+    public OutputSocket<? extends Entry> output(BitField<FsAccessOption> options, FsNodeName name, @CheckForNull Entry template) {
+        return new Output(controller.output(options, name, template));
+    }
+
+    @Override
+    public void make(BitField<FsAccessOption> options, FsNodeName name, Entry.Type type, @CheckForNull Entry template) throws IOException {
+        controller.make(options, name, type, template);
+        changed(0);
+    }
+
+    @Override
+    public void unlink(BitField<FsAccessOption> options, FsNodeName name) throws IOException {
+        controller.unlink(options, name);
+        changed(0);
+    }
+
+    private final class Output extends DecoratingOutputSocket<Entry> {
+
+        Output(OutputSocket<? extends Entry> socket) {
+            super(socket);
+        }
+
+        @Override
+        public OutputStream stream(@CheckForNull InputSocket<? extends Entry> peer) throws IOException {
+            return new WriteBehindOutputStream(socket.stream(peer));
+        }
+
+        @Override
+        public SeekableByteChannel channel(@CheckForNull InputSocket<? extends Entry> peer) throws IOException {
+            return new WriteBehindSeekableChannel(socket.channel(peer));
+        }
+    }
+
+    @NotThreadSafe
+    private final class WriteBehindOutputStream extends DecoratingOutputStream {
+
+        long bytes;
+        boolean closed;
+
+        WriteBehindOutputStream(@WillCloseWhenClosed OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            bytes += 1;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            bytes += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                out.close();
+            } finally {
+                if (!closed) {
+                    closed = true;
+                    changed(bytes);
+                }
+            }
+        }
+    }
+
+    @NotThreadSafe
+    private final class WriteBehindSeekableChannel extends DecoratingSeekableChannel {
+
+        long bytes;
+        boolean closed;
+
+        WriteBehindSeekableChannel(@WillCloseWhenClosed SeekableByteChannel channel) {
+            super(channel);
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            final int ret = channel.write(src);
+            bytes += ret;
+            return ret;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                channel.close();
+            } finally {
+                if (!closed) {
+                    closed = true;
+                    changed(bytes);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.ext.writebehind;
+
+import lombok.val;
+import net.java.truecommons.logging.LocalizedLogger;
+import net.java.truevfs.comp.inst.InstrumentingManager;
+import net.java.truevfs.kernel.spec.*;
+import org.slf4j.Logger;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.lang.Math.max;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static net.java.truevfs.ext.writebehind.WriteBehindMediator.delayMillis;
+
+/**
+ * A write-behind manager.
+ * Syncs the changed archive file systems on a dedicated background thread as soon as they are
+ * {@linkplain DirtyFileSystems due}, so that client applications do not have to wait for archive files to get
+ * rewritten.
+ * The background thread gets started upon the first change and terminates once all changes have been synced.
+ *
+ * @author Christian Schlichtherle
+ */
+@ThreadSafe
+class WriteBehindManager extends InstrumentingManager<WriteBehindMediator> {
+
+    private static final Logger logger = new LocalizedLogger(WriteBehindManager.class);
+
+    /**
+     * The period in milliseconds for checking if any file systems are due for a sync.
+     */
+    private static final long periodMillis = max(10, delayMillis / 4);
+
+    private final DirtyFileSystems dirtyFileSystems;
+
+    /**
+     * The background thread only exists while there are changed file systems:
+     * It terminates when no check is scheduled for the period, e.g. after all file systems have been unmounted, and
+     * gets restarted upon the next change.
+     */
+    private final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+        val thread = new Thread(r, "TrueVFS Write-Behind");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    {
+        executor.setKeepAliveTime(periodMillis, MILLISECONDS);
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    private final AtomicBoolean scheduled = new AtomicBoolean(), triggered = new AtomicBoolean();
+
+    WriteBehindManager(WriteBehindMediator mediator, FsManager manager) {
+        super(mediator, manager);
+        this.dirtyFileSystems = mediator.dirtyFileSystems;
+    }
+
+    /**
+     * Records a change to a file system after the fact and schedules a check if none is scheduled yet.
+     * If the file system has exceeded the maximum number of dirty bytes, then a sync gets triggered immediately.
+     *
+     * @param mountPoint the mount point of the changed file system.
+     * @param bytes      the number of bytes written.
+     */
+    void recordChange(final FsMountPoint mountPoint, final long bytes) {
+        val due = dirtyFileSystems.changed(mountPoint, bytes, System.nanoTime());
+        schedule();
+        if (due && triggered.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                triggered.set(false);
+                syncDueFileSystems();
+            });
+        }
+    }
+
+    /** Schedules a check after the period unless a check is already scheduled. */
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            executor.schedule(this::check, periodMillis, MILLISECONDS);
+        }
+    }
+
+    /**
+     * Syncs all file systems which are due and schedules the next check as long as there are changed file systems.
+     */
+    private void check() {
+        try {
+            syncDueFileSystems();
+        } finally {
+            scheduled.set(false);
+            if (dirtyFileSystems.dirty()) {
+                schedule();
+            }
+        }
+    }
+
+    /**
+     * Syncs all file systems which are due.
+     * Any file system gets synced before its parent file system.
+     * A sync which fails because some thread has open resources gets retried later.
+     */
+    private void syncDueFileSystems() {
+        for (val entry : dirtyFileSystems.due(System.nanoTime())) {
+            val mountPoint = entry.getKey();
+            try {
+                new FsSync()
+                        .manager(manager)
+                        .filter(FsControllerFilter.forPrefix(mountPoint))
+                        .run();
+            } catch (FsSyncException e) {
+                if (e.getCause() instanceof FsOpenResourceException) {
+                    // Do NOT discard the changes - the sync shall get retried when the file system is due again:
+                    logger.trace("ignoring", e);
+                    continue;
+                }
+                logger.warn("failed", mountPoint, e);
+            } catch (RuntimeException e) {
+                // Do not let the exception cancel the periodic execution of this method:
+                logger.warn("failed", mountPoint, e);
+            }
+            dirtyFileSystems.discard(mountPoint, entry.getValue());
+            // The sync has changed the parent file system, if it's an archive file system too:
+            val parent = mountPoint.getParent();
+            if (null != parent) {
+                dirtyFileSystems.changed(parent, 0, System.nanoTime());
+            }
+        }
+    }
+}
@@ -0,0 +1,21 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.ext.writebehind;
+
+import global.namespace.service.wight.annotation.ServiceImplementation;
+import net.java.truevfs.kernel.spec.FsManager;
+import net.java.truevfs.kernel.spec.spi.FsManagerDecorator;
+
+/**
+ * @author Christian Schlichtherle
+ */
+@ServiceImplementation(priority = -50)
+public final class WriteBehindManagerDecorator implements FsManagerDecorator {
+
+    @Override
+    public FsManager apply(FsManager manager) {
+        return new WriteBehindMediator().instrument(manager);
+    }
+}
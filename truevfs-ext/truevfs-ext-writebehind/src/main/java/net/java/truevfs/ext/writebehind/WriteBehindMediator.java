@@ -0,0 +1,72 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.ext.writebehind;
+
+import net.java.truevfs.comp.inst.InstrumentingCompositeDriver;
+import net.java.truevfs.comp.inst.InstrumentingManager;
+import net.java.truevfs.comp.inst.Mediator;
+import net.java.truevfs.kernel.spec.FsCompositeDriver;
+import net.java.truevfs.kernel.spec.FsController;
+import net.java.truevfs.kernel.spec.FsManager;
+import net.java.truevfs.kernel.spec.FsModel;
+
+import static java.lang.Math.max;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * A mediator for the instrumentation of the TrueVFS Kernel with a {@link WriteBehindManager} and a
+ * {@link WriteBehindController}.
+ *
+ * @author Christian Schlichtherle
+ */
+final class WriteBehindMediator extends Mediator<WriteBehindMediator> {
+
+    private static final String propertyKeyPrefix = WriteBehindMediator.class.getPackage().getName() + ".";
+
+    /**
+     * The time in milliseconds without any changes to an archive file system before it gets synced.
+     * This coalesces a burst of changes into a single sync.
+     * Can get set by the system property with the key string {@code <package>.delayMillis}.
+     */
+    static final long delayMillis = max(0, Long.getLong(propertyKeyPrefix + "delayMillis", 1000));
+
+    /**
+     * The maximum time in milliseconds between the first change to an archive file system and its sync.
+     * Can get set by the system property with the key string {@code <package>.maxAgeMillis}.
+     */
+    static final long maxAgeMillis = max(delayMillis, Long.getLong(propertyKeyPrefix + "maxAgeMillis", 10000));
+
+    /**
+     * The maximum number of bytes written to an archive file system before it gets synced.
+     * Can get set by the system property with the key string {@code <package>.maxDirtyBytes}.
+     */
+    static final long maxDirtyBytes = max(1, Long.getLong(propertyKeyPrefix + "maxDirtyBytes", 64L << 20));
+
+    final DirtyFileSystems dirtyFileSystems = new DirtyFileSystems(
+            MILLISECONDS.toNanos(delayMillis),
+            MILLISECONDS.toNanos(maxAgeMillis),
+            maxDirtyBytes
+    );
+
+    @Override
+    public FsManager instrument(FsManager subject) {
+        return new WriteBehindManager(this, subject);
+    }
+
+    @Override
+    public FsCompositeDriver instrument(InstrumentingManager<WriteBehindMediator> context, FsCompositeDriver subject) {
+        return new InstrumentingCompositeDriver<>(this, subject);
+    }
+
+    @Override
+    public FsController instrument(InstrumentingManager<WriteBehindMediator> context, FsController subject) {
+        return new WriteBehindController((WriteBehindManager) context, subject);
+    }
+
+    @Override
+    public FsModel instrument(InstrumentingCompositeDriver<WriteBehindMediator> context, FsModel subject) {
+        return new WriteBehindModel(this, subject);
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.ext.writebehind;
+
+import lombok.val;
+import net.java.truevfs.comp.inst.InstrumentingModel;
+import net.java.truevfs.kernel.spec.FsModel;
+
+/**
+ * Tracks the transitions of the property {@code mounted} so that only mounted file systems are considered for a
+ * write-behind sync.
+ *
+ * @author Christian Schlichtherle
+ */
+final class WriteBehindModel extends InstrumentingModel<WriteBehindMediator> {
+
+    private final DirtyFileSystems dirtyFileSystems;
+
+    WriteBehindModel(WriteBehindMediator mediator, FsModel model) {
+        super(mediator, model);
+        this.dirtyFileSystems = mediator.dirtyFileSystems;
+    }
+
+    @Override
+    public void setMounted(final boolean isMounted) {
+        val wasMounted = model.isMounted();
+        model.setMounted(isMounted);
+        if (wasMounted) {
+            if (!isMounted) {
+                dirtyFileSystems.unmounted(getMountPoint());
+            }
+        } else {
+            if (isMounted) {
+                dirtyFileSystems.mounted(getMountPoint());
+            }
+        }
+    }
+}
@@ -0,0 +1,11 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+/**
+ * Syncs changed archive file systems in the background so that client applications do not have to wait for archive
+ * files to get rewritten.
+ *
+ * @author Christian Schlichtherle
+ */
+package net.java.truevfs.ext.writebehind;
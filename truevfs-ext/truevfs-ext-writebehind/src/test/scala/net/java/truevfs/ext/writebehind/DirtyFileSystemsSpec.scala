@@ -0,0 +1,91 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.ext.writebehind
+
+import java.net.URI
+
+import net.java.truevfs.kernel.spec.FsMountPoint
+import org.scalatest.Matchers._
+import org.scalatest._
+
+import scala.collection.JavaConverters._
+
+/** @author Christian Schlichtherle */
+class DirtyFileSystemsSpec extends WordSpec with OneInstancePerTest {
+
+  private val delay = 10L
+  private val maxAge = 100L
+  private val maxDirtyBytes = 1000L
+
+  private val fileSystems = new DirtyFileSystems(delay, maxAge, maxDirtyBytes)
+
+  private val parent = new FsMountPoint(new URI("a:p:/1!/"))
+  private val child = new FsMountPoint(new URI("a:a:p:/1!/a!/"))
+
+  private def due(now: Long) = fileSystems.due(now).asScala.map(_.getKey).toList
+
+  "DirtyFileSystems" should {
+    "ignore changes to file systems which are not mounted" in {
+      fileSystems.changed(parent, maxDirtyBytes, 0) shouldBe false
+      due(maxAge) shouldBe empty
+    }
+
+    "not consider a mounted file system without changes to be due" in {
+      fileSystems.mounted(parent)
+      due(maxAge) shouldBe empty
+    }
+
+    "coalesce a burst of changes until the delay has expired" in {
+      fileSystems.mounted(parent)
+      fileSystems.changed(parent, 1, 0)
+      fileSystems.changed(parent, 1, delay - 1)
+      due(delay) shouldBe empty
+      due(2 * delay - 1) shouldBe List(parent)
+    }
+
+    "consider a file system to be due once the maximum age has been reached" in {
+      fileSystems.mounted(parent)
+      for (now <- 0L until maxAge by delay / 2) {
+        fileSystems.changed(parent, 1, now)
+        due(now) shouldBe empty
+      }
+      due(maxAge) shouldBe List(parent)
+    }
+
+    "consider a file system to be due once the maximum number of dirty bytes has been reached" in {
+      fileSystems.mounted(parent)
+      fileSystems.changed(parent, maxDirtyBytes - 1, 0) shouldBe false
+      fileSystems.changed(parent, 1, 0) shouldBe true
+      due(0) shouldBe List(parent)
+    }
+
+    "order child file systems before their parent file system" in {
+      fileSystems.mounted(parent)
+      fileSystems.mounted(child)
+      fileSystems.changed(parent, 1, 0)
+      fileSystems.changed(child, 1, 0)
+      due(delay) shouldBe List(child, parent)
+    }
+
+    "discard the given changes unless there have been more changes in the meantime" in {
+      fileSystems.mounted(parent)
+      fileSystems.changed(parent, 1, 0)
+      val List(entry) = fileSystems.due(delay).asScala.toList
+      fileSystems.changed(parent, 1, delay)
+      fileSystems.discard(parent, entry.getValue)
+      due(2 * delay) shouldBe List(parent)
+      fileSystems.discard(parent, fileSystems.changes(parent))
+      due(2 * delay) shouldBe empty
+    }
+
+    "forget all changes once the file system has been unmounted" in {
+      fileSystems.mounted(parent)
+      fileSystems.changed(parent, 1, 0)
+      fileSystems.unmounted(parent)
+      due(maxAge) shouldBe empty
+      fileSystems.changes(parent) shouldBe null
+    }
+  }
+}
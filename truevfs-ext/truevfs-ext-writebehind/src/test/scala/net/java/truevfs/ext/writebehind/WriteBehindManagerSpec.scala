@@ -0,0 +1,92 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.ext.writebehind
+
+import java.net.URI
+import java.util.concurrent.atomic.AtomicInteger
+
+import net.java.truecommons.shed.{Filter, Visitor}
+import net.java.truevfs.ext.writebehind.WriteBehindManagerSpec._
+import net.java.truevfs.kernel.spec._
+import org.scalatest.Matchers._
+import org.scalatest._
+import org.scalatest.concurrent.Eventually
+import org.scalatest.time.{Seconds, Span}
+
+import scala.collection.JavaConverters._
+
+/** @author Christian Schlichtherle */
+class WriteBehindManagerSpec extends WordSpec with OneInstancePerTest with Eventually {
+
+  override implicit val patienceConfig: PatienceConfig = PatienceConfig(timeout = Span(10, Seconds))
+
+  private val mediator = new WriteBehindMediator
+  private val subject = new CountingManager
+  private val manager = new WriteBehindManager(mediator, subject)
+  private val fileSystems = mediator.dirtyFileSystems
+
+  private val mountPoint = new FsMountPoint(new URI("a:p:/1!/"))
+
+  "A write-behind manager" should {
+    "not start its background thread before any change" in {
+      threadAlive shouldBe false
+    }
+
+    "sync a changed file system and terminate its background thread afterwards" in {
+      fileSystems.mounted(mountPoint)
+      manager.recordChange(mountPoint, 1)
+      threadAlive shouldBe true
+      eventually(subject.visits.get shouldBe 1)
+      fileSystems.dirty shouldBe false
+      eventually(threadAlive shouldBe false)
+    }
+
+    "terminate its background thread once all file systems have been unmounted" in {
+      fileSystems.mounted(mountPoint)
+      manager.recordChange(mountPoint, 1)
+      threadAlive shouldBe true
+      fileSystems.unmounted(mountPoint)
+      eventually(threadAlive shouldBe false)
+      subject.visits.get shouldBe 0
+    }
+
+    "restart its background thread upon the next change" in {
+      fileSystems.mounted(mountPoint)
+      manager.recordChange(mountPoint, 1)
+      eventually(threadAlive shouldBe false)
+      manager.recordChange(mountPoint, 1)
+      threadAlive shouldBe true
+      eventually(subject.visits.get shouldBe 2)
+      eventually(threadAlive shouldBe false)
+    }
+  }
+}
+
+private object WriteBehindManagerSpec {
+
+  def threadAlive: Boolean = Thread.getAllStackTraces.keySet.asScala.exists { thread =>
+    "TrueVFS Write-Behind" == thread.getName && thread.isAlive
+  }
+
+  /** A file system manager without any controllers which counts the visits for syncing. */
+  final class CountingManager extends FsAbstractManager {
+
+    val visits = new AtomicInteger
+
+    override def newModel(context: FsDriver, mountPoint: FsMountPoint, parent: FsModel): FsModel =
+      throw new UnsupportedOperationException
+
+    override def newController(context: FsArchiveDriver[_ <: FsArchiveEntry], model: FsModel, parent: FsController): FsController =
+      throw new UnsupportedOperationException
+
+    override def controller(driver: FsCompositeDriver, mountPoint: FsMountPoint): FsController =
+      throw new UnsupportedOperationException
+
+    override def accept[X <: Exception, V <: Visitor[_ >: FsController, X]](filter: Filter[_ >: FsController], visitor: V): V = {
+      visits.incrementAndGet()
+      visitor
+    }
+  }
+}
@@ -23,6 +23,7 @@ import java.lang.ref.WeakReference;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
 import java.util.concurrent.Callable;
@@ -31,6 +32,7 @@ import static java.io.File.separatorChar;
 import static net.java.truecommons.shed.ConcurrencyUtils.NUM_IO_THREADS;
 import static net.java.truecommons.shed.ConcurrencyUtils.start;
 import static net.java.truevfs.kernel.spec.FsAccessOption.GROW;
+import static net.java.truevfs.kernel.spec.FsAccessOption.LAZY_MOUNT;
 import static net.java.truevfs.kernel.spec.FsSyncOption.CLEAR_CACHE;
 import static net.java.truevfs.kernel.spec.FsSyncOption.WAIT_CLOSE_IO;
 import static net.java.truevfs.kernel.spec.FsSyncOptions.SYNC;
@@ -1441,4 +1443,34 @@ extends ConfiguredClientTestBase<D> {
 
         assertNull(archive.list());
     }
+
+    @Test
+    public void testLazyMount() throws IOException {
+        final TFile dir = new TFile(archive, "dir");
+        final TFile entry1 = new TFile(dir, "sub/entry1");
+        final TFile entry2 = new TFile(dir, "entry2");
+
+        createTestFile(entry1);
+        createTestFile(entry2);
+        umount();
+
+        try (final TConfig config = TConfig.open()) {
+            config.setAccessPreference(LAZY_MOUNT, true);
+
+            assertTrue(entry2.isFile());
+            assertThat(new HashSet<>(Arrays.asList(dir.list())),
+                    is(new HashSet<>(Arrays.asList("sub", "entry2"))));
+            assertTrue(entry1.isFile());
+            entry1.rm();
+            assertThat(entry1.getParentFile().list().length, is(0));
+            umount();
+        }
+
+        assertThat(new HashSet<>(Arrays.asList(dir.list())),
+                is(new HashSet<>(Arrays.asList("sub", "entry2"))));
+        assertThat(entry1.getParentFile().list().length, is(0));
+
+        archive.rm_r();
+        umount();
+    }
 }
@@ -0,0 +1,282 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.comp.tardriver;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Arrays;
+import java.util.Random;
+import javax.annotation.CheckForNull;
+import net.java.truecommons.cio.IoBufferPool;
+import net.java.truecommons.io.AbstractSource;
+import net.java.truecommons.io.ByteBufferChannel;
+import net.java.truecommons.io.Source;
+import net.java.truecommons.io.Streams;
+import net.java.truevfs.kernel.spec.FsAbstractModel;
+import net.java.truevfs.kernel.spec.FsModel;
+import net.java.truevfs.kernel.spec.FsMountPoint;
+import net.java.truevfs.kernel.spec.FsTestConfig;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarUtils;
+import static org.apache.commons.compress.archivers.tar.TarConstants.DEFAULT_RCDSIZE;
+import static org.apache.commons.compress.archivers.tar.TarConstants.LF_GNUTYPE_SPARSE;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Tests reading TAR files with and without indexing them.
+ *
+ * @author Christian Schlichtherle
+ */
+public final class TarInputServiceTest {
+
+    private static final FsModel MODEL = new Model(
+            FsMountPoint.create(URI.create("tar:file:/archive.tar!/")),
+            new Model(FsMountPoint.create(URI.create("file:/")), null));
+
+    private static final Random RANDOM = new Random(0);
+
+    private static byte[] data(final int length) {
+        final byte[] data = new byte[length];
+        RANDOM.nextBytes(data);
+        return data;
+    }
+
+    private static byte[] tar(final Object... namesAndData) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        tar(bytes, namesAndData);
+        return bytes.toByteArray();
+    }
+
+    private static void tar(
+            final ByteArrayOutputStream bytes,
+            final Object... namesAndData)
+    throws IOException {
+        try (TarArchiveOutputStream out = new TarArchiveOutputStream(bytes)) {
+            for (int i = 0; i < namesAndData.length; i += 2) {
+                final String name = (String) namesAndData[i];
+                final byte[] data = (byte[]) namesAndData[i + 1];
+                final TarArchiveEntry entry = new TarArchiveEntry(name);
+                if (!entry.isDirectory()) entry.setSize(data.length);
+                out.putArchiveEntry(entry);
+                out.write(data);
+                out.closeArchiveEntry();
+            }
+        }
+    }
+
+    /**
+     * Writes an old GNU sparse entry with the given name and real size.
+     * Each pair of {@code segments} is the offset and length of a segment of
+     * {@code data}, all other bytes are holes.
+     */
+    private static void sparse(
+            final ByteArrayOutputStream bytes,
+            final String name,
+            final byte[] data,
+            final long realSize,
+            final long... segments) {
+        final byte[] header = new byte[DEFAULT_RCDSIZE];
+        final byte[] nameBytes = name.getBytes();
+        System.arraycopy(nameBytes, 0, header, 0, nameBytes.length);
+        TarUtils.formatOctalBytes(0644, header, 100, 8);
+        TarUtils.formatOctalBytes(0, header, 108, 8);
+        TarUtils.formatOctalBytes(0, header, 116, 8);
+        TarUtils.formatLongOctalBytes(data.length, header, 124, 12);
+        TarUtils.formatLongOctalBytes(0, header, 136, 12);
+        header[156] = LF_GNUTYPE_SPARSE;
+        System.arraycopy("ustar  \0".getBytes(), 0, header, 257, 8);
+        for (int i = 0, off = 386; i < segments.length; i += 2, off += 24) {
+            TarUtils.formatLongOctalBytes(segments[i], header, off, 12);
+            TarUtils.formatLongOctalBytes(segments[i + 1], header, off + 12, 12);
+        }
+        TarUtils.formatLongOctalBytes(realSize, header, 483, 12);
+        Arrays.fill(header, 148, 156, (byte) ' ');
+        TarUtils.formatCheckSumOctalBytes(
+                TarUtils.computeCheckSum(header), header, 148, 8);
+        bytes.write(header, 0, header.length);
+        bytes.write(data, 0, data.length);
+        final int padding = -data.length & (DEFAULT_RCDSIZE - 1);
+        bytes.write(new byte[padding], 0, padding);
+    }
+
+    private static Source seekable(final byte[] tar) {
+        return new AbstractSource() {
+            @Override
+            public SeekableByteChannel channel() {
+                return new ByteBufferChannel(
+                        ByteBuffer.wrap(tar).asReadOnlyBuffer());
+            }
+        };
+    }
+
+    private static Source streamOnly(final byte[] tar) {
+        return new AbstractSource() {
+            @Override
+            public InputStream stream() {
+                return new ByteArrayInputStream(tar);
+            }
+        };
+    }
+
+    private static TarDriver driver(final boolean indexedReading) {
+        return new TarDriver() {
+            @Override
+            public IoBufferPool getPool() {
+                return FsTestConfig.get().getPool();
+            }
+
+            @Override
+            public boolean getIndexedReading() {
+                return indexedReading;
+            }
+        };
+    }
+
+    private static byte[] read(final TarInputService service, final String name)
+    throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = service.input(name).stream(null)) {
+            Streams.cat(in, out);
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testIndexedReading() throws IOException {
+        final byte[] a = data(5000), b = data(DEFAULT_RCDSIZE), c = new byte[0];
+        final byte[] tar = tar("a", a, "dir/", c, "dir/b", b, "c", c);
+        try (TarInputService service = new TarInputService(
+                MODEL, seekable(tar), driver(true))) {
+            assertEquals(4, service.size());
+            for (final TarDriverEntry entry : service) {
+                assertNull(entry.getBuffer());
+                if (entry.isDirectory()) continue;
+                final long offset = entry.getOffset();
+                final byte[] expected = read(service, entry.getName());
+                assertArrayEquals(expected, Arrays.copyOfRange(tar,
+                        (int) offset, (int) offset + expected.length));
+            }
+            assertArrayEquals(a, read(service, "a"));
+            assertArrayEquals(b, read(service, "dir/b"));
+            assertArrayEquals(c, read(service, "c"));
+            try (SeekableByteChannel channel = service.input("a").channel(null)) {
+                assertEquals(a.length, channel.size());
+                final ByteBuffer buffer = ByteBuffer.allocate(100);
+                channel.position(4000).read(buffer);
+                assertArrayEquals(Arrays.copyOfRange(a, 4000, 4100),
+                        buffer.array());
+            }
+        }
+    }
+
+    @Test
+    public void testExtractingFromStream() throws IOException {
+        final byte[] a = data(5000);
+        try (TarInputService service = new TarInputService(
+                MODEL, streamOnly(tar("a", a)), driver(true))) {
+            assertNotNull(service.entry("a").getBuffer());
+            assertArrayEquals(a, read(service, "a"));
+        }
+    }
+
+    @Test
+    public void testNotIndexedReading() throws IOException {
+        final byte[] a = data(5000);
+        final byte[] tar = tar("a", a);
+        try (TarInputService service = new TarInputService(
+                MODEL,
+                new AbstractSource() {
+                    @Override
+                    public InputStream stream() {
+                        return new ByteArrayInputStream(tar);
+                    }
+
+                    @Override
+                    public SeekableByteChannel channel() {
+                        throw new AssertionError(
+                                "Indexed reading has been switched off!");
+                    }
+                },
+                driver(false))) {
+            final TarDriverEntry entry = service.entry("a");
+            assertNotNull(entry.getBuffer());
+            assertArrayEquals(a, read(service, "a"));
+            try (SeekableByteChannel channel = service.input("a").channel(null)) {
+                assertEquals(a.length, channel.size());
+            }
+        }
+    }
+
+    @Test
+    public void testSparseEntry() throws IOException {
+        final byte[] data = data(3 * DEFAULT_RCDSIZE);
+        final byte[] expected = new byte[10 * DEFAULT_RCDSIZE];
+        System.arraycopy(data, 0, expected, 0, DEFAULT_RCDSIZE);
+        System.arraycopy(data, DEFAULT_RCDSIZE, expected,
+                8 * DEFAULT_RCDSIZE, 2 * DEFAULT_RCDSIZE);
+        final byte[] a = data(1000);
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        sparse(bytes, "sparse", data, expected.length,
+                0, DEFAULT_RCDSIZE,
+                8 * DEFAULT_RCDSIZE, 2 * DEFAULT_RCDSIZE);
+        tar(bytes, "a", a);
+        try (TarInputService service = new TarInputService(
+                MODEL, seekable(bytes.toByteArray()), driver(true))) {
+            assertEquals(2, service.size());
+            final TarDriverEntry sparse = service.entry("sparse");
+            assertNotNull(sparse.getBuffer());
+            assertArrayEquals(expected, read(service, "sparse"));
+            final TarDriverEntry entry = service.entry("a");
+            assertNull(entry.getBuffer());
+            assertEquals(5 * DEFAULT_RCDSIZE, entry.getOffset());
+            assertArrayEquals(a, read(service, "a"));
+        }
+    }
+
+    @Test
+    public void testTruncated() throws IOException {
+        final byte[] tar = tar("a", data(1000), "b", data(5000));
+        final byte[] truncated = Arrays.copyOf(tar, 4 * DEFAULT_RCDSIZE);
+        try {
+            new TarInputService(MODEL, seekable(truncated), driver(true))
+                    .close();
+            fail();
+        } catch (final TarException expected) {
+        }
+    }
+
+    @Test
+    public void testDuplicateEntryName() throws IOException {
+        final byte[] first = data(1000), second = data(2000);
+        final byte[] tar = tar("a", first, "b", new byte[0], "a", second);
+        for (final Source source : new Source[] { seekable(tar), streamOnly(tar) }) {
+            try (TarInputService service = new TarInputService(
+                    MODEL, source, driver(true))) {
+                assertEquals(2, service.size());
+                assertEquals(second.length, service.entry("a").getSize());
+                assertArrayEquals(second, read(service, "a"));
+            }
+        }
+    }
+
+    private static final class Model extends FsAbstractModel {
+        Model(FsMountPoint mountPoint, @CheckForNull FsModel parent) {
+            super(mountPoint, parent);
+        }
+
+        @Override
+        public boolean isMounted() { return false; }
+
+        @Override
+        public void setMounted(boolean mounted) { }
+    }
+}
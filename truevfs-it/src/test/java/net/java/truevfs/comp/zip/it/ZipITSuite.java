@@ -531,6 +531,34 @@ public abstract class ZipITSuite implements ZipEntryFactory<ZipEntry> {
         }
     }
 
+    /**
+     * This test checks the estimate of the garbage in a ZIP file which has
+     * been appended to by updating some of its entries.
+     *
+     * @throws IOException On any I/O error.
+     */
+    @Test
+    public void testGarbageLength() throws IOException {
+        final byte[] data = getData();
+        append(0, 20, data);
+        try (ZipFile zf = newZipFile(file)) {
+            assertEquals(0, zf.getGarbageLength());
+        }
+
+        // Update half of the entries.
+        append(10, 10, data);
+        try (ZipFile zf = newZipFile(file)) {
+            assertEquals(20, zf.size());
+            final long garbage = zf.getGarbageLength();
+            long updated = 0;
+            for (int i = 10; i < 20; i++) {
+                updated += zf.entry(i + ".txt").getCompressedSize();
+            }
+            assertTrue(updated < garbage);
+            assertTrue(garbage < zf.length() / 2);
+        }
+    }
+
     private void append(
             final int off,
             final int len,
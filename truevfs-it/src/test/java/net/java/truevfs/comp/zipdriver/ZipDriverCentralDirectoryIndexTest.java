@@ -0,0 +1,108 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.comp.zipdriver;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import net.java.truevfs.access.TArchiveDetector;
+import net.java.truevfs.access.TConfig;
+import net.java.truevfs.access.TFile;
+import net.java.truevfs.access.TVFS;
+import net.java.truevfs.comp.zip.CentralDirectoryIndex;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Christian Schlichtherle
+ */
+public final class ZipDriverCentralDirectoryIndexTest {
+
+    private static final int NUM_ENTRIES = 100;
+
+    private Path dir, file;
+    private CentralDirectoryIndex index;
+    private TConfig config;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("tzp");
+        file = dir.resolve("test.zip");
+        index = new CentralDirectoryIndex(dir.resolve("index"));
+        try (ZipOutputStream zos = new ZipOutputStream(
+                Files.newOutputStream(file))) {
+            for (int i = 0; i < NUM_ENTRIES; i++) {
+                zos.putNextEntry(new ZipEntry("dir/" + i + ".txt"));
+                zos.write(Integer.toString(i).getBytes(UTF_8));
+            }
+        }
+        config = TConfig.open();
+        config.setArchiveDetector(new TArchiveDetector("zip",
+                new ZipDriver() {
+                    @Override
+                    public CentralDirectoryIndex getCentralDirectoryIndex() {
+                        return index;
+                    }
+                }));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try {
+            TVFS.umount(new TFile(file.toFile()));
+        } finally {
+            config.close();
+            delete(dir);
+        }
+    }
+
+    private static void delete(final Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            try (DirectoryStream<Path> s = Files.newDirectoryStream(path)) {
+                for (Path member : s) delete(member);
+            }
+        }
+        Files.delete(path);
+    }
+
+    private void check() throws IOException {
+        final TFile archive = new TFile(file.toFile());
+        assertTrue(archive.isArchive());
+        assertEquals(NUM_ENTRIES, new TFile(archive, "dir").list().length);
+        final TFile entry = new TFile(archive, "dir/42.txt");
+        assertEquals(2, entry.length());
+        TVFS.umount(archive);
+    }
+
+    @Test
+    public void testDoesNotReadCentralDirectory() throws IOException {
+        check();
+        try (DirectoryStream<Path> s = Files.newDirectoryStream(
+                index.getDirectory())) {
+            assertTrue(s.iterator().hasNext());
+        }
+        // Overwrite the first Central File Header signature, but keep the
+        // size, last modification time and End Of Central Directory Record.
+        final FileTime time = Files.getLastModifiedTime(file);
+        final byte[] data = Files.readAllBytes(file);
+        for (int i = 0; i < data.length - 3; i++) {
+            if (0x50 == data[i] && 0x4b == data[i + 1]
+                    && 0x01 == data[i + 2] && 0x02 == data[i + 3]) {
+                data[i] = 0;
+                break;
+            }
+        }
+        Files.write(file, data);
+        Files.setLastModifiedTime(file, time);
+        check();
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.driver.tar.gzip;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+import net.java.truecommons.io.ByteBufferChannel;
+import net.java.truevfs.comp.inflater.InflaterReadOnlyChannel;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Tests the persistence of a {@link GZipIndex} and its binding to a GZIP file.
+ *
+ * @author Christian Schlichtherle
+ */
+public final class GZipIndexTest {
+
+    private static final int INTERVAL = 64 * 1024;
+
+    private static byte[] data() {
+        final Random rnd = new Random(0);
+        final byte[] data = new byte[1000000];
+        for (int i = 0; i < data.length; i++)
+            data[i] = (byte) ('a' + rnd.nextInt(4));
+        return data;
+    }
+
+    private static byte[] gzip(final byte[] data) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(data);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static SeekableByteChannel channel(final byte[] gzip) {
+        return new ByteBufferChannel(ByteBuffer.wrap(gzip));
+    }
+
+    private static GZipIndex index(final byte[] gzip) throws IOException {
+        final SeekableByteChannel channel = channel(gzip);
+        final GZipIndex index = new GZipIndex(channel, INTERVAL);
+        assertFalse(index.isComplete());
+        try (SeekableByteChannel inflater = new InflaterReadOnlyChannel(
+                channel, -1, index.getIndex(), 4096, true)) {
+            inflater.size();
+        }
+        assertTrue(index.isComplete());
+        return index;
+    }
+
+    private static byte[] write(final GZipIndex index) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        index.write(bytes);
+        return bytes.toByteArray();
+    }
+
+    private static GZipIndex read(final byte[] bytes) throws IOException {
+        return GZipIndex.read(new ByteArrayInputStream(bytes));
+    }
+
+    @Test
+    public void testPersistence() throws IOException {
+        final byte[] data = data();
+        final byte[] gzip = gzip(data);
+        final GZipIndex index = read(write(index(gzip)));
+        assertNotNull(index);
+        assertTrue(index.isComplete());
+        assertEquals(data.length, index.getIndex().length());
+        assertTrue(0 < index.getIndex().size());
+        final SeekableByteChannel channel = channel(gzip);
+        assertTrue(index.matches(channel));
+        try (SeekableByteChannel inflater = new InflaterReadOnlyChannel(
+                channel, -1, index.getIndex(), 4096, true)) {
+            assertEquals(data.length, inflater.size());
+            final Random rnd = new Random(1);
+            final ByteBuffer buf = ByteBuffer.allocate(1000);
+            for (int i = 0; i < 100; i++) {
+                final int pos = rnd.nextInt(data.length - buf.capacity());
+                buf.clear();
+                inflater.position(pos).read(buf);
+                assertArrayEquals(
+                        Arrays.copyOfRange(data, pos, pos + buf.capacity()),
+                        buf.array());
+            }
+        }
+    }
+
+    @Test
+    public void testMatches() throws IOException {
+        final byte[] gzip = gzip(data());
+        final GZipIndex index = index(gzip);
+        assertTrue(index.matches(channel(gzip)));
+        assertFalse(index.matches(channel(Arrays.copyOf(gzip, gzip.length + 1))));
+        assertFalse(index.matches(channel(Arrays.copyOf(gzip, gzip.length - 1))));
+        for (final int offset : new int[] {
+                4, // modification time in the header
+                gzip.length - 8, // CRC-32 in the trailer
+        }) {
+            final byte[] changed = gzip.clone();
+            changed[offset] ^= 1;
+            assertFalse(index.matches(channel(changed)));
+        }
+    }
+
+    @Test
+    public void testUnsupportedFormat() throws IOException {
+        final byte[] bytes = write(index(gzip(data())));
+        for (final int offset : new int[] {
+                0, // magic
+                7, // version
+        }) {
+            final byte[] changed = bytes.clone();
+            changed[offset] ^= 1;
+            assertNull(read(changed));
+        }
+    }
+
+    @Test
+    public void testTruncated() throws IOException {
+        final byte[] bytes = write(index(gzip(data())));
+        try {
+            read(Arrays.copyOf(bytes, bytes.length / 2));
+            fail();
+        } catch (final EOFException expected) {
+        }
+    }
+}
@@ -4,20 +4,41 @@
  */
 package net.java.truevfs.driver.zip.raes.crypto;
 
-import net.java.truevfs.driver.zip.raes.crypto.RaesParameters;
-import net.java.truevfs.driver.zip.raes.crypto.RaesReadOnlyChannel;
-import net.java.truevfs.driver.zip.raes.crypto.RaesOutputStream;
-import net.java.truecommons.io.AbstractSink;
-import net.java.truecommons.io.AbstractSource;
-import net.java.truecommons.io.ReadOnlyChannelITSuite;
-import net.java.truecommons.io.Streams;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Files;
 import static java.nio.file.Files.*;
 import java.nio.file.Path;
+import java.util.Random;
+import javax.annotation.CheckForNull;
+import net.java.truecommons.cio.AbstractInputSocket;
+import net.java.truecommons.cio.Entry;
+import net.java.truecommons.cio.OutputSocket;
+import net.java.truecommons.io.AbstractSink;
+import net.java.truecommons.io.AbstractSource;
+import net.java.truecommons.io.ByteBufferChannel;
+import net.java.truecommons.io.ReadOnlyChannelITSuite;
+import net.java.truecommons.io.Streams;
+import net.java.truecommons.key.spec.common.AesKeyStrength;
+import net.java.truevfs.comp.zip.ZipEntry;
+import net.java.truevfs.comp.zip.ZipOutputStream;
+import net.java.truevfs.comp.zipdriver.JarDriverEntry;
+import net.java.truevfs.comp.zipdriver.ZipInputService;
+import net.java.truevfs.driver.zip.raes.SafeZipRaesDriver;
+import net.java.truevfs.kernel.spec.FsAbstractModel;
+import net.java.truevfs.kernel.spec.FsAccessOptions;
+import net.java.truevfs.kernel.spec.FsInputSocketSource;
+import net.java.truevfs.kernel.spec.FsModel;
+import net.java.truevfs.kernel.spec.FsMountPoint;
+import static net.java.truevfs.driver.zip.raes.crypto.Constants.HALF_MAC_LEN;
+import static net.java.truevfs.driver.zip.raes.crypto.Constants.TYPE_1_HEADER_LEN_WO_SALT;
+import static org.junit.Assert.*;
+import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -29,6 +50,8 @@ public final class RaesReadOnlyChannelIT extends ReadOnlyChannelITSuite {
     private static final Logger
             logger = LoggerFactory.getLogger(RaesReadOnlyChannelIT.class);
 
+    private static final String PASSWD = "top secret";
+
     private static RaesParameters newRaesParameters() {
         return new MockType0RaesParameters();
     }
@@ -71,6 +94,321 @@ public final class RaesReadOnlyChannelIT extends ReadOnlyChannelITSuite {
         }
     }
 
+    @Test
+    public void type1RoundTrip() throws IOException {
+        for (final int chunkSize : new int[] { 1024, 4096 }) {
+            for (final int length : new int[] {
+                    0, 1, chunkSize - 1, chunkSize, chunkSize + 1,
+                    3 * chunkSize, 3 * chunkSize + 17 }) {
+                final byte[] plain = data(length);
+                final byte[] cipher = encrypt(plain, chunkSize);
+                assertEquals(
+                        TYPE_1_HEADER_LEN_WO_SALT + AesKeyStrength.BITS_128.getBytes(),
+                        layout(cipher, length, chunkSize).start);
+                try (RaesReadOnlyChannel channel = open(cipher)) {
+                    assertEquals(length, channel.size());
+                    assertArrayEquals(plain, read(channel, 0, length));
+                    assertEquals(-1, channel.read(ByteBuffer.allocate(1)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void type1RandomAccess() throws IOException {
+        final int chunkSize = 1024, length = 10 * chunkSize + 123;
+        final byte[] plain = data(length);
+        try (RaesReadOnlyChannel channel = open(encrypt(plain, chunkSize))) {
+            final Random rnd = new Random(length);
+            for (int i = 0; i < 1000; i++) {
+                final int pos = rnd.nextInt(length + 1);
+                final int len = rnd.nextInt(Math.min(length - pos, 3 * chunkSize) + 1);
+                final byte[] expected = new byte[len];
+                System.arraycopy(plain, pos, expected, 0, len);
+                assertArrayEquals(expected, read(channel, pos, len));
+            }
+            channel.position(length + 1);
+            assertEquals(-1, channel.read(ByteBuffer.allocate(1)));
+        }
+    }
+
+    @Test
+    public void type1TamperedCipherText() throws IOException {
+        final int chunkSize = 1024, length = 32 * chunkSize;
+        final byte[] plain = data(length);
+        final byte[] cipher = encrypt(plain, chunkSize);
+        final Layout layout = layout(cipher, length, chunkSize);
+        cipher[(int) layout.start + 24 * chunkSize + 7] ^= 1;
+        try (RaesReadOnlyChannel channel = open(cipher)) {
+            // The other chunks still get authenticated and decrypted.
+            final byte[] prefix = new byte[8 * chunkSize];
+            System.arraycopy(plain, 0, prefix, 0, prefix.length);
+            assertArrayEquals(prefix, read(channel, 0, prefix.length));
+            try {
+                read(channel, 24 * chunkSize, 1);
+                fail();
+            } catch (final RaesAuthenticationException expected) {
+            }
+            try {
+                channel.authenticate();
+                fail();
+            } catch (final RaesAuthenticationException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void type1TamperedMacTable() throws IOException {
+        assertTampered(layout -> layout.table + 3);
+    }
+
+    @Test
+    public void type1TamperedRootMac() throws IOException {
+        assertTampered(layout -> layout.end - 1);
+    }
+
+    /**
+     * The KLAC is the password verifier, so a tampered KLAC cannot be told
+     * apart from a wrong password: The right password gets rejected until
+     * the key retrieval fails.
+     */
+    @Test
+    public void type1TamperedKlac() throws IOException {
+        final int chunkSize = 1024, length = 5 * chunkSize;
+        final byte[] cipher = encrypt(data(length), chunkSize);
+        cipher[(int) layout(cipher, length, chunkSize).klac] ^= 1;
+        try {
+            open(cipher).close();
+            fail();
+        } catch (final RaesKeyException expected) {
+        }
+    }
+
+    @Test
+    public void type1TamperedChunkShift() throws IOException {
+        final int chunkSize = 1024, length = 5 * chunkSize + 100;
+        final byte[] cipher = encrypt(data(length), chunkSize);
+        final int offset = TYPE_1_HEADER_LEN_WO_SALT - 1;
+        for (final int shift : new int[] { 9, 11, 12, 25 }) {
+            final byte[] tampered = cipher.clone();
+            assertEquals(10, tampered[offset]);
+            tampered[offset] = (byte) shift;
+            try {
+                open(tampered).close();
+                fail();
+            } catch (final RaesException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void type1DriverMountsWithoutAuthenticatingEverything()
+    throws Exception {
+        final byte[] a = data(64 * 1024), b = data(100);
+        final ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        try (ZipOutputStream zos = new ZipOutputStream(zip)) {
+            zos.putNextEntry(new ZipEntry("a"));
+            zos.write(a);
+            zos.putNextEntry(new ZipEntry("b"));
+            zos.write(b);
+        }
+        final int chunkSize = 1024;
+        final byte[] cipher = encrypt(zip.toByteArray(), chunkSize);
+        // Tamper with the data of entry "a" only.  With type 0, the driver
+        // would authenticate the entire file when mounting it because it's
+        // smaller than the authentication trigger.
+        cipher[(int) layout(cipher, zip.size(), chunkSize).start + 32 * 1024] ^= 1;
+
+        final class Driver extends SafeZipRaesDriver {
+            @Override
+            protected RaesParameters raesParameters(FsModel model) {
+                return new Type1Parameters(chunkSize);
+            }
+
+            ZipInputService<JarDriverEntry> input(final FsModel model)
+            throws IOException {
+                return newZipInput(model, new FsInputSocketSource(
+                        FsAccessOptions.NONE,
+                        new AbstractInputSocket<Entry>() {
+                            @Override
+                            public Entry target() {
+                                throw new UnsupportedOperationException();
+                            }
+
+                            @Override
+                            public SeekableByteChannel channel(
+                                    OutputSocket<? extends Entry> peer) {
+                                return RaesReadOnlyChannelIT.channel(cipher);
+                            }
+                        }));
+            }
+        }
+        final FsModel model = new Model(
+                new FsMountPoint(URI.create("tzp:file:/archive.tzp!/")),
+                new Model(new FsMountPoint(URI.create("file:/")), null));
+        try (ZipInputService<JarDriverEntry> input = new Driver().input(model)) {
+            assertEquals(2, input.size());
+            try (InputStream in = input.input("b").stream(null)) {
+                final byte[] actual = new byte[b.length];
+                int off = 0;
+                for (int read; off < actual.length
+                        && 0 <= (read = in.read(actual, off, actual.length - off)); )
+                    off += read;
+                assertArrayEquals(b, actual);
+            }
+            try (InputStream in = input.input("a").stream(null)) {
+                final byte[] buf = new byte[a.length];
+                while (0 <= in.read(buf)) { }
+                fail();
+            } catch (final IOException ex) {
+                assertTrue(causes(ex, RaesAuthenticationException.class));
+            }
+        }
+    }
+
+    private interface Tamper {
+        long offset(Layout layout);
+    }
+
+    private static void assertTampered(final Tamper tamper) throws IOException {
+        final int chunkSize = 1024;
+        for (final int length : new int[] { 1, 5 * chunkSize }) {
+            final byte[] cipher = encrypt(data(length), chunkSize);
+            cipher[(int) tamper.offset(layout(cipher, length, chunkSize))] ^= 1;
+            try {
+                open(cipher).close();
+                fail();
+            } catch (final RaesAuthenticationException expected) {
+            }
+        }
+    }
+
+    /** The offsets of the parts of a type 1 RAES file. */
+    private static final class Layout {
+        final long start, table, klac, end;
+
+        Layout(long start, long table, long klac, long end) {
+            this.start = start;
+            this.table = table;
+            this.klac = klac;
+            this.end = end;
+        }
+    }
+
+    private static Layout layout(
+            final byte[] cipher,
+            final long length,
+            final int chunkSize) {
+        final long chunks = (length + chunkSize - 1) / chunkSize;
+        final long end = cipher.length;
+        final long klac = end - 2 * HALF_MAC_LEN;
+        final long table = klac - chunks * HALF_MAC_LEN;
+        return new Layout(table - length, table, klac, end);
+    }
+
+    private static byte[] data(final int length) {
+        final byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+    private static byte[] encrypt(final byte[] plain, final int chunkSize)
+    throws IOException {
+        final ByteArrayOutputStream cipher = new ByteArrayOutputStream();
+        try (RaesOutputStream out = RaesOutputStream.create(
+                new Type1Parameters(chunkSize),
+                new AbstractSink() {
+                    @Override
+                    public OutputStream stream() { return cipher; }
+                })) {
+            out.write(plain);
+        }
+        return cipher.toByteArray();
+    }
+
+    private static SeekableByteChannel channel(final byte[] cipher) {
+        return new ByteBufferChannel(ByteBuffer.wrap(cipher).asReadOnlyBuffer());
+    }
+
+    private static RaesReadOnlyChannel open(final byte[] cipher)
+    throws IOException {
+        return RaesReadOnlyChannel.create(
+                new Type1Parameters(0),
+                new AbstractSource() {
+                    @Override
+                    public SeekableByteChannel channel() {
+                        return RaesReadOnlyChannelIT.channel(cipher);
+                    }
+                });
+    }
+
+    private static byte[] read(
+            final SeekableByteChannel channel,
+            final long pos,
+            final int len)
+    throws IOException {
+        final ByteBuffer buf = ByteBuffer.allocate(len);
+        channel.position(pos);
+        while (buf.hasRemaining() && 0 <= channel.read(buf)) { }
+        assertFalse(buf.hasRemaining());
+        return buf.array();
+    }
+
+    private static boolean causes(
+            @CheckForNull Throwable ex,
+            final Class<? extends Throwable> type) {
+        for (; null != ex; ex = ex.getCause())
+            if (type.isInstance(ex)) return true;
+        return false;
+    }
+
+    private static final class Model extends FsAbstractModel {
+        Model(FsMountPoint mountPoint, @CheckForNull FsModel parent) {
+            super(mountPoint, parent);
+        }
+
+        @Override
+        public boolean isMounted() { return false; }
+
+        @Override
+        public void setMounted(boolean mounted) { }
+    }
+
+    /**
+     * Parameters for writing type 1 RAES files which fail the key retrieval
+     * instead of prompting again when the password is invalid.
+     */
+    private static final class Type1Parameters implements Type1RaesParameters {
+        final int chunkSize;
+
+        Type1Parameters(final int chunkSize) { this.chunkSize = chunkSize; }
+
+        @Override
+        public char[] getPasswordForWriting() {
+            return PASSWD.toCharArray();
+        }
+
+        @Override
+        public char[] getPasswordForReading(boolean invalid)
+        throws RaesKeyException {
+            if (invalid) throw new RaesKeyException("Invalid password!");
+            return PASSWD.toCharArray();
+        }
+
+        @Override
+        public AesKeyStrength getKeyStrength() {
+            return AesKeyStrength.BITS_128;
+        }
+
+        @Override
+        public void setKeyStrength(AesKeyStrength keyStrength) {
+            assertSame(AesKeyStrength.BITS_128, keyStrength);
+        }
+
+        @Override
+        public int getChunkSize() { return chunkSize; }
+    }
+
     @Override
     public void tearDown() {
         try {
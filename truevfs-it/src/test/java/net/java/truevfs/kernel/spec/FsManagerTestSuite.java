@@ -4,6 +4,8 @@
  */
 package net.java.truevfs.kernel.spec;
 
+import net.java.truecommons.shed.ConcurrencyUtils;
+import net.java.truecommons.shed.ConcurrencyUtils.TaskFactory;
 import net.java.truecommons.shed.Filter;
 import net.java.truecommons.shed.Visitor;
 import net.java.truevfs.kernel.spec.mock.MockDriverMapContainer;
@@ -15,8 +17,12 @@ import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import static net.java.truecommons.shed.ConcurrencyUtils.NUM_CPU_THREADS;
 import static net.java.truecommons.shed.Filter.ACCEPT_ANY;
 import static net.java.truecommons.shed.Filter.ACCEPT_NONE;
 import static org.hamcrest.CoreMatchers.*;
@@ -135,6 +141,42 @@ public abstract class FsManagerTestSuite {
         }
     }
 
+    @Test
+    public void testConcurrentLookup() throws Exception {
+        final String[] params = {
+                "zip:zip:zip:file:/öuter.zip!/inner.zip!/nüts.zip!/",
+                "zip:zip:file:/öuter.zip!/inner.zip!/",
+                "zip:file:/öuter.zip!/",
+                "zip:file:/föo.zip!/",
+                "tar:file:/bär.tar!/",
+                "file:/",
+        };
+        final ConcurrentMap<FsMountPoint, FsController> controllers = new ConcurrentHashMap<>();
+        ConcurrencyUtils.start(NUM_CPU_THREADS, new TaskFactory() {
+            @Override
+            public Callable<?> newTask(final int threadNum) {
+                return new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        for (int i = 0; i < params.length; i++) {
+                            final FsMountPoint mountPoint = FsMountPoint.create(URI.create(
+                                    params[(i + threadNum) % params.length]));
+                            final FsController controller = manager.controller(driver, mountPoint);
+                            final FsController previous = controllers.putIfAbsent(mountPoint, controller);
+                            if (null != previous) {
+                                assertThat(controller, sameInstance(previous));
+                            }
+                        }
+                        return null;
+                    }
+                };
+            }
+        }).join();
+        assertThat(count(ACCEPT_ANY), is(params.length));
+        controllers.clear(); // enable GC
+        waitForAllManagersToGetGarbageCollected();
+    }
+
     private void waitForAllManagersToGetGarbageCollected() {
         do {
             System.gc(); // triggering GC in a loop seems to help with concurrency!
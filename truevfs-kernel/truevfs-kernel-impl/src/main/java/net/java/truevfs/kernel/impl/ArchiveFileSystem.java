@@ -16,6 +16,7 @@ import net.java.truevfs.kernel.spec.FsArchiveEntry;
 import net.java.truevfs.kernel.spec.FsCovariantNode;
 import net.java.truevfs.kernel.spec.FsNodeName;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import javax.annotation.concurrent.NotThreadSafe;
 import java.io.CharConversionException;
@@ -31,7 +32,6 @@ import static net.java.truecommons.cio.Entry.Access.WRITE;
 import static net.java.truecommons.cio.Entry.Type.DIRECTORY;
 import static net.java.truecommons.cio.Entry.Type.FILE;
 import static net.java.truecommons.shed.HashMaps.OVERHEAD_SIZE;
-import static net.java.truecommons.shed.HashMaps.initialCapacity;
 import static net.java.truecommons.shed.Paths.*;
 import static net.java.truevfs.kernel.spec.FsAccessOption.CREATE_PARENTS;
 import static net.java.truevfs.kernel.spec.FsAccessOption.EXCLUSIVE;
@@ -54,6 +54,17 @@ class ArchiveFileSystem<E extends FsArchiveEntry>
     private final ArchiveModel<E> model;
     private final EntryTable<E> master;
 
+    /**
+     * The sorted paths of all archive entries if this file system has been mounted lazily, or {@code null} otherwise.
+     */
+    private @CheckForNull String[] paths;
+
+    /**
+     * The paths of all directories which have been populated with their members if this file system has been mounted
+     * lazily, or {@code null} otherwise.
+     */
+    private final @CheckForNull Set<String> populated;
+
     private final Splitter splitter = new Splitter();
 
     /**
@@ -68,7 +79,7 @@ class ArchiveFileSystem<E extends FsArchiveEntry>
     }
 
     private ArchiveFileSystem(final ArchiveModel<E> model) {
-        this(model, new EntryTable<>(OVERHEAD_SIZE));
+        this(model, new EntryTable<>(OVERHEAD_SIZE), false);
         val root = newEntry(RootPath, DIRECTORY, Optional.empty());
         val time = System.currentTimeMillis();
         ALL_ACCESS.forEach(access -> root.setTime(access, time));
@@ -89,6 +100,10 @@ class ArchiveFileSystem<E extends FsArchiveEntry>
      * existing directories are not replaced.
      * <p>
      * Note that the entries in the file system are shared with the given {@code archive}.
+     * <p>
+     * If {@code lazy} is {@code true}, then the file system check is deferred:
+     * The members of a directory and any missing parent directories get computed upon the first lookup of the
+     * respective directory.
      *
      * @param model        the archive model to use.
      * @param archive      the archive entry container to read the entries for
@@ -99,6 +114,7 @@ class ArchiveFileSystem<E extends FsArchiveEntry>
      *                     modifying operation on the file system will result in a
      *                     {@link net.java.truevfs.kernel.spec.FsReadOnlyFileSystemException} with the contained
      *                     {@link java.lang.Throwable} as its cause.
+     * @param lazy         whether to defer the file system check until a directory gets looked up.
      * @param <E>          the type of the archive entries.
      * @return A new archive file system.
      */
@@ -106,20 +122,32 @@ class ArchiveFileSystem<E extends FsArchiveEntry>
             ArchiveModel<E> model,
             Container<E> archive,
             Entry rootTemplate,
-            Optional<? extends Supplier<? extends Throwable>> readOnly
+            Optional<? extends Supplier<? extends Throwable>> readOnly,
+            boolean lazy
     ) {
         return readOnly
-                .<ArchiveFileSystem<E>>map(cause -> new ReadOnlyArchiveFileSystem<>(model, archive, rootTemplate, cause))
-                .orElseGet(() -> new ArchiveFileSystem<>(model, archive, rootTemplate));
+                .<ArchiveFileSystem<E>>map(cause ->
+                        new ReadOnlyArchiveFileSystem<>(model, archive, rootTemplate, cause, lazy))
+                .orElseGet(() -> new ArchiveFileSystem<>(model, archive, rootTemplate, lazy));
     }
 
-    ArchiveFileSystem(final ArchiveModel<E> model, final Container<E> archive, final Entry rootTemplate) {
+    ArchiveFileSystem(
+            final ArchiveModel<E> model,
+            final Container<E> archive,
+            final Entry rootTemplate,
+            final boolean lazy
+    ) {
         // Allocate some extra capacity for creating missing parent directories.
-        this(model, new EntryTable<>(archive.size() + OVERHEAD_SIZE));
+        this(model, new EntryTable<>(archive.size() + OVERHEAD_SIZE), lazy);
+        if (lazy) {
+            load(archive, rootTemplate);
+            return;
+        }
         // Load entries from source archive:
-        val paths = new LinkedList<String>();
+        String[] paths = new String[archive.size()];
+        int size = 0;
         val normalizer = new PathNormalizer(SEPARATOR_CHAR);
-        archive.forEach(ae -> {
+        for (val ae : archive) {
             val path = cutTrailingSeparators(
                     // Fix invalid Windoze file name separators:
                     normalizer.normalize(ae.getName().replace('\\', SEPARATOR_CHAR)),
@@ -127,14 +155,48 @@ class ArchiveFileSystem<E extends FsArchiveEntry>
             );
             master.add(path, ae);
             if (isValidEntryName(path)) {
-                paths.add(path);
+                if (size == paths.length) {
+                    paths = Arrays.copyOf(paths, 2 * size + 1);
+                }
+                paths[size++] = path;
             }
-        });
+        }
         // Setup root file system entry, potentially replacing its previous mapping from the source archive:
         master.add(RootPath, newEntry(RootPath, DIRECTORY, Optional.of(rootTemplate)));
         // Now perform a file system check to create missing parent directories and populate directories with their
         // members - this must be done separately!
-        paths.forEach(this::fix);
+        for (int i = 0; i < size; i++) {
+            fix(paths[i]);
+        }
+    }
+
+    /**
+     * Called from a constructor in order to load the entries from the given archive without checking the file system.
+     * Instead, the paths of all valid entry names get sorted so that the members of any directory can get looked up
+     * by a binary search.
+     */
+    private void load(final Container<E> archive, final Entry rootTemplate) {
+        String[] paths = new String[archive.size()];
+        int size = 0;
+        val normalizer = new PathNormalizer(SEPARATOR_CHAR);
+        for (val ae : archive) {
+            val path = cutTrailingSeparators(
+                    // Fix invalid Windoze file name separators:
+                    normalizer.normalize(ae.getName().replace('\\', SEPARATOR_CHAR)),
+                    SEPARATOR_CHAR
+            );
+            master.add(path, ae);
+            if (isValidEntryName(path)) {
+                if (size == paths.length) {
+                    paths = Arrays.copyOf(paths, 2 * size + 1);
+                }
+                paths[size++] = path;
+            }
+        }
+        Arrays.sort(paths, 0, size);
+        this.paths = size < paths.length ? Arrays.copyOf(paths, size) : paths;
+        // Setup root file system entry, potentially replacing its previous mapping from the source archive:
+        master.add(RootPath, newEntry(RootPath, DIRECTORY, Optional.of(rootTemplate)));
     }
 
     /**
@@ -144,6 +206,8 @@ class ArchiveFileSystem<E extends FsArchiveEntry>
      * If a parent directory does not exist, it is created using an unknown time as the last modification time - this is
      * defined to be a <em>ghost directory</em>.
      * If a parent directory does exist, the respective member entry is added.
+     * If the parent directory already contained the member entry, then its own parent directories have been fixed
+     * before, so this method stops there.
      *
      * @param name the entry name.
      */
@@ -156,14 +220,65 @@ class ArchiveFileSystem<E extends FsArchiveEntry>
                     .get(pp)
                     .filter(x -> x.isType(DIRECTORY))
                     .orElseGet(() -> master.add(pp, newEntry(pp, DIRECTORY, Optional.empty())));
-            pcn.add(mn);
+            if (!pcn.add(mn)) {
+                break;
+            }
             name = pp;
         }
     }
 
-    private ArchiveFileSystem(final ArchiveModel<E> model, final EntryTable<E> master) {
+    private ArchiveFileSystem(final ArchiveModel<E> model, final EntryTable<E> master, final boolean lazy) {
         this.model = model;
         this.master = master;
+        this.populated = lazy ? new HashSet<>() : null;
+    }
+
+    /**
+     * Looks up the covariant file system node for the given path.
+     * If this file system has been mounted lazily and the node is a directory which has not been populated yet, then
+     * its members get added first.
+     * If there is no directory node for the path, but there are archive entries with names below it, then a ghost
+     * directory gets created - unless the directory has been populated and removed before.
+     * <p>
+     * Populating a directory mutates this file system, so it requires the write lock:
+     * If the current thread holds only the read lock, then a {@link NeedsWriteLockException} gets thrown so that the
+     * {@link LockController} can repeat the operation while holding the write lock.
+     * Looking up any other node does not mutate this file system and so it's safe under the read lock.
+     *
+     * @param path the path of the covariant file system node.
+     * @return The covariant file system node or {@link Optional#empty()} if no file system node exists for the given
+     * path.
+     */
+    private Optional<FsCovariantNode<E>> lookup(final String path) {
+        val populated = this.populated;
+        if (null == populated || populated.contains(path)) {
+            return master.get(path);
+        }
+        val paths = this.paths;
+        assert null != paths;
+        val prefix = isRoot(path) ? RootPath : path + SEPARATOR_CHAR;
+        int i = Arrays.binarySearch(paths, prefix);
+        if (0 > i) {
+            i = -i - 1;
+        }
+        if (i >= paths.length || !paths[i].startsWith(prefix)) {
+            // Not a directory with members in the archive.
+            return master.get(path);
+        }
+        model.checkWriteLockedByCurrentThread();
+        val cn = master
+                .get(path)
+                .filter(x -> x.isType(DIRECTORY))
+                .orElseGet(() -> master.add(path, newEntry(path, DIRECTORY, Optional.empty())));
+        for (; i < paths.length && paths[i].startsWith(prefix); i++) {
+            val member = paths[i];
+            if (member.length() > prefix.length()) {
+                val end = member.indexOf(SEPARATOR_CHAR, prefix.length());
+                cn.add(0 > end ? member.substring(prefix.length()) : member.substring(prefix.length(), end));
+            }
+        }
+        populated.add(path);
+        return Optional.of(cn);
     }
 
     private static String typeName(final FsCovariantNode<?> entry) {
@@ -213,7 +328,7 @@ class ArchiveFileSystem<E extends FsArchiveEntry>
      * name.
      */
     Optional<FsCovariantNode<E>> node(final BitField<FsAccessOption> options, final FsNodeName name) {
-        return master.get(name.getPath()).map(e -> e.clone(getDriver()));
+        return lookup(name.getPath()).map(e -> e.clone(getDriver()));
     }
 
     void checkAccess(
@@ -221,7 +336,7 @@ class ArchiveFileSystem<E extends FsArchiveEntry>
             final FsNodeName name,
             final BitField<Entry.Access> types
     ) throws IOException {
-        if (!master.get(name.getPath()).isPresent()) {
+        if (!lookup(name.getPath()).isPresent()) {
             throw new NoSuchFileException(fullPath(name));
         }
     }
@@ -235,7 +350,7 @@ class ArchiveFileSystem<E extends FsArchiveEntry>
             final FsNodeName name,
             final Map<Entry.Access, Long> times
     ) throws IOException {
-        val cn = master.get(name.getPath()).orElseThrow(() -> new NoSuchFileException(fullPath(name)));
+        val cn = lookup(name.getPath()).orElseThrow(() -> new NoSuchFileException(fullPath(name)));
         // HC SVNT DRACONES!
         touch(options);
         val ae = cn.getEntry();
@@ -257,7 +372,7 @@ class ArchiveFileSystem<E extends FsArchiveEntry>
         if (0 > value) {
             throw new IllegalArgumentException(fullPath(name) + " (negative access time)");
         }
-        val cn = master.get(name.getPath()).orElseThrow(() -> new NoSuchFileException(fullPath(name)));
+        val cn = lookup(name.getPath()).orElseThrow(() -> new NoSuchFileException(fullPath(name)));
         // HC SVNT DRACONES!
         touch(options);
         val ae = cn.getEntry();
@@ -303,7 +418,7 @@ class ArchiveFileSystem<E extends FsArchiveEntry>
                     "Can only create file or directory entries, but not a " + typeName(type) + " entry!");
         }
         val np = name.getPath();
-        val ocn = master.get(np);
+        val ocn = lookup(np);
         if (ocn.isPresent()) {
             val cn = ocn.get();
             if (!cn.isType(FILE)) {
@@ -366,7 +481,7 @@ class ArchiveFileSystem<E extends FsArchiveEntry>
             val pp = splitter.getParentPath(); // may equal ROOT_PATH
             val mn = splitter.getMemberName();
             // Lookup parent entry, creating it if necessary and allowed:
-            val opcn = master.get(pp);
+            val opcn = lookup(pp);
             if (opcn.isPresent()) {
                 val pcn = opcn.get();
                 if (!pcn.isType(DIRECTORY)) {
@@ -450,7 +565,7 @@ class ArchiveFileSystem<E extends FsArchiveEntry>
     void unlink(final BitField<FsAccessOption> options, final FsNodeName name) throws IOException {
         // Test:
         val np = name.getPath();
-        val mcn = master.get(np).orElseThrow(() -> new NoSuchFileException(fullPath(name)));
+        val mcn = lookup(np).orElseThrow(() -> new NoSuchFileException(fullPath(name)));
         if (mcn.isType(DIRECTORY)) {
             if (0 != mcn.getMembers().size()) {
                 throw new DirectoryNotEmptyException(fullPath(name));
@@ -460,6 +575,12 @@ class ArchiveFileSystem<E extends FsArchiveEntry>
             // Removing the root entry MUST get silently ignored in order to make the controller logic work.
             return;
         }
+        // Lookup the parent directory before removing the entry so that a lazily mounted file system cannot populate
+        // it with the entry again:
+        splitter.split(np);
+        val pp = splitter.getParentPath();
+        val mn = splitter.getMemberName();
+        val pcn = lookup(pp).get();
 
         // Notify listener and modify:
         touch(options);
@@ -478,10 +599,7 @@ class ArchiveFileSystem<E extends FsArchiveEntry>
                 mae.setTime(type, UNKNOWN);
             }
         }
-        splitter.split(np);
-        val pp = splitter.getParentPath();
-        val pcn = master.get(pp).get();
-        val ok = pcn.remove(splitter.getMemberName());
+        val ok = pcn.remove(mn);
         assert ok : "The parent directory of \"" + fullPath(name) + "\" does not contain this entry - archive file system is corrupted!";
         val pae = pcn.get(DIRECTORY);
         if (UNKNOWN != pae.getTime(WRITE)) { // never touch ghost directories!
@@ -537,45 +655,234 @@ class ArchiveFileSystem<E extends FsArchiveEntry>
 
     /**
      * The master archive entry table.
+     * <p>
+     * The covariant file system nodes get stored in an array in the order of insertion, where a removed node leaves a
+     * {@code null} gap until the array gets compacted.
+     * A hash table of indexes into this array with open addressing and linear probing is used to look up a node by its
+     * name.
+     * Unlike a {@link LinkedHashMap}, this table does not allocate an object per node, which saves a lot of heap when
+     * mounting archive files with many entries.
      *
      * @param <E> The type of the archive entries.
      */
     private static final class EntryTable<E extends FsArchiveEntry> extends AbstractCollection<FsCovariantNode<E>> {
 
         /**
-         * The map of covariant file system entries.
+         * The covariant file system nodes in the order of insertion, with {@code null} gaps.
          * <p>
-         * Note that the archive entries in the covariant file system entries in this map are shared with the
+         * Note that the archive entries in the covariant file system nodes in this array are shared with the
          * constructor parameter {@code archive} of the archive file system object.
          */
-        private final Map<String, FsCovariantNode<E>> map;
+        private FsCovariantNode<E>[] nodes;
+
+        /**
+         * The hash table of indexes into {@link #nodes}, plus one.
+         * Zero marks an empty slot.
+         * The length is a power of two and at least twice the length of {@link #nodes}.
+         */
+        private int[] table;
+
+        /**
+         * The number of used elements in {@link #nodes}, including gaps.
+         */
+        private int end;
+
+        /**
+         * The number of nodes.
+         */
+        private int size;
 
+        private int modCount;
+
+        @SuppressWarnings("unchecked")
         EntryTable(final int initialSize) {
-            this.map = new LinkedHashMap<>(initialCapacity(initialSize));
+            val capacity = Math.max(initialSize, 1);
+            this.nodes = (FsCovariantNode<E>[]) new FsCovariantNode<?>[capacity];
+            this.table = new int[tableLength(capacity)];
+        }
+
+        private static int tableLength(int capacity) {
+            return Integer.highestOneBit(2 * capacity - 1) << 1;
+        }
+
+        private static int hash(String name) {
+            val h = name.hashCode();
+            return h ^ (h >>> 16);
         }
 
         @Override
         public Iterator<FsCovariantNode<E>> iterator() {
-            return map.values().iterator();
+            return new Iterator<FsCovariantNode<E>>() {
+
+                int next = advance(0), last = -1, expectedModCount = modCount;
+
+                int advance(int i) {
+                    while (i < end && null == nodes[i]) {
+                        i++;
+                    }
+                    return i;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return next < end;
+                }
+
+                @Override
+                public FsCovariantNode<E> next() {
+                    if (modCount != expectedModCount) {
+                        throw new ConcurrentModificationException();
+                    }
+                    if (next >= end) {
+                        throw new NoSuchElementException();
+                    }
+                    val cn = nodes[last = next];
+                    next = advance(next + 1);
+                    return cn;
+                }
+
+                @Override
+                public void remove() {
+                    if (0 > last) {
+                        throw new IllegalStateException();
+                    }
+                    if (modCount != expectedModCount) {
+                        throw new ConcurrentModificationException();
+                    }
+                    EntryTable.this.remove(nodes[last].getName());
+                    last = -1;
+                    expectedModCount = modCount;
+                }
+            };
         }
 
         @Override
         public int size() {
-            return map.size();
+            return size;
         }
 
-        FsCovariantNode<E> add(String name, E ae) {
-            val cn = map.computeIfAbsent(name, FsCovariantNode::new);
+        FsCovariantNode<E> add(final String name, final E ae) {
+            val slot = slot(name);
+            final FsCovariantNode<E> cn;
+            if (0 <= slot) {
+                cn = nodes[table[slot] - 1];
+            } else {
+                if (end == nodes.length) {
+                    if (size <= end / 2) {
+                        compact();
+                    } else {
+                        resize(2 * nodes.length);
+                    }
+                }
+                cn = nodes[end] = new FsCovariantNode<>(name);
+                insert(name, ++end);
+                size++;
+                modCount++;
+            }
             cn.put(ae.getType(), ae);
             return cn;
         }
 
         Optional<FsCovariantNode<E>> get(String name) {
-            return Optional.ofNullable(map.get(name));
+            val slot = slot(name);
+            return 0 > slot ? Optional.empty() : Optional.of(nodes[table[slot] - 1]);
+        }
+
+        Optional<FsCovariantNode<E>> remove(final String name) {
+            val slot = slot(name);
+            if (0 > slot) {
+                return Optional.empty();
+            }
+            val index = table[slot] - 1;
+            val cn = nodes[index];
+            nodes[index] = null;
+            delete(slot);
+            size--;
+            modCount++;
+            return Optional.of(cn);
         }
 
-        Optional<FsCovariantNode<E>> remove(String name) {
-            return Optional.ofNullable(map.remove(name));
+        /**
+         * Returns the index of the slot in the hash table which refers to the node with the given name or {@code -1}
+         * if there is no such slot.
+         */
+        private int slot(final String name) {
+            val table = this.table;
+            val mask = table.length - 1;
+            for (int i = hash(name) & mask; ; i = (i + 1) & mask) {
+                val index = table[i];
+                if (0 == index) {
+                    return -1;
+                }
+                if (name.equals(nodes[index - 1].getName())) {
+                    return i;
+                }
+            }
+        }
+
+        private void insert(final String name, final int index) {
+            val table = this.table;
+            val mask = table.length - 1;
+            int i = hash(name) & mask;
+            while (0 != table[i]) {
+                i = (i + 1) & mask;
+            }
+            table[i] = index;
+        }
+
+        /**
+         * Empties the given slot in the hash table and shifts any subsequent slots of the same cluster back so that
+         * linear probing still finds them.
+         */
+        private void delete(int slot) {
+            val table = this.table;
+            val mask = table.length - 1;
+            for (int i = (slot + 1) & mask; 0 != table[i]; i = (i + 1) & mask) {
+                val home = hash(nodes[table[i] - 1].getName()) & mask;
+                // Move the index in slot i back unless its home slot lies cyclically in the range (slot, i]:
+                if (slot <= i ? slot < home && home <= i : slot < home || home <= i) {
+                    continue;
+                }
+                table[slot] = table[i];
+                slot = i;
+            }
+            table[slot] = 0;
+        }
+
+        /**
+         * Removes the gaps from the array of nodes.
+         */
+        private void compact() {
+            int j = 0;
+            for (int i = 0; i < end; i++) {
+                val cn = nodes[i];
+                if (null != cn) {
+                    nodes[j++] = cn;
+                }
+            }
+            Arrays.fill(nodes, j, end, null);
+            end = j;
+            rehash(table.length);
+        }
+
+        private void resize(final int capacity) {
+            nodes = Arrays.copyOf(nodes, capacity);
+            rehash(tableLength(capacity));
+        }
+
+        private void rehash(final int length) {
+            val table = this.table = new int[length];
+            val mask = length - 1;
+            for (int i = 0; i < end; i++) {
+                val cn = nodes[i];
+                if (null != cn) {
+                    int j = hash(cn.getName()) & mask;
+                    while (0 != table[j]) {
+                        j = (j + 1) & mask;
+                    }
+                    table[j] = i + 1;
+                }
+            }
         }
     }
 
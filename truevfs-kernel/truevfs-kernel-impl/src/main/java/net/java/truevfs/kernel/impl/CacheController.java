@@ -62,16 +62,14 @@ abstract class CacheController<E extends FsArchiveEntry> implements DelegatingAr
 
             @Override
             public InputSocket<? extends Entry> socket() {
-                assert writeLockedByCurrentThread();
-
-                EntryCache cache = caches.get(name);
-                if (null == cache) {
-                    if (!options.get(CACHE)) {
-                        return getController().input(options, name);
-                    }
-                    cache = new EntryCache(name);
+                final EntryCache cache = caches.get(name);
+                if (null == cache && !options.get(CACHE)) {
+                    // Bypassing the cache is safe under the read lock.
+                    return getController().input(options, name);
                 }
-                return cache.input(options);
+                // Reading through the cache mutates its state.
+                checkWriteLockedByCurrentThread();
+                return (null != cache ? cache : new EntryCache(name)).input(options);
             }
         };
     }
@@ -19,7 +19,7 @@ import java.io.IOException;
 class CheckedCloseable implements Closeable {
 
     private final Closeable closeable;
-    private boolean closed;
+    private volatile boolean closed;
 
     CheckedCloseable(final Closeable closeable) {
         this.closeable = closeable;
@@ -5,48 +5,72 @@
 package net.java.truevfs.kernel.impl;
 
 import lombok.val;
+import net.java.truecommons.logging.LocalizedLogger;
 import net.java.truecommons.shed.Filter;
 import net.java.truecommons.shed.Link;
 import net.java.truecommons.shed.Visitor;
 import net.java.truevfs.kernel.spec.*;
+import org.slf4j.Logger;
 
 import javax.annotation.concurrent.ThreadSafe;
-import java.util.*;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.stream.Collectors;
 
 import static net.java.truecommons.shed.Link.Type.STRONG;
-import static net.java.truecommons.shed.Link.Type.WEAK;
 
 /**
  * The default implementation of a file system manager.
+ * <p>
+ * Looking up the controller for an already mounted file system does not acquire any lock.
+ * Creating a new controller chain only synchronizes on a lock stripe selected by the mount point of the new controller,
+ * so that threads which create controller chains for unrelated mount points do not block each other.
  *
  * @author Christian Schlichtherle
  */
 @ThreadSafe
-final class DefaultManager extends FsAbstractManager implements ReentrantReadWriteLockAspect {
+final class DefaultManager extends FsAbstractManager {
 
-    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private static final Logger logger = new LocalizedLogger(DefaultManager.class);
+
+    /**
+     * The number of lock stripes for creating new controller chains.
+     * Must be a power of two.
+     */
+    private static final int STRIPES = 64;
 
     /**
      * The map of all schedulers for composite file system controllers, keyed by the mount point of their respective
      * file system model.
      */
-    private final Map<FsMountPoint, Link<FsController>> controllers = new WeakHashMap<>();
+    private final ConcurrentMap<FsMountPoint, Link<FsController>> controllers = new ConcurrentHashMap<>();
+
+    /**
+     * The queue of weak links which have been cleared by the garbage collector.
+     */
+    private final ReferenceQueue<FsController> cleared = new ReferenceQueue<>();
+
+    private final Object[] stripes = new Object[STRIPES];
+
+    {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Object();
+        }
+    }
 
     private final ShutdownFuse syncOnShutdown = new ShutdownFuse(() -> {
         try {
             new FsSync().manager(this).options(FsSyncOptions.UMOUNT).run();
         } catch (FsSyncException e) {
-            e.printStackTrace();
+            logger.error("syncFailed", e);
         }
     });
 
-    @Override
-    public ReentrantReadWriteLock getLock() {
-        return lock;
-    }
-
     @Override
     public FsModel newModel(FsDriver driver, FsMountPoint mountPoint, FsModel parent) {
         return driver.decorate(new DefaultModel(mountPoint, parent));
@@ -59,37 +83,19 @@ final class DefaultManager extends FsAbstractManager implements ReentrantReadWri
 
     @Override
     public FsController controller(final FsCompositeDriver driver, final FsMountPoint mountPoint) {
-        try {
-            return readLocked(new Op<FsController, RuntimeException>() {
-
-                @Override
-                public FsController call() throws RuntimeException {
-                    return controller0(driver, mountPoint);
-                }
-            });
-        } catch (NeedsWriteLockException ex) {
-            if (readLockedByCurrentThread()) {
-                throw ex;
-            }
-            return writeLocked(new Op<FsController, RuntimeException>() {
-
-                @Override
-                public FsController call() throws RuntimeException {
-                    return controller0(driver, mountPoint);
-                }
-            });
-        }
-    }
-
-    private FsController controller0(final FsCompositeDriver driver, final FsMountPoint mountPoint) {
-        val oc = Optional
-                .ofNullable(controllers.get(mountPoint))
-                .flatMap(l -> Optional.ofNullable(l.get()));
+        val oc = lookup(mountPoint);
         if (oc.isPresent()) {
             return oc.get();
-        } else {
-            checkWriteLockedByCurrentThread();
-            val opc = Optional.ofNullable(mountPoint.getParent()).map(y -> controller0(driver, y));
+        }
+        // Resolve the parent controller chain before synchronizing on the stripe for the given mount point, so that
+        // this thread never holds more than one stripe at a time.
+        val opc = Optional.ofNullable(mountPoint.getParent()).map(y -> controller(driver, y));
+        synchronized (stripe(mountPoint)) {
+            val oc2 = lookup(mountPoint);
+            if (oc2.isPresent()) {
+                return oc2.get();
+            }
+            expungeClearedLinks();
             val opm = opc.map(FsController::getModel);
             val m = new ManagedModel(driver.newModel(this, mountPoint, opm.orElse(null)));
             val c = driver.newController(this, m, opc.orElse(null));
@@ -98,6 +104,29 @@ final class DefaultManager extends FsAbstractManager implements ReentrantReadWri
         }
     }
 
+    private Optional<FsController> lookup(FsMountPoint mountPoint) {
+        return Optional
+                .ofNullable(controllers.get(mountPoint))
+                .flatMap(l -> Optional.ofNullable(l.get()));
+    }
+
+    private Object stripe(final FsMountPoint mountPoint) {
+        int h = mountPoint.hashCode();
+        h ^= h >>> 16;
+        return stripes[h & (STRIPES - 1)];
+    }
+
+    /**
+     * Removes all entries from the map of controllers whose weak link has been cleared by the garbage collector.
+     * An entry gets only removed if it still maps to the cleared link, so that a concurrently rescheduled controller
+     * does not get lost.
+     */
+    private void expungeClearedLinks() {
+        for (WeakLink link; null != (link = (WeakLink) cleared.poll()); ) {
+            controllers.remove(link.mountPoint, link);
+        }
+    }
+
     @Override
     public <X extends Exception, V extends Visitor<? super FsController, X>> V accept(final Filter<? super FsController> filter, final V visitor) throws X {
         return new Op<V, X>() {
@@ -107,24 +136,20 @@ final class DefaultManager extends FsAbstractManager implements ReentrantReadWri
             @Override
             public V call() throws X {
                 try {
-                    for (val controller : readLocked(new Op<List<FsController>, RuntimeException>() {
-
-                        @Override
-                        public List<FsController> call() throws RuntimeException {
-                            return controllers
-                                    .values()
-                                    .stream()
-                                    .map(Link::get)
-                                    .filter(Objects::nonNull)
-                                    .filter(c -> {
-                                        val accepted = filter.accept(c);
-                                        allUnmounted &= accepted;
-                                        return accepted;
-                                    })
-                                    .sorted(new FsControllerComparator())
-                                    .collect(Collectors.toList());
-                        }
-                    })) {
+                    expungeClearedLinks();
+                    final List<FsController> snapshot = controllers
+                            .values()
+                            .stream()
+                            .map(Link::get)
+                            .filter(Objects::nonNull)
+                            .filter(c -> {
+                                val accepted = filter.accept(c);
+                                allUnmounted &= accepted;
+                                return accepted;
+                            })
+                            .sorted(new FsControllerComparator())
+                            .collect(Collectors.toList());
+                    for (val controller : snapshot) {
                         try {
                             visitor.visit(controller);
                         } finally {
@@ -141,6 +166,20 @@ final class DefaultManager extends FsAbstractManager implements ReentrantReadWri
         }.call();
     }
 
+    /**
+     * A weak link to a file system controller which remembers its mount point so that the respective entry in the map
+     * of controllers can get removed once the controller has been garbage collected.
+     */
+    private static final class WeakLink extends WeakReference<FsController> implements Link<FsController> {
+
+        final FsMountPoint mountPoint;
+
+        WeakLink(FsMountPoint mountPoint, FsController controller, ReferenceQueue<? super FsController> queue) {
+            super(controller, queue);
+            this.mountPoint = mountPoint;
+        }
+    }
+
     /**
      * A model which schedules its controller for synchronization by observing its property {@code mounted} - see method
      * {@code sync(BitField)}.
@@ -164,26 +203,21 @@ final class DefaultManager extends FsAbstractManager implements ReentrantReadWri
          * Schedules the file system controller for synchronization according to the given mount status.
          */
         @Override
-        public void setMounted(boolean mounted) {
-            writeLocked(new Op<Void, RuntimeException>() {
-
-                @Override
-                public Void call() throws RuntimeException {
-                    if (model.isMounted() != mounted) {
-                        if (mounted) {
-                            syncOnShutdown.arm();
-                        }
-                        ManagedModel.this.schedule(mounted);
-                        model.setMounted(mounted);
-                    }
-                    return null;
+        public synchronized void setMounted(final boolean mounted) {
+            if (model.isMounted() != mounted) {
+                if (mounted) {
+                    syncOnShutdown.arm();
                 }
-            });
+                schedule(mounted);
+                model.setMounted(mounted);
+            }
         }
 
         void schedule(final boolean mandatory) {
-            assert writeLockedByCurrentThread();
-            controllers.put(getMountPoint(), (mandatory ? STRONG : WEAK).newLink(_controller));
+            val mountPoint = getMountPoint();
+            controllers.put(mountPoint, mandatory
+                    ? STRONG.newLink(_controller)
+                    : new WeakLink(mountPoint, _controller, cleared));
         }
     }
 }
@@ -33,8 +33,8 @@ import static net.java.truevfs.kernel.impl.LockingStrategy.*;
  * If a lock can't get immediately acquired, then a {@code NeedsLockRetryException} gets thrown.
  * This will unwind the stack of federated file systems until the {@code LockController} for the first visited file
  * system is found.
- * This controller will then pause the current thread for a small random amount of milliseconds before retrying the
- * operation.
+ * This controller will then release all locks and wait until the lock which could not get acquired gets released by
+ * its owner before retrying the operation, see {@link LockingStrategy#using(java.util.concurrent.locks.Lock)}.
  *
  * @author Christian Schlichtherle
  * @see LockingStrategy
@@ -99,6 +99,15 @@ abstract class LockController<E extends FsArchiveEntry> implements DelegatingArc
         });
     }
 
+    /**
+     * The returned socket first tries to open the entry under the read lock so that any number of threads can
+     * concurrently open entries of the same archive file.
+     * Only if the decorated controller chain needs to mutate its state, e.g. in order to mount or sync the archive file
+     * system or to cache the entry, it throws a {@link NeedsWriteLockException} and the operation gets repeated under
+     * the write lock.
+     * If a peer socket is provided however, then the write lock is acquired right away because the peer may refer to
+     * the same archive file and acquiring its write lock while holding the read lock would fail.
+     */
     @Override
     public InputSocket<? extends Entry> input(BitField<FsAccessOption> options, FsNodeName name) {
         return new AbstractInputSocket<Entry>() {
@@ -107,7 +116,7 @@ abstract class LockController<E extends FsArchiveEntry> implements DelegatingArc
 
             @Override
             public Entry target() throws IOException {
-                return fastLocked.using(writeLock()).call(new Op<Entry, IOException>() {
+                return readOrWriteLocked(fastLocked, new Op<Entry, IOException>() {
                     @Override
                     public Entry call() throws IOException {
                         return socket.target();
@@ -117,24 +126,26 @@ abstract class LockController<E extends FsArchiveEntry> implements DelegatingArc
 
             @Override
             public InputStream stream(OutputSocket<? extends Entry> peer) throws IOException {
-                return timedLocked.using(writeLock()).call(new Op<InputStream, IOException>() {
+                final Op<InputStream, IOException> op = new Op<InputStream, IOException>() {
 
                     @Override
                     public InputStream call() throws IOException {
                         return new LockInputStream(socket.stream(peer));
                     }
-                });
+                };
+                return null == peer ? timedReadOrWriteLocked(op) : timedLocked.using(writeLock()).call(op);
             }
 
             @Override
             public SeekableByteChannel channel(OutputSocket<? extends Entry> peer) throws IOException {
-                return timedLocked.using(writeLock()).call(new Op<SeekableByteChannel, IOException>() {
+                final Op<SeekableByteChannel, IOException> op = new Op<SeekableByteChannel, IOException>() {
 
                     @Override
                     public SeekableByteChannel call() throws IOException {
                         return new LockSeekableChannel(socket.channel(peer));
                     }
-                });
+                };
+                return null == peer ? timedReadOrWriteLocked(op) : timedLocked.using(writeLock()).call(op);
             }
         };
     }
@@ -215,14 +226,24 @@ abstract class LockController<E extends FsArchiveEntry> implements DelegatingArc
         });
     }
 
-    private <T> T timedReadOrWriteLocked(final Op<T, IOException> op) throws IOException {
+    private <T> T timedReadOrWriteLocked(Op<T, IOException> op) throws IOException {
+        return readOrWriteLocked(timedLocked, op);
+    }
+
+    /**
+     * Runs the given operation while holding the read lock.
+     * If the operation fails with a {@link NeedsWriteLockException}, then it gets repeated while holding the write lock
+     * unless the current thread is still holding the read lock, in which case the exception gets passed on so that the
+     * caller can release it.
+     */
+    private <T> T readOrWriteLocked(final LockingStrategy strategy, final Op<T, IOException> op) throws IOException {
         try {
-            return timedLocked.using(readLock()).call(op);
+            return strategy.using(readLock()).call(op);
         } catch (NeedsWriteLockException e) {
             if (readLockedByCurrentThread()) {
                 throw e;
             }
-            return timedLocked.using(writeLock()).call(op);
+            return strategy.using(writeLock()).call(op);
         }
     }
 
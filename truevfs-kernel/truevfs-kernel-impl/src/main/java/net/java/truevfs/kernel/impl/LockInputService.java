@@ -6,6 +6,8 @@ package net.java.truevfs.kernel.impl;
 
 import edu.umd.cs.findbugs.annotations.DischargesObligation;
 import net.java.truecommons.cio.*;
+import net.java.truecommons.io.DecoratingInputStream;
+import net.java.truecommons.io.DecoratingSeekableChannel;
 import net.java.truecommons.io.LockInputStream;
 import net.java.truecommons.io.LockSeekableChannel;
 
@@ -21,6 +23,9 @@ import java.util.concurrent.locks.ReentrantLock;
 /**
  * Decorates another input service to allow concurrent access which is synchronized by a
  * {@link java.util.concurrent.locks.Lock}.
+ * <p>
+ * If the decorated input service supports reading its entries concurrently, then the streams and channels
+ * returned by its input sockets get opened and closed while holding the lock, but read without it.
  *
  * @param <E> the type of the entries in the decorated input service.
  * @author Christian Schlichtherle
@@ -31,8 +36,20 @@ class LockInputService<E extends Entry> extends DecoratingInputService<E> implem
 
     private final Lock lock = new ReentrantLock();
 
+    private final boolean concurrent;
+
     LockInputService(@WillCloseWhenClosed InputService<E> input) {
+        this(input, false);
+    }
+
+    /**
+     * @param input the input service to decorate.
+     * @param concurrent whether or not the decorated input service supports reading its entries concurrently.
+     * @see net.java.truevfs.kernel.spec.cio.ConcurrentInputService
+     */
+    LockInputService(@WillCloseWhenClosed InputService<E> input, boolean concurrent) {
         super(input);
+        this.concurrent = concurrent;
     }
 
     @Override
@@ -99,25 +116,67 @@ class LockInputService<E extends Entry> extends DecoratingInputService<E> implem
 
             @Override
             public InputStream stream(OutputSocket<? extends Entry> peer) throws IOException {
-                return new LockInputStream(lock, locked(new Op<InputStream, IOException>() {
+                final InputStream in = locked(new Op<InputStream, IOException>() {
 
                     @Override
                     public InputStream call() throws IOException {
                         return socket.stream(peer);
                     }
-                }));
+                });
+                return concurrent ? new LockCloseInputStream(in) : new LockInputStream(lock, in);
             }
 
             @Override
             public SeekableByteChannel channel(OutputSocket<? extends Entry> peer) throws IOException {
-                return new LockSeekableChannel(lock, locked(new Op<SeekableByteChannel, IOException>() {
+                final SeekableByteChannel channel = locked(new Op<SeekableByteChannel, IOException>() {
 
                     @Override
                     public SeekableByteChannel call() throws IOException {
                         return socket.channel(peer);
                     }
-                }));
+                });
+                return concurrent ? new LockCloseSeekableChannel(channel) : new LockSeekableChannel(lock, channel);
             }
         };
     }
+
+    private final class LockCloseInputStream extends DecoratingInputStream {
+
+        LockCloseInputStream(@WillCloseWhenClosed InputStream in) {
+            super(in);
+        }
+
+        @DischargesObligation
+        @Override
+        public void close() throws IOException {
+            locked(new Op<Object, IOException>() {
+
+                @Override
+                public Object call() throws IOException {
+                    in.close();
+                    return null;
+                }
+            });
+        }
+    }
+
+    private final class LockCloseSeekableChannel extends DecoratingSeekableChannel {
+
+        LockCloseSeekableChannel(@WillCloseWhenClosed SeekableByteChannel channel) {
+            super(channel);
+        }
+
+        @DischargesObligation
+        @Override
+        public void close() throws IOException {
+            locked(new Op<Object, IOException>() {
+
+                @Override
+                public Object call() throws IOException {
+                    channel.close();
+                    return null;
+                }
+            });
+        }
+    }
 }
@@ -0,0 +1,38 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.kernel.impl;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Provides read-only access to the statistics of the locking strategy which the archive controllers use in order to
+ * prevent dead locks between the locks of nested archive files.
+ * The statistics are global to the class loader which loaded this class and they never get reset, so in order to
+ * measure a particular workload, take the difference of the values before and after it.
+ *
+ * @author Christian Schlichtherle
+ * @since TrueVFS 0.15.0
+ */
+@ThreadSafe
+public final class LockingStatistics {
+
+    private LockingStatistics() {
+    }
+
+    /**
+     * Returns the total number of times any operation has been retried because all locks had to get released.
+     */
+    public static long getRetries() {
+        return LockingStrategy.retries();
+    }
+
+    /**
+     * Returns the total time in nanoseconds which operations spent between their first failed attempt and their
+     * completion.
+     */
+    public static long getRetryNanos() {
+        return LockingStrategy.retryNanos();
+    }
+}
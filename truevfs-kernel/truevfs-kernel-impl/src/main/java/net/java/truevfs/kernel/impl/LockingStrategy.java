@@ -6,11 +6,12 @@ package net.java.truevfs.kernel.impl;
 
 import lombok.val;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.concurrent.ThreadSafe;
-import java.util.Random;
-import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Implements a locking strategy with enumerable options to control dead lock prevention.
@@ -29,10 +30,8 @@ enum LockingStrategy {
      */
     fastLocked {
         @Override
-        void acquire(final Lock lock) {
-            if (!lock.tryLock()) {
-                throw NeedsLockRetryException.apply();
-            }
+        boolean tryAcquire(final Lock lock) {
+            return lock.tryLock();
         }
     },
 
@@ -41,14 +40,12 @@ enum LockingStrategy {
      */
     timedLocked {
         @Override
-        void acquire(final Lock lock) {
+        boolean tryAcquire(final Lock lock) {
             try {
-                if (!(lock.tryLock(acquireTimeoutMillis, TimeUnit.MILLISECONDS))) {
-                    throw NeedsLockRetryException.apply();
-                }
+                return lock.tryLock(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
             } catch (final InterruptedException e) {
                 Thread.currentThread().interrupt(); // restore
-                throw NeedsLockRetryException.apply();
+                return false;
             }
         }
     },
@@ -58,31 +55,47 @@ enum LockingStrategy {
      */
     deadLocked {
         @Override
-        void acquire(Lock lock) {
+        boolean tryAcquire(Lock lock) {
             lock.lock();
+            return true;
         }
     };
 
-    private static final int arbitrateMaxMillis = 100;
-    static final int acquireTimeoutMillis = arbitrateMaxMillis;
-    private static final ThreadLocal<Account> accounts =
-            ThreadLocal.withInitial(() -> new Account(ThreadLocalRandom.current()));
+    static final int acquireTimeoutMillis = 100;
+    private static final ThreadLocal<Account> accounts = ThreadLocal.withInitial(Account::new);
 
-    private static class Account {
+    /**
+     * The fair lock which queues the threads which need to retry their operation.
+     * The head of the queue holds this lock until it has acquired the first lock for its next attempt, so that the
+     * retrying threads take turns instead of live locking each other.
+     * It does not hold this lock while calling its operation however, so that retrying operations on different file
+     * systems still run concurrently.
+     * The other threads wait for this lock only for a bounded time, because the head may be waiting for them to
+     * release the first lock.
+     */
+    private static final Lock retryLock = new ReentrantLock(true);
 
-        private final Random rnd;
+    private static final LongAdder retries = new LongAdder();
+    private static final LongAdder retryNanos = new LongAdder();
 
-        private int lockCount;
+    private static class Account {
 
-        Account(final Random rnd) {
-            this.rnd = rnd;
-        }
+        private int lockCount;
 
-        void arbitrate() {
-            try {
-                Thread.sleep(1 + rnd.nextInt(arbitrateMaxMillis));
-            } catch (InterruptedException ignored) {
-                Thread.currentThread().interrupt(); // restore
+        private @CheckForNull Lock contended;
+
+        /**
+         * Waits until the lock which could not get acquired in the last attempt gets released by its current owner or
+         * the acquire timeout expires.
+         * This must only get called when the current thread does not hold any locks.
+         */
+        void awaitContended() {
+            val lock = contended;
+            if (null != lock) {
+                contended = null;
+                if (timedLocked.tryAcquire(lock)) {
+                    lock.unlock();
+                }
             }
         }
     }
@@ -91,7 +104,22 @@ enum LockingStrategy {
         return accounts.get().lockCount;
     }
 
-    abstract void acquire(Lock lock);
+    /**
+     * Returns the total number of times any operation has been retried because all locks had to get released.
+     */
+    static long retries() {
+        return retries.sum();
+    }
+
+    /**
+     * Returns the total time in nanoseconds which operations spent between their first failed attempt and their
+     * completion.
+     */
+    static long retryNanos() {
+        return retryNanos.sum();
+    }
+
+    abstract boolean tryAcquire(Lock lock);
 
     /**
      * Returns a function which holds the given lock while calling the given operation.
@@ -100,17 +128,23 @@ enum LockingStrategy {
      * acquired using {@link Lock#lock()}.
      * Once the lock has been acquired the operation gets called.
      * If the operation fails with a {@link NeedsLockRetryException}, then the lock gets temporarily released and the
-     * current thread gets paused for a small random amount of milliseconds before this algorithm starts over again.
+     * current thread gets queued for a retry:
+     * It waits until it's the head of the queue and until the lock which it failed to acquire gets released by its
+     * owner.
+     * Then it acquires the given lock again before leaving the queue and calling the operation again, so that other
+     * threads which need to retry cannot live lock it.
+     * Each of these waits is bounded by the acquire timeout, so there are no random sleeps involved.
      * <p>
      * If this is <em>not</em> the first execution of this method on the call stack of the current thread however, then
      * the lock gets acquired according to the strategy defined by this object.
-     * If acquiring the lock fails, then a {@link NeedsLockRetryException} gets thrown.
+     * If acquiring the lock fails, then it gets recorded as the contended lock and a {@link NeedsLockRetryException}
+     * gets thrown.
      * Once the lock has been acquired the operation gets called just as if this was the first execution of this method
      * on the call stack of the current thread.
      * <p>
      * If this method is called recursively on the {@link #fastLocked} or {@link #timedLocked} strategy, then dead locks
-     * get effectively prevented by temporarily unwinding the stack and releasing all locks for a small random amount of
-     * milliseconds.
+     * get effectively prevented by temporarily unwinding the stack and releasing all locks until the contended lock
+     * gets released.
      * However, this requires some cooperation by the caller <strong>and</strong> the given operation: Both
      * <strong>must</strong> terminate their execution in a consistent state, because a {@link NeedsLockRetryException}
      * may occur anytime!
@@ -124,7 +158,10 @@ enum LockingStrategy {
             public <T, X extends Exception> T call(final Op<T, X> op) throws X {
                 val account = accounts.get();
                 if (0 < account.lockCount) {
-                    acquire(lock);
+                    if (!tryAcquire(lock)) {
+                        account.contended = lock;
+                        throw NeedsLockRetryException.apply();
+                    }
                     account.lockCount += 1;
                     try {
                         return op.call();
@@ -133,10 +170,16 @@ enum LockingStrategy {
                         lock.unlock();
                     }
                 } else {
+                    long start = 0;
+                    boolean retried = false;
+                    boolean locked = false;
                     try {
                         while (true) {
                             try {
-                                lock.lock();
+                                if (!locked) {
+                                    lock.lock();
+                                }
+                                locked = false;
                                 account.lockCount += 1;
                                 try {
                                     return op.call();
@@ -145,10 +188,28 @@ enum LockingStrategy {
                                     lock.unlock();
                                 }
                             } catch (NeedsLockRetryException e) {
-                                account.arbitrate();
+                                retries.increment();
+                                if (!retried) {
+                                    start = System.nanoTime();
+                                    retried = true;
+                                }
+                                if (timedLocked.tryAcquire(retryLock)) {
+                                    try {
+                                        account.awaitContended();
+                                        lock.lock();
+                                        locked = true;
+                                    } finally {
+                                        retryLock.unlock();
+                                    }
+                                } else {
+                                    account.awaitContended();
+                                }
                             }
                         }
                     } finally {
+                        if (retried) {
+                            retryNanos.add(System.nanoTime() - start);
+                        }
                         accounts.remove();
                     }
                 }
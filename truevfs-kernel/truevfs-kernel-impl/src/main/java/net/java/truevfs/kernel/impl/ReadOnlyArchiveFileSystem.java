@@ -39,9 +39,10 @@ final class ReadOnlyArchiveFileSystem<E extends FsArchiveEntry> extends ArchiveF
             final ArchiveModel<E> model,
             final Container<E> archive,
             final Entry rootTemplate,
-            final Supplier<? extends Throwable> cause
+            final Supplier<? extends Throwable> cause,
+            final boolean lazy
     ) {
-        super(model, archive, rootTemplate);
+        super(model, archive, rootTemplate, lazy);
         this.cause = cause;
     }
 
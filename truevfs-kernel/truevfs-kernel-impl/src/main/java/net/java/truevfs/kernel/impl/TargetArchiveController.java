@@ -13,6 +13,7 @@ import net.java.truecommons.io.ClosedOutputException;
 import net.java.truecommons.shed.BitField;
 import net.java.truecommons.shed.ControlFlowException;
 import net.java.truevfs.kernel.spec.*;
+import net.java.truevfs.kernel.spec.cio.ConcurrentInputService;
 
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
@@ -36,6 +37,7 @@ import static net.java.truecommons.cio.Entry.Type.SPECIAL;
 import static net.java.truecommons.cio.Entry.UNKNOWN;
 import static net.java.truevfs.kernel.spec.FsAccessOption.CACHE;
 import static net.java.truevfs.kernel.spec.FsAccessOption.GROW;
+import static net.java.truevfs.kernel.spec.FsAccessOption.LAZY_MOUNT;
 import static net.java.truevfs.kernel.spec.FsAccessOptions.ACCESS_PREFERENCES_MASK;
 import static net.java.truevfs.kernel.spec.FsSyncOption.ABORT_CHANGES;
 
@@ -180,7 +182,7 @@ abstract class TargetArchiveController<E extends FsArchiveEntry> extends FileSys
                     throw new PersistentFalsePositiveArchiveException(e);
                 }
             }
-            fs = ArchiveFileSystem.apply(getModel(), is, pn, ro);
+            fs = ArchiveFileSystem.apply(getModel(), is, pn, ro, options.get(LAZY_MOUNT));
             setInputArchive(Optional.of(new InputArchive<>(is)));
             assert isMounted();
         }
@@ -524,7 +526,8 @@ abstract class TargetArchiveController<E extends FsArchiveEntry> extends FileSys
         final InputService<E> driverProduct;
 
         InputArchive(InputService<E> driverProduct) {
-            super(new DisconnectingInputService<>(driverProduct));
+            super(new DisconnectingInputService<>(driverProduct),
+                    driverProduct instanceof ConcurrentInputService);
             this.driverProduct = driverProduct;
         }
 
@@ -0,0 +1,196 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.kernel.impl
+
+import java.net.URI
+import java.nio.charset.{Charset, StandardCharsets}
+import java.util.concurrent.locks.Lock
+import java.util.{Iterator => JIterator}
+
+import net.java.truecommons.cio.Entry.Type._
+import net.java.truecommons.cio.Entry._
+import net.java.truecommons.cio._
+import net.java.truecommons.shed.{BitField, ConcurrencyUtils}
+import net.java.truevfs.kernel.impl.ArchiveFileSystemTest._
+import net.java.truevfs.kernel.spec._
+import org.scalatest.Matchers._
+import org.scalatest.WordSpec
+
+import scala.collection.JavaConverters._
+
+/**
+  * @author Christian Schlichtherle
+  */
+class ArchiveFileSystemTest extends WordSpec {
+
+  "An archive file system" when {
+    "mounted eagerly" should {
+      "load all entries before it creates any ghost directories" in {
+        val fs = mount(lazily = false, "a/b" -> FILE, "a" -> FILE, "c/d" -> FILE)
+        fs.asScala.map(_.getName).toList shouldBe List("a/b", "a", "c/d", "", "c")
+      }
+
+      "map a parent directory after the file entry with the same name" in {
+        val fs = mount(lazily = false, "a/b" -> FILE, "a" -> FILE)
+        val node = fs.asScala.find(_.getName == "a").get
+        node.getTypes shouldBe BitField.of(FILE, DIRECTORY)
+        node.getKey shouldBe DIRECTORY
+        node.getMembers.asScala shouldBe Set("b")
+      }
+
+      "retain the order of its nodes when unlinking and making many nodes" in {
+        val fs = mount(lazily = false, (0 until 1000).map(i => s"d/$i" -> FILE): _*)
+        for (i <- 0 until 1000 if 0 != i % 3) {
+          fs.unlink(FsAccessOptions.NONE, name(s"d/$i"))
+        }
+        for (i <- 0 until 1000) {
+          fs.make(BitField.of(FsAccessOption.CREATE_PARENTS), name(s"e/$i"), FILE, java.util.Optional.empty()).commit()
+        }
+        val kept = (0 until 1000 by 3).map(i => s"d/$i")
+        val made = (0 until 1000).map(i => s"e/$i")
+        val names = fs.asScala.map(_.getName).toList
+        names.size shouldBe fs.size
+        names.filter(_.startsWith("d/")) shouldBe kept
+        names.filter(_.startsWith("e/")) shouldBe made
+        names.toSet shouldBe (kept ++ made ++ Seq("", "d", "e")).toSet
+        for (path <- names) {
+          node(fs, path).get.getName shouldBe path
+        }
+        for (i <- 0 until 1000 if 0 != i % 3) {
+          node(fs, s"d/$i") shouldBe None
+        }
+        members(fs, "d") shouldBe kept.map(_.substring(2)).toSet
+        node(fs, "d").get.getMembers.asScala.toList shouldBe kept.map(_.substring(2)).toList
+        members(fs, "e") shouldBe made.map(_.substring(2)).toSet
+      }
+    }
+
+    "mounted lazily" should {
+      "require the write lock to populate a directory" in {
+        val fs = mount(lazily = true, "a/b" -> FILE, "a/c/d" -> FILE)
+        val lock = fs.getModel.lock
+        locked(lock.readLock)(intercept[NeedsWriteLockException](node(fs, "a")))
+        locked(lock.writeLock)(node(fs, "a").get.getMembers.asScala shouldBe Set("b", "c"))
+        locked(lock.readLock)(node(fs, "a").get.getMembers.asScala shouldBe Set("b", "c"))
+        locked(lock.readLock)(node(fs, "a/b").get.getTypes shouldBe BitField.of(FILE))
+        locked(lock.readLock)(node(fs, "x") shouldBe None)
+      }
+
+      "let many threads look up the same nodes at the same time" in {
+        val entries = for (i <- 0 until 100; j <- 0 until 10) yield s"$i/$j/file" -> FILE
+        val directories = "" +: (0 until 100).flatMap(i => Seq(s"$i") ++ (0 until 10).map(j => s"$i/$j"))
+        val eager = mount(lazily = false, entries: _*)
+        val expected = directories.map(path => path -> locked(eager.getModel.lock.writeLock)(members(eager, path)))
+        val fs = mount(lazily = true, entries: _*)
+        ConcurrencyUtils.start(ConcurrencyUtils.NUM_IO_THREADS, threadNum => () => {
+          val lock = fs.getModel.lock
+          for ((path, members) <- expected.drop(threadNum) ++ expected.take(threadNum)) {
+            val actual = try {
+              locked(lock.readLock)(ArchiveFileSystemTest.members(fs, path))
+            } catch {
+              case _: NeedsWriteLockException => locked(lock.writeLock)(ArchiveFileSystemTest.members(fs, path))
+            }
+            actual shouldBe members
+          }
+        }).join()
+      }
+    }
+  }
+}
+
+private object ArchiveFileSystemTest {
+
+  def mount(lazily: Boolean, entries: (String, Type)*): ArchiveFileSystem[TestEntry] = {
+    val archive = new TestContainer(entries.map { case (name, entryType) => new TestEntry(name, entryType) })
+    ArchiveFileSystem.apply(new TestModel, archive, new TestEntry("", DIRECTORY), java.util.Optional.empty(), lazily)
+  }
+
+  def name(path: String): FsNodeName = new FsNodeName(new URI(null, null, path, null))
+
+  def node(fs: ArchiveFileSystem[TestEntry], path: String): Option[FsCovariantNode[TestEntry]] = {
+    val n = fs.node(FsAccessOptions.NONE, name(path))
+    if (n.isPresent) Some(n.get) else None
+  }
+
+  def members(fs: ArchiveFileSystem[TestEntry], path: String): Set[String] = node(fs, path).get.getMembers.asScala.toSet
+
+  def locked[A](lock: Lock)(op: => A): A = {
+    lock.lock()
+    try {
+      op
+    } finally {
+      lock.unlock()
+    }
+  }
+
+  final class TestEntry(name: String, entryType: Type) extends FsArchiveEntry {
+
+    private var sizes = Map.empty[Size, Long]
+    private var times = Map.empty[Access, Long]
+
+    override def getName: String = name
+
+    override def getType: Type = entryType
+
+    override def getSize(size: Size): Long = sizes.getOrElse(size, UNKNOWN)
+
+    override def setSize(size: Size, value: Long): Boolean = {
+      sizes += size -> value
+      true
+    }
+
+    override def getTime(access: Access): Long = times.getOrElse(access, UNKNOWN)
+
+    override def setTime(access: Access, value: Long): Boolean = {
+      times += access -> value
+      true
+    }
+
+    override def isPermitted(access: Access, entity: Entity): java.lang.Boolean = null
+
+    override def setPermitted(access: Access, entity: Entity, value: java.lang.Boolean): Boolean = false
+  }
+
+  final class TestContainer(entries: Seq[TestEntry]) extends Container[TestEntry] {
+
+    override def size: Int = entries.size
+
+    override def iterator: JIterator[TestEntry] = entries.iterator.asJava
+
+    override def entry(name: String): TestEntry = entries.find(_.getName == name).orNull
+
+    override def close(): Unit = ()
+  }
+
+  final class TestDriver extends FsArchiveDriver[TestEntry] {
+
+    override def getCharset: Charset = StandardCharsets.UTF_8
+
+    override def getPool: IoBufferPool = throw new UnsupportedOperationException
+
+    override protected def newInput(model: FsModel, source: FsInputSocketSource): InputService[TestEntry] =
+      throw new UnsupportedOperationException
+
+    override protected def newOutput(
+      model: FsModel,
+      sink: FsOutputSocketSink,
+      input: InputService[TestEntry]
+    ): OutputService[TestEntry] = throw new UnsupportedOperationException
+
+    override def newEntry(options: BitField[FsAccessOption], name: String, entryType: Type, template: Entry): TestEntry =
+      new TestEntry(FsArchiveDriver.normalize(name, entryType), entryType)
+  }
+
+  final class TestModel extends ArchiveModel[TestEntry](
+    new TestDriver,
+    new DefaultModel(
+      new FsMountPoint(new URI("test:file:/archive!/")),
+      new DefaultModel(new FsMountPoint(new URI("file:/")), null)
+    )
+  ) {
+
+    override def touch(options: BitField[FsAccessOption]): Unit = ()
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.kernel.impl
+
+import java.io.InputStream
+import java.util.concurrent.{CyclicBarrier, ExecutionException, TimeUnit}
+import java.util.{Collections, Iterator => JIterator}
+
+import net.java.truecommons.cio._
+import net.java.truecommons.io.DecoratingInputStream
+import net.java.truecommons.shed.ConcurrencyUtils
+import net.java.truevfs.kernel.impl.LockInputServiceTest._
+import net.java.truevfs.kernel.spec.cio.ConcurrentInputService
+import org.scalatest.Matchers._
+import org.scalatest.WordSpec
+
+/**
+  * @author Christian Schlichtherle
+  */
+class LockInputServiceTest extends WordSpec {
+
+  "A lock input service" when {
+    "decorating a concurrent input service" should {
+      "let two threads read different entries at the same time" in {
+        val barrier = new CyclicBarrier(2)
+        val service = new LockInputService(new BarrierInputService(barrier), true)
+        readConcurrently(service) shouldBe Seq(1, 2)
+        barrier.isBroken shouldBe false
+      }
+    }
+
+    "decorating any other input service" should {
+      "serialize reading different entries" in {
+        val barrier = new CyclicBarrier(2)
+        val service = new LockInputService(new BarrierInputService(barrier), false)
+        intercept[ExecutionException](readConcurrently(service))
+        barrier.isBroken shouldBe true
+      }
+    }
+  }
+}
+
+private object LockInputServiceTest {
+
+  val Names = Seq("a", "b")
+
+  /** Reads the first byte of each entry in a separate thread. */
+  def readConcurrently(service: InputService[MemoryBuffer]): Seq[Int] = {
+    val results = new Array[Int](Names.size)
+    ConcurrencyUtils.start(Names.size, threadNum => () => {
+      val in = service.input(Names(threadNum)).stream(null)
+      try {
+        results(threadNum) = in.read()
+      } finally {
+        in.close()
+      }
+    }).join()
+    results.toSeq
+  }
+
+  /**
+    * An input service whose entry streams wait for each other on the given barrier before reading, so reading
+    * succeeds only if the two entry streams get read at the same time.
+    */
+  final class BarrierInputService(barrier: CyclicBarrier) extends ConcurrentInputService[MemoryBuffer] {
+
+    private val buffers = Names.zipWithIndex.map { case (name, i) =>
+      val buffer = new MemoryBuffer(name, 1)
+      val out = buffer.output.stream(null)
+      try {
+        out.write(i + 1)
+      } finally {
+        out.close()
+      }
+      name -> buffer
+    }.toMap
+
+    override def size: Int = buffers.size
+
+    override def iterator: JIterator[MemoryBuffer] = Collections.emptyIterator()
+
+    override def entry(name: String): MemoryBuffer = buffers.get(name).orNull
+
+    override def input(name: String): InputSocket[MemoryBuffer] = new AbstractInputSocket[MemoryBuffer] {
+
+      override def target: MemoryBuffer = buffers(name)
+
+      override def stream(peer: OutputSocket[_ <: Entry]): InputStream = {
+        new DecoratingInputStream(target.input.stream(peer)) {
+
+          override def read: Int = {
+            barrier.await(500, TimeUnit.MILLISECONDS)
+            super.read
+          }
+        }
+      }
+    }
+
+    override def close(): Unit = ()
+  }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.kernel.impl
+
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.locks.{Lock, ReentrantLock}
+import java.util.concurrent.{CyclicBarrier, TimeUnit}
+
+import net.java.truecommons.shed.ConcurrencyUtils
+import net.java.truevfs.kernel.impl.LockingStrategy._
+import net.java.truevfs.kernel.impl.LockingStrategyTest._
+import org.scalatest.Matchers._
+import org.scalatest.WordSpec
+
+/**
+  * @author Christian Schlichtherle
+  */
+class LockingStrategyTest extends WordSpec {
+
+  "The locking strategy" when {
+    "used by two threads which acquire two locks in opposite order" should {
+      "resolve the dead lock by retrying and account for it" in {
+        val locks = Array[Lock](new ReentrantLock, new ReentrantLock)
+        val barrier = new CyclicBarrier(2)
+        val attempts = new AtomicInteger
+        val retriesBefore = LockingStatistics.getRetries
+        val retryNanosBefore = LockingStatistics.getRetryNanos
+        ConcurrencyUtils.start(2, threadNum => () => {
+          var first = true
+          locked(fastLocked, locks(threadNum)) {
+            attempts.incrementAndGet()
+            if (first) {
+              first = false
+              barrier.await(10, TimeUnit.SECONDS)
+            }
+            locked(fastLocked, locks(1 - threadNum)) {
+              lockCount() shouldBe 2
+            }
+          }
+          lockCount() shouldBe 0
+        }).join()
+        // The counters are global, so other tests running concurrently may increment them, too.
+        val retried = attempts.get - 2
+        retried should be >= 1
+        LockingStatistics.getRetries - retriesBefore should be >= retried.toLong
+        LockingStatistics.getRetryNanos should be > retryNanosBefore
+      }
+    }
+  }
+}
+
+private object LockingStrategyTest {
+
+  def locked(strategy: LockingStrategy, lock: Lock)(fun: => Unit): Unit = {
+    strategy.using(lock).call(new Op[Unit, RuntimeException] {
+      def call(): Unit = fun
+    })
+  }
+}
@@ -91,4 +91,20 @@ public enum FsAccessOption {
      * to the caller.
      */
     ENCRYPT,
+
+    /**
+     * Expresses a preference to mount an archive file lazily.
+     * Upon mount, only the index of the archive entries gets built.
+     * The members of a directory and any missing parent directories get
+     * computed upon first access to the respective directory.
+     * This may yield much better performance if only a few entries of an
+     * archive file with many entries get accessed.
+     * <p>
+     * Note that this option is only effective for the operation which mounts
+     * the archive file system.
+     * Furthermore, it may get ignored by archive file system implementations
+     * and if this happens, there may be no direct feedback available to the
+     * caller.
+     */
+    LAZY_MOUNT,
 }
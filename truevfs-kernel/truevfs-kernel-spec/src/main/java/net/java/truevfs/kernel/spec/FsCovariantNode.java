@@ -16,6 +16,10 @@ import net.java.truecommons.shed.BitField;
  * {@link #getKey() key} property to determine the archive entry in the map to
  * which it forwards calls to {@link #getEntry()}, {@link #getSize(Size)},
  * {@link #getTime(Access)} et al.
+ * <p>
+ * Because almost all nodes map only a single archive entry, the first mapping
+ * is stored inline and a map is only allocated for a second mapping.
+ * This saves a lot of heap when mounting archives with many entries.
  *
  * @param  <E> the type of the mapped archive entries.
  * @author Christian Schlichtherle
@@ -25,9 +29,11 @@ public final class FsCovariantNode<E extends FsArchiveEntry>
 extends FsAbstractNode implements Cloneable {
 
     private final String name;
-    private EnumMap<Type, E> map = new EnumMap<>(Type.class);
+    private @Nullable EnumMap<Type, E> map;
+    private @Nullable Type type;
+    private @Nullable E entry;
     private @Nullable Type key;
-    private @Nullable LinkedHashSet<String> members;
+    private @Nullable FsMemberSet members;
 
     /**
      * Constructs a new covariant file system node with the given path.
@@ -51,18 +57,40 @@ extends FsAbstractNode implements Cloneable {
         } catch (CloneNotSupportedException ex) {
             throw new AssertionError(ex);
         }
-        final Map<Type, E> cloneMap = clone.map = new EnumMap<>(Type.class);
-        for (final Map.Entry<Type, E> mapping : this.map.entrySet()) {
-            final FsArchiveEntry entry = mapping.getValue();
-            cloneMap.put(mapping.getKey(),
-                    driver.newEntry(entry.getName(), entry.getType(), entry));
+        final EnumMap<Type, E> map = this.map;
+        if (null != map) {
+            final EnumMap<Type, E> cloneMap = clone.map = new EnumMap<>(Type.class);
+            for (final Map.Entry<Type, E> mapping : map.entrySet())
+                cloneMap.put(mapping.getKey(), clone(driver, mapping.getValue()));
+        } else {
+            final E entry = this.entry;
+            if (null != entry) clone.entry = clone(driver, entry);
         }
-        final LinkedHashSet<String> members = this.members;
-        if (null != members)
-            clone.members = (LinkedHashSet<String>) members.clone();
+        final FsMemberSet members = this.members;
+        if (null != members) clone.members = members.clone();
         return clone;
     }
 
+    private static <E extends FsArchiveEntry> E clone(
+            FsArchiveDriver<E> driver,
+            FsArchiveEntry entry) {
+        return driver.newEntry(entry.getName(), entry.getType(), entry);
+    }
+
+    /**
+     * Returns the map of all archive entries, allocating it if necessary.
+     */
+    private EnumMap<Type, E> map() {
+        EnumMap<Type, E> map = this.map;
+        if (null == map) {
+            map = this.map = new EnumMap<>(Type.class);
+            if (null != type) map.put(type, entry);
+            type = null;
+            entry = null;
+        }
+        return map;
+    }
+
     @Override
     public String getName() { return name; }
 
@@ -113,8 +141,18 @@ extends FsAbstractNode implements Cloneable {
      * @param entry the archive entry to map.
      * @return The previously mapped archive entry.
      */
-    public @Nullable E put(Type type, E entry) {
-        return map.put(key = type, entry);
+    public @Nullable E put(final Type type, final E entry) {
+        key = Objects.requireNonNull(type);
+        if (null == map) {
+            final Type oldType = this.type;
+            if (null == oldType || oldType == type) {
+                final E oldEntry = this.entry;
+                this.type = type;
+                this.entry = entry;
+                return oldEntry;
+            }
+        }
+        return map().put(type, entry);
     }
 
     /**
@@ -123,7 +161,15 @@ extends FsAbstractNode implements Cloneable {
      * @param type the type to remove.
      * @return The previously mapped archive entry.
      */
-    public @Nullable E remove(Type type) { return map.remove(type); }
+    public @Nullable E remove(final Type type) {
+        final EnumMap<Type, E> map = this.map;
+        if (null != map) return map.remove(type);
+        if (null == type || type != this.type) return null;
+        final E oldEntry = entry;
+        this.type = null;
+        entry = null;
+        return oldEntry;
+    }
 
     /**
      * Returns the archive entry for the given type.
@@ -131,14 +177,18 @@ extends FsAbstractNode implements Cloneable {
      * @param type the type of the archive entry to lookup.
      * @return The archive entry for the given type.
      */
-    public @Nullable E get(Type type) { return map.get(type); }
+    public @Nullable E get(final Type type) {
+        final EnumMap<Type, E> map = this.map;
+        if (null != map) return map.get(type);
+        return null != type && type == this.type ? entry : null;
+    }
 
     /**
      * Returns the archive entry mapped for the {@link #getKey() key} property.
      *
      * @return the archive entry mapped for the {@link #getKey() key} property.
      */
-    public @Nullable E getEntry() { return map.get(key); }
+    public @Nullable E getEntry() { return get(key); }
 
     /**
      * A collection of the mapped entries.
@@ -147,7 +197,7 @@ extends FsAbstractNode implements Cloneable {
      *
      * @return a collection of the mapped entries
      */
-    public Collection<E> getEntries() { return map.values(); }
+    public Collection<E> getEntries() { return map().values(); }
 
     /**
      * Returns a set of the mapped types.
@@ -155,35 +205,45 @@ extends FsAbstractNode implements Cloneable {
      * vice versa.
      */
     @Override
-    public BitField<Type> getTypes() { return BitField.copyOf(map.keySet()); }
+    public BitField<Type> getTypes() {
+        final EnumMap<Type, E> map = this.map;
+        if (null != map) return BitField.copyOf(map.keySet());
+        return null != type
+                ? BitField.copyOf(EnumSet.of(type))
+                : BitField.copyOf(EnumSet.noneOf(Type.class));
+    }
 
     /**
      * Returns {@code true} if and only if there is an archive entry mapped for
      * the given type.
      */
     @Override
-    public boolean isType(Type type) { return map.containsKey(type); }
+    public boolean isType(final Type type) {
+        final EnumMap<Type, E> map = this.map;
+        if (null != map) return map.containsKey(type);
+        return null != type && type == this.type;
+    }
 
     /**
      * Returns the size mapped for the {@link #getKey() key} property.
      */
     @Override
     public long getSize(Size type) {
-        return DIRECTORY == key ? UNKNOWN : map.get(key).getSize(type);
+        return DIRECTORY == key ? UNKNOWN : get(key).getSize(type);
     }
 
     /**
      * Returns the access time mapped for the {@link #getKey() key} property.
      */
     @Override
-    public long getTime(Access type) { return map.get(key).getTime(type); }
+    public long getTime(Access type) { return get(key).getTime(type); }
 
     /**
      * Returns the permission mapped for the {@link #getKey() key} property.
      */
     @Override
     public Boolean isPermitted(Access type, Entity entity) {
-        return map.get(key).isPermitted(type, entity);
+        return get(key).isPermitted(type, entity);
     }
 
     /**
@@ -195,8 +255,8 @@ extends FsAbstractNode implements Cloneable {
     @Override
     public @Nullable Set<String> getMembers() {
         if (!isType(DIRECTORY)) return members = null;
-        final Set<String> m = members;
-        return null != m ? m : (members = new LinkedHashSet<>());
+        final FsMemberSet m = members;
+        return null != m ? m : (members = new FsMemberSet());
     }
 
     /**
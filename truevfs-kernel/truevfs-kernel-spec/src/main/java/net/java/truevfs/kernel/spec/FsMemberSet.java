@@ -0,0 +1,217 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.kernel.spec;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * A compact set of the member names of a directory which retains the order
+ * of insertion, like a {@link java.util.LinkedHashSet}.
+ * <p>
+ * The members get stored in an array in the order of insertion, where a
+ * removed member leaves a {@code null} gap until the array gets compacted.
+ * A hash table of indexes into this array with open addressing and linear
+ * probing is used for lookups.
+ * Unlike a {@code LinkedHashSet}, this class does not allocate an object per
+ * member, which saves a lot of heap when mounting archive files with many
+ * entries.
+ *
+ * @author Christian Schlichtherle
+ */
+@NotThreadSafe
+final class FsMemberSet extends AbstractSet<String> implements Cloneable {
+
+    private static final int INITIAL_CAPACITY = 2;
+
+    /** The members in the order of insertion, with {@code null} gaps. */
+    private String[] members = new String[INITIAL_CAPACITY];
+
+    /**
+     * The hash table of indexes into {@link #members}, plus one.
+     * Zero marks an empty slot.
+     * The length is a power of two and at least twice the length of
+     * {@link #members}.
+     */
+    private int[] table = new int[2 * INITIAL_CAPACITY];
+
+    /** The number of used elements in {@link #members}, including gaps. */
+    private int end;
+
+    /** The number of members. */
+    private int size;
+
+    private int modCount;
+
+    @Override
+    public int size() { return size; }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof String && 0 <= slot((String) o);
+    }
+
+    @Override
+    public boolean add(final String member) {
+        if (0 <= slot(member)) return false;
+        if (end == members.length) {
+            if (size <= end / 2) compact();
+            else resize(2 * members.length);
+        }
+        members[end] = member;
+        insert(member, ++end);
+        size++;
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (!(o instanceof String)) return false;
+        final int slot = slot((String) o);
+        if (0 > slot) return false;
+        members[table[slot] - 1] = null;
+        delete(slot);
+        size--;
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(members, 0, end, null);
+        Arrays.fill(table, 0);
+        end = size = 0;
+        modCount++;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+            int next = advance(0), last = -1, expectedModCount = modCount;
+
+            int advance(int i) {
+                while (i < end && null == members[i]) i++;
+                return i;
+            }
+
+            @Override
+            public boolean hasNext() { return next < end; }
+
+            @Override
+            public String next() {
+                if (modCount != expectedModCount)
+                    throw new ConcurrentModificationException();
+                if (next >= end) throw new NoSuchElementException();
+                final String member = members[last = next];
+                next = advance(next + 1);
+                return member;
+            }
+
+            @Override
+            public void remove() {
+                if (0 > last) throw new IllegalStateException();
+                if (modCount != expectedModCount)
+                    throw new ConcurrentModificationException();
+                FsMemberSet.this.remove(members[last]);
+                last = -1;
+                expectedModCount = modCount;
+            }
+        };
+    }
+
+    @Override
+    public FsMemberSet clone() {
+        final FsMemberSet clone;
+        try {
+            clone = (FsMemberSet) super.clone();
+        } catch (CloneNotSupportedException ex) {
+            throw new AssertionError(ex);
+        }
+        clone.members = members.clone();
+        clone.table = table.clone();
+        clone.modCount = 0;
+        return clone;
+    }
+
+    private static int hash(String member) {
+        final int h = member.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Returns the index of the slot in the hash table which refers to the
+     * given member or {@code -1} if there is no such slot.
+     */
+    private int slot(final String member) {
+        final int[] table = this.table;
+        final int mask = table.length - 1;
+        for (int i = hash(member) & mask; ; i = (i + 1) & mask) {
+            final int index = table[i];
+            if (0 == index) return -1;
+            if (member.equals(members[index - 1])) return i;
+        }
+    }
+
+    private void insert(final String member, final int index) {
+        final int[] table = this.table;
+        final int mask = table.length - 1;
+        int i = hash(member) & mask;
+        while (0 != table[i]) i = (i + 1) & mask;
+        table[i] = index;
+    }
+
+    /**
+     * Empties the given slot in the hash table and shifts any subsequent
+     * slots of the same cluster back so that linear probing still finds them.
+     */
+    private void delete(int slot) {
+        final int[] table = this.table;
+        final int mask = table.length - 1;
+        for (int i = (slot + 1) & mask; 0 != table[i]; i = (i + 1) & mask) {
+            final int home = hash(members[table[i] - 1]) & mask;
+            // Move the entry in slot i back unless its home slot lies
+            // cyclically in the range (slot, i].
+            if (slot <= i ? slot < home && home <= i : slot < home || home <= i)
+                continue;
+            table[slot] = table[i];
+            slot = i;
+        }
+        table[slot] = 0;
+    }
+
+    /** Removes the gaps from the array of members. */
+    private void compact() {
+        int j = 0;
+        for (int i = 0; i < end; i++) {
+            final String member = members[i];
+            if (null != member) members[j++] = member;
+        }
+        Arrays.fill(members, j, end, null);
+        end = j;
+        rehash(table.length);
+    }
+
+    private void resize(final int capacity) {
+        members = Arrays.copyOf(members, capacity);
+        rehash(2 * capacity);
+    }
+
+    private void rehash(final int length) {
+        final int[] table = this.table = new int[length];
+        final int mask = length - 1;
+        for (int i = 0; i < end; i++) {
+            final String member = members[i];
+            if (null == member) continue;
+            int j = hash(member) & mask;
+            while (0 != table[j]) j = (j + 1) & mask;
+            table[j] = i + 1;
+        }
+    }
+}
@@ -9,6 +9,11 @@ import net.java.truecommons.shed.Filter;
 import net.java.truecommons.shed.Visitor;
 import net.java.truevfs.kernel.spec.sl.FsManagerLocator;
 
+import javax.annotation.CheckForNull;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.function.Supplier;
 
 import static java.util.Objects.requireNonNull;
@@ -21,6 +26,7 @@ public final class FsSync {
     private Supplier<FsManager> managerProvider = FsManagerLocator.SINGLETON;
     private Filter<? super FsController> filter = Filter.ACCEPT_ANY;
     private BitField<FsSyncOption> options = FsSyncOptions.NONE;
+    private @CheckForNull Executor executor;
 
     public FsSync manager(final FsManager manager) {
         requireNonNull(manager);
@@ -38,6 +44,22 @@ public final class FsSync {
         return this;
     }
 
+    /**
+     * Sets the executor for syncing independent file systems concurrently.
+     * If this is {@code null}, which is the default, then all file system
+     * controllers get synced one by one in the current thread.
+     * Otherwise, each file system controller gets synced by a task which gets
+     * submitted to the given executor as soon as all controllers for its
+     * member file systems have been synced, so that the child-before-parent
+     * order within each chain of nested file systems is retained.
+     * In order to bound the number of concurrent syncs, use an executor with
+     * a bounded number of threads.
+     */
+    public FsSync executor(final @CheckForNull Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
     /**
      * Invokes {@link FsController#sync sync()} on all managed file system
      * controllers which are accepted by the configured file system controller
@@ -47,6 +69,15 @@ public final class FsSync {
      * over all managed file system controllers in order to ensure that all
      * controllers get synced, even if a controller fails with an
      * {@link FsSyncException}.
+     * <p>
+     * If an {@linkplain #executor executor} has been set, then the file
+     * system manager first applies the filter to all managed file system
+     * controllers, as it usually does.
+     * When it visits the first accepted controller, the tasks for syncing all
+     * accepted controllers get submitted to the executor.
+     * Next, visiting each controller waits for the completion of its task.
+     * This way, the file system manager observes the visit of each controller
+     * after it has been synced, just like without an executor.
      *
      * @throws FsSyncWarningException if <em>only</em> warning conditions apply.
      *                                This implies that the respective file system controller has been
@@ -55,26 +86,109 @@ public final class FsSync {
      * @throws FsSyncException        if any error conditions apply.
      */
     public void run() throws FsSyncException {
+        final Executor executor = this.executor;
 
-        final class SyncVisitor implements Visitor<FsController, RuntimeException> {
+        final class SyncVisitor implements Filter<FsController>, Visitor<FsController, RuntimeException> {
 
             final FsSyncExceptionBuilder builder = new FsSyncExceptionBuilder();
 
+            /** The accepted controllers which have not yet been scheduled. */
+            final List<FsController> accepted = new ArrayList<>();
+
+            /** The mount points of all accepted controllers. */
+            final Set<FsMountPoint> mountPoints = new HashSet<>();
+
+            /** The tasks for syncing the members of each mount point which has not yet been scheduled. */
+            final Map<FsMountPoint, List<CompletableFuture<Void>>> members = new HashMap<>();
+
+            final Map<FsController, CompletableFuture<Void>> tasks = new IdentityHashMap<>();
+
+            @Override
+            public boolean accept(final FsController controller) {
+                if (!filter.accept(controller)) {
+                    return false;
+                }
+                if (null != executor) {
+                    accepted.add(controller);
+                    mountPoints.add(controller.getModel().getMountPoint());
+                }
+                return true;
+            }
+
             @Override
             public void visit(final FsController controller) {
+                if (null != executor) {
+                    schedule(executor);
+                }
+                final CompletableFuture<Void> task = tasks.remove(controller);
+                if (null != task) {
+                    join(task);
+                } else {
+                    sync(controller);
+                }
+            }
+
+            void sync(final FsController controller) {
                 try {
                     controller.sync(options);
                 } catch (FsSyncException e) {
-                    builder.warn(e);
+                    synchronized (builder) {
+                        builder.warn(e);
+                    }
+                }
+            }
+
+            void schedule(final Executor executor) {
+                // Sort the accepted controllers so that all members of a file system precede their parent file
+                // system.
+                // Hence, when a controller gets scheduled, the tasks for all of its accepted members have already been
+                // scheduled.
+                accepted.sort(new FsControllerComparator());
+                for (final FsController controller : accepted) {
+                    final FsMountPoint mountPoint = controller.getModel().getMountPoint();
+                    final List<CompletableFuture<Void>> dependencies = members.remove(mountPoint);
+                    final CompletableFuture<Void> task = (null == dependencies
+                            ? CompletableFuture.<Void>completedFuture(null)
+                            : CompletableFuture.allOf(dependencies.toArray(new CompletableFuture<?>[0])))
+                            .thenRunAsync(() -> sync(controller), executor);
+                    tasks.put(controller, task);
+                    FsMountPoint parent = mountPoint.getParent();
+                    while (null != parent && !mountPoints.contains(parent)) {
+                        parent = parent.getParent();
+                    }
+                    if (null != parent) {
+                        members.computeIfAbsent(parent, k -> new ArrayList<>()).add(task);
+                    }
+                }
+                accepted.clear();
+            }
+
+            void join(final CompletableFuture<Void> task) {
+                try {
+                    task.join();
+                } catch (CompletionException e) {
+                    final Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    } else if (cause instanceof Error) {
+                        throw (Error) cause;
+                    } else {
+                        throw e;
+                    }
                 }
             }
 
             void check() throws FsSyncException {
+                // Wait for the tasks of any controllers which have not been visited.
+                for (final CompletableFuture<Void> task : tasks.values()) {
+                    join(task);
+                }
                 builder.check();
             }
         }
 
-        manager().accept(filter, new SyncVisitor()).check();
+        final SyncVisitor visitor = new SyncVisitor();
+        manager().accept(visitor, visitor).check();
     }
 
     private FsManager manager() {
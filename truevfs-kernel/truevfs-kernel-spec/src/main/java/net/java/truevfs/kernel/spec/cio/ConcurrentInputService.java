@@ -0,0 +1,28 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.kernel.spec.cio;
+
+import net.java.truecommons.cio.Entry;
+import net.java.truecommons.cio.InputService;
+
+/**
+ * An input service which supports reading its entries concurrently.
+ * By implementing this interface, an input service declares that any number
+ * of threads may concurrently read from the streams and channels which its
+ * input sockets return, provided that each stream or channel is used by only
+ * one thread at a time.
+ * The streams and channels must also tolerate {@link #close() closing} this
+ * input service while they are in use by other threads.
+ * <p>
+ * The file system controllers do not need to serialize reading entries from
+ * an input service which implements this interface.
+ * Any other method still gets called by only one thread at a time.
+ *
+ * @param <E> the type of the entries.
+ * @since TrueVFS 0.15.0
+ * @author Christian Schlichtherle
+ */
+public interface ConcurrentInputService<E extends Entry> extends InputService<E> {
+}
@@ -4,7 +4,8 @@
  */
 /**
  * Provides a
- * {@link net.java.truevfs.kernel.spec.cio.MultiplexingOutputService}.
+ * {@link net.java.truevfs.kernel.spec.cio.MultiplexingOutputService} and the
+ * {@link net.java.truevfs.kernel.spec.cio.ConcurrentInputService} interface.
  *
  * @author Christian Schlichtherle
  */
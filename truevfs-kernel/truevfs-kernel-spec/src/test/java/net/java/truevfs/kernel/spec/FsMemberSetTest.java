@@ -0,0 +1,90 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.kernel.spec;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Random;
+import java.util.Set;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * @author Christian Schlichtherle
+ */
+public class FsMemberSetTest {
+
+    private static void assertSameSet(Set<String> expected, FsMemberSet actual) {
+        assertEquals(expected.size(), actual.size());
+        assertEquals(new ArrayList<>(expected), new ArrayList<>(actual));
+        for (final String member : expected)
+            assertTrue(actual.contains(member));
+    }
+
+    @Test
+    public void testBehavesLikeLinkedHashSet() {
+        final Random rnd = new Random(0);
+        final Set<String> expected = new LinkedHashSet<>();
+        final FsMemberSet actual = new FsMemberSet();
+        for (int i = 0; i < 100000; i++) {
+            // A small range of members causes many collisions, removals and
+            // compactions.
+            final String member = "m" + rnd.nextInt(1000);
+            switch (rnd.nextInt(3)) {
+                case 0:
+                    assertEquals(expected.remove(member), actual.remove(member));
+                    break;
+                default:
+                    assertEquals(expected.add(member), actual.add(member));
+            }
+            assertEquals(expected.contains(member), actual.contains(member));
+            if (0 == i % 1000) assertSameSet(expected, actual);
+        }
+        assertSameSet(expected, actual);
+        actual.clear();
+        assertTrue(actual.isEmpty());
+        assertFalse(actual.iterator().hasNext());
+        assertTrue(actual.add("a"));
+        assertSameSet(java.util.Collections.singleton("a"), actual);
+    }
+
+    @Test
+    public void testIteratorRemove() {
+        final FsMemberSet set = new FsMemberSet();
+        for (int i = 0; i < 10; i++) set.add("m" + i);
+        for (final Iterator<String> it = set.iterator(); it.hasNext(); )
+            if (0 == Integer.parseInt(it.next().substring(1)) % 2) it.remove();
+        final Set<String> expected = new LinkedHashSet<>();
+        for (int i = 1; i < 10; i += 2) expected.add("m" + i);
+        assertSameSet(expected, set);
+    }
+
+    @Test(expected = ConcurrentModificationException.class)
+    public void testConcurrentModification() {
+        final FsMemberSet set = new FsMemberSet();
+        set.add("a");
+        set.add("b");
+        for (final String member : set) set.add(member + member);
+    }
+
+    @Test
+    public void testClone() {
+        final FsMemberSet set = new FsMemberSet();
+        set.add("a");
+        set.add("b");
+        final FsMemberSet clone = set.clone();
+        clone.remove("a");
+        clone.add("c");
+        final Set<String> expected = new LinkedHashSet<>();
+        expected.add("a");
+        expected.add("b");
+        assertSameSet(expected, set);
+        expected.remove("a");
+        expected.add("c");
+        assertSameSet(expected, clone);
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright © 2005 - 2021 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package net.java.truevfs.kernel.spec;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.CheckForNull;
+import net.java.truecommons.cio.Entry;
+import net.java.truecommons.cio.InputSocket;
+import net.java.truecommons.cio.OutputSocket;
+import net.java.truecommons.shed.BitField;
+import net.java.truecommons.shed.Filter;
+import net.java.truecommons.shed.Visitor;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static net.java.truevfs.kernel.spec.FsSyncOptions.UMOUNT;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Christian Schlichtherle
+ */
+public final class FsSyncTest {
+
+    private ExecutorService executor;
+    private TestManager manager;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+        manager = new TestManager();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testSyncIndependentFileSystemsConcurrently() throws Exception {
+        final CyclicBarrier barrier = new CyclicBarrier(2);
+        final TestController a = manager.mount("zip:file:/a.zip!/");
+        final TestController b = manager.mount("zip:file:/b.zip!/");
+        a.onSync = b.onSync = () -> barrier.await(10, SECONDS);
+        sync();
+        assertFalse(barrier.isBroken());
+        assertFalse(a.getModel().isMounted());
+        assertFalse(b.getModel().isMounted());
+        assertEquals(1, a.syncs.get());
+        assertEquals(1, b.syncs.get());
+    }
+
+    @Test
+    public void testSyncParentAfterMembers() throws Exception {
+        final List<FsController> order = new CopyOnWriteArrayList<>();
+        final TestController outer = manager.mount("zip:file:/outer.zip!/");
+        final TestController inner1 = manager.mount("zip:zip:file:/outer.zip!/inner1.zip!/");
+        final TestController inner2 = manager.mount("zip:zip:file:/outer.zip!/dir/inner2.zip!/");
+        final TestController innermost = manager.mount("zip:zip:zip:file:/outer.zip!/inner1.zip!/innermost.zip!/");
+        for (final TestController controller : new TestController[] { outer, inner1, inner2, innermost }) {
+            controller.onSync = () -> {
+                Thread.sleep(10);
+                order.add(controller);
+                return 0;
+            };
+        }
+        sync();
+        assertEquals(4, order.size());
+        assertTrue(order.indexOf(innermost) < order.indexOf(inner1));
+        assertTrue(order.indexOf(inner1) < order.indexOf(outer));
+        assertTrue(order.indexOf(inner2) < order.indexOf(outer));
+        for (final FsController controller : order) {
+            assertEquals(1, ((TestController) controller).syncs.get());
+        }
+    }
+
+    @Test
+    public void testManagerObservesSyncedControllers() throws Exception {
+        manager.mount("zip:file:/a.zip!/");
+        manager.mount("zip:zip:file:/a.zip!/b.zip!/");
+        sync();
+        assertEquals(Collections.singletonList(true), manager.allUnmounted);
+    }
+
+    private void sync() throws FsSyncException {
+        new FsSync().manager(manager).options(UMOUNT).executor(executor).run();
+    }
+
+    private static final class TestManager extends FsAbstractManager {
+
+        final List<FsController> controllers = new CopyOnWriteArrayList<>();
+
+        /** Records if all accepted controllers were unmounted after each visit. */
+        final List<Boolean> allUnmounted = new ArrayList<>();
+
+        final Map<FsMountPoint, FsModel> models = new HashMap<>();
+
+        TestController mount(final String mountPoint) throws Exception {
+            final TestController controller = new TestController(
+                    model(new FsMountPoint(new URI(mountPoint))));
+            controller.getModel().setMounted(true);
+            controllers.add(controller);
+            return controller;
+        }
+
+        FsModel model(final FsMountPoint mountPoint) {
+            FsModel model = models.get(mountPoint);
+            if (null == model) {
+                final FsMountPoint parent = mountPoint.getParent();
+                models.put(mountPoint, model = new TestModel(mountPoint, null == parent ? null : model(parent)));
+            }
+            return model;
+        }
+
+        @Override
+        public FsModel newModel(FsDriver context, FsMountPoint mountPoint, @CheckForNull FsModel parent) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public FsController newController(
+                FsArchiveDriver<? extends FsArchiveEntry> context,
+                FsModel model,
+                @CheckForNull FsController parent) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public FsController controller(FsCompositeDriver driver, FsMountPoint mountPoint) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <X extends Exception, V extends Visitor<? super FsController, X>> V accept(
+                final Filter<? super FsController> filter,
+                final V visitor)
+        throws X {
+            final List<FsController> snapshot = new ArrayList<>();
+            for (final FsController controller : controllers) {
+                if (filter.accept(controller)) {
+                    snapshot.add(controller);
+                }
+            }
+            snapshot.sort(new FsControllerComparator());
+            boolean allUnmounted = true;
+            for (final FsController controller : snapshot) {
+                visitor.visit(controller);
+                allUnmounted &= !controller.getModel().isMounted();
+            }
+            this.allUnmounted.add(allUnmounted);
+            return visitor;
+        }
+    }
+
+    private static final class TestModel extends FsAbstractModel {
+
+        private volatile boolean mounted;
+
+        TestModel(FsMountPoint mountPoint, @CheckForNull FsModel parent) {
+            super(mountPoint, parent);
+        }
+
+        @Override
+        public boolean isMounted() {
+            return mounted;
+        }
+
+        @Override
+        public void setMounted(final boolean mounted) {
+            this.mounted = mounted;
+        }
+    }
+
+    private static final class TestController extends FsAbstractController {
+
+        final AtomicInteger syncs = new AtomicInteger();
+
+        volatile @CheckForNull Callable<?> onSync;
+
+        TestController(FsModel model) {
+            super(model);
+        }
+
+        @Override
+        public void sync(final BitField<FsSyncOption> options) throws FsSyncException {
+            syncs.incrementAndGet();
+            final Callable<?> onSync = this.onSync;
+            if (null != onSync) {
+                try {
+                    onSync.call();
+                } catch (final Exception ex) {
+                    throw new FsSyncException(getMountPoint(), ex);
+                }
+            }
+            setMounted(false);
+        }
+
+        @Override
+        public @CheckForNull FsController getParent() {
+            return null;
+        }
+
+        @Override
+        public @CheckForNull FsNode node(BitField<FsAccessOption> options, FsNodeName name) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void checkAccess(BitField<FsAccessOption> options, FsNodeName name, BitField<Entry.Access> types) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setReadOnly(BitField<FsAccessOption> options, FsNodeName name) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean setTime(
+                BitField<FsAccessOption> options,
+                FsNodeName name,
+                Map<Entry.Access, Long> times) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean setTime(
+                BitField<FsAccessOption> options,
+                FsNodeName name,
+                BitField<Entry.Access> types,
+                long value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public InputSocket<? extends Entry> input(BitField<FsAccessOption> options, FsNodeName name) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public OutputSocket<? extends Entry> output(
+                BitField<FsAccessOption> options,
+                FsNodeName name,
+                @CheckForNull Entry template) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void make(
+                BitField<FsAccessOption> options,
+                FsNodeName name,
+                Entry.Type type,
+                @CheckForNull Entry template)
+        throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void unlink(BitField<FsAccessOption> options, FsNodeName name) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}